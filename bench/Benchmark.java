@@ -0,0 +1,54 @@
+/**
+ * This class is the base of all the Missile Command micro benchmarks run by
+ * {@link GameBenchmarks}.  A benchmark is first set up for a given number of
+ * entities.  It is then measured by repeatedly preparing a batch of
+ * operations, which is not timed, and running the batch, which is.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public abstract class Benchmark {
+
+   /**
+    * Sink for the results of the measured operations.  Writing to a
+    * volatile field keeps the JIT compiler from removing work whose result
+    * is otherwise never used.
+    */
+   public static volatile long sink;
+
+   /** The name of the benchmark. */
+   private String name;
+
+   /**
+    * Creates a new benchmark with the given name.
+    * @param name the name of the benchmark
+    */
+   protected Benchmark(String name) {
+      this.name = name;
+   }
+
+   /**
+    * Returns the name of the benchmark.
+    * @return the name of the benchmark
+    */
+   public String getName() { return name; }
+
+   /**
+    * Sets up the benchmark for the given number of entities.  Called once
+    * before any batch is prepared.
+    * @param entities the number of missiles, explosions and buildings
+    */
+   public abstract void setup(int entities);
+
+   /**
+    * Prepares the next batch of operations.  Not included in the timing.
+    */
+   public abstract void prepare();
+
+   /**
+    * Runs the prepared batch of operations.
+    * @return the number of operations run
+    */
+   public abstract int measure();
+
+}
@@ -0,0 +1,157 @@
+import java.util.Random;
+
+/**
+ * This class builds the game states measured by the benchmarks.  Every
+ * fixture is generated from a fixed seed, so every run of a benchmark
+ * starts from exactly the same game state.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class BenchmarkFixture {
+
+   /** The seed used to generate every fixture. */
+   public final static long SEED = 20040601L;
+
+   /** The height of the game world of every fixture (in pixels). */
+   public final static int WORLD_HEIGHT = 480;
+
+   /**
+    * The average horizontal space taken by one building in a fixture.
+    * The world is made wide enough to fit all the buildings.
+    */
+   public final static int SPACE_PER_BUILDING = 90;
+
+   /** The pristine game state copied by {@link #copy()}. */
+   private GameState state;
+
+   /** The x coordinates of the unprocessed player clicks. */
+   private int[] clickX;
+
+   /** The y coordinates of the unprocessed player clicks. */
+   private int[] clickY;
+
+   /**
+    * Creates a fixture with the given number of missiles, explosions,
+    * buildings and unprocessed player clicks.
+    * @param entities the number of entities of every kind
+    */
+   public BenchmarkFixture(int entities) {
+      Random gen = new Random(SEED + entities);
+      state = new GameState();
+      state.worldWidth = Math.max(640, entities * SPACE_PER_BUILDING);
+      state.worldHeight = WORLD_HEIGHT;
+      state.power = 1.0F;
+
+      // A skyline like GameLogic.initializeSkyLine, but with a fixed
+      // number of buildings.
+      int point = 0;
+      for (int i = 0; i < entities; i++) {
+         int incr = 15 + gen.nextInt(GameLogic.BUILDING_WIDTH);
+         Vector2D topLeft = new Vector2D
+            (point, gen.nextInt(GameLogic.MAX_HEIGHT) + GameLogic.MAX_HEIGHT);
+         Vector2D bottomRight = new Vector2D(point + incr, 0);
+         state.buildings.add(new Building(topLeft, bottomRight));
+         point += incr + 5 + gen.nextInt(GameLogic.BUILDING_SPACING);
+      }
+      state.skyline.build(state.buildings);
+
+      // Missiles spread over the sky, moving like the ones created by
+      // GameLogic.createMissiles.
+      state.missiles.ensureCapacity(entities);
+      for (int i = 0; i < entities; i++) {
+         state.missiles.add
+            (gen.nextInt(state.worldWidth),
+             2 * GameLogic.MAX_HEIGHT + gen.nextInt(WORLD_HEIGHT - 2 * GameLogic.MAX_HEIGHT),
+             gen.nextInt(GameLogic.MAX_VEL * 2) - GameLogic.MAX_VEL,
+             -2 - gen.nextInt(GameLogic.MAX_VEL),
+             5 + gen.nextInt(5),
+             Missile.MIN_EXPLOSION_SIZE +
+                gen.nextInt(Missile.MAX_EXPLOSION_SIZE - Missile.MIN_EXPLOSION_SIZE));
+      }
+
+      // Explosions at every stage of their growth, half of them defender
+      // explosions.
+      state.explosions.ensureCapacity(entities);
+      for (int i = 0; i < entities; i++) {
+         int maxRadius = Missile.MIN_EXPLOSION_SIZE +
+            gen.nextInt(Missile.MAX_EXPLOSION_SIZE - Missile.MIN_EXPLOSION_SIZE);
+         int e = state.explosions.add
+            (gen.nextInt(state.worldWidth), gen.nextInt(WORLD_HEIGHT),
+             maxRadius, Missile.DEFAULT_EXPLOSION_SPEED,
+             (i % 2 == 0) ? MissileExplosion.DAMAGE : DefenderExplosion.DAMAGE);
+         state.explosions.radius[e] = gen.nextInt(maxRadius);
+      }
+
+      // The clicks are kept aside as well, since reading them off the
+      // queue would use them up.
+      clickX = new int[entities];
+      clickY = new int[entities];
+      for (int i = 0; i < entities; i++) {
+         clickX[i] = gen.nextInt(state.worldWidth);
+         clickY[i] = gen.nextInt(WORLD_HEIGHT);
+      }
+      state.playerClicks = newClickQueue();
+   }
+
+   /**
+    * Returns the pristine game state of this fixture.  It must not be
+    * modified.
+    * @return the pristine game state
+    */
+   public GameState getState() { return state; }
+
+   /**
+    * Returns a deep copy of the pristine game state that may be modified.
+    * @return a copy of the pristine game state
+    */
+   public GameState copy() {
+      GameState copy = new GameState();
+      copy.worldWidth = state.worldWidth;
+      copy.worldHeight = state.worldHeight;
+      copy.score = state.score;
+      copy.power = state.power;
+
+      MissileStore missiles = state.missiles;
+      for (int i = 0; i < missiles.count(); i++) {
+         copy.missiles.add(missiles.x[i], missiles.y[i], missiles.dx[i],
+                           missiles.dy[i], missiles.size[i],
+                           missiles.explosionSize[i]);
+      }
+
+      ExplosionStore explosions = state.explosions;
+      for (int i = 0; i < explosions.count(); i++) {
+         int e = copy.explosions.add(explosions.x[i], explosions.y[i],
+                                     explosions.maxRadius[i],
+                                     explosions.growth[i],
+                                     explosions.damage[i]);
+         copy.explosions.radius[e] = explosions.radius[i];
+      }
+
+      for (int i = 0; i < state.buildings.size(); i++) {
+         Building b = (Building) state.buildings.get(i);
+         Building c = new Building(new Vector2D(b.getTopLeft()),
+                                   new Vector2D(b.getBottomRight()));
+         c.setHealth(b.getHealth());
+         c.setRepairRate(b.getRepairRate());
+         copy.buildings.add(c);
+      }
+      copy.skyline.build(copy.buildings);
+
+      copy.playerClicks = newClickQueue();
+      return copy;
+   }
+
+   /**
+    * Returns a new click queue holding the player clicks of the fixture.
+    * @return a new click queue holding the player clicks
+    */
+   private ClickQueue newClickQueue() {
+      ClickQueue clicks = new ClickQueue(clickX.length);
+      for (int i = 0; i < clickX.length; i++) {
+         clicks.offer(clickX[i], clickY[i], 0);
+      }
+      return clicks;
+   }
+
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class benchmarks the collision primitives used by the Missile
+ * Command game logic.  Every operation is one call to the primitive, made
+ * on pairs of objects drawn at random from a pool of the given size, so
+ * larger pools also show the cost of cache misses.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class CollisionBenchmark extends Benchmark {
+
+   /** Measures {@link Explosion#intersects(Building)}. */
+   public final static int EXPLOSION_BUILDING = 0;
+
+   /** Measures {@link Explosion#intersects(Missile)}. */
+   public final static int EXPLOSION_MISSILE = 1;
+
+   /** Measures {@link Building#isInterior(Vector2D)}. */
+   public final static int BUILDING_INTERIOR = 2;
+
+   /**
+    * Measures the swept test of a growing explosion against a moving
+    * missile, {@link Explosion#intersects(int, int, int, int, int, int, int, int)}.
+    */
+   public final static int EXPLOSION_MISSILE_SWEPT = 3;
+
+   /**
+    * Measures {@link CollisionKernel#hits} with the fastest kernel
+    * available, testing every explosion against all the missiles.  An
+    * operation is one explosion tested against one missile.
+    */
+   public final static int EXPLOSION_MISSILE_KERNEL = 4;
+
+   /** Measures {@link CollisionKernel#hits} with the scalar kernel. */
+   public final static int EXPLOSION_MISSILE_SCALAR = 5;
+
+   /** The names of the primitives, indexed by primitive. */
+   private final static String[] NAMES = {
+      "Explosion.intersects(Building)", "Explosion.intersects(Missile)",
+      "Building.isInterior", "Explosion.intersects(swept)",
+      "CollisionKernel.hits", "CollisionKernel.hits(scalar)"
+   };
+
+   /** The number of calls made in every batch. */
+   private final static int CALLS_PER_BATCH = 1 << 16;
+
+   /** The primitive that is measured. */
+   private int primitive;
+
+   /** The pool of explosions. */
+   private Explosion[] explosions;
+
+   /** The pool of missiles. */
+   private Missile[] missiles;
+
+   /** The pool of buildings. */
+   private Building[] buildings;
+
+   /** The pool of points tested against buildings. */
+   private Vector2D[] points;
+
+   /** The kernel measured by the kernel benchmarks. */
+   private CollisionKernel kernel;
+
+   /** The x coordinates of the missiles, packed for the kernel. */
+   private int[] missileX;
+
+   /** The y coordinates of the missiles, packed for the kernel. */
+   private int[] missileY;
+
+   /** Receives the indices of the missiles hit by the kernel. */
+   private int[] hitIndices;
+
+   /** The pool indices of the first object of every call. */
+   private int[] first = new int[CALLS_PER_BATCH];
+
+   /** The pool indices of the second object of every call. */
+   private int[] second = new int[CALLS_PER_BATCH];
+
+   /**
+    * Creates a new benchmark of the given primitive.
+    * @param primitive the primitive to measure, for instance
+    * {@link #EXPLOSION_BUILDING}
+    */
+   public CollisionBenchmark(int primitive) {
+      super(NAMES[primitive]);
+      this.primitive = primitive;
+   }
+
+   /**
+    * Builds the pools of objects from a {@link BenchmarkFixture}, and picks
+    * the pairs of objects to test.
+    * @param entities the number of objects of every kind in the pools
+    */
+   public void setup(int entities) {
+      GameState state = new BenchmarkFixture(entities).getState();
+      explosions = new Explosion[entities];
+      missiles = new Missile[entities];
+      buildings = new Building[entities];
+      points = new Vector2D[entities];
+
+      // Explosion i is placed close to building i so that every branch of
+      // the building test gets exercised.
+      for (int i = 0; i < entities; i++) {
+         buildings[i] = (Building) state.buildings.get(i);
+         missiles[i] = new Missile
+            (new Vector2D(state.missiles.x[i], state.missiles.y[i]),
+             new Vector2D(state.missiles.dx[i], state.missiles.dy[i]));
+         points[i] = new Vector2D(state.missiles.x[i], state.missiles.y[i] / 4);
+      }
+      Random gen = new Random(BenchmarkFixture.SEED);
+      for (int i = 0; i < entities; i++) {
+         Building b = buildings[i];
+         int left = b.getTopLeft().getIComp() - Missile.MAX_EXPLOSION_SIZE;
+         int width = b.getBottomRight().getIComp() - left + Missile.MAX_EXPLOSION_SIZE;
+         Explosion e = new MissileExplosion
+            (new Vector2D(left + gen.nextInt(width), gen.nextInt(2 * GameLogic.MAX_HEIGHT)),
+             Missile.MAX_EXPLOSION_SIZE, Missile.DEFAULT_EXPLOSION_SPEED);
+         e.setCurrentRadius(gen.nextInt(Missile.MAX_EXPLOSION_SIZE));
+         explosions[i] = e;
+      }
+
+      kernel = (primitive == EXPLOSION_MISSILE_SCALAR) ? new CollisionKernel()
+                                                       : CollisionKernel.create();
+      missileX = Arrays.copyOf(state.missiles.x, entities);
+      missileY = Arrays.copyOf(state.missiles.y, entities);
+      hitIndices = new int[entities];
+
+      // Pairs used by the building tests are close to each other, pairs
+      // used by the missile test are random.
+      for (int i = 0; i < CALLS_PER_BATCH; i++) {
+         first[i] = gen.nextInt(entities);
+         second[i] = (primitive == EXPLOSION_MISSILE ||
+                      primitive == EXPLOSION_MISSILE_SWEPT) ?
+            gen.nextInt(entities) :
+            Math.min(entities - 1, Math.max(0, first[i] + gen.nextInt(3) - 1));
+      }
+   }
+
+   /** Nothing to prepare, the primitives do not modify their arguments. */
+   public void prepare() { }
+
+   /**
+    * Calls the primitive once for every pair.
+    * @return the number of operations run
+    */
+   public int measure() {
+      int hits = 0;
+      switch (primitive) {
+         case EXPLOSION_BUILDING:
+            for (int i = 0; i < CALLS_PER_BATCH; i++) {
+               if (explosions[first[i]].intersects(buildings[second[i]])) hits++;
+            }
+            break;
+         case EXPLOSION_MISSILE:
+            for (int i = 0; i < CALLS_PER_BATCH; i++) {
+               if (explosions[first[i]].intersects(missiles[second[i]])) hits++;
+            }
+            break;
+         case BUILDING_INTERIOR:
+            for (int i = 0; i < CALLS_PER_BATCH; i++) {
+               if (buildings[second[i]].isInterior(points[first[i]])) hits++;
+            }
+            break;
+         case EXPLOSION_MISSILE_SWEPT:
+            for (int i = 0; i < CALLS_PER_BATCH; i++) {
+               Explosion e = explosions[first[i]];
+               Vector2D center = e.getLocation();
+               Vector2D to = missiles[second[i]].getLocation();
+               Vector2D velocity = missiles[second[i]].getVelocity();
+               int radius = e.getCurrentRadius();
+               if (Explosion.intersects(center.getIComp(), center.getJComp(),
+                                        radius - Missile.DEFAULT_EXPLOSION_SPEED, radius,
+                                        to.getIComp() - velocity.getIComp(),
+                                        to.getJComp() - velocity.getJComp(),
+                                        to.getIComp(), to.getJComp())) hits++;
+            }
+            break;
+         case EXPLOSION_MISSILE_KERNEL:
+         case EXPLOSION_MISSILE_SCALAR:
+            // As many explosions as it takes to test about as many pairs
+            // as the other primitives do.
+            int tests = 0;
+            for (int i = 0; tests < CALLS_PER_BATCH; i++) {
+               Explosion e = explosions[first[i]];
+               Vector2D center = e.getLocation();
+               hits += kernel.hits(center.getIComp(), center.getJComp(),
+                                   e.getCurrentRadius(), missileX, missileY,
+                                   missileX.length, hitIndices);
+               tests += missileX.length;
+            }
+            sink = hits;
+            return tests;
+      }
+      sink = hits;
+      return CALLS_PER_BATCH;
+   }
+
+}
@@ -0,0 +1,286 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class runs the Missile Command micro benchmarks and prints their
+ * results as a table.  It follows the methodology of JMH: every benchmark
+ * and entity count is run in a freshly forked JVM, first for a number of
+ * warmup iterations and then for a number of measured iterations, and the
+ * average time per operation is reported together with its 99.9%
+ * confidence interval.
+ * <p>
+ * JMH itself can not be used, since it only accepts benchmarks in named
+ * packages and the game classes live in the default package.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameBenchmarks {
+
+   /** The default entity counts every benchmark is run with. */
+   public final static int[] DEFAULT_ENTITIES = { 10, 1000, 100000 };
+
+   /** The default number of warmup iterations. */
+   public final static int DEFAULT_WARMUP = 3;
+
+   /** The default number of measured iterations. */
+   public final static int DEFAULT_ITERATIONS = 5;
+
+   /** The default length of every iteration, in milliseconds. */
+   public final static int DEFAULT_TIME = 1000;
+
+   /**
+    * Student's t value for a two sided 99.9% confidence interval, indexed by
+    * the number of degrees of freedom.  Larger samples use the last value.
+    */
+   private final static double[] T_999 = {
+      Double.NaN, 636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041,
+      4.781, 4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922,
+      3.883, 3.850
+   };
+
+   /** The prefix of the line a forked JVM reports its result with. */
+   private final static String RESULT = "RESULT ";
+
+   /**
+    * Returns all the benchmarks, in the order they are run.
+    * @return all the benchmarks
+    */
+   public static Benchmark[] all() {
+      return new Benchmark[] {
+         new TickBenchmark(TickBenchmark.UPDATE_CYCLE),
+         new TickBenchmark(TickBenchmark.CREATE_MISSILES),
+         new TickBenchmark(TickBenchmark.UPDATE_MISSILES),
+         new TickBenchmark(TickBenchmark.UPDATE_PLAYER_INPUT),
+         new TickBenchmark(TickBenchmark.UPDATE_EXPLOSIONS),
+         new TickBenchmark(TickBenchmark.UPDATE_CYCLE, true),
+         new TickBenchmark(TickBenchmark.UPDATE_MISSILES, true),
+         new TickBenchmark(TickBenchmark.UPDATE_EXPLOSIONS, true),
+         new CollisionBenchmark(CollisionBenchmark.EXPLOSION_BUILDING),
+         new CollisionBenchmark(CollisionBenchmark.EXPLOSION_MISSILE),
+         new CollisionBenchmark(CollisionBenchmark.EXPLOSION_MISSILE_SWEPT),
+         new CollisionBenchmark(CollisionBenchmark.BUILDING_INTERIOR),
+         new CollisionBenchmark(CollisionBenchmark.EXPLOSION_MISSILE_KERNEL),
+         new CollisionBenchmark(CollisionBenchmark.EXPLOSION_MISSILE_SCALAR),
+         new RenderBenchmark(RenderBenchmark.JAVA2D),
+         new RenderBenchmark(RenderBenchmark.SOFTWARE),
+         new RenderBenchmark(RenderBenchmark.JAVA2D, true),
+         new RenderBenchmark(RenderBenchmark.SOFTWARE, true),
+         new SpawnBenchmark(SpawnBenchmark.WAVE),
+         new SpawnBenchmark(SpawnBenchmark.BURST)
+      };
+   }
+
+   /**
+    * Runs one benchmark for the given number of iterations.
+    * @param benchmark the benchmark to run
+    * @param entities the number of entities to set the benchmark up with
+    * @param iterations the number of iterations to run
+    * @param time the minimum length of every iteration, in milliseconds
+    * @return the average time per operation of every iteration, in nanoseconds
+    */
+   public static double[] run(Benchmark benchmark, int entities,
+                              int iterations, int time) {
+      double[] scores = new double[iterations];
+      benchmark.setup(entities);
+      for (int i = 0; i < iterations; i++) {
+         long measured = 0;
+         long operations = 0;
+         long end = System.nanoTime() + time * 1000000L;
+         do {
+            benchmark.prepare();
+            long start = System.nanoTime();
+            operations += benchmark.measure();
+            measured += System.nanoTime() - start;
+         } while (System.nanoTime() < end);
+         scores[i] = (double) measured / operations;
+      }
+      return scores;
+   }
+
+   /**
+    * Runs the benchmarks and prints the results.  The arguments are options,
+    * all of which are optional:
+    * <pre>
+    * -b &lt;text&gt;         only run the benchmarks whose name contains the text
+    * -p &lt;n,n,...&gt;      the entity counts to run with (default: 10,1000,100000)
+    * -wi &lt;n&gt;           the number of warmup iterations (default: 3)
+    * -i &lt;n&gt;            the number of measured iterations (default: 5)
+    * -t &lt;ms&gt;           the length of every iteration (default: 1000)
+    * -f &lt;0|1&gt;         fork a JVM for every run (default: 1)
+    * </pre>
+    * @param args command line arguments as described above
+    * @throws Exception if a forked JVM can not be run
+    */
+   public static void main(String[] args) throws Exception {
+      String filter = "";
+      int[] entities = DEFAULT_ENTITIES;
+      int warmup = DEFAULT_WARMUP;
+      int iterations = DEFAULT_ITERATIONS;
+      int time = DEFAULT_TIME;
+      boolean fork = true;
+      boolean child = false;
+
+      for (int i = 0; i + 1 < args.length; i += 2) {
+         String option = args[i];
+         String value = args[i + 1];
+         if (option.equals("-b")) {
+            filter = value;
+         } else if (option.equals("-p")) {
+            String[] counts = value.split(",");
+            entities = new int[counts.length];
+            for (int c = 0; c < counts.length; c++) {
+               entities[c] = Integer.parseInt(counts[c].trim());
+            }
+         } else if (option.equals("-wi")) {
+            warmup = Integer.parseInt(value);
+         } else if (option.equals("-i")) {
+            iterations = Integer.parseInt(value);
+         } else if (option.equals("-t")) {
+            time = Integer.parseInt(value);
+         } else if (option.equals("-f")) {
+            fork = Integer.parseInt(value) != 0;
+         } else if (option.equals("-child")) {
+            child = Boolean.valueOf(value).booleanValue();
+         } else {
+            System.err.println("GameBenchmarks: unknown option " + option);
+            System.exit(1);
+         }
+      }
+
+      if (!child) {
+         System.out.println(format("Benchmark", "(entities)", "Cnt", "Score", "Error", "Units"));
+      }
+      Benchmark[] benchmarks = all();
+      for (int b = 0; b < benchmarks.length; b++) {
+         // A forked JVM is given the full name of its benchmark, which may
+         // be part of the names of others.
+         String name = benchmarks[b].getName();
+         if (child ? !name.equals(filter) : name.indexOf(filter) < 0) {
+            continue;
+         }
+         for (int e = 0; e < entities.length; e++) {
+            double[] scores;
+            if (fork && !child) {
+               scores = runForked(benchmarks[b].getName(), entities[e], warmup, iterations, time);
+            } else {
+               run(benchmarks[b], entities[e], warmup, time);
+               scores = run(benchmarks[b], entities[e], iterations, time);
+            }
+            if (child) {
+               StringBuffer line = new StringBuffer(RESULT);
+               for (int s = 0; s < scores.length; s++) {
+                  line.append(scores[s]).append(' ');
+               }
+               System.out.println(line.toString().trim());
+            } else {
+               report(benchmarks[b].getName(), entities[e], scores);
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs one benchmark in a forked JVM, using the same Java installation
+    * and class path as this JVM.
+    * @param name the name of the benchmark
+    * @param entities the number of entities
+    * @param warmup the number of warmup iterations
+    * @param iterations the number of measured iterations
+    * @param time the length of every iteration, in milliseconds
+    * @return the average time per operation of every measured iteration
+    * @throws Exception if the forked JVM fails
+    */
+   private static double[] runForked(String name, int entities, int warmup,
+                                     int iterations, int time) throws Exception {
+      List command = new ArrayList();
+      command.add(System.getProperty("java.home") + File.separator + "bin" +
+                  File.separator + "java");
+      if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+         // Lets the collision kernel use the Vector API in the child too.
+         command.add("--add-modules");
+         command.add("jdk.incubator.vector");
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(GameBenchmarks.class.getName());
+      command.add("-child"); command.add("true");
+      command.add("-b"); command.add(name);
+      command.add("-p"); command.add(Integer.toString(entities));
+      command.add("-wi"); command.add(Integer.toString(warmup));
+      command.add("-i"); command.add(Integer.toString(iterations));
+      command.add("-t"); command.add(Integer.toString(time));
+
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      double[] scores = null;
+      String line;
+      while ((line = in.readLine()) != null) {
+         if (line.startsWith(RESULT)) {
+            String[] values = line.substring(RESULT.length()).split(" ");
+            scores = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+               scores[i] = Double.parseDouble(values[i]);
+            }
+         } else {
+            System.out.println(line);
+         }
+      }
+      if (process.waitFor() != 0 || scores == null) {
+         throw new Exception("forked benchmark " + name + " failed");
+      }
+      return scores;
+   }
+
+   /**
+    * Prints the mean of the given scores with their 99.9% confidence
+    * interval.
+    * @param name the name of the benchmark
+    * @param entities the number of entities
+    * @param scores the average time per operation of every iteration
+    */
+   private static void report(String name, int entities, double[] scores) {
+      double mean = 0.0;
+      for (int i = 0; i < scores.length; i++) {
+         mean += scores[i];
+      }
+      mean /= scores.length;
+
+      double error = Double.NaN;
+      if (scores.length > 1) {
+         double variance = 0.0;
+         for (int i = 0; i < scores.length; i++) {
+            variance += (scores[i] - mean) * (scores[i] - mean);
+         }
+         variance /= scores.length - 1;
+         double t = T_999[Math.min(scores.length - 1, T_999.length - 1)];
+         error = t * Math.sqrt(variance / scores.length);
+      }
+      System.out.println(format(name, Integer.toString(entities),
+                                Integer.toString(scores.length),
+                                String.format(Locale.ROOT, "%.3f", mean),
+                                String.format(Locale.ROOT, "+- %.3f", error),
+                                "ns/op"));
+   }
+
+   /**
+    * Formats one line of the result table.
+    * @param name the name of the benchmark
+    * @param entities the number of entities
+    * @param count the number of iterations
+    * @param score the average time per operation
+    * @param error the confidence interval of the score
+    * @param units the units of the score
+    * @return the formatted line
+    */
+   private static String format(String name, String entities, String count,
+                                String score, String error, String units) {
+      return String.format(Locale.ROOT, "%-32s %10s %4s %16s %14s  %s",
+                           name, entities, count, score, error, units);
+   }
+
+}
@@ -0,0 +1,153 @@
+import java.util.Random;
+
+/**
+ * This class benchmarks drawing one frame of the Missile Command game,
+ * either through Java2D or with the {@link SoftwareRasterizer}.  The frame
+ * is a snapshot with the given number of missiles spread over a display of
+ * {@link #WIDTH} by {@link #HEIGHT} pixels, one explosion for every twenty
+ * missiles and a row of buildings along the ground.
+ * <p>
+ * The wide variants spread the entities over a world {@link #WIDE_FACTOR}
+ * times as wide, with the same number of entities in every stretch of
+ * {@link #WIDTH} pixels, and draw the middle of it.  Since the display only
+ * looks at the entities in view, they should take as long as the others.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class RenderBenchmark extends Benchmark {
+
+   /** Draws the frame through Java2D. */
+   public final static int JAVA2D = 0;
+
+   /** Draws the frame with the software rasterizer. */
+   public final static int SOFTWARE = 1;
+
+   /** The names of the ways of drawing, indexed by way. */
+   private final static String[] NAMES = { "renderJava2D", "renderSoftware" };
+
+   /** The width of the display, in pixels. */
+   public final static int WIDTH = 1280;
+
+   /** The height of the display, in pixels. */
+   public final static int HEIGHT = 720;
+
+   /** How many times wider than the display the world of the wide variants is. */
+   public final static int WIDE_FACTOR = 16;
+
+   /** The number of frames drawn in every batch. */
+   private final static int FRAMES_PER_BATCH = 10;
+
+   /** The way the frame is drawn, for instance {@link #SOFTWARE}. */
+   private int way;
+
+   /** Whether the world is {@link #WIDE_FACTOR} times as wide as the display. */
+   private boolean wide;
+
+   /** The display drawn into. */
+   private GameDisplay display;
+
+   /** The snapshot drawn. */
+   private GameSnapshot snapshot;
+
+   /**
+    * Creates a new benchmark drawing frames the given way.
+    * @param way the way to draw, for instance {@link #SOFTWARE}
+    */
+   public RenderBenchmark(int way) {
+      this(way, false);
+   }
+
+   /**
+    * Creates a new benchmark drawing frames the given way.
+    * @param way the way to draw, for instance {@link #SOFTWARE}
+    * @param wide true to draw part of a world {@link #WIDE_FACTOR} times as
+    * wide as the display
+    */
+   public RenderBenchmark(int way, boolean wide) {
+      super(wide ? NAMES[way] + "Wide" : NAMES[way]);
+      this.way = way;
+      this.wide = wide;
+   }
+
+   /**
+    * Sets up the display and the snapshot.
+    * @param entities the number of missiles in every stretch of
+    * {@link #WIDTH} pixels
+    */
+   public void setup(int entities) {
+      Random random = new Random(BenchmarkFixture.SEED);
+      int worldWidth = wide ? WIDTH * WIDE_FACTOR : WIDTH;
+      snapshot = new GameSnapshot();
+      snapshot.worldWidth = worldWidth;
+      snapshot.worldHeight = HEIGHT;
+
+      int missiles = entities * (worldWidth / WIDTH);
+      snapshot.missileCount = missiles;
+      snapshot.missileX = new int[missiles];
+      snapshot.missileY = new int[missiles];
+      snapshot.missileDX = new int[missiles];
+      snapshot.missileDY = new int[missiles];
+      snapshot.missileSize = new int[missiles];
+      snapshot.missileExplosionSize = new int[missiles];
+      for (int i = 0; i < missiles; i++) {
+         snapshot.missileX[i] = random.nextInt(worldWidth);
+         snapshot.missileY[i] = random.nextInt(HEIGHT);
+         snapshot.missileDX[i] = random.nextInt(5) - 2;
+         snapshot.missileDY[i] = -1 - random.nextInt(3);
+         snapshot.missileSize[i] = Missile.DEFAULT_SIZE;
+         snapshot.missileExplosionSize[i] = Missile.MIN_EXPLOSION_SIZE +
+            random.nextInt(Missile.MAX_EXPLOSION_SIZE - Missile.MIN_EXPLOSION_SIZE + 1);
+      }
+
+      int explosions = missiles / 20;
+      snapshot.explosionCount = explosions;
+      snapshot.explosionX = new int[explosions];
+      snapshot.explosionY = new int[explosions];
+      snapshot.explosionRadius = new int[explosions];
+      snapshot.explosionMaxRadius = new int[explosions];
+      snapshot.explosionGrowth = new int[explosions];
+      for (int i = 0; i < explosions; i++) {
+         snapshot.explosionX[i] = random.nextInt(worldWidth);
+         snapshot.explosionY[i] = random.nextInt(HEIGHT);
+         snapshot.explosionMaxRadius[i] = Missile.MAX_EXPLOSION_SIZE;
+         snapshot.explosionRadius[i] = random.nextInt(Missile.MAX_EXPLOSION_SIZE + 1);
+         snapshot.explosionGrowth[i] = Missile.DEFAULT_EXPLOSION_SPEED;
+      }
+
+      int buildings = worldWidth / BenchmarkFixture.SPACE_PER_BUILDING;
+      snapshot.buildingCount = buildings;
+      snapshot.buildingLeft = new int[buildings];
+      snapshot.buildingRight = new int[buildings];
+      snapshot.buildingTop = new int[buildings];
+      snapshot.buildingBottom = new int[buildings];
+      snapshot.buildingHealth = new float[buildings];
+      for (int i = 0; i < buildings; i++) {
+         snapshot.buildingLeft[i] = i * BenchmarkFixture.SPACE_PER_BUILDING;
+         snapshot.buildingRight[i] = snapshot.buildingLeft[i] + 60;
+         snapshot.buildingTop[i] = 40 + random.nextInt(60);
+         snapshot.buildingHealth[i] = random.nextFloat();
+      }
+
+      snapshot.buildIndex();
+
+      display = new GameDisplay(WIDTH, HEIGHT, worldWidth);
+      display.setSoftwareRendering(way == SOFTWARE);
+   }
+
+   /** Nothing to prepare, the same snapshot is drawn over and over. */
+   public void prepare() { }
+
+   /**
+    * Draws a batch of frames, fading once before every frame.
+    * @return the number of frames drawn
+    */
+   public int measure() {
+      for (int i = 0; i < FRAMES_PER_BATCH; i++) {
+         display.update(snapshot, (float) i / FRAMES_PER_BATCH, 1);
+      }
+      sink = display.getWidth();
+      return FRAMES_PER_BATCH;
+   }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * This class benchmarks sending one wave of missiles with a
+ * {@link WaveSpawner} or a {@link BurstSpawner}, filled on the common pool.
+ * The number of entities is the number of missiles in the wave.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SpawnBenchmark extends Benchmark {
+
+   /** Sends waves with a {@link WaveSpawner}. */
+   public final static int WAVE = 0;
+
+   /** Sends bursts with a {@link BurstSpawner}. */
+   public final static int BURST = 1;
+
+   /** The names of the schedulers, indexed by scheduler. */
+   private final static String[] NAMES = { "spawnWave", "spawnBurst" };
+
+   /** The scheduler that is measured, for instance {@link #WAVE}. */
+   private int kind;
+
+   /** Sends the waves. */
+   private SpawnScheduler spawner;
+
+   /** The game state the waves are sent into. */
+   private GameState state;
+
+   /** The random number generator of the game. */
+   private GameRandom gen;
+
+   /**
+    * Creates a new benchmark of the given scheduler.
+    * @param kind the scheduler to measure, for instance {@link #WAVE}
+    */
+   public SpawnBenchmark(int kind) {
+      super(NAMES[kind]);
+      this.kind = kind;
+   }
+
+   /**
+    * Sets up the scheduler and a game state with room for one wave.
+    * @param entities the number of missiles in every wave
+    */
+   public void setup(int entities) {
+      spawner = (kind == WAVE) ? new WaveSpawner(1, entities)
+                               : new BurstSpawner(1, entities);
+      state = new GameState();
+      state.worldWidth = Math.max(640, entities * BenchmarkFixture.SPACE_PER_BUILDING);
+      state.worldHeight = BenchmarkFixture.WORLD_HEIGHT;
+      state.missiles.ensureCapacity(entities);
+      gen = new GameRandom(BenchmarkFixture.SEED);
+   }
+
+   /** Removes the missiles of the previous wave. */
+   public void prepare() {
+      state.missiles.clear();
+   }
+
+   /**
+    * Sends one wave.
+    * @return the number of operations run
+    */
+   public int measure() {
+      spawner.spawn(state, GameRules.DEFAULT, gen);
+      sink = state.missiles.count() + state.missiles.x[state.missiles.count() - 1];
+      return 1;
+   }
+
+}
@@ -0,0 +1,126 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class benchmarks one time step of the Missile Command game logic, or
+ * one of the phases of a time step on its own.  Every operation runs on a
+ * fresh copy of a {@link BenchmarkFixture}, so the game state does not
+ * drift as the benchmark runs.  Small fixtures are copied many times per
+ * batch, which keeps the cost of reading the timer out of the results.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class TickBenchmark extends Benchmark {
+
+   /** Runs a whole time step, {@link GameLogic#updateCycle}. */
+   public final static int UPDATE_CYCLE = 0;
+
+   /** Runs the {@link GameLogic#createMissiles} phase. */
+   public final static int CREATE_MISSILES = 1;
+
+   /** Runs the {@link GameLogic#updateMissiles} phase. */
+   public final static int UPDATE_MISSILES = 2;
+
+   /** Runs the {@link GameLogic#updatePlayerInput} phase. */
+   public final static int UPDATE_PLAYER_INPUT = 3;
+
+   /** Runs the {@link GameLogic#updateExplosions} phase. */
+   public final static int UPDATE_EXPLOSIONS = 4;
+
+   /** The names of the phases, indexed by phase. */
+   private final static String[] NAMES = {
+      "updateCycle", "createMissiles", "updateMissiles",
+      "updatePlayerInput", "updateExplosions"
+   };
+
+   /** The total number of entities to aim for in every batch. */
+   private final static int ENTITIES_PER_BATCH = 100000;
+
+   /** The largest number of game states in one batch. */
+   private final static int MAX_BATCH = 1000;
+
+   /** The phase that is measured. */
+   private int phase;
+
+   /** Whether the phase is run by a {@link ParallelGameLogic}. */
+   private boolean parallel;
+
+   /** The fixture copied for every operation. */
+   private BenchmarkFixture fixture;
+
+   /** The game logic running the measured phase. */
+   private GameLogic logic;
+
+   /** The game states of the prepared batch. */
+   private GameState[] batch;
+
+   /**
+    * Creates a new benchmark of the given phase.
+    * @param phase the phase to measure, for instance {@link #UPDATE_CYCLE}
+    */
+   public TickBenchmark(int phase) {
+      this(phase, false);
+   }
+
+   /**
+    * Creates a new benchmark of the given phase, run either by the serial
+    * {@link GameLogic} or by a {@link ParallelGameLogic} with one strip per
+    * available processor.  The names of the parallel benchmarks start with
+    * "parallel".
+    * @param phase the phase to measure, for instance {@link #UPDATE_CYCLE}
+    * @param parallel true to run the phase in parallel
+    */
+   public TickBenchmark(int phase, boolean parallel) {
+      super(parallel ? "parallel" + Character.toUpperCase(NAMES[phase].charAt(0)) +
+                       NAMES[phase].substring(1)
+                     : NAMES[phase]);
+      this.phase = phase;
+      this.parallel = parallel;
+   }
+
+   /**
+    * Sets up the fixture and the game logic.
+    * @param entities the number of missiles, explosions and buildings
+    */
+   public void setup(int entities) {
+      fixture = new BenchmarkFixture(entities);
+      if (parallel) {
+         logic = new ParallelGameLogic(BenchmarkFixture.SEED,
+                                       Runtime.getRuntime().availableProcessors(),
+                                       ForkJoinPool.commonPool());
+      } else {
+         logic = new GameLogic(BenchmarkFixture.SEED);
+      }
+      int size = Math.max(1, Math.min(MAX_BATCH, ENTITIES_PER_BATCH / Math.max(1, entities)));
+      batch = new GameState[size];
+   }
+
+   /** Makes a fresh copy of the fixture for every operation in the batch. */
+   public void prepare() {
+      for (int i = 0; i < batch.length; i++) {
+         batch[i] = fixture.copy();
+      }
+   }
+
+   /**
+    * Runs the phase once on every game state in the batch.
+    * @return the number of operations run
+    */
+   public int measure() {
+      long result = 0;
+      for (int i = 0; i < batch.length; i++) {
+         GameState state = batch[i];
+         switch (phase) {
+            case UPDATE_CYCLE:        logic.updateCycle(state); break;
+            case CREATE_MISSILES:     logic.createMissiles(state); break;
+            case UPDATE_MISSILES:     logic.updateMissiles(state); break;
+            case UPDATE_PLAYER_INPUT: logic.updatePlayerInput(state); break;
+            case UPDATE_EXPLOSIONS:   logic.updateExplosions(state); break;
+         }
+         result += state.score + state.missiles.count() + state.explosions.count();
+      }
+      sink = result;
+      return batch.length;
+   }
+
+}
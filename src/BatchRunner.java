@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class plays many headless Missile Command games in parallel, to see
+ * how changes to the {@link GameRules} play out over thousands of games
+ * instead of one.  Every set of rules of a parameter grid is played the
+ * same number of games, and game number g is played with the game seed and
+ * the click seed plus g whatever the rules are, so the rule sets are
+ * compared on the same games.
+ * <p>
+ * Every game runs single threaded on its own {@link GameLogic}; the games
+ * are shared out over the threads of a {@link ForkJoinPool}.  The outcome
+ * of every game goes straight into {@link RunningStatistics} kept by the
+ * thread that played it, and these are merged when all the games are over,
+ * so the memory used does not grow with the number of games.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class BatchRunner {
+
+   /** The default maximum number of time steps of a game. */
+   public final static long DEFAULT_MAX_TICKS = 200000;
+
+   /** The number of games a thread takes at a time. */
+   private final static int CHUNK = 4;
+
+   /** The sets of rules to play. */
+   private GameRules[] rules;
+
+   /** The number of games to play with every set of rules. */
+   private int games;
+
+   /** The width of the game world (in pixels). */
+   private int worldWidth;
+
+   /** The height of the game world (in pixels). */
+   private int worldHeight;
+
+   /** The maximum number of time steps of a game. */
+   private long maxTicks = DEFAULT_MAX_TICKS;
+
+   /** The seed of the first game. */
+   private long gameSeed;
+
+   /** The seed of the random clicks of the first game. */
+   private long clickSeed;
+
+   /** The probability of a random click per time step. */
+   private float clickRate;
+
+   /** The script to replay the clicks of, instead of clicking at random. */
+   private ScriptedClickPolicy script;
+
+   /** The number of the next game to be taken by a thread. */
+   private AtomicLong next = new AtomicLong();
+
+   /**
+    * Creates a new batch playing the given number of games with every set
+    * of rules, in a world of the given size.
+    * @param rules the sets of rules to play
+    * @param games the number of games to play with every set of rules
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    */
+   public BatchRunner(GameRules[] rules, int games, int worldWidth, int worldHeight) {
+      this.rules = rules;
+      this.games = games;
+      this.worldWidth = worldWidth;
+      this.worldHeight = worldHeight;
+   }
+
+   /**
+    * Sets the maximum number of time steps of a game.  Games still going
+    * after that many time steps are counted as survived.
+    * @param maxTicks the maximum number of time steps of a game
+    */
+   public void setMaxTicks(long maxTicks) { this.maxTicks = maxTicks; }
+
+   /**
+    * Sets the seed of the first game; game number g is seeded with this
+    * seed plus g.
+    * @param gameSeed the seed of the first game
+    */
+   public void setGameSeed(long gameSeed) { this.gameSeed = gameSeed; }
+
+   /**
+    * Makes the games click at random.  The clicks of game number g are
+    * seeded with the given seed plus g.
+    * @param clickRate the probability of a click per time step
+    * @param clickSeed the seed of the clicks of the first game
+    */
+   public void setRandomClicks(float clickRate, long clickSeed) {
+      this.clickRate = clickRate;
+      this.clickSeed = clickSeed;
+      this.script = null;
+   }
+
+   /**
+    * Makes every game replay the clicks of the given script.
+    * @param script the script to replay
+    */
+   public void setScript(ScriptedClickPolicy script) { this.script = script; }
+
+   /**
+    * Plays all the games, and returns the statistics of every set of rules.
+    * @param threads the number of threads to play the games on
+    * @return the statistics of every set of rules, in the order the rules
+    * were given in
+    * @throws InterruptedException if interrupted while waiting for the games
+    */
+   public Results[] run(int threads) throws InterruptedException {
+      Results[] total = new Results[rules.length];
+      for (int r = 0; r < rules.length; r++) {
+         total[r] = new Results();
+      }
+      next.set(0);
+
+      ArrayList workers = new ArrayList();
+      for (int t = 0; t < threads; t++) {
+         workers.add(new Callable() {
+               public Object call() { return play(); }
+            });
+      }
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+         ArrayList done = new ArrayList(pool.invokeAll(workers));
+         for (int t = 0; t < done.size(); t++) {
+            Results[] own = (Results[]) ((Future) done.get(t)).get();
+            for (int r = 0; r < rules.length; r++) {
+               total[r].merge(own[r]);
+            }
+         }
+      } catch (ExecutionException e) {
+         throw new IllegalStateException("a game failed", e.getCause());
+      } finally {
+         pool.shutdown();
+      }
+      return total;
+   }
+
+   /**
+    * Plays games until there are none left, taking a few at a time.
+    * @return the statistics of the games played, for every set of rules
+    */
+   private Results[] play() {
+      Results[] own = new Results[rules.length];
+      for (int r = 0; r < rules.length; r++) {
+         own[r] = new Results();
+      }
+      long total = (long) rules.length * games;
+      long first;
+      while ((first = next.getAndAdd(CHUNK)) < total) {
+         long last = Math.min(first + CHUNK, total);
+         for (long n = first; n < last; n++) {
+            int r = (int) (n / games);
+            playGame(rules[r], n % games, own[r]);
+         }
+      }
+      return own;
+   }
+
+   /**
+    * Plays one game and adds its outcome to the statistics.
+    * @param rules the rules to play by
+    * @param g the number of the game
+    * @param results the statistics to add the outcome to
+    */
+   private void playGame(GameRules rules, long g, Results results) {
+      GameLogic logic = new GameLogic(gameSeed + g);
+      logic.setRules(rules);
+      ClickPolicy clicks = null;
+      if (script != null) {
+         clicks = new ScriptedClickPolicy(script);
+      } else if (clickRate > 0.0F) {
+         clicks = new RandomClickPolicy(clickSeed + g, clickRate);
+      }
+      HeadlessSimulation simulation =
+         new HeadlessSimulation(logic, clicks, worldWidth, worldHeight);
+      int buildings = simulation.getState().countBuildings();
+      simulation.run(maxTicks);
+
+      GameState state = simulation.getState();
+      results.add(simulation.getTicks(), state.score,
+                  buildings - state.countBuildings(), logic.isGameOver(state));
+   }
+
+   /**
+    * Plays batches of headless games and prints the statistics of every
+    * set of rules.  The arguments are options, all of which are optional:
+    * <pre>
+    * -games &lt;n&gt;            the games to play with every set of rules (default: 1000)
+    * -threads &lt;n&gt;          the threads to play on (default: one per core)
+    * -ticks &lt;n&gt;            end games after n time steps (default: 200000)
+    * -width &lt;pixels&gt;       the width of the game world (default: 640)
+    * -height &lt;pixels&gt;      the height of the game world (default: 480)
+    * -clicks &lt;rate&gt;        click at random with the given probability per time step
+    * -script &lt;file&gt;        replay the clicks in the given script file in every game
+    * -seed &lt;n&gt;             the seed of the random clicks of the first game (default: 0)
+    * -gameseed &lt;n&gt;         the seed of the first game (default: 0)
+    * -regen &lt;list&gt;         the power regained per time step
+    * -hit &lt;list&gt;           the power spent per click
+    * -velocity &lt;list&gt;      the maximum velocity of new missiles
+    * -spawnlimit &lt;list&gt;    the spawn limit, see {@link GameRules}
+    * -maxspawned &lt;list&gt;    the largest number of missiles sent at once
+    * </pre>
+    * A list is one or more values separated by commas, and every
+    * combination of the values in the lists is played.  Rules not given
+    * keep their default values.
+    * @param args command line arguments as described above
+    * @throws Exception if the click script can not be read
+    */
+   public static void main(String[] args) throws Exception {
+      int games = 1000;
+      int threads = Runtime.getRuntime().availableProcessors();
+      long maxTicks = DEFAULT_MAX_TICKS;
+      int width = HeadlessSimulation.DEFAULT_WIDTH;
+      int height = HeadlessSimulation.DEFAULT_HEIGHT;
+      float clickRate = 0.0F;
+      String script = null;
+      long seed = 0;
+      long gameSeed = 0;
+      GameRules defaults = GameRules.DEFAULT;
+      double[] regen = { defaults.getPowerRegen() };
+      double[] hit = { defaults.getPowerHit() };
+      double[] velocity = { defaults.getMaxVelocity() };
+      double[] spawnLimit = { defaults.getSpawnLimit() };
+      double[] maxSpawned = { defaults.getMaxSpawned() };
+
+      for (int i = 0; i < args.length; i++) {
+         String option = args[i];
+         if (i + 1 == args.length) {
+            usage("missing value for " + option);
+         }
+         String value = args[++i];
+         if (option.equals("-games")) {
+            games = Integer.parseInt(value);
+         } else if (option.equals("-threads")) {
+            threads = Integer.parseInt(value);
+         } else if (option.equals("-ticks")) {
+            maxTicks = Long.parseLong(value);
+         } else if (option.equals("-width")) {
+            width = Integer.parseInt(value);
+         } else if (option.equals("-height")) {
+            height = Integer.parseInt(value);
+         } else if (option.equals("-clicks")) {
+            clickRate = Float.parseFloat(value);
+         } else if (option.equals("-script")) {
+            script = value;
+         } else if (option.equals("-seed")) {
+            seed = Long.parseLong(value);
+         } else if (option.equals("-gameseed")) {
+            gameSeed = Long.parseLong(value);
+         } else if (option.equals("-regen")) {
+            regen = parseList(value);
+         } else if (option.equals("-hit")) {
+            hit = parseList(value);
+         } else if (option.equals("-velocity")) {
+            velocity = parseList(value);
+         } else if (option.equals("-spawnlimit")) {
+            spawnLimit = parseList(value);
+         } else if (option.equals("-maxspawned")) {
+            maxSpawned = parseList(value);
+         } else {
+            usage("unknown option " + option);
+         }
+      }
+      if (games < 1 || threads < 1) {
+         usage("games and threads must be at least 1");
+      }
+
+      // Every combination of the values given, the last list varying fastest.
+      GameRules[] rules =
+         new GameRules[regen.length * hit.length * velocity.length *
+                       spawnLimit.length * maxSpawned.length];
+      int r = 0;
+      for (int a = 0; a < regen.length; a++) {
+         for (int b = 0; b < hit.length; b++) {
+            for (int c = 0; c < velocity.length; c++) {
+               for (int d = 0; d < spawnLimit.length; d++) {
+                  for (int e = 0; e < maxSpawned.length; e++) {
+                     try {
+                        rules[r++] = new GameRules((float) regen[a], (float) hit[b],
+                                                   (int) velocity[c], (int) spawnLimit[d],
+                                                   (int) maxSpawned[e]);
+                     } catch (IllegalArgumentException ex) {
+                        usage(ex.getMessage());
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      BatchRunner batch = new BatchRunner(rules, games, width, height);
+      batch.setMaxTicks(maxTicks);
+      batch.setGameSeed(gameSeed);
+      if (script != null) {
+         batch.setScript(new ScriptedClickPolicy(script));
+      } else {
+         batch.setRandomClicks(clickRate, seed);
+      }
+      long start = System.nanoTime();
+      Results[] results = batch.run(threads);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      long played = (long) rules.length * games;
+      System.out.println(played + " games on " + threads + " threads in " +
+                         format("%.1f", seconds) + " s (" +
+                         format("%.0f", played / seconds) + " games/s)");
+      System.out.println("    regen      hit  vel limit spawn survived" +
+                         "       ticks (+-se)         score (+-se)     lost (+-se)");
+      for (r = 0; r < rules.length; r++) {
+         GameRules g = rules[r];
+         Results res = results[r];
+         RunningStatistics ticks = res.getTicks();
+         RunningStatistics score = res.getScore();
+         RunningStatistics lost = res.getBuildingsLost();
+         System.out.println(format("%9.5f %8.5f %4d %5d %5d %8d %11.1f (%6.1f) %12.1f (%7.1f) %8.2f (%4.2f)",
+                                   g.getPowerRegen(), g.getPowerHit(), g.getMaxVelocity(),
+                                   g.getSpawnLimit(), g.getMaxSpawned(), res.getSurvived(),
+                                   ticks.getMean(), ticks.getStandardError(),
+                                   score.getMean(), score.getStandardError(),
+                                   lost.getMean(), lost.getStandardError()));
+      }
+   }
+
+   /**
+    * Formats numbers the same way whatever the default locale is.
+    * @param pattern the format pattern
+    * @param values the values to format
+    * @return the formatted string
+    */
+   private static String format(String pattern, Object... values) {
+      return String.format(Locale.ROOT, pattern, values);
+   }
+
+   /**
+    * Parses a list of numbers separated by commas.
+    * @param value the list to parse
+    * @return the numbers of the list
+    */
+   private static double[] parseList(String value) {
+      StringTokenizer tokens = new StringTokenizer(value, ",");
+      double[] list = new double[tokens.countTokens()];
+      if (list.length == 0) {
+         usage("empty list " + value);
+      }
+      for (int i = 0; i < list.length; i++) {
+         list[i] = Double.parseDouble(tokens.nextToken().trim());
+      }
+      return list;
+   }
+
+   /**
+    * Prints the given error and the usage of {@link #main} and exits.
+    * @param error the error to print
+    */
+   private static void usage(String error) {
+      System.err.println("BatchRunner: " + error);
+      System.err.println("usage: java BatchRunner [-games n] [-threads n] [-ticks n]" +
+                         " [-width pixels] [-height pixels] [-clicks rate | -script file]" +
+                         " [-seed n] [-gameseed n] [-regen list] [-hit list]" +
+                         " [-velocity list] [-spawnlimit list] [-maxspawned list]");
+      System.exit(1);
+   }
+
+   /**
+    * This class holds the statistics of the games played with one set of
+    * rules.
+    */
+   public static class Results {
+
+      /** The time steps every game lasted. */
+      private RunningStatistics ticks = new RunningStatistics();
+
+      /** The score of every game. */
+      private RunningStatistics score = new RunningStatistics();
+
+      /** The buildings lost in every game. */
+      private RunningStatistics buildingsLost = new RunningStatistics();
+
+      /** The number of games still going when they were ended. */
+      private long survived;
+
+      /**
+       * Adds the outcome of a game.
+       * @param ticks the time steps the game lasted
+       * @param score the score of the game
+       * @param buildingsLost the buildings lost in the game
+       * @param over true if the game was over, false if it was ended
+       */
+      void add(long ticks, long score, int buildingsLost, boolean over) {
+         this.ticks.add(ticks);
+         this.score.add(score);
+         this.buildingsLost.add(buildingsLost);
+         if (!over) {
+            survived++;
+         }
+      }
+
+      /**
+       * Adds the outcomes of the games of other statistics.
+       * @param other the statistics to merge into these
+       */
+      void merge(Results other) {
+         ticks.merge(other.ticks);
+         score.merge(other.score);
+         buildingsLost.merge(other.buildingsLost);
+         survived += other.survived;
+      }
+
+      /**
+       * Returns the statistics of the time steps the games lasted.
+       * @return the statistics of the time steps
+       */
+      public RunningStatistics getTicks() { return ticks; }
+
+      /**
+       * Returns the statistics of the scores of the games.
+       * @return the statistics of the scores
+       */
+      public RunningStatistics getScore() { return score; }
+
+      /**
+       * Returns the statistics of the buildings lost in the games.
+       * @return the statistics of the buildings lost
+       */
+      public RunningStatistics getBuildingsLost() { return buildingsLost; }
+
+      /**
+       * Returns the number of games still going when they were ended.
+       * @return the number of games survived
+       */
+      public long getSurvived() { return survived; }
+
+   }
+
+}
@@ -7,6 +7,9 @@
  */
 public class Building {
 
+   /** The repair rate of a new building. */
+   public final static float DEFAULT_REPAIR_RATE = 0.2F;
+
    /**
     * The top left coordinate of the building, from the user's perspective.
     * Missile command uses Quadrant 1 of the two-dimensional Cartesian
@@ -33,7 +36,7 @@ public class Building {
     * Describes the repair rate of the building and ranges from 0 to 1
     * inclusive. Default value is 0.2F.
     */
-   private float repairRate = 0.2F;
+   private float repairRate = DEFAULT_REPAIR_RATE;
 
    /**
     * Creates a new Building instance with everything set to their default
@@ -171,9 +174,19 @@ public class Building {
     * @return true if the given vector is interior to the building, false otherwise
     */
    public boolean isInterior(Vector2D v) {
-      return (v.getJComp() <= topLeft.getJComp()) &&
-             (topLeft.getIComp() <= v.getIComp()) &&
-             (v.getIComp() <= bottomRight.getIComp());
+      return isInterior(v.getIComp(), v.getJComp());
+   }
+
+   /**
+    * Checks if the given point is interior to the building.
+    * @param x the x coordinate of the point
+    * @param y the y coordinate of the point
+    * @return true if the given point is interior to the building, false otherwise
+    */
+   public boolean isInterior(int x, int y) {
+      return (y <= topLeft.getJComp()) &&
+             (topLeft.getIComp() <= x) &&
+             (x <= bottomRight.getIComp());
    }
 
 }
@@ -0,0 +1,74 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class sends the missiles of a Missile Command game in bursts: waves
+ * like those of a {@link WaveSpawner}, but with every missile of a burst
+ * sent from near the same point, chosen at random for every burst.  A
+ * burst therefore falls on a small part of the world at once.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class BurstSpawner extends WaveSpawner {
+
+   /** How far from the point of a burst its missiles are sent by default. */
+   public final static int DEFAULT_SPREAD = 64;
+
+   /** How far from the point of a burst its missiles are sent, in pixels. */
+   private int spread;
+
+   /** The x coordinate of the point the current burst is sent from. */
+   private int centerX;
+
+   /**
+    * Creates a new scheduler sending bursts of the given size, filled on
+    * the common pool.
+    * @param interval the number of time steps between two bursts
+    * @param burstSize the number of missiles in every burst
+    */
+   public BurstSpawner(int interval, int burstSize) {
+      this(interval, burstSize, DEFAULT_SPREAD, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Creates a new scheduler sending bursts of the given size.
+    * @param interval the number of time steps between two bursts
+    * @param burstSize the number of missiles in every burst
+    * @param spread how far from the point of a burst its missiles are sent,
+    * in pixels
+    * @param pool the pool to fill the partitions of a burst on, or null to
+    * fill them on the game thread
+    * @throws IllegalArgumentException if interval or burstSize is less than
+    * 1, or spread is negative
+    */
+   public BurstSpawner(int interval, int burstSize, int spread, ForkJoinPool pool) {
+      super(interval, burstSize, pool);
+      if (spread < 0) {
+         throw new IllegalArgumentException("the spread of a burst can not be negative");
+      }
+      this.spread = spread;
+   }
+
+   /**
+    * Chooses the point the burst is sent from.
+    * @param gen the generator of the burst
+    * @param state the current GameState
+    */
+   void startWave(SplittableRandom gen, GameState state) {
+      centerX = gen.nextInt(state.worldWidth);
+   }
+
+   /**
+    * Returns the x coordinate a missile of the current burst is sent from:
+    * within the spread of the point of the burst, and inside the world.
+    * @param gen the generator of the partition of the missile
+    * @param worldWidth the width of the game world
+    * @return the x coordinate of the new missile
+    */
+   int launchX(SplittableRandom gen, int worldWidth) {
+      int x = centerX - spread + gen.nextInt(2 * spread + 1);
+      return Math.max(0, Math.min(worldWidth - 1, x));
+   }
+
+}
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class saves a running Missile Command game to a checkpoint file and
+ * restores it, so that a game can be resumed exactly where it was after the
+ * program is stopped or crashes.  A checkpoint file holds:
+ * <pre>
+ * header: int MAGIC, int VERSION, int length
+ * rules:  float power regen, float power hit, int max velocity,
+ *         int spawn limit, int max spawned
+ * clicks: long state of the {@link ClickPolicy}, or 0 without one
+ * state:  length bytes of {@link GameStateCodec}
+ * </pre>
+ * The state includes the state of the random number generator and its own
+ * checksum, so a damaged checkpoint is never restored.  Together with the
+ * state of the click policy a game without a player is resumed exactly as
+ * it would have gone on; a game with a player is resumed where it was.  All numbers are
+ * big-endian.
+ * <p>
+ * A checkpoint is first written to a temporary file next to the checkpoint
+ * file, forced to the disk and then moved over the checkpoint file, so that
+ * a crash in the middle of writing leaves the previous checkpoint intact.
+ * The state is written into a direct buffer that is kept from one
+ * checkpoint to the next, so writing a checkpoint costs one copy of the
+ * state and one write, and can be done every second.
+ * <p>
+ * An instance must only be used by one thread at a time.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class CheckpointFile {
+
+   /** The first four bytes of a checkpoint file, "MCCP". */
+   public final static int MAGIC = 0x4D434350;
+
+   /** The version of the file format. */
+   public final static int VERSION = 2;
+
+   /** The number of time steps between two checkpoints by default (1 second). */
+   public final static int DEFAULT_INTERVAL = 25;
+
+   /** The number of bytes before the state. */
+   private final static int HEADER_SIZE = 3 * 4 + 5 * 4 + 8;
+
+   /** The checkpoint file. */
+   private Path path;
+
+   /** The temporary file a checkpoint is written to first. */
+   private Path temporary;
+
+   /** Holds a checkpoint while it is written or read. */
+   private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+   /** The time the last checkpoint took to write, in nanoseconds. */
+   private long writeNanos;
+
+   /** The state of the click policy in the last checkpoint restored. */
+   private long clickState;
+
+   /**
+    * Creates a checkpoint file with the given name.  Nothing is written
+    * until the first call to {@link #write}.
+    * @param fileName the name of the checkpoint file
+    */
+   public CheckpointFile(String fileName) {
+      path = Paths.get(fileName);
+      temporary = Paths.get(fileName + ".tmp");
+   }
+
+   /**
+    * Checks if there is a checkpoint to restore.
+    * @return true if the checkpoint file exists, false otherwise
+    */
+   public boolean exists() { return Files.exists(path); }
+
+   /**
+    * Returns the time the last checkpoint took to write, including forcing
+    * it to the disk.
+    * @return the time of the last write, in nanoseconds
+    */
+   public long getWriteNanos() { return writeNanos; }
+
+   /**
+    * Returns the state of the click policy saved in the last checkpoint
+    * restored, see {@link ClickPolicy#setState}.
+    * @return the state of the click policy, or 0 if none was saved
+    */
+   public long getClickState() { return clickState; }
+
+   /**
+    * Saves the game to the checkpoint file, replacing the previous
+    * checkpoint.
+    * @param state the state of the game
+    * @param logic the game logic running the game
+    * @throws IOException if the checkpoint can not be written; the previous
+    * checkpoint is then left as it was
+    */
+   public void write(GameState state, GameLogic logic) throws IOException {
+      write(state, logic, 0);
+   }
+
+   /**
+    * Saves the game and the state of the policy clicking in it to the
+    * checkpoint file, replacing the previous checkpoint.
+    * @param state the state of the game
+    * @param logic the game logic running the game
+    * @param clickState the state of the click policy, see
+    * {@link ClickPolicy#getState}
+    * @throws IOException if the checkpoint can not be written; the previous
+    * checkpoint is then left as it was
+    */
+   public void write(GameState state, GameLogic logic, long clickState) throws IOException {
+      long start = System.nanoTime();
+      int length = GameStateCodec.size(state);
+      if (buffer.capacity() < HEADER_SIZE + length) {
+         buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE + length,
+                                                     buffer.capacity() * 2));
+      }
+      buffer.clear();
+      GameRules rules = logic.getRules();
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(length);
+      buffer.putFloat(rules.getPowerRegen());
+      buffer.putFloat(rules.getPowerHit());
+      buffer.putInt(rules.getMaxVelocity());
+      buffer.putInt(rules.getSpawnLimit());
+      buffer.putInt(rules.getMaxSpawned());
+      buffer.putLong(clickState);
+      GameStateCodec.write(state, logic.getRandomState(), buffer);
+      buffer.flip();
+
+      FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                             StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING);
+      try {
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+         channel.force(false);
+      } finally {
+         channel.close();
+      }
+      try {
+         Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+         Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      writeNanos = System.nanoTime() - start;
+   }
+
+   /**
+    * Restores the game saved in the checkpoint file, replacing the
+    * missiles, explosions and buildings of the given state and the rules
+    * and random number generator of the given game logic.  The state of
+    * the click policy can then be read with {@link #getClickState}.
+    * @param state the state to restore the game into
+    * @param logic the game logic to run the restored game
+    * @throws IOException if there is no valid checkpoint; the state may
+    * then have been partly overwritten
+    */
+   public void restore(GameState state, GameLogic logic) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+         long size = channel.size();
+         if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException(path + ": not a checkpoint file");
+         }
+         if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect((int) size);
+         }
+         buffer.clear();
+         buffer.limit((int) size);
+         while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+               throw new IOException(path + ": truncated checkpoint");
+            }
+         }
+      } finally {
+         channel.close();
+      }
+      buffer.flip();
+
+      if (buffer.getInt() != MAGIC) {
+         throw new IOException(path + ": not a checkpoint file");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+         throw new IOException(path + ": unknown checkpoint version " + version);
+      }
+      int length = buffer.getInt();
+      if (length != buffer.remaining() - (HEADER_SIZE - 12)) {
+         throw new IOException(path + ": truncated checkpoint");
+      }
+      GameRules rules;
+      try {
+         rules = new GameRules(buffer.getFloat(), buffer.getFloat(), buffer.getInt(),
+                               buffer.getInt(), buffer.getInt());
+      } catch (IllegalArgumentException e) {
+         throw new IOException(path + ": " + e.getMessage());
+      }
+      long clicks = buffer.getLong();
+      long randomState = GameStateCodec.read(buffer, state);
+      logic.setRules(rules);
+      logic.setRandomState(randomState);
+      clickState = clicks;
+   }
+
+   /**
+    * Deletes the checkpoint, for instance when the game is over and should
+    * not be resumed.
+    * @throws IOException if the checkpoint exists but can not be deleted
+    */
+   public void delete() throws IOException {
+      Files.deleteIfExists(path);
+   }
+
+}
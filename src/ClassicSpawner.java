@@ -0,0 +1,45 @@
+/**
+ * This class sends the missiles of the original Missile Command game: a few
+ * at a time, at random, whenever there are few missiles left.  How few and
+ * how many are set by the {@link GameRules}.  It is the scheduler used by a
+ * {@link GameLogic} unless another one is set.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ClassicSpawner implements SpawnScheduler {
+
+   /** The scheduler shared by all the games that do not set another one. */
+   public final static ClassicSpawner DEFAULT = new ClassicSpawner();
+
+   /**
+    * Adds up to {@link GameRules#getMaxSpawned()} missiles if there are
+    * too few missiles currently alive.
+    * @param state the current GameState
+    * @param rules the rules the game is played by
+    * @param gen the random number generator of the game logic
+    */
+   public void spawn(GameState state, GameRules rules, GameRandom gen) {
+      int maxVel = rules.getMaxVelocity();
+      if(state.missiles.count() < gen.nextInt(rules.getSpawnLimit())) {
+         int max = gen.nextInt(rules.getMaxSpawned());
+         for (int i = 0; i <= max; i++) {
+            int x = gen.nextInt(state.worldWidth);
+            int y = state.worldHeight;
+            int dx = gen.nextInt(maxVel*2) - maxVel;
+            int dy = -2 - gen.nextInt(maxVel);
+
+            // Explosion sizes out of range leave the default size in place,
+            // just as Missile.setExplosionSize does.
+            int explosionSize = gen.nextInt(Missile.MAX_EXPLOSION_SIZE);
+            if (explosionSize > Missile.MAX_EXPLOSION_SIZE ||
+                explosionSize < Missile.MIN_EXPLOSION_SIZE) {
+               explosionSize = Missile.DEFAULT_EXPLOSION_SIZE;
+            }
+            int size = Missile.MIN_SIZE + gen.nextInt(Missile.MAX_SIZE - Missile.MIN_SIZE + 1);
+            state.missiles.add(x, y, dx, dy, size, explosionSize);
+         }
+      }
+   }
+
+}
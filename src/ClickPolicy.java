@@ -0,0 +1,34 @@
+/**
+ * This interface describes a source of player clicks for a Missile Command
+ * game that is run without a player, for instance by the
+ * {@link HeadlessSimulation}.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public interface ClickPolicy {
+
+   /**
+    * Adds the clicks made during the given time step to the unprocessed
+    * clicks of the game state.  Called once per time step, before the game
+    * logic runs the time step.
+    * @param tick the number of the time step, starting at 0
+    * @param state the current GameState
+    */
+   public void click(long tick, GameState state);
+
+   /**
+    * Returns the state of the policy, such as the state of its random
+    * number generator, so that it can be saved in a {@link CheckpointFile}.
+    * @return the state of the policy
+    */
+   public long getState();
+
+   /**
+    * Restores a state returned by {@link #getState}, so that a resumed game
+    * is clicked exactly as the game that was saved.
+    * @param state the state of the policy
+    */
+   public void setState(long state);
+
+}
@@ -0,0 +1,148 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a bounded, lock-free queue of player clicks with
+ * any number of producers (the event dispatch thread, click policies) and
+ * a single consumer (the thread running the game logic).
+ * <p>
+ * Every click is stored as a record of primitives (x, y and the time of
+ * the click) in a ring of slots, so no objects are created per click.
+ * Every slot has a sequence number telling whether it is free for the
+ * producer claiming the position, or holds a click for the consumer.  A
+ * producer claims a position with a single compare-and-set and then fills
+ * in its slot, so neither producers nor the consumer ever wait for a lock;
+ * a click offered while the queue is full is dropped.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ClickQueue {
+
+   /** The number of clicks there is room for by default. */
+   public final static int DEFAULT_CAPACITY = 256;
+
+   /** The x coordinate of the click in every slot. */
+   private final int[] xs;
+
+   /** The y coordinate of the click in every slot. */
+   private final int[] ys;
+
+   /** The time of the click in every slot, from {@link System#nanoTime()}. */
+   private final long[] times;
+
+   /**
+    * The sequence number of every slot.  Equal to the position of the slot
+    * when it is free to be written at that position, and to the position
+    * plus one when it holds a click to be read.
+    */
+   private final AtomicLongArray sequences;
+
+   /** Mask turning a position into the index of its slot. */
+   private final int mask;
+
+   /** The position the next click is written at.  Shared by the producers. */
+   private final AtomicLong tail = new AtomicLong();
+
+   /** The position the next click is read from.  Only used by the consumer. */
+   private long head;
+
+   /** Creates a new, empty queue with room for {@link #DEFAULT_CAPACITY} clicks. */
+   public ClickQueue() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Creates a new, empty queue with room for at least the given number of
+    * clicks.  The capacity is rounded up to a power of two.
+    * @param capacity the minimum number of clicks there should be room for
+    */
+   public ClickQueue(int capacity) {
+      int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+      xs = new int[size];
+      ys = new int[size];
+      times = new long[size];
+      sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+         sequences.set(i, i);
+      }
+      mask = size - 1;
+   }
+
+   /**
+    * Returns the number of clicks the queue can hold.
+    * @return the capacity of the queue
+    */
+   public int capacity() { return mask + 1; }
+
+   /**
+    * Adds a click to the queue, timestamped with the current time.  May be
+    * called by any thread.
+    * @param x the x coordinate of the click
+    * @param y the y coordinate of the click
+    * @return true if the click was added, false if the queue was full
+    */
+   public boolean offer(int x, int y) {
+      return offer(x, y, System.nanoTime());
+   }
+
+   /**
+    * Adds a click to the queue.  May be called by any thread.
+    * @param x the x coordinate of the click
+    * @param y the y coordinate of the click
+    * @param time the time of the click, from {@link System#nanoTime()}
+    * @return true if the click was added, false if the queue was full
+    */
+   public boolean offer(int x, int y, long time) {
+      while (true) {
+         long position = tail.get();
+         int slot = (int) position & mask;
+         long sequence = sequences.get(slot);
+         if (sequence == position) {
+            // The slot is free, try to claim it.
+            if (tail.compareAndSet(position, position + 1)) {
+               xs[slot] = x;
+               ys[slot] = y;
+               times[slot] = time;
+               // Hand the filled in slot over to the consumer.
+               sequences.lazySet(slot, position + 1);
+               return true;
+            }
+         } else if (sequence < position) {
+            // The slot still holds a click that has not been read.
+            return false;
+         }
+         // Another producer claimed the position first, try the next one.
+      }
+   }
+
+   /**
+    * Moves the clicks in the queue into the given arrays, in the order they
+    * were added, and frees their slots.  Clicks added while draining may be
+    * left for the next call.  Must only be called by the consumer.
+    * @param x receives the x coordinates of the clicks
+    * @param y receives the y coordinates of the clicks
+    * @param time receives the times of the clicks
+    * @return the number of clicks drained, at most the length of the arrays
+    */
+   public int drain(int[] x, int[] y, long[] time) {
+      int max = Math.min(x.length, Math.min(y.length, time.length));
+      int count = 0;
+      while (count < max) {
+         int slot = (int) head & mask;
+         if (sequences.get(slot) != head + 1) {
+            // The next slot has not been filled in (yet).
+            break;
+         }
+         x[count] = xs[slot];
+         y[count] = ys[slot];
+         time[count] = times[slot];
+         count++;
+         // Free the slot for the producer that wraps around to it.
+         sequences.lazySet(slot, head + mask + 1);
+         head++;
+      }
+      return count;
+   }
+
+}
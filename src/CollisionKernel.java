@@ -0,0 +1,138 @@
+/**
+ * This class tests an explosion against many missiles at once, with the
+ * coordinates of the missiles packed in int arrays such as the columns of
+ * a {@link MissileStore}.  A missile is hit when its distance from the
+ * center of the explosion is at most the radius of the explosion, as in
+ * {@link Explosion#intersects(Missile)}; the test compares squared
+ * distances, so no square root is taken.  The game logic tests every
+ * explosion against the missiles of the grid cells it overlaps this way,
+ * see {@link SpatialGrid#query(int, int, int, CollisionKernel)}.
+ * <p>
+ * This class is the scalar kernel, which runs everywhere.  When the JDK
+ * has the incubating Vector API (the JVM is started with
+ * "--add-modules jdk.incubator.vector") {@link #create} returns a kernel
+ * testing a whole vector of missiles at a time instead, which gives
+ * exactly the same hits.  The vector kernel is compiled from its own
+ * source directory and only loaded by name, so the rest of the game
+ * neither needs the module to compile nor to run.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class CollisionKernel {
+
+   /** The largest number of missiles tested by one call to {@link #hitMask}. */
+   public final static int MASK_WIDTH = 64;
+
+   /** The class name of the kernel using the Vector API. */
+   private final static String VECTOR_KERNEL = "VectorCollisionKernel";
+
+   /**
+    * Creates the scalar kernel.  Use {@link #create} to get the fastest
+    * kernel available.
+    */
+   public CollisionKernel() { }
+
+   /**
+    * Creates the fastest kernel available: the vector kernel if the Vector
+    * API can be used, the scalar kernel otherwise.  Run with
+    * -Dmissilecommand.vector=false to always get the scalar kernel.
+    * @return a new kernel
+    */
+   public static CollisionKernel create() {
+      if (!Boolean.parseBoolean(System.getProperty("missilecommand.vector", "true"))) {
+         return new CollisionKernel();
+      }
+      try {
+         return (CollisionKernel) Class.forName(VECTOR_KERNEL)
+            .getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException e) {
+         // The vector kernel was not compiled.
+         return new CollisionKernel();
+      } catch (LinkageError e) {
+         // The Vector API is not there at run time.
+         return new CollisionKernel();
+      }
+   }
+
+   /**
+    * Returns the name of the kernel, to tell which kernel is running.
+    * @return the name of the kernel
+    */
+   public String getName() { return "scalar"; }
+
+   /**
+    * Returns the number of missiles the kernel tests at a time.
+    * @return the number of lanes of the kernel
+    */
+   public int getLaneWidth() { return 1; }
+
+   /**
+    * Checks if the point (pointX, pointY) is at most the given radius from
+    * (x, y).  This gives the same result as comparing the square root of
+    * the squared distance with the radius as long as the radius is less
+    * than 2^26, above which the square root is no longer exact enough.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param pointX the x coordinate of the point
+    * @param pointY the y coordinate of the point
+    * @return true if the point intersects the explosion, false otherwise
+    */
+   public static boolean intersects(int x, int y, int radius, int pointX, int pointY) {
+      // Only points within the bounding box of the explosion are squared,
+      // so the sum of the squares always fits in a long.
+      long deltaX = (long) x - pointX;
+      long deltaY = (long) y - pointY;
+      return Math.abs(deltaX) <= radius && Math.abs(deltaY) <= radius &&
+             deltaX * deltaX + deltaY * deltaY <= (long) radius * radius;
+   }
+
+   /**
+    * Tests an explosion against up to {@link #MASK_WIDTH} consecutive
+    * missiles.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param xs the x coordinates of the missiles
+    * @param ys the y coordinates of the missiles
+    * @param from the index of the first missile to test
+    * @param n the number of missiles to test, at most {@link #MASK_WIDTH}
+    * @return a mask with bit k set if missile from + k is hit
+    */
+   public long hitMask(int x, int y, int radius, int[] xs, int[] ys, int from, int n) {
+      long mask = 0;
+      for (int k = 0; k < n; k++) {
+         if (intersects(x, y, radius, xs[from + k], ys[from + k])) {
+            mask |= 1L << k;
+         }
+      }
+      return mask;
+   }
+
+   /**
+    * Tests an explosion against the given number of missiles and lists the
+    * missiles that are hit.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param xs the x coordinates of the missiles
+    * @param ys the y coordinates of the missiles
+    * @param count the number of missiles to test, from index 0
+    * @param hits receives the indices of the missiles hit, in ascending
+    * order; must have room for count indices
+    * @return the number of missiles hit
+    */
+   public int hits(int x, int y, int radius, int[] xs, int[] ys, int count, int[] hits) {
+      int nrOfHits = 0;
+      for (int from = 0; from < count; from += MASK_WIDTH) {
+         long mask = hitMask(x, y, radius, xs, ys, from, Math.min(MASK_WIDTH, count - from));
+         while (mask != 0) {
+            hits[nrOfHits++] = from + Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+         }
+      }
+      return nrOfHits;
+   }
+
+}
@@ -8,12 +8,15 @@
  */
 public class DefenderExplosion extends Explosion {
 
+    /** The damage done by a defender explosion, which is none at all. */
+    public final static float DAMAGE = 0F;
+
     /**
      * Constructs a DefenderExplosion with its default values.
      */
     public DefenderExplosion() {
         super();
-        this.damage = 0F;
+        this.damage = DAMAGE;
     }
 
     /**
@@ -26,7 +29,7 @@ public class DefenderExplosion extends Explosion {
      */
     public DefenderExplosion(Vector2D location, int maxRadius, int growthSpeed) {
         super(location, maxRadius, growthSpeed);
-        this.damage = 0F;
+        this.damage = DAMAGE;
     }
 
 }
@@ -0,0 +1,798 @@
+import java.util.Arrays;
+
+/**
+ * This class runs the Missile Command game logic driven by events instead
+ * of testing every missile in every time step.  Missiles move in straight
+ * lines, buildings never move and explosions grow at a constant speed, so
+ * the time step at which a missile will leave the world, hit the ground or
+ * a building, or be touched by an explosion can be computed as soon as the
+ * missile or the explosion appears.  These predicted impacts are kept in
+ * {@link EventQueue}s, and a time step only handles the events due in it.
+ * <p>
+ * The missiles move lazily (see {@link MissileStore#startMovingLazily}):
+ * their coordinates are only computed for the missiles that have an event,
+ * and for all the missiles when the game is drawn or saved.
+ * <p>
+ * Events are never searched for and removed when they become invalid.
+ * Every missile and explosion has a handle that includes a generation
+ * number, which changes when the entity is removed, so events of removed
+ * entities are simply dropped when they come due.  A building destroyed
+ * before a missile reaches it can only make the missile hit later, so the
+ * impact is checked again when it comes due, and predicted anew if the
+ * missile missed.  An explosion can only touch a missile that starts out
+ * within its largest radius, plus the distance the missile moves while the
+ * explosion lasts, of its center.  New explosions are therefore only
+ * predicted against the missiles a {@link SpatialGrid} finds that close,
+ * and new missiles against the explosions found that close in another.
+ * A missile is certainly destroyed in the time step of the earliest touch
+ * predicted for it, so later touches are not predicted at all.  New
+ * explosions landing among so many missiles that predicting them would
+ * cost more than testing them in every time step are tested in every time
+ * step instead, through a grid like the one of {@link GameLogic}.
+ * <p>
+ * Explosions still grow and damage buildings in every time step, but the
+ * cost of the missiles is the number of events per time step instead of
+ * the number of missiles.  Everything happens in the same order as in
+ * {@link GameLogic}, so for the same seed and the same clicks a game run by
+ * this class is identical, bit for bit, to a game run by {@link GameLogic}.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class EventGameLogic extends GameLogic {
+
+   /** Marks an explosion whose touches have not been predicted yet. */
+   private final static byte NEW = 0;
+
+   /** Marks an explosion whose touches have been predicted. */
+   private final static byte PREDICTED = 1;
+
+   /**
+    * Marks an explosion whose touches are tested in every time step
+    * instead of predicted, either because it does not grow or because it
+    * is in the middle of too many missiles.
+    */
+   private final static byte POLLED = 2;
+
+   /**
+    * The new explosions of a time step are polled instead of predicted once
+    * the missiles the grid finds for them outnumber all the missiles this
+    * many times.  Predicting then costs more than rebuilding the grid in
+    * every time step and testing the explosions like {@link GameLogic}.
+    */
+   private final static int POLL_FACTOR = 1;
+
+   /** The state the events were predicted for, or null. */
+   private GameState state;
+
+   /** The time step the missiles were last moved to. */
+   private long movedTick = -1;
+
+   /** The time step the next time step must be, to use the events. */
+   private long nextTick = -1;
+
+   /** The ids of the missiles. */
+   private Ids missileIds = new Ids();
+
+   /** The ids of the explosions. */
+   private Ids explosionIds = new Ids();
+
+   /** The handles of the missiles added in the current time step. */
+   private long[] newMissiles = new long[0];
+
+   /** The number of missiles added in the current time step. */
+   private int nrOfNewMissiles;
+
+   /** The missiles leaving the world or hitting something, by missile handle. */
+   private EventQueue impacts = new EventQueue();
+
+   /** The missiles touched by explosions, by missile and explosion handle. */
+   private EventQueue touches = new EventQueue();
+
+   /** Decides the fate of the missiles with an impact due. */
+   private MissileSweep sweep = new MissileSweep();
+
+   /** The indices of the missiles with an impact due in this time step. */
+   private int[] due = new int[0];
+
+   /**
+    * The touches due in this time step, each the index of the explosion in
+    * the upper and the index of the missile in the lower half.
+    */
+   private long[] hits = new long[0];
+
+   /** Flags the missiles destroyed by explosions during a time step. */
+   private boolean[] destroyed = new boolean[0];
+
+   /**
+    * The indices of the missiles destroyed by explosions during a time
+    * step, so that only their flags have to be cleared.
+    */
+   private int[] killed = new int[0];
+
+   /**
+    * Broad phase grid over the missiles, built in the time steps with new
+    * or polled explosions.
+    */
+   private SpatialGrid missileIndex = new SpatialGrid(0, 0);
+
+   /** Broad phase grid over the explosions, built to predict new missiles. */
+   private SpatialGrid explosionIndex = new SpatialGrid(0, 0);
+
+   /**
+    * The x coordinates of the missiles at the end of the time step the
+    * missile grid was built for.
+    */
+   private int[] endX = new int[0];
+
+   /**
+    * The y coordinates of the missiles at the end of the time step the
+    * missile grid was built for.
+    */
+   private int[] endY = new int[0];
+
+   /**
+    * The largest distance any missile given an id since the events were
+    * last predicted anew moves along either axis in a time step.
+    */
+   private int maxStep;
+
+   /**
+    * Creates a new instance whose random number generator is seeded with
+    * the current time.
+    */
+   public EventGameLogic() {
+      super();
+   }
+
+   /**
+    * Creates a new instance whose random number generator is seeded with
+    * the given seed.
+    * @param seed the seed of the random number generator
+    */
+   public EventGameLogic(long seed) {
+      super(seed);
+   }
+
+   /**
+    * Moves the missiles, lazily, and handles the missiles leaving the world
+    * or hitting the ground or a building in this time step, like
+    * {@link GameLogic#updateMissiles}.
+    * @param state the current GameState
+    */
+   void updateMissiles(GameState state) {
+      MissileStore missiles = state.missiles;
+      long tick = state.tick;
+      if (state != this.state || tick != nextTick || !missiles.isMovingLazily() ||
+          missiles.count() < missileIds.count ||
+          state.explosions.count() != explosionIds.count) {
+         // Someone else has changed the game; start over from its state.
+         synchronize(state, tick - 1);
+      }
+      adoptMissiles(state, tick - 1);
+      missiles.advanceTo(tick);
+      movedTick = tick;
+
+      // Collect the missiles with an impact due, then handle them from the
+      // highest index down like the serial loop, so the store ends up in
+      // the same order.
+      int count = 0;
+      while (impacts.peekTick() <= tick) {
+         int i = missileIds.indexOf(impacts.peekFirst());
+         impacts.removeFirst();
+         if (i >= 0) {
+            if (due.length == count) {
+               due = Arrays.copyOf(due, Math.max(16, count * 2));
+            }
+            due[count++] = i;
+         }
+      }
+      Arrays.sort(due, 0, count);
+
+      Skyline skyline = getSkyline(state);
+      for (int k = count - 1; k >= 0; k--) {
+         int i = due[k];
+         int fate = sweep.step(missiles.xAt(i, tick - 1), missiles.yAt(i, tick - 1),
+                               missiles.dx[i], missiles.dy[i], state.worldWidth, skyline);
+         if (fate == MissileSweep.KEEP) {
+            // The building the missile was heading for has been destroyed.
+            scheduleImpact(state, i, tick);
+            continue;
+         }
+         missiles.x[i] = sweep.getX();
+         missiles.y[i] = sweep.getY();
+         if (fate == MissileSweep.EXPLODE) {
+            explodeMissile(state, i);
+         }
+         removeMissile(state, i);
+      }
+   }
+
+   /**
+    * Grows the explosions and handles the missiles they touch in this time
+    * step, like {@link GameLogic#updateExplosions}.
+    * @param state the current GameState
+    */
+   void updateExplosions(GameState state) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+      long tick = state.tick;
+      if (state != this.state || tick != movedTick || !missiles.isMovingLazily() ||
+          missiles.count() != missileIds.count ||
+          explosions.count() < explosionIds.count) {
+         synchronize(state, tick);
+      }
+      adoptExplosions(state);
+      boolean indexed = predictTouches(state, tick);
+
+      // Collect the touches due in this time step, sorted by explosion and
+      // then by missile.
+      int nrOfHits = 0;
+      while (touches.peekTick() <= tick) {
+         int m = missileIds.indexOf(touches.peekFirst());
+         int e = explosionIds.indexOf(touches.peekSecond());
+         touches.removeFirst();
+         if (m >= 0 && e >= 0) {
+            nrOfHits = addHit(e, m, nrOfHits);
+         }
+      }
+      Arrays.sort(hits, 0, nrOfHits);
+
+      if (destroyed.length < missiles.count()) {
+         destroyed = new boolean[missiles.capacity()];
+         killed = new int[missiles.capacity()];
+      }
+      int nrDestroyed = 0;
+
+      // The loop over the explosions of the serial version, with the
+      // missiles each predicted explosion touches read from the sorted hits
+      // instead of searched for.  The polled explosions have no hits, and
+      // search the missile grid like the serial version.
+      int h = nrOfHits;
+      for (int i = explosions.count() - 1; i >= 0; i--) {
+         int end = h;
+         while (h > 0 && (int) (hits[h - 1] >>> 32) == i) {
+            h--;
+         }
+
+         int radius = (explosions.radius[i] += explosions.growth[i]);
+         if (radius > explosions.maxRadius[i]) {
+            removeExplosion(state, i);
+            continue;
+         }
+
+         if (explosionIds.mark[explosionIds.idAt[i]] == POLLED) {
+            if (!indexed) {
+               indexMissiles(state, tick);
+               indexed = true;
+            }
+            nrDestroyed = pollExplosion(state, i, tick, nrDestroyed);
+         }
+         for (int k = h; k < end; k++) {
+            int m = (int) hits[k];
+            if (!destroyed[m]) {
+               nrDestroyed = destroyMissile(state, m, nrDestroyed);
+            }
+         }
+         damageBuildings(state, i);
+      }
+
+      // Remove the destroyed missiles from the highest index down, like the
+      // serial loop, clearing their flags for the next time step.
+      Arrays.sort(killed, 0, nrDestroyed);
+      for (int k = nrDestroyed - 1; k >= 0; k--) {
+         int m = killed[k];
+         destroyed[m] = false;
+         removeMissile(state, m);
+      }
+      nextTick = tick + 1;
+   }
+
+   /**
+    * Adds an explosion for a missile, like {@link GameLogic#explodeMissile},
+    * and gives the explosion an id at once, since the explosions may be
+    * moved around before the next time step.
+    * @param state the current GameState
+    * @param i the index of the missile
+    */
+   void explodeMissile(GameState state, int i) {
+      super.explodeMissile(state, i);
+      adoptExplosions(state);
+   }
+
+   /**
+    * Forgets all events and ids and predicts everything anew from the
+    * given state.
+    * @param state the current GameState
+    * @param tick the time step the coordinates of the missiles are for
+    */
+   private void synchronize(GameState state, long tick) {
+      this.state = state;
+      impacts.clear();
+      touches.clear();
+      missileIds.clear();
+      explosionIds.clear();
+      nrOfNewMissiles = 0;
+      maxStep = 0;
+      state.missiles.startMovingLazily(tick);
+      adoptMissiles(state, tick);
+      adoptExplosions(state);
+   }
+
+   /**
+    * Gives ids to the missiles added since the last call, and predicts
+    * their impacts.
+    * @param state the current GameState
+    * @param tick the time step the coordinates of the new missiles are for
+    */
+   private void adoptMissiles(GameState state, long tick) {
+      MissileStore missiles = state.missiles;
+      while (missileIds.count < missiles.count()) {
+         int i = missileIds.count;
+         missileIds.adopt();
+         if (newMissiles.length == nrOfNewMissiles) {
+            newMissiles = Arrays.copyOf(newMissiles, Math.max(16, nrOfNewMissiles * 2));
+         }
+         newMissiles[nrOfNewMissiles++] = missileIds.handle(i);
+         maxStep = Math.max(maxStep, step(missiles, i));
+         scheduleImpact(state, i, tick);
+      }
+   }
+
+   /**
+    * Gives ids to the explosions added since the last call.  Their touches
+    * are predicted in the next call to {@link #updateExplosions}.
+    * @param state the current GameState
+    */
+   private void adoptExplosions(GameState state) {
+      while (explosionIds.count < state.explosions.count()) {
+         explosionIds.adopt();
+      }
+   }
+
+   /**
+    * Predicts when a missile leaves the world or hits something, and adds
+    * the impact to the queue.
+    * @param state the current GameState
+    * @param i the index of the missile
+    * @param tick the time step the missile has moved to
+    */
+   private void scheduleImpact(GameState state, int i, long tick) {
+      MissileStore missiles = state.missiles;
+      long steps = sweep.stepsToImpact(missiles.xAt(i, tick), missiles.yAt(i, tick),
+                                       missiles.dx[i], missiles.dy[i],
+                                       state.worldWidth, getSkyline(state));
+      if (steps != Long.MAX_VALUE) {
+         impacts.add(tick + steps, missileIds.handle(i), 0);
+      }
+   }
+
+   /**
+    * Predicts the touches of the missiles added in this time step with the
+    * explosions already predicted, and of the new explosions with all the
+    * missiles.  Only the pairs the grids find close enough are predicted.
+    * The new explosions are polled instead if predicting them all would
+    * cost more, see {@link #POLL_FACTOR}.
+    * @param state the current GameState
+    * @param tick the current time step
+    * @return true if the missile grid was built for this time step
+    */
+   private boolean predictTouches(GameState state, long tick) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+      int nrOfExplosions = explosions.count();
+      if (nrOfNewMissiles > 0 && nrOfExplosions > 0) {
+         // Every explosion lasts at most maxLife more time steps and grows
+         // to at most maxRadius, so a missile can only touch the explosions
+         // that close to where it starts.
+         int maxRadius = 0;
+         int maxLife = 0;
+         for (int e = 0; e < nrOfExplosions; e++) {
+            if (explosionIds.mark[explosionIds.idAt[e]] == PREDICTED) {
+               maxRadius = Math.max(maxRadius, explosions.maxRadius[e]);
+               maxLife = Math.max(maxLife, life(explosions, e));
+            }
+         }
+         if (!explosionIndex.covers(state.worldWidth, state.worldHeight)) {
+            explosionIndex.resize(state.worldWidth, state.worldHeight);
+         }
+         explosionIndex.build(explosions.x, explosions.y, nrOfExplosions);
+         for (int k = 0; k < nrOfNewMissiles; k++) {
+            int m = missileIds.indexOf(newMissiles[k]);
+            if (m < 0) {
+               continue;
+            }
+            int candidates = explosionIndex.collect(missiles.xAt(m, tick - 1),
+                                                    missiles.yAt(m, tick - 1),
+                                                    maxRadius + maxLife * step(missiles, m));
+            int[] found = explosionIndex.getResults();
+            for (int c = 0; c < candidates; c++) {
+               int e = found[c];
+               if (explosionIds.mark[explosionIds.idAt[e]] == PREDICTED) {
+                  predictTouch(state, m, e, tick);
+               }
+            }
+         }
+      }
+      nrOfNewMissiles = 0;
+
+      // Weigh predicting the new explosions against polling them.
+      boolean indexed = false;
+      long candidates = 0;
+      for (int e = 0; e < nrOfExplosions; e++) {
+         if (explosionIds.mark[explosionIds.idAt[e]] != NEW) {
+            continue;
+         }
+         if (explosions.growth[e] <= 0 || explosions.radius[e] < 0) {
+            explosionIds.mark[explosionIds.idAt[e]] = POLLED;
+            continue;
+         }
+         if (!indexed) {
+            indexMissiles(state, tick);
+            indexed = true;
+         }
+         candidates += missileIndex.count(explosions.x[e], explosions.y[e], reach(explosions, e));
+      }
+      byte mark = (candidates > (long) POLL_FACTOR * missiles.count()) ? POLLED : PREDICTED;
+
+      for (int e = 0; e < nrOfExplosions; e++) {
+         int id = explosionIds.idAt[e];
+         if (explosionIds.mark[id] != NEW) {
+            continue;
+         }
+         explosionIds.mark[id] = mark;
+         if (mark == PREDICTED) {
+            int found = missileIndex.collect(explosions.x[e], explosions.y[e], reach(explosions, e));
+            int[] indices = missileIndex.getResults();
+            for (int c = 0; c < found; c++) {
+               predictTouch(state, indices[c], e, tick);
+            }
+         }
+      }
+      return indexed;
+   }
+
+   /**
+    * Returns how far from the center of a new explosion, along either
+    * axis, the missiles it can touch are at the end of the current time
+    * step.  The explosion grows to at most its largest radius, and a
+    * missile moves at most one time step back and life - 1 time steps on
+    * from there while the explosion lasts.
+    * @param explosions the explosions of the game
+    * @param e the index of the explosion
+    * @return the distance along either axis
+    */
+   private int reach(ExplosionStore explosions, int e) {
+      return explosions.maxRadius[e] + Math.max(1, life(explosions, e) - 1) * maxStep;
+   }
+
+   /**
+    * Rebuilds the missile grid from where the missiles are at the end of
+    * the current time step, like the grid of {@link GameLogic}.
+    * @param state the current GameState
+    * @param tick the current time step
+    */
+   private void indexMissiles(GameState state, long tick) {
+      MissileStore missiles = state.missiles;
+      int count = missiles.count();
+      if (endX.length < count) {
+         endX = new int[missiles.capacity()];
+         endY = new int[missiles.capacity()];
+      }
+      for (int m = 0; m < count; m++) {
+         endX[m] = missiles.xAt(m, tick);
+         endY[m] = missiles.yAt(m, tick);
+      }
+      if (!missileIndex.covers(state.worldWidth, state.worldHeight)) {
+         missileIndex.resize(state.worldWidth, state.worldHeight);
+      }
+      missileIndex.build(endX, endY, count);
+   }
+
+   /**
+    * Returns the number of time steps a growing explosion that has not
+    * grown in the current time step yet can touch missiles in, counting
+    * the current one.
+    * @param explosions the explosions of the game
+    * @param e the index of the explosion
+    * @return the number of time steps left for the explosion
+    */
+   private static int life(ExplosionStore explosions, int e) {
+      return (explosions.maxRadius[e] - explosions.radius[e]) / explosions.growth[e];
+   }
+
+   /**
+    * Returns the distance a missile moves along either axis in a time step.
+    * @param missiles the missiles of the game
+    * @param m the index of the missile
+    * @return the larger of the distances along the two axes
+    */
+   private static int step(MissileStore missiles, int m) {
+      return Math.max(Math.abs(missiles.dx[m]), Math.abs(missiles.dy[m]));
+   }
+
+   /**
+    * Predicts the first time step in which an explosion touches a missile,
+    * if any, and adds the touch to the queue.  The explosion must not have
+    * grown in the current time step yet.  Touches after the earliest touch
+    * already predicted for the missile are left out, since the missile is
+    * destroyed by then; touches in the same time step are not, as the
+    * order of the explosions decides which explodes the missile.
+    * <p>
+    * Over the whole life of the explosion, the squared distance between
+    * the missile and the center less the squared radius is a quadratic in
+    * time.  Its first root is found in floating point, and then the time
+    * steps around it are checked with the exact test of the serial game,
+    * so rounding can never change the outcome.
+    * @param state the current GameState
+    * @param m the index of the missile
+    * @param e the index of the explosion
+    * @param tick the current time step
+    */
+   private void predictTouch(GameState state, int m, int e, long tick) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+      int growth = explosions.growth[e];
+      int radius = explosions.radius[e];
+      int maxRadius = explosions.maxRadius[e];
+      if (radius + growth > maxRadius) {
+         return;
+      }
+      int id = missileIds.idAt[m];
+      long last = Math.min(tick - 1 + (maxRadius - radius) / growth, missileIds.tick[id]);
+      if (last < tick) {
+         return;
+      }
+
+      // Time s runs from 0 at the start of this time step.
+      long fx = (long) missiles.xAt(m, tick - 1) - explosions.x[e];
+      long fy = (long) missiles.yAt(m, tick - 1) - explosions.y[e];
+      long dx = missiles.dx[m];
+      long dy = missiles.dy[m];
+
+      // The missile can only touch the explosion if the box its path spans
+      // until the last time step, widened by the radius the explosion has
+      // grown to by then, holds the center.  This rules out most of the
+      // missiles the grid finds.
+      long steps = last - tick + 1;
+      long reach = radius + steps * growth;
+      if (Math.min(fx, fx + dx * steps) > reach ||
+          Math.max(fx, fx + dx * steps) < -reach ||
+          Math.min(fy, fy + dy * steps) > reach ||
+          Math.max(fy, fy + dy * steps) < -reach) {
+         return;
+      }
+
+      long a = dx * dx + dy * dy - (long) growth * growth;
+      long half = fx * dx + fy * dy - (long) radius * growth;
+      long c = fx * fx + fy * fy - (long) radius * radius;
+
+      double s;
+      if (c <= 0) {
+         s = 0.0;
+      } else if (a > 0) {
+         if (half >= 0) {
+            return;
+         }
+         double disc = (double) half * half - (double) a * c;
+         if (disc < -1e-6 * half * half) {
+            return;
+         }
+         // A missile grazing the explosion is checked at the closest point.
+         s = (disc <= 0) ? -(double) half / a : (-half - Math.sqrt(disc)) / a;
+      } else if (a == 0) {
+         if (half >= 0) {
+            return;
+         }
+         s = c / (-2.0 * half);
+      } else {
+         s = (-half - Math.sqrt((double) half * half - (double) a * c)) / a;
+      }
+      if (s > last - tick + 2) {
+         return;
+      }
+
+      long guess = tick - 1 + (long) Math.ceil(s);
+      for (long k = Math.max(tick, guess - 1); k <= Math.min(last, guess + 1); k++) {
+         int end = (int) (radius + (k - tick + 1) * growth);
+         if (Explosion.intersects(explosions.x[e], explosions.y[e], end - growth, end,
+                                  missiles.xAt(m, k - 1), missiles.yAt(m, k - 1),
+                                  missiles.xAt(m, k), missiles.yAt(m, k))) {
+            touches.add(k, missileIds.handle(m), explosionIds.handle(e));
+            missileIds.tick[id] = k;
+            return;
+         }
+      }
+   }
+
+   /**
+    * Destroys the missiles a polled explosion touches in this time step,
+    * searching the missile grid for them like
+    * {@link GameLogic#updateExplosions}.  The explosion has already grown.
+    * @param state the current GameState
+    * @param e the index of the explosion
+    * @param tick the current time step
+    * @param nrDestroyed the number of missiles destroyed so far
+    * @return the number of missiles destroyed
+    */
+   private int pollExplosion(GameState state, int e, long tick, int nrDestroyed) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+      int x = explosions.x[e];
+      int y = explosions.y[e];
+      int radius = explosions.radius[e];
+      int startRadius = radius - explosions.growth[e];
+      int candidates = missileIndex.query(x, y, reach(startRadius, radius, maxStep), KERNEL);
+      int[] found = missileIndex.getResults();
+      for (int c = 0; c < candidates; c++) {
+         int m = found[c];
+         if (!destroyed[m] &&
+             Explosion.intersects(x, y, startRadius, radius,
+                                  missiles.xAt(m, tick - 1), missiles.yAt(m, tick - 1),
+                                  endX[m], endY[m])) {
+            nrDestroyed = destroyMissile(state, m, nrDestroyed);
+         }
+      }
+      return nrDestroyed;
+   }
+
+   /**
+    * Destroys a missile touched by an explosion, adding an explosion in its
+    * place, and flags it to be removed at the end of the time step.
+    * @param state the current GameState
+    * @param m the index of the missile
+    * @param nrDestroyed the number of missiles destroyed so far
+    * @return the number of missiles destroyed
+    */
+   private int destroyMissile(GameState state, int m, int nrDestroyed) {
+      state.missiles.settle(m);
+      explodeMissile(state, m);
+      destroyed[m] = true;
+      killed[nrDestroyed] = m;
+      missileDestroyed(state, m);
+      return nrDestroyed + 1;
+   }
+
+   /**
+    * Adds a touch due in this time step to the hits.
+    * @param e the index of the explosion
+    * @param m the index of the missile
+    * @param nrOfHits the number of hits so far
+    * @return the number of hits
+    */
+   private int addHit(int e, int m, int nrOfHits) {
+      if (hits.length == nrOfHits) {
+         hits = Arrays.copyOf(hits, Math.max(16, nrOfHits * 2));
+      }
+      hits[nrOfHits] = ((long) e << 32) | m;
+      return nrOfHits + 1;
+   }
+
+   /**
+    * Removes a missile from the game and its id with it.
+    * @param state the current GameState
+    * @param i the index of the missile
+    */
+   private void removeMissile(GameState state, int i) {
+      missileIds.remove(i);
+      state.missiles.remove(i);
+   }
+
+   /**
+    * Removes an explosion from the game and its id with it.
+    * @param state the current GameState
+    * @param i the index of the explosion
+    */
+   private void removeExplosion(GameState state, int i) {
+      explosionIds.remove(i);
+      state.explosions.remove(i);
+   }
+
+   /**
+    * Gives the entities of a store ids that stay the same while the store
+    * moves them around, and handles that also change when an entity is
+    * removed, so events of removed entities can be told apart from events
+    * of entities that reuse their id.
+    */
+   private static class Ids {
+
+      /** The id of the entity at every index. */
+      int[] idAt = new int[0];
+
+      /** The index of the entity with every id. */
+      int[] indexOf = new int[0];
+
+      /** The generation of every id, changed when its entity is removed. */
+      int[] generation = new int[0];
+
+      /** A mark kept with every id, 0 when the id is given out. */
+      byte[] mark = new byte[0];
+
+      /**
+       * A time step kept with every id, Long.MAX_VALUE when the id is
+       * given out.
+       */
+      long[] tick = new long[0];
+
+      /** The ids not in use. */
+      int[] free = new int[0];
+
+      /** The number of ids not in use. */
+      int nrOfFree;
+
+      /** The number of ids ever given out. */
+      int nrOfIds;
+
+      /** The number of entities with ids, always the first ones in the store. */
+      int count;
+
+      /** Forgets all the ids. */
+      void clear() {
+         count = 0;
+         nrOfIds = 0;
+         nrOfFree = 0;
+      }
+
+      /** Gives an id to the entity at index {@link #count}. */
+      void adopt() {
+         int id;
+         if (nrOfFree > 0) {
+            id = free[--nrOfFree];
+         } else {
+            id = nrOfIds++;
+            if (id == indexOf.length) {
+               int capacity = Math.max(16, id * 2);
+               indexOf = Arrays.copyOf(indexOf, capacity);
+               generation = Arrays.copyOf(generation, capacity);
+               mark = Arrays.copyOf(mark, capacity);
+               tick = Arrays.copyOf(tick, capacity);
+               free = Arrays.copyOf(free, capacity);
+            }
+         }
+         if (count == idAt.length) {
+            idAt = Arrays.copyOf(idAt, Math.max(16, count * 2));
+         }
+         idAt[count] = id;
+         indexOf[id] = count;
+         mark[id] = 0;
+         tick[id] = Long.MAX_VALUE;
+         count++;
+      }
+
+      /**
+       * Removes the entity at the given index, moving the last entity into
+       * its place like the stores do.
+       * @param i the index of the entity
+       */
+      void remove(int i) {
+         int id = idAt[i];
+         generation[id]++;
+         free[nrOfFree++] = id;
+         int last = --count;
+         idAt[i] = idAt[last];
+         indexOf[idAt[i]] = i;
+      }
+
+      /**
+       * Returns the handle of the entity at the given index.
+       * @param i the index of the entity
+       * @return the handle of the entity
+       */
+      long handle(int i) {
+         int id = idAt[i];
+         return ((long) generation[id] << 32) | id;
+      }
+
+      /**
+       * Returns the index of the entity with the given handle.
+       * @param handle the handle of the entity
+       * @return the index of the entity, or -1 if it has been removed
+       */
+      int indexOf(long handle) {
+         int id = (int) handle;
+         return (generation[id] == (int) (handle >>> 32)) ? indexOf[id] : -1;
+      }
+
+   }
+
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * This class implements a priority queue of events, ordered by the time
+ * step they are due at.  Every event carries two longs of data for its
+ * owner to interpret.  The queue is a binary heap kept in primitive arrays,
+ * so once the arrays have grown large enough adding and removing events
+ * never allocates.  Events due at the same time step come out in no
+ * particular order.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class EventQueue {
+
+   /** The number of events there is room for when a queue is created. */
+   public final static int INITIAL_CAPACITY = 64;
+
+   /** The time step every event is due at, in heap order. */
+   private long[] ticks = new long[INITIAL_CAPACITY];
+
+   /** The first long of data of every event. */
+   private long[] first = new long[INITIAL_CAPACITY];
+
+   /** The second long of data of every event. */
+   private long[] second = new long[INITIAL_CAPACITY];
+
+   /** The number of events in the queue. */
+   private int size;
+
+   /**
+    * Returns the number of events in the queue.
+    * @return the number of events in the queue
+    */
+   public int size() { return size; }
+
+   /** Removes all the events. */
+   public void clear() { size = 0; }
+
+   /**
+    * Adds an event to the queue.
+    * @param tick the time step the event is due at
+    * @param a the first long of data of the event
+    * @param b the second long of data of the event
+    */
+   public void add(long tick, long a, long b) {
+      if (size == ticks.length) {
+         ticks = Arrays.copyOf(ticks, size * 2);
+         first = Arrays.copyOf(first, size * 2);
+         second = Arrays.copyOf(second, size * 2);
+      }
+      // Sift the new event up from the bottom of the heap.
+      int i = size++;
+      while (i > 0) {
+         int parent = (i - 1) >>> 1;
+         if (ticks[parent] <= tick) {
+            break;
+         }
+         move(parent, i);
+         i = parent;
+      }
+      ticks[i] = tick;
+      first[i] = a;
+      second[i] = b;
+   }
+
+   /**
+    * Returns the time step the earliest event is due at.
+    * @return the time step of the earliest event, or
+    * {@link Long#MAX_VALUE} if the queue is empty
+    */
+   public long peekTick() { return size == 0 ? Long.MAX_VALUE : ticks[0]; }
+
+   /**
+    * Returns the first long of data of the earliest event.
+    * @return the first long of data, undefined if the queue is empty
+    */
+   public long peekFirst() { return first[0]; }
+
+   /**
+    * Returns the second long of data of the earliest event.
+    * @return the second long of data, undefined if the queue is empty
+    */
+   public long peekSecond() { return second[0]; }
+
+   /** Removes the earliest event, if any. */
+   public void removeFirst() {
+      if (size == 0) {
+         return;
+      }
+      int last = --size;
+      long tick = ticks[last];
+      // Sift the last event down from the top of the heap.
+      int i = 0;
+      while (true) {
+         int child = 2 * i + 1;
+         if (child >= size) {
+            break;
+         }
+         if (child + 1 < size && ticks[child + 1] < ticks[child]) {
+            child++;
+         }
+         if (tick <= ticks[child]) {
+            break;
+         }
+         move(child, i);
+         i = child;
+      }
+      ticks[i] = tick;
+      first[i] = first[last];
+      second[i] = second[last];
+   }
+
+   /**
+    * Moves an event from one slot of the heap to another.
+    * @param from the slot to move from
+    * @param to the slot to move to
+    */
+   private void move(int from, int to) {
+      ticks[to] = ticks[from];
+      first[to] = first[from];
+      second[to] = second[from];
+   }
+
+}
@@ -137,7 +137,9 @@ public abstract class Explosion {
     * @return true if the missile intersects this explosion, false otherwise
     */
    public boolean intersects(Missile missile) {
-      return location.distanceTo(missile.getLocation()) <= currentRadius;
+      Vector2D m = missile.getLocation();
+      return intersects(location.getIComp(), location.getJComp(),
+                        currentRadius, m.getIComp(), m.getJComp());
    }
 
 
@@ -147,13 +149,106 @@ public abstract class Explosion {
     * @return true if the building intersects this explosion, false otherwise
     */
    public boolean intersects(Building building) {
+      return intersects(location.getIComp(), location.getJComp(),
+                        currentRadius, building);
+   }
+
+
+   /**
+    * Checks if an explosion centered at (x, y) with the given radius
+    * intersects the point (pointX, pointY), see
+    * {@link CollisionKernel#intersects}.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param pointX the x coordinate of the point
+    * @param pointY the y coordinate of the point
+    * @return true if the point intersects the explosion, false otherwise
+    */
+   public static boolean intersects(int x, int y, int radius,
+                                    int pointX, int pointY) {
+      return CollisionKernel.intersects(x, y, radius, pointX, pointY);
+   }
+
+
+   /**
+    * Checks if an explosion centered at (x, y), whose radius grows evenly
+    * from startRadius to radius during a time step, touches a point moving
+    * evenly from (fromX, fromY) to (toX, toY) during the same time step at
+    * any moment of the time step.  Unlike testing the point where it ends
+    * up, this does not let a fast missile slip past the edge of an
+    * explosion between two time steps.
+    * <p>
+    * The test is exact: the squared distance between the point and the
+    * edge of the explosion is a quadratic in time, whose minimum over the
+    * time step is compared with 0 in integer arithmetic.  It holds as long
+    * as coordinates, radii and distances stay below 2^29.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param startRadius the radius of the explosion at the start of the
+    * time step
+    * @param radius the radius of the explosion at the end of the time step
+    * @param fromX the x coordinate of the point at the start of the time step
+    * @param fromY the y coordinate of the point at the start of the time step
+    * @param toX the x coordinate of the point at the end of the time step
+    * @param toY the y coordinate of the point at the end of the time step
+    * @return true if the point touches the explosion during the time step,
+    * false otherwise
+    */
+   public static boolean intersects(int x, int y, int startRadius, int radius,
+                                    int fromX, int fromY, int toX, int toY) {
+      long r0 = Math.max(0, startRadius);
+      long r1 = Math.max(r0, radius);
+      long growth = r1 - r0;
+      long fx = (long) fromX - x;
+      long fy = (long) fromY - y;
+      long dx = (long) toX - fromX;
+      long dy = (long) toY - fromY;
+      if (Math.abs(fx) > r1 + Math.abs(dx) || Math.abs(fy) > r1 + Math.abs(dy)) {
+         return false;
+      }
+
+      // q(t) = a t^2 + 2 h t + c is the squared distance to the center
+      // minus the squared radius at time t, between 0 and 1.
+      long c = fx * fx + fy * fy - r0 * r0;
+      if (c <= 0) {
+         return true;
+      }
+      long ex = fx + dx;
+      long ey = fy + dy;
+      if (ex * ex + ey * ey <= r1 * r1) {
+         return true;
+      }
+      long a = dx * dx + dy * dy - growth * growth;
+      long h = fx * dx + fy * dy - r0 * growth;
+      // The minimum lies inside the time step at t = -h / a, where
+      // q = c - h^2 / a, so the point is touched if a c <= h^2.
+      if (a <= 0 || h >= 0 || -h >= a) {
+         return false;
+      }
+      long highAC = Math.multiplyHigh(a, c);
+      long highHH = Math.multiplyHigh(h, h);
+      return highAC < highHH ||
+             (highAC == highHH && Long.compareUnsigned(a * c, h * h) <= 0);
+   }
+
+
+   /**
+    * Checks if an explosion centered at (myX, myY) with the given radius
+    * intersects the given building.
+    * @param myX the x coordinate of the center of the explosion
+    * @param myY the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param building which to check for intersection
+    * @return true if the building intersects the explosion, false otherwise
+    */
+   public static boolean intersects(int myX, int myY, int radius,
+                                    Building building) {
       // cache all variables:
-      int left, right, top, myX, myY;
+      int left, right, top;
       left = building.getTopLeft().getIComp();
       right = building.getBottomRight().getIComp();
       top = building.getTopLeft().getJComp();
-      myX = location.getIComp();
-      myY = location.getJComp();
 
       boolean inX, inY;
       inX = ((myX < right) && (myX > left));
@@ -161,21 +256,24 @@ public abstract class Explosion {
 
       // Case 1: above top of building, to sides:
       if (!inX && !inY) { // only check 2 top corners
+         long deltaY = (long) myY - top;
+         long deltaLeft = (long) myX - left;
+         long deltaRight = (long) myX - right;
          return
-            (location.distanceTo(building.getTopLeft()) < currentRadius) ||
-            (location.distanceTo(new Vector2D(right, top)) < currentRadius);
+            (Math.sqrt((deltaLeft * deltaLeft) + (deltaY * deltaY)) < radius) ||
+            (Math.sqrt((deltaRight * deltaRight) + (deltaY * deltaY)) < radius);
       }
 
       // Case 2: directly on top of building.
       if (inX && !inY) {
-         return ((myY - top) < currentRadius);
+         return ((myY - top) < radius);
       }
 
       // Case 3: on either side of building.
       if (!inX && inY) {
          return
-            ((myX > right) && ((myX - right) < currentRadius)) ||
-            ((myX < left) && ((left - myX) < currentRadius));
+            ((myX > right) && ((myX - right) < radius)) ||
+            ((myX < left) && ((left - myX) < radius));
       }
 
       // Case 4: if none of the above then explosion must be inside.
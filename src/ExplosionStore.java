@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * This class stores all the active explosions of a Missile Command game.
+ * Like the {@link MissileStore}, every property is kept in its own primitive
+ * array and explosion number i is made up of the i:th element of every
+ * column.  Both kinds of explosions are kept in the same store; a
+ * {@link DefenderExplosion} is simply one that does no damage.
+ * <p>
+ * Explosions are removed by moving the last explosion into the freed slot.
+ * Explosions added while iterating from the last index down to the first
+ * are therefore never visited by that loop, even if they are moved into the
+ * slot of a removed explosion.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ExplosionStore {
+
+   /** The number of explosions there is room for when a store is created. */
+   public final static int INITIAL_CAPACITY = 64;
+
+   /** The x coordinate of the center of every explosion. */
+   public int[] x;
+
+   /** The y coordinate of the center of every explosion. */
+   public int[] y;
+
+   /** The current radius of every explosion, in pixels. */
+   public int[] radius;
+
+   /** The maximum radius of every explosion, in pixels. */
+   public int[] maxRadius;
+
+   /** The growth speed of every explosion, in radius pixels per time step. */
+   public int[] growth;
+
+   /** The damage of every explosion, between 0 and 1. */
+   public float[] damage;
+
+   /** The number of active explosions. */
+   private int count;
+
+   /** Creates a new, empty store. */
+   public ExplosionStore() {
+      allocate(INITIAL_CAPACITY);
+   }
+
+   /**
+    * Returns the number of active explosions.
+    * @return the number of active explosions
+    */
+   public int count() { return count; }
+
+   /**
+    * Returns the number of explosions the store can hold without growing.
+    * @return the capacity of the store
+    */
+   public int capacity() { return x.length; }
+
+   /**
+    * Adds an explosion with a current radius of 0 to the end of the store.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param maxRadius the maximum radius of the explosion
+    * @param growth the growth speed of the explosion
+    * @param damage the damage of the explosion
+    * @return the index of the new explosion
+    */
+   public int add(int x, int y, int maxRadius, int growth, float damage) {
+      if (count == this.x.length) {
+         ensureCapacity(count * 2);
+      }
+      this.x[count] = x;
+      this.y[count] = y;
+      this.radius[count] = 0;
+      this.maxRadius[count] = maxRadius;
+      this.growth[count] = growth;
+      this.damage[count] = damage;
+      return count++;
+   }
+
+   /**
+    * Removes the explosion with the given index by moving the last
+    * explosion into its place.
+    * @param i the index of the explosion to remove
+    */
+   public void remove(int i) {
+      int last = --count;
+      x[i] = x[last];
+      y[i] = y[last];
+      radius[i] = radius[last];
+      maxRadius[i] = maxRadius[last];
+      growth[i] = growth[last];
+      damage[i] = damage[last];
+   }
+
+   /** Removes all the explosions. */
+   public void clear() { count = 0; }
+
+   /**
+    * Makes sure that the store can hold at least the given number of
+    * explosions without growing.
+    * @param capacity the number of explosions to make room for
+    */
+   public void ensureCapacity(int capacity) {
+      if (capacity > x.length) {
+         x = Arrays.copyOf(x, capacity);
+         y = Arrays.copyOf(y, capacity);
+         radius = Arrays.copyOf(radius, capacity);
+         maxRadius = Arrays.copyOf(maxRadius, capacity);
+         growth = Arrays.copyOf(growth, capacity);
+         damage = Arrays.copyOf(damage, capacity);
+      }
+   }
+
+   /**
+    * Allocates empty columns with room for the given number of explosions.
+    * @param capacity the number of explosions to make room for
+    */
+   private void allocate(int capacity) {
+      x = new int[capacity];
+      y = new int[capacity];
+      radius = new int[capacity];
+      maxRadius = new int[capacity];
+      growth = new int[capacity];
+      damage = new float[capacity];
+   }
+
+}
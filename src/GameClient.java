@@ -0,0 +1,346 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This class implements a thin client of a {@link GameServer}: it receives
+ * the snapshots of the game, acknowledges them so the server can send the
+ * next one as a difference, and sends the player's clicks back.  It also
+ * measures the bytes received per snapshot and the time from sending a
+ * click to receiving the first snapshot of a time step that processed it.
+ * <p>
+ * An instance must only be used by one thread at a time.  Run on its own,
+ * the client plays headless and prints what it measured.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameClient {
+
+   /** The number of clicks whose send times are kept. */
+   private final static int CLICK_HISTORY = 1024;
+
+   /** The channel to the server. */
+   private SocketChannel channel;
+
+   /** The bytes received but not yet decoded, ready to be read. */
+   private ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+
+   /** The bytes of the message being sent. */
+   private ByteBuffer out = ByteBuffer.allocateDirect(GameServer.INPUT_BUFFER_SIZE);
+
+   /** The snapshots received so far. */
+   private SnapshotHistory history = new SnapshotHistory();
+
+   /** Writes the received snapshots whole, to compare their sizes. */
+   private ByteBuffer whole = ByteBuffer.allocate(1 << 16);
+
+   /** The id of the last click sent. */
+   private long clickId;
+
+   /** The time (as given by {@link System#nanoTime()}) every click was sent. */
+   private long[] clickNanos = new long[CLICK_HISTORY];
+
+   /** The id of the latest click the server has processed. */
+   private long echoed;
+
+   /** The time step of the first snapshot received, or -1. */
+   private long firstTick = -1;
+
+   /** The time step of the latest snapshot received, or -1. */
+   private long lastTick = -1;
+
+   /** The bytes of every snapshot message received. */
+   private RunningStatistics bytes = new RunningStatistics();
+
+   /** The bytes every snapshot received would have taken if sent whole. */
+   private RunningStatistics wholeBytes = new RunningStatistics();
+
+   /** The time from sending every click to seeing it processed, in ms. */
+   private RunningStatistics latency = new RunningStatistics();
+
+   /**
+    * Connects to a game server.
+    * @param address the address of the server
+    * @throws IOException if the server can not be reached
+    */
+   public GameClient(InetSocketAddress address) throws IOException {
+      channel = SocketChannel.open(address);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+      in.flip();
+   }
+
+   /**
+    * Waits for the next snapshot of the game and acknowledges it.
+    * @return the snapshot, which stays valid until
+    * {@link SnapshotHistory#DEFAULT_CAPACITY} more snapshots have been
+    * received, or null if the server has closed the connection
+    * @throws IOException if the connection is broken or the server sent
+    * something the client does not understand
+    */
+   public GameSnapshot receive() throws IOException {
+      if (!fill(4)) {
+         return null;
+      }
+      int length = in.getInt(in.position());
+      if (length < 1) {
+         throw new IOException("malformed message");
+      }
+      if (!fill(4 + length)) {
+         throw new EOFException("connection closed in the middle of a message");
+      }
+      in.position(in.position() + 4);
+      int end = in.position() + length;
+      if (in.get() != GameServer.SNAPSHOT) {
+         throw new IOException("unknown message");
+      }
+      long echo = SnapshotCodec.getVarLong(in);
+      GameSnapshot snapshot = SnapshotCodec.decode(in, history);
+      snapshot.tickNanos = System.nanoTime();
+      if (in.position() != end) {
+         throw new IOException("malformed message");
+      }
+
+      out.clear();
+      out.position(4);
+      out.put(GameServer.ACK);
+      SnapshotCodec.putVarLong(out, snapshot.tick);
+      send();
+
+      // Every click the server has processed since the last snapshot.
+      for (long id = Math.max(echoed + 1, clickId - CLICK_HISTORY + 1); id <= echo; id++) {
+         latency.add((snapshot.tickNanos - clickNanos[(int) (id % CLICK_HISTORY)]) / 1e6);
+      }
+      echoed = Math.max(echoed, echo);
+      if (firstTick < 0) {
+         firstTick = snapshot.tick;
+      }
+      lastTick = snapshot.tick;
+      bytes.add(4 + length);
+      if (whole.capacity() < SnapshotCodec.maxSize(snapshot)) {
+         whole = ByteBuffer.allocate(SnapshotCodec.maxSize(snapshot));
+      }
+      whole.clear();
+      SnapshotCodec.encode(null, snapshot, whole);
+      wholeBytes.add(GameServer.MESSAGE_HEADER_SIZE + 1 + whole.position());
+      return snapshot;
+   }
+
+   /**
+    * Sends a click to the server.
+    * @param v the coordinates of the click in the game world
+    * @throws IOException if the connection is broken
+    */
+   public void click(Vector2D v) throws IOException {
+      clickId++;
+      clickNanos[(int) (clickId % CLICK_HISTORY)] = System.nanoTime();
+      out.clear();
+      out.position(4);
+      out.put(GameServer.CLICK);
+      SnapshotCodec.putVarLong(out, clickId);
+      SnapshotCodec.putSigned(out, v.getIComp());
+      SnapshotCodec.putSigned(out, v.getJComp());
+      send();
+   }
+
+   /**
+    * Closes the connection to the server.
+    * @throws IOException if the connection can not be closed
+    */
+   public void close() throws IOException { channel.close(); }
+
+   /**
+    * Returns the statistics of the bytes of the snapshot messages received.
+    * @return the statistics of the bytes per snapshot
+    */
+   public RunningStatistics getBytes() { return bytes; }
+
+   /**
+    * Returns the statistics of the bytes the snapshots received would have
+    * taken if they had been sent whole.
+    * @return the statistics of the bytes per whole snapshot
+    */
+   public RunningStatistics getWholeBytes() { return wholeBytes; }
+
+   /**
+    * Returns the statistics of the time from sending a click to receiving
+    * the first snapshot of a time step that processed it.
+    * @return the statistics of the latency, in milliseconds
+    */
+   public RunningStatistics getLatency() { return latency; }
+
+   /**
+    * Returns the number of time steps from the first to the latest
+    * snapshot received, both included.
+    * @return the number of time steps covered by the snapshots
+    */
+   public long getTicks() { return (firstTick < 0) ? 0 : lastTick - firstTick + 1; }
+
+   /**
+    * Sends the message in the output buffer, filling in its length.
+    * @throws IOException if the connection is broken
+    */
+   private void send() throws IOException {
+      out.putInt(0, out.position() - 4);
+      out.flip();
+      while (out.hasRemaining()) {
+         channel.write(out);
+      }
+   }
+
+   /**
+    * Reads from the server until the input buffer holds at least the given
+    * number of bytes.
+    * @param size the number of bytes needed
+    * @return true if the bytes are there, false if the server closed the
+    * connection first
+    * @throws IOException if the connection is broken
+    */
+   private boolean fill(int size) throws IOException {
+      if (in.remaining() >= size) {
+         return true;
+      }
+      if (in.capacity() < size) {
+         ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(size, in.capacity() * 2));
+         larger.put(in);
+         in = larger;
+      } else {
+         in.compact();
+      }
+      while (in.position() < size) {
+         if (channel.read(in) < 0) {
+            in.flip();
+            return false;
+         }
+      }
+      in.flip();
+      return true;
+   }
+
+   /**
+    * Plays a game served by a {@link GameServer} without a display, clicking
+    * at random, and prints the bandwidth and latency measured.  The
+    * arguments are options, all of which are optional:
+    * <pre>
+    * -host &lt;name&gt;          the server to connect to (default: localhost)
+    * -port &lt;n&gt;             the port of the server (default: 7777)
+    * -ticks &lt;n&gt;            stop after n snapshots (default: until game over)
+    * -clicks &lt;rate&gt;        click at random with the given probability per snapshot
+    *                       (default: 0.3)
+    * -seed &lt;n&gt;             the seed of the random clicks (default: 0)
+    * -loopback &lt;n&gt;         start a server with game seed n in this process and
+    *                       connect to it over the loopback interface
+    * -tick &lt;ms&gt;            the length of a time step of that server (default: 40)
+    * </pre>
+    * @param args command line arguments as described above
+    * @throws IOException if the connection fails
+    */
+   public static void main(String[] args) throws IOException {
+      String host = "localhost";
+      int port = GameServer.DEFAULT_PORT;
+      long maxTicks = Long.MAX_VALUE;
+      float clickRate = 0.3F;
+      long seed = 0;
+      boolean loopback = false;
+      long gameSeed = 0;
+      long tickNanos = GameController.TICK_NANOS;
+
+      for (int i = 0; i < args.length; i++) {
+         String option = args[i];
+         if (i + 1 == args.length) {
+            usage("missing value for " + option);
+         }
+         String value = args[++i];
+         if (option.equals("-host")) {
+            host = value;
+         } else if (option.equals("-port")) {
+            port = Integer.parseInt(value);
+         } else if (option.equals("-ticks")) {
+            maxTicks = Long.parseLong(value);
+         } else if (option.equals("-clicks")) {
+            clickRate = Float.parseFloat(value);
+         } else if (option.equals("-seed")) {
+            seed = Long.parseLong(value);
+         } else if (option.equals("-loopback")) {
+            loopback = true;
+            gameSeed = Long.parseLong(value);
+         } else if (option.equals("-tick")) {
+            tickNanos = (long) (Double.parseDouble(value) * 1000000);
+         } else {
+            usage("unknown option " + option);
+         }
+      }
+
+      GameServer server = null;
+      InetSocketAddress address = new InetSocketAddress(host, port);
+      if (loopback) {
+         server = new GameServer(new GameLogic(gameSeed), HeadlessSimulation.DEFAULT_WIDTH,
+                                 HeadlessSimulation.DEFAULT_HEIGHT,
+                                 new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                 tickNanos);
+         new Thread(server, "MissileCommand-server").start();
+         address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+      }
+
+      GameClient client = new GameClient(address);
+      Random gen = new Random(seed);
+      long received = 0;
+      GameSnapshot snapshot;
+      while (received < maxTicks && (snapshot = client.receive()) != null) {
+         received++;
+         if (gen.nextFloat() < clickRate) {
+            client.click(new Vector2D(gen.nextInt(snapshot.worldWidth),
+                                      gen.nextInt(snapshot.worldHeight)));
+         }
+      }
+      client.close();
+      if (server != null) {
+         server.stop();
+      }
+
+      RunningStatistics bytes = client.getBytes();
+      RunningStatistics whole = client.getWholeBytes();
+      RunningStatistics latency = client.getLatency();
+      System.out.println("Snapshots:      " + bytes.getCount() + " over " +
+                         client.getTicks() + " time steps");
+      System.out.println("Bytes/snapshot: " + format("%.1f (max %.0f), %.1f if sent whole",
+                                                     bytes.getMean(), bytes.getMax(),
+                                                     whole.getMean()));
+      System.out.println("Bytes/tick:     " + format("%.1f", bytes.getMean() * bytes.getCount() /
+                                                     Math.max(1, client.getTicks())));
+      System.out.println("Clicks echoed:  " + latency.getCount());
+      if (latency.getCount() > 0) {
+         System.out.println("Latency (ms):   " + format("%.2f mean, %.2f min, %.2f max",
+                                                        latency.getMean(), latency.getMin(),
+                                                        latency.getMax()));
+      }
+   }
+
+   /**
+    * Formats numbers the same way whatever the default locale is.
+    * @param pattern the format pattern
+    * @param values the values to format
+    * @return the formatted string
+    */
+   private static String format(String pattern, Object... values) {
+      return String.format(Locale.ROOT, pattern, values);
+   }
+
+   /**
+    * Prints the given error and the usage of {@link #main} and exits.
+    * @param error the error to print
+    */
+   private static void usage(String error) {
+      System.err.println("GameClient: " + error);
+      System.err.println("usage: java GameClient [-host name] [-port n] [-ticks n]" +
+                         " [-clicks rate] [-seed n] [-loopback gameseed] [-tick ms]");
+      System.exit(1);
+   }
+
+}
@@ -1,16 +1,41 @@
+import java.awt.GraphicsConfiguration;
 import java.awt.event.*;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.*;
 
 /**
  * This class represents the GameController which runs the Missile Command game
  * and handles user input.
+ * <p>
+ * The game logic is run in its own thread with a fixed time step of
+ * {@link #TICK_NANOS}, paced by {@link System#nanoTime()}, so the speed of
+ * the game does not depend on how long the time steps or the rendering take.
+ * After every time step a snapshot of the game is published through a
+ * {@link SnapshotBuffer}.  A second thread draws the latest snapshot at the
+ * refresh rate of the screen, interpolating the positions of the missiles
+ * and explosions between the last two time steps.  The two threads never
+ * wait for each other and only share the published snapshots.
  *
  * @author Tobias Salem, alias Vassago
  * @version 1.0
  */
 public class GameController extends MouseAdapter implements Runnable {
 
-   /** The state of the current game. */
+   /** The length of one time step, in nanoseconds (25 time steps per second). */
+   public final static long TICK_NANOS = 40000000L;
+
+   /**
+    * The maximum number of time steps run to catch up in one go.  If the
+    * game falls further behind than this, for instance when the machine is
+    * suspended, the rest of the time is dropped.
+    */
+   public final static int MAX_STEPS_PER_FRAME = 5;
+
+   /** The frame rate used when the refresh rate of the screen is unknown. */
+   public final static int DEFAULT_FRAME_RATE = 60;
+
+   /** The state of the current game.  Only used by the game thread. */
    private GameState state;
 
    /** The display that shows the current game to the user. */
@@ -22,6 +47,24 @@ public class GameController extends MouseAdapter implements Runnable {
    /** The logic engine used to run the game. */
    private GameLogic logic;
 
+   /** The file the game is saved to every second, or null. */
+   private CheckpointFile checkpoint;
+
+   /** The number of chunks of buildings kept resident, or 0 to keep all. */
+   private int maxChunks;
+
+   /** Passes the events of the game on to the scoreboard. */
+   private GameEventBus events;
+
+   /** Hands snapshots of the game from the game thread to the render thread. */
+   private SnapshotBuffer snapshots;
+
+   /** Cleared by the game thread when the game is over. */
+   private volatile boolean running;
+
+   /** The time between two frames, in nanoseconds. */
+   private long frameNanos;
+
    /**
     * Constructs a new GameController using the specified components
     * @param display the display to use
@@ -36,49 +79,207 @@ public class GameController extends MouseAdapter implements Runnable {
       display.addMouseListener(this);
    }
 
-   /** Starts a new game. **/
+   /**
+    * Sets the file the game is saved to every
+    * {@link CheckpointFile#DEFAULT_INTERVAL} time steps.  If the file holds
+    * a checkpoint when the game is started, that game is resumed instead.
+    * Must be called before {@link #startGame()}.
+    * @param checkpoint the file to save the game to, or null
+    */
+   public void setCheckpoint(CheckpointFile checkpoint) { this.checkpoint = checkpoint; }
+
+   /**
+    * Makes the games stream their buildings in {@link WorldChunks}, keeping
+    * the given number of chunks resident when nothing needs more.  Must be
+    * called before {@link #startGame()}.
+    * @param maxChunks the number of chunks to keep resident, or 0 to keep
+    * all the buildings live
+    */
+   public void setChunks(int maxChunks) { this.maxChunks = maxChunks; }
+
+   /** Starts a new game, or resumes the game saved in the checkpoint. **/
    public void startGame() {
-      state = new GameState();
-      state.worldWidth = display.getWidth();
-      state.worldHeight = display.getHeight();
-      logic.initializeGameState(state);
+      newState();
+      if (checkpoint != null && checkpoint.exists()) {
+         GameRules rules = logic.getRules();
+         try {
+            checkpoint.restore(state, logic);
+            if (state.worldWidth != display.getWorldWidth() ||
+                state.worldHeight != display.getHeight()) {
+               // The display and the skyline are sized for the new world.
+               System.err.println("The saved game could not be resumed: it is " +
+                                  state.worldWidth + "x" + state.worldHeight +
+                                  " pixels, the display " + display.getWorldWidth() +
+                                  "x" + display.getHeight());
+               logic.setRules(rules);
+               newState();
+            }
+         } catch (IOException e) {
+            System.err.println("The saved game could not be resumed: " + e.getMessage());
+            newState();
+         }
+      }
+      // Only now is it known which game is played.
+      logic.startRecording(state);
+      frameNanos = 1000000000L / getFrameRate();
+
+      events = new GameEventBus();
+      events.subscribe(scoreboard);
+      logic.setEventBus(events);
 
-      Thread gameThread = new Thread(this);
+      snapshots = new SnapshotBuffer();
+      snapshots.getBack().copyFrom(state, System.nanoTime());
+      snapshots.publish();
+      running = true;
+
+      Thread gameThread = new Thread(this, "MissileCommand-logic");
       gameThread.start();
+      Thread renderThread = new Thread(new Runnable() {
+         public void run() {
+            render();
+         }
+      }, "MissileCommand-render");
+      renderThread.start();
    }
 
    /** Runs the game. **/
    public void run() {
+      long nextTick = System.nanoTime() + TICK_NANOS;
+
       while (logic.isGameOver(state) == false) {
-         synchronized (state.playerClicks) {
+         long now = System.nanoTime();
+
+         // Run every time step that is due.
+         int steps = 0;
+         while (now - nextTick >= 0 && steps < MAX_STEPS_PER_FRAME) {
             logic.updateCycle(state);
+            nextTick += TICK_NANOS;
+            steps++;
+            if (checkpoint != null && state.tick % CheckpointFile.DEFAULT_INTERVAL == 0) {
+               saveCheckpoint();
+            }
+         }
+         if (now - nextTick >= 0) {
+            nextTick = now + TICK_NANOS;
          }
-         display.update(state);
 
-         // Must modify the scoreboard from within the even handling thread.
-         SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-               scoreboard.updateScoreboard(state);
-            }
-         } );
+         if (steps > 0) {
+            snapshots.getBack().copyFrom(state, nextTick - TICK_NANOS);
+            snapshots.publish();
+         }
 
-         // Force a repaint and introduce a slight delay (to get ~25 FPS).
-         display.repaint(10);
-         try { Thread.sleep(40); } catch (Exception e) { /* Ignored. */ }
+         long wait = nextTick - System.nanoTime();
+         if (wait > 0) {
+            LockSupport.parkNanos(wait);
+         }
+      }
+      running = false;
+      events.close();
+
+      if (checkpoint != null) {
+         // A game that is over is not resumed.
+         try {
+            checkpoint.delete();
+         } catch (IOException e) {
+            System.err.println("The saved game could not be deleted: " + e.getMessage());
+         }
+      }
+
+      ReplayWriter recorder = logic.getRecorder();
+      if (recorder != null) {
+         try {
+            recorder.close();
+         } catch (IOException e) {
+            System.err.println("The game could not be recorded: " + e.getMessage());
+         }
+      }
+   }
+
+   /** Creates the state of a new game as big as the world of the display. */
+   private void newState() {
+      state = new GameState();
+      state.worldWidth = display.getWorldWidth();
+      state.worldHeight = display.getHeight();
+      if (maxChunks > 0) {
+         state.chunks = new WorldChunks(WorldChunks.DEFAULT_CHUNK_WIDTH, maxChunks);
+      }
+      logic.initializeGameState(state);
+   }
+
+   /** Saves the game to the checkpoint file, or stops saving it on errors. */
+   private void saveCheckpoint() {
+      try {
+         checkpoint.write(state, logic);
+      } catch (IOException e) {
+         System.err.println("The game could not be saved: " + e.getMessage());
+         checkpoint = null;
       }
    }
 
    /**
-    * Registers a click whenever a mouse button is pushed down.
+    * Draws the latest snapshot of the game once for every refresh of the
+    * screen, until the game is over.  Runs in its own thread.
+    */
+   private void render() {
+      long nextFrame = System.nanoTime();
+      long lastTick = snapshots.acquire().tick;
+
+      while (true) {
+         // Checked before acquiring, so the final snapshot gets drawn.
+         boolean gameOver = !running;
+         GameSnapshot snapshot = snapshots.acquire();
+
+         // Draw the snapshot as it was a fraction of a time step after the
+         // previous time step, and fade once for every new time step.
+         float alpha = (float) (System.nanoTime() - snapshot.tickNanos) / TICK_NANOS;
+         alpha = alpha < 0.0F ? 0.0F : (alpha > 1.0F ? 1.0F : alpha);
+         int fades = (int) Math.min(snapshot.tick - lastTick, MAX_STEPS_PER_FRAME);
+         lastTick = snapshot.tick;
+
+         // The display repaints the region it changed by itself.
+         display.update(snapshot, gameOver ? 1.0F : alpha, fades);
+         if (gameOver) {
+            break;
+         }
+
+         // Wait for the next frame.  If the frame is already late, the
+         // schedule starts over from now rather than rushing to catch up.
+         nextFrame += frameNanos;
+         long wait = nextFrame - System.nanoTime();
+         if (wait > 0) {
+            LockSupport.parkNanos(wait);
+         } else {
+            nextFrame = System.nanoTime();
+         }
+      }
+   }
+
+   /**
+    * Registers a click whenever a mouse button is pushed down.  The click
+    * is queued without waiting for the time step that may be running, at
+    * the point of the world under the display as it was last drawn.
     * @param e mouse event generated by the user
     */
    public void mousePressed(MouseEvent e) {
       if(state != null) {
-         synchronized (state.playerClicks) {
-            state.playerClicks.add
-               (new Vector2D(e.getX(), display.getHeight() - e.getY()));
+         state.playerClicks.offer(display.getViewX() + e.getX(), display.getHeight() - e.getY());
+      }
+   }
+
+   /**
+    * Returns the refresh rate of the screen the display is shown on, or
+    * {@link #DEFAULT_FRAME_RATE} if it is not known.
+    * @return the number of frames to draw per second
+    */
+   private int getFrameRate() {
+      GraphicsConfiguration config = display.getGraphicsConfiguration();
+      if (config != null) {
+         int rate = config.getDevice().getDisplayMode().getRefreshRate();
+         if (rate > 0) {
+            return rate;
          }
       }
+      return DEFAULT_FRAME_RATE;
    }
 
 }
@@ -1,12 +1,34 @@
 import java.awt.*;
+import java.awt.event.*;
 import java.awt.image.*;
-import java.util.*;
+import java.util.Arrays;
 import javax.swing.*;
 
 /**
  * This class implements the main display area for the Missile Command game.
  * The display is stateless in that it does not keep track of the game state.
- * Thus, the state must be passed to the display in order to update its display.
+ * Thus, a snapshot of the state must be passed to the display in order to
+ * update its display.
+ * <p>
+ * Only the parts of the display where something happens are redrawn.  The
+ * display is divided into square tiles, and every tile that a missile or
+ * an explosion is drawn into becomes active for {@link #FADE_STEPS} time
+ * steps.  Only active tiles are faded, which keeps the streaks behind the
+ * missiles, and a tile is cleared to black once it has faded out.
+ * Buildings are only redrawn inside active tiles, or when their color
+ * changes.  Every update repaints just the bounding box of what changed.
+ * <p>
+ * The game world may be wider than the display, in which case the display
+ * shows the part of the world under a camera that is panned with the arrow
+ * keys (Home and End go to either end).  Only the buildings, missiles and
+ * explosions near the camera are looked at, through the index kept in every
+ * {@link GameSnapshot}, so drawing takes as long however wide the world is.
+ * Panning shifts what has been drawn along, so the streaks are kept.
+ * <p>
+ * Alternatively the display can be drawn by a {@link SoftwareRasterizer},
+ * which writes straight into the pixels of the buffer on several cores and
+ * copes better with many thousands of entities.  The two ways of drawing
+ * can be switched between at any time, also by pressing F2.
  * 
  * @author Tobias Salem, alias Vassago
  * @version 1.0
@@ -19,34 +41,205 @@ public class GameDisplay extends JComponent {
     */
    public final static int FADE_RATE = 1<<5;
 
+   /** The color the display is faded with. */
+   private final static Color FADE_COLOR = new Color(0, 0, 0, FADE_RATE);
+
+   /** The width and height of every tile, in pixels. */
+   public final static int TILE_SIZE = 32;
+
+   /**
+    * The number of fades it takes for the brightest color to become too
+    * dark to see, after which a tile is cleared to black.  Fading alone
+    * never quite gets there, since the blending rounds to the nearest
+    * color value.
+    */
+   public final static int FADE_STEPS = fadeSteps(4);
+
    /** The width of the display (in pixels). */
    private int width;
 
    /** The height of the display (in pixels). */
    private int height;
 
+   /** The width of the game world shown (in pixels). */
+   private int worldWidth;
+
+   /**
+    * The x coordinate in the world of the left side of the display, as
+    * asked for by the user.  Written by the event dispatch thread.
+    */
+   private volatile int cameraX;
+
+   /**
+    * The x coordinate in the world of the left side of the display, as
+    * drawn by the latest update.
+    */
+   private volatile int viewX;
+
    /**
     * The display's image is first drawn to this buffer, in effect giving us
-    * double buffering and reducing flicker. Should never be null.
+    * double buffering and reducing flicker. Should never be null.  The
+    * thread updating the display holds the buffer's lock while it draws,
+    * and the event dispatch thread while it copies the buffer to the screen,
+    * so a half drawn frame is never shown.
     */
    private BufferedImage buffer;
 
+   /**
+    * The Graphics object drawing into the buffer.  Created once and only
+    * used by the thread updating the display.
+    */
+   private Graphics bufferGraphics;
+
+   /**
+    * The missiles and explosions, rasterized once and drawn as images.
+    * Sprites are keyed by diameter and color, so the cache has room for a
+    * missile of every size the game sends in every missile color, and for
+    * an explosion of every radius up to the largest in every explosion
+    * color.  A busy game therefore does not keep making sprites.
+    */
+   private SpriteCache sprites = new SpriteCache
+      ((Missile.MAX_SIZE - Missile.MIN_SIZE + 1) * Palette.MISSILE_COLORS +
+       Missile.MAX_EXPLOSION_SIZE * Palette.EXPLOSION_LEVELS);
+
+   /**
+    * Draws the display when software rendering is on, or null if the
+    * display has always been drawn through Java2D.  Only used by the thread
+    * updating the display.
+    */
+   private SoftwareRasterizer rasterizer;
+
+   /** Whether the display should be drawn by the software rasterizer. */
+   private volatile boolean softwareRendering;
+
+   /** Whether the previous update was drawn by the software rasterizer. */
+   private boolean renderedBySoftware;
+
+   /** The number of tile columns. */
+   private int tileColumns;
+
+   /** The number of tile rows. */
+   private int tileRows;
+
+   /**
+    * The number of fades left before every tile is cleared.  Zero for a
+    * tile that is inactive, and holds nothing but buildings.
+    */
+   private int[] tileAge;
+
+   /** Flags the tiles that were active at the start of the current update. */
+   private boolean[] tileActive;
+
+   /** The number of buildings drawn by the previous update. */
+   private int drawnCount;
+
+   /** The left side of every building drawn by the previous update. */
+   private int[] drawnLeft = new int[0];
+
+   /** The right side of every building drawn by the previous update. */
+   private int[] drawnRight = new int[0];
+
+   /** The top of every building drawn by the previous update. */
+   private int[] drawnTop = new int[0];
+
+   /** The bottom of every building drawn by the previous update. */
+   private int[] drawnBottom = new int[0];
+
+   /** The color of every building drawn by the previous update. */
+   private Color[] drawnColor = new Color[0];
+
+   /** The left side of the region changed by the current update. */
+   private int dirtyLeft;
+
+   /** The top of the region changed by the current update. */
+   private int dirtyTop;
+
+   /** The right side of the region changed by the current update. */
+   private int dirtyRight;
+
+   /** The bottom of the region changed by the current update. */
+   private int dirtyBottom;
+
    /**
     * Creates a new instance of GameDisplay with the given width and height
     * @param width the width (in pixels) of the GameDisplay
     * @param height the height (in pixels) of the GameDisplay
     */
    public GameDisplay(int width, int height) {
+      this(width, height, width);
+   }
+
+   /**
+    * Creates a new instance of GameDisplay showing part of a wider world.
+    * The camera starts out over the middle of the world.
+    * @param width the width (in pixels) of the GameDisplay
+    * @param height the height (in pixels) of the GameDisplay and of the world
+    * @param worldWidth the width (in pixels) of the world, at least the
+    * width of the display
+    */
+   public GameDisplay(int width, int height, int worldWidth) {
+      if (worldWidth < width) {
+         throw new IllegalArgumentException("the world is narrower than the display");
+      }
       this.width = width;
       this.height = height;
+      this.worldWidth = worldWidth;
+      cameraX = (worldWidth - width) / 2;
+      viewX = cameraX;
       setPreferredSize(new Dimension(width, height));
       setOpaque(true);
       setDoubleBuffered(false);
 
       buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-      Graphics g = buffer.getGraphics();
-      g.setColor(Color.BLACK);
-      g.fillRect(0, 0, width, height);
+      bufferGraphics = buffer.getGraphics();
+      bufferGraphics.setColor(Color.BLACK);
+      bufferGraphics.fillRect(0, 0, width, height);
+
+      tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+      tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+      tileAge = new int[tileColumns * tileRows];
+      tileActive = new boolean[tileColumns * tileRows];
+
+      getInputMap(WHEN_IN_FOCUSED_WINDOW).put
+         (KeyStroke.getKeyStroke(KeyEvent.VK_F2, 0), "toggleRendering");
+      getActionMap().put("toggleRendering", new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            setSoftwareRendering(!isSoftwareRendering());
+         }
+      });
+      bindPan(KeyEvent.VK_LEFT, "panLeft", -width / 8);
+      bindPan(KeyEvent.VK_RIGHT, "panRight", width / 8);
+      bindPan(KeyEvent.VK_HOME, "panHome", -worldWidth);
+      bindPan(KeyEvent.VK_END, "panEnd", worldWidth);
+   }
+
+   /**
+    * Makes a key pan the camera by a number of pixels.
+    * @param key the key code
+    * @param name the name of the action
+    * @param distance the number of pixels to pan, negative to the left
+    */
+   private void bindPan(int key, String name, final int distance) {
+      getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, 0), name);
+      getActionMap().put(name, new AbstractAction() {
+         public void actionPerformed(ActionEvent e) {
+            setCameraX(cameraX + distance);
+         }
+      });
+   }
+
+   /**
+    * Computes the number of fades it takes for the brightest color to fall
+    * below the given value.
+    * @param darkest the color value considered too dark to see
+    * @return the number of fades
+    */
+   private static int fadeSteps(int darkest) {
+      int steps = 0;
+      for (double value = 255.0; value >= darkest; steps++) {
+         value *= (255 - FADE_RATE) / 255.0;
+      }
+      return steps;
    }
 
    /**
@@ -67,134 +260,476 @@ public class GameDisplay extends JComponent {
     */
    public int getHeight() { return height; }
 
+   /**
+    * Returns the width of the game world shown, in pixels.
+    * @return the width of the world, in pixels
+    */
+   public int getWorldWidth() { return worldWidth; }
+
+   /**
+    * Moves the camera so that the left side of the display shows the given
+    * x coordinate of the world, kept inside the world.  May be called by
+    * any thread; the change takes effect at the next update.
+    * @param x the x coordinate in the world
+    */
+   public void setCameraX(int x) {
+      cameraX = Math.max(0, Math.min(x, worldWidth - width));
+   }
+
+   /**
+    * Returns the x coordinate in the world of the left side of the display,
+    * as drawn by the latest update.  Adding it to the x coordinate of a
+    * point on the display gives the x coordinate of the point in the world.
+    * @return the x coordinate of the left side of the display in the world
+    */
+   public int getViewX() { return viewX; }
+
+   /**
+    * Chooses between drawing the display through Java2D and drawing it with
+    * a {@link SoftwareRasterizer}.  May be called by any thread; the change
+    * takes effect at the next update.
+    * @param software true to draw with the software rasterizer, false to
+    * draw through Java2D
+    */
+   public void setSoftwareRendering(boolean software) {
+      softwareRendering = software;
+   }
+
+   /**
+    * Checks if the display is drawn with the software rasterizer.
+    * @return true if the display is drawn with the software rasterizer,
+    * false if it is drawn through Java2D
+    */
+   public boolean isSoftwareRendering() { return softwareRendering; }
+
    /**
     * Paints the display using the specified Graphics object.
     * @param g the graphics object on which to pain the display
     */
    public void paintComponent(Graphics g) {
-      // Need to make sure we don't modify g in any way.
+      // Need to make sure we don't modify g in any way.  The clip of g is
+      // the region passed to repaint, so only that region is copied.
       Graphics graphics = g.create();
+      long start = GameMetrics.ENABLED ? System.nanoTime() : 0;
       synchronized (buffer) {
-         // Only one thread should access the buffer's Graphics object...
          graphics.drawImage(buffer, 0, 0, this);
       }
+      if (GameMetrics.ENABLED) {
+         GameMetrics.DISPLAY_PAINT.recordSince(start);
+      }
+   }
+
+   /**
+    * Updates the display by using the provided (non-null) snapshot of the
+    * game to draw the current set of buildings, explosions, and missiles,
+    * and repaints the region that changed.
+    * The missiles and explosions are drawn as they were the given fraction
+    * of a time step after the previous time step, which is possible since
+    * they move and grow by a constant amount every time step.  The active
+    * tiles are faded once for every time step run since the last update,
+    * before anything is drawn, so that the streaks are just as long
+    * whatever the frame rate.
+    * @param snapshot the latest snapshot of the game
+    * @param alpha the fraction of a time step since the previous time step,
+    * between 0 and 1, where 1 draws the snapshot as it is
+    * @param fades the number of time steps run since the last update
+    */
+   public void update(GameSnapshot snapshot, float alpha, int fades) {
+      if (GameMetrics.ENABLED) {
+         long start = System.nanoTime();
+         draw(snapshot, alpha, fades);
+         GameMetrics.DISPLAY_UPDATE.recordSince(start);
+      } else {
+         draw(snapshot, alpha, fades);
+      }
    }
 
    /**
-    * Updates the display by using the provided (non-null) state object to
-    * draw the current set of buildings, explosions, and missiles.
-    * @param state the current state of the game
+    * Draws the snapshot into the buffer while holding the buffer's lock, so
+    * that {@link #paintComponent} never copies a half drawn frame.
+    * @param snapshot the latest snapshot of the game
+    * @param alpha the fraction of a time step since the previous time step
+    * @param fades the number of time steps run since the last update
     */
-   public void update(GameState state) {
-      Graphics graphics = null;
+   private void draw(GameSnapshot snapshot, float alpha, int fades) {
       synchronized (buffer) {
-         // Only one thread should access the buffer's Graphics object...
-         graphics = buffer.getGraphics();
+         drawLocked(snapshot, alpha, fades);
+      }
+   }
+
+   /**
+    * Draws the snapshot into the buffer and repaints the region that
+    * changed, as described for {@link #update}.  Only called with the
+    * buffer's lock held.
+    * @param snapshot the latest snapshot of the game
+    * @param alpha the fraction of a time step since the previous time step
+    * @param fades the number of time steps run since the last update
+    */
+   private void drawLocked(GameSnapshot snapshot, float alpha, int fades) {
+      int x = Math.max(0, Math.min(cameraX, snapshot.worldWidth - width));
+      if (x != viewX) {
+         pan(x - viewX);
+         viewX = x;
+      }
+
+      boolean software = softwareRendering;
+      if (software) {
+         renderSoftware(snapshot, alpha, fades);
+         renderedBySoftware = true;
+         return;
+      }
+      if (renderedBySoftware) {
+         // The tiles know nothing of what the rasterizer drew, so fade and
+         // redraw everything once.
+         Arrays.fill(tileAge, FADE_STEPS);
+         drawnCount = 0;
+         renderedBySoftware = false;
       }
 
-      paintBuildings(state.buildings.iterator(),  graphics);
-      paintMissiles(state.missiles.iterator(), graphics);
-      paintExplosions(state.explosions.iterator(), graphics);
-      fadeBuffer(graphics);
+      Graphics graphics = bufferGraphics;
+
+      dirtyLeft = width;
+      dirtyTop = height;
+      dirtyRight = 0;
+      dirtyBottom = 0;
+
+      float back = 1.0F - alpha;
+      fadeTiles(fades, graphics);
+      paintBuildings(snapshot, graphics);
+      paintMissiles(snapshot, back, graphics);
+      paintExplosions(snapshot, back, graphics);
+
+      if (dirtyLeft < dirtyRight && dirtyTop < dirtyBottom) {
+         repaint(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+      }
+   }
+
+   /**
+    * Updates the whole display with the software rasterizer, which is made
+    * the first time it is needed.
+    * @param snapshot the latest snapshot of the game
+    * @param alpha the fraction of a time step since the previous time step
+    * @param fades the number of time steps run since the last update
+    */
+   private void renderSoftware(GameSnapshot snapshot, float alpha, int fades) {
+      if (rasterizer == null) {
+         // Reaching into the pixels stops Java2D from caching the buffer
+         // in video memory, so this is only done once asked for.
+         int[] pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+         rasterizer = new SoftwareRasterizer(pixels, width, height);
+      }
+      rasterizer.render(snapshot, viewX, 1.0F - alpha, fades);
+      repaint(0, 0, width, height);
    }
 
    /**
-    * Draws a semitransparent black box the size of this display with the
-    * provided Graphics object.  The top left of the box is at (0,0) with
-    * respect to the graphics coordinate system.
+    * Shifts what has been drawn to follow the camera, clearing what comes
+    * into view.  Every tile is activated, so that the shifted streaks fade
+    * out, and the buildings are drawn again in full.
+    * @param distance the number of pixels the camera moved, negative to the
+    * left
+    */
+   private void pan(int distance) {
+      Graphics graphics = bufferGraphics;
+      graphics.setColor(Color.BLACK);
+      if (Math.abs(distance) >= width) {
+         graphics.fillRect(0, 0, width, height);
+      } else if (distance > 0) {
+         graphics.copyArea(distance, 0, width - distance, height, -distance, 0);
+         graphics.fillRect(width - distance, 0, distance, height);
+      } else if (distance < 0) {
+         graphics.copyArea(0, 0, width + distance, height, -distance, 0);
+         graphics.fillRect(0, 0, -distance, height);
+      }
+      Arrays.fill(tileAge, FADE_STEPS);
+      drawnCount = 0;
+      repaint(0, 0, width, height);
+   }
+
+   /**
+    * Fades every active tile the given number of times, clearing the tiles
+    * that have faded out.  Remembers which tiles were active, so that the
+    * buildings in them can be redrawn.
+    * @param fades the number of times to fade
     * @param g the graphics object on which to draw
     */
-   private void fadeBuffer(Graphics g) {
-      g.setColor(new Color(0,0,0,FADE_RATE));
-      g.fillRect(0,0,width,height);
+   private void fadeTiles(int fades, Graphics g) {
+      for (int tile = 0; tile < tileAge.length; tile++) {
+         tileActive[tile] = tileAge[tile] > 0;
+      }
+      if (fades == 0) {
+         return;
+      }
+
+      for (int row = 0; row < tileRows; row++) {
+         int column = 0;
+         while (column < tileColumns) {
+            int tile = row * tileColumns + column;
+            if (!tileActive[tile]) {
+               column++;
+               continue;
+            }
+
+            // Neighbouring tiles of the same age are faded together.
+            int age = tileAge[tile];
+            int first = column;
+            while (column < tileColumns && tileActive[tile] && tileAge[tile] == age) {
+               tileAge[tile] -= Math.min(fades, age);
+               column++;
+               tile++;
+            }
+
+            int x = first * TILE_SIZE;
+            int y = row * TILE_SIZE;
+            int w = (column - first) * TILE_SIZE;
+            if (age <= fades) {
+               g.setColor(Color.BLACK);
+               g.fillRect(x, y, w, TILE_SIZE);
+            } else {
+               g.setColor(FADE_COLOR);
+               for (int i = 0; i < fades; i++) {
+                  g.fillRect(x, y, w, TILE_SIZE);
+               }
+            }
+            markDirty(x, y, w, TILE_SIZE);
+         } // end while
+      }
    }
 
    /**
-    * Pain all the building using the provided Graphics object.
-    * Assumes that every object returned by the Iterator is a {@link Building}.
-    * @param iter an iterator over buildings
+    * Paint the buildings in view using the provided Graphics object.  A
+    * building whose color has changed since the previous update is redrawn
+    * in full, other buildings only inside the active tiles.  A building that
+    * is gone activates the tiles it covered, so that it fades out.
+    * @param snapshot the snapshot holding the buildings
     * @param graphics the graphics object on which to paint
     */
-   private void paintBuildings(Iterator iter, Graphics graphics) {
+   private void paintBuildings(GameSnapshot snapshot, Graphics graphics) {
 
-      Vector2D topLeftPoint, bottomRightPoint;
       int topLeftXPix, topLeftYPix, bottomRightXPix, bottomRightYPix;
       int buildingWidth, buildingHeight;
-      Color buildingColor;
-
-      while(iter.hasNext()) {
-         Building b = (Building)iter.next();
 
-         buildingColor = new Color(1.0F-b.getHealth(), b.getHealth(), 0.0F);
-         graphics.setColor(buildingColor);
+      // The buildings are in order from left to right, so the ones in view
+      // follow each other.
+      int first = snapshot.buildingAfter(viewX);
+      int end = first;
+      while (end < snapshot.buildingCount && snapshot.buildingLeft[end] < viewX + width) {
+         end++;
+      }
 
-         topLeftPoint = b.getTopLeft();
-         topLeftXPix = topLeftPoint.getIComp();
-         topLeftYPix = height - topLeftPoint.getJComp();
+      // Buildings are only ever removed, so the buildings of the previous
+      // update are matched with the current ones in order.
+      int drawn = 0;
+      for (int i = first; i < end; i++) {
+         topLeftXPix = snapshot.buildingLeft[i] - viewX;
+         topLeftYPix = height - snapshot.buildingTop[i];
 
-         bottomRightPoint = b.getBottomRight();
-         bottomRightXPix = bottomRightPoint.getIComp();
-         bottomRightYPix = height - bottomRightPoint.getJComp();
+         bottomRightXPix = snapshot.buildingRight[i] - viewX;
+         bottomRightYPix = height - snapshot.buildingBottom[i];
 
          buildingWidth = bottomRightXPix - topLeftXPix;
          buildingHeight = bottomRightYPix - topLeftYPix;
 
-         graphics.fillRect
-            (topLeftXPix, topLeftYPix, buildingWidth, buildingHeight);
+         while (drawn < drawnCount && !isDrawn(snapshot, i, drawn)) {
+            fadeOut(drawn++);
+         }
+         Color color = Palette.building(snapshot.buildingHealth[i]);
+         graphics.setColor(color);
+         if (drawn < drawnCount && drawnColor[drawn] == color) {
+            drawn++;
+            paintActive(topLeftXPix, topLeftYPix, buildingWidth, buildingHeight,
+                        graphics);
+         } else {
+            if (drawn < drawnCount) {
+               drawn++;
+            }
+            graphics.fillRect
+               (topLeftXPix, topLeftYPix, buildingWidth, buildingHeight);
+            markDirty(topLeftXPix, topLeftYPix, buildingWidth, buildingHeight);
+         }
       }
+      while (drawn < drawnCount) {
+         fadeOut(drawn++);
+      }
+      rememberBuildings(snapshot, first, end);
    }
 
    /**
-    * Paint all the missiles using the provided Graphics object.
-    * Assumes that every object returned by the Iterator is a {@link Missile}.
-    * @param iter an iterator over missiles
-    * @param graphics the graphics object on which to paint
+    * Checks if a building of the snapshot is the same as a building drawn
+    * by the previous update.
+    * @param snapshot the snapshot holding the buildings
+    * @param i the index of the building in the snapshot
+    * @param drawn the index of the building drawn by the previous update
+    * @return true if the buildings are at the same place, false otherwise
     */
-   private void paintMissiles(Iterator iter, Graphics graphics) {
-      Vector2D location;
-      int x, y, size;
+   private boolean isDrawn(GameSnapshot snapshot, int i, int drawn) {
+      return snapshot.buildingLeft[i] == drawnLeft[drawn] &&
+             snapshot.buildingRight[i] == drawnRight[drawn] &&
+             snapshot.buildingTop[i] == drawnTop[drawn] &&
+             snapshot.buildingBottom[i] == drawnBottom[drawn];
+   }
 
-      while(iter.hasNext()) {
-         Missile m = (Missile)iter.next();
-         location = m.getLocation();
-         size = m.getSize();
-         x = location.getIComp();
-         y = height - location.getJComp();
+   /**
+    * Activates the tiles covered by a building drawn by the previous update
+    * that is gone, so that it fades out.
+    * @param drawn the index of the building drawn by the previous update
+    */
+   private void fadeOut(int drawn) {
+      activate(drawnLeft[drawn] - viewX, height - drawnTop[drawn],
+               drawnRight[drawn] - drawnLeft[drawn],
+               drawnTop[drawn] - drawnBottom[drawn]);
+   }
 
-         float hue =
-            (float)(m.getExplosionSize()) /
-            (Missile.MAX_EXPLOSION_SIZE + Missile.MIN_EXPLOSION_SIZE);
+   /**
+    * Remembers the given buildings of the snapshot as the buildings drawn.
+    * @param snapshot the snapshot holding the buildings
+    * @param first the index of the first building drawn
+    * @param end the index just after the last building drawn
+    */
+   private void rememberBuildings(GameSnapshot snapshot, int first, int end) {
+      drawnCount = end - first;
+      if (drawnLeft.length < drawnCount) {
+         drawnLeft = new int[drawnCount];
+         drawnRight = new int[drawnCount];
+         drawnTop = new int[drawnCount];
+         drawnBottom = new int[drawnCount];
+         drawnColor = new Color[drawnCount];
+      }
+      for (int i = 0; i < drawnCount; i++) {
+         drawnLeft[i] = snapshot.buildingLeft[first + i];
+         drawnRight[i] = snapshot.buildingRight[first + i];
+         drawnTop[i] = snapshot.buildingTop[first + i];
+         drawnBottom[i] = snapshot.buildingBottom[first + i];
+         drawnColor[i] = Palette.building(snapshot.buildingHealth[first + i]);
+      }
+   }
 
-         graphics.setColor(new Color(1.0F, 1.0F - hue, 0.0F));
-         graphics.fillOval(x, y, size, size);
+   /**
+    * Fills the given rectangle with the current color, but only inside the
+    * tiles that were active at the start of the update.
+    * @param x the x coordinate of the rectangle
+    * @param y the y coordinate of the rectangle
+    * @param w the width of the rectangle
+    * @param h the height of the rectangle
+    * @param g the graphics object on which to draw
+    */
+   private void paintActive(int x, int y, int w, int h, Graphics g) {
+      int firstColumn = Math.max(0, Math.floorDiv(x, TILE_SIZE));
+      int lastColumn = Math.min(tileColumns - 1, Math.floorDiv(x + w - 1, TILE_SIZE));
+      int firstRow = Math.max(0, Math.floorDiv(y, TILE_SIZE));
+      int lastRow = Math.min(tileRows - 1, Math.floorDiv(y + h - 1, TILE_SIZE));
+      for (int row = firstRow; row <= lastRow; row++) {
+         for (int column = firstColumn; column <= lastColumn; column++) {
+            if (tileActive[row * tileColumns + column]) {
+               int left = Math.max(x, column * TILE_SIZE);
+               int top = Math.max(y, row * TILE_SIZE);
+               int right = Math.min(x + w, (column + 1) * TILE_SIZE);
+               int bottom = Math.min(y + h, (row + 1) * TILE_SIZE);
+               g.fillRect(left, top, right - left, bottom - top);
+               markDirty(left, top, right - left, bottom - top);
+            }
+         }
       }
    }
 
    /**
-    * Paint all the explosions using the provided Graphics object. Assumes
-    * Assumes that every object returned by the Iterator is an {@link Explosion}.
-    * @param iter an iterator over explosions
-    * @param graphics the graphics object on which to paint
+    * Makes the tiles overlapping the given rectangle active for the next
+    * {@link #FADE_STEPS} fades, and marks the rectangle as changed.
+    * @param x the x coordinate of the rectangle
+    * @param y the y coordinate of the rectangle
+    * @param w the width of the rectangle
+    * @param h the height of the rectangle
     */
-   private void paintExplosions(Iterator iter, Graphics graphics) {
-      int currentRadius;
-      Vector2D location;
-      Color explosionColor;
+   private void activate(int x, int y, int w, int h) {
+      if (w <= 0 || h <= 0) {
+         return;
+      }
+      int firstColumn = Math.max(0, Math.floorDiv(x, TILE_SIZE));
+      int lastColumn = Math.min(tileColumns - 1, Math.floorDiv(x + w - 1, TILE_SIZE));
+      int firstRow = Math.max(0, Math.floorDiv(y, TILE_SIZE));
+      int lastRow = Math.min(tileRows - 1, Math.floorDiv(y + h - 1, TILE_SIZE));
+      for (int row = firstRow; row <= lastRow; row++) {
+         for (int column = firstColumn; column <= lastColumn; column++) {
+            tileAge[row * tileColumns + column] = FADE_STEPS;
+         }
+      }
+      markDirty(x, y, w, h);
+   }
 
-      while(iter.hasNext()) {
-         Explosion e = (Explosion) iter.next();
+   /**
+    * Grows the region changed by the current update to include the given
+    * rectangle, clipped to the display.
+    * @param x the x coordinate of the rectangle
+    * @param y the y coordinate of the rectangle
+    * @param w the width of the rectangle
+    * @param h the height of the rectangle
+    */
+   private void markDirty(int x, int y, int w, int h) {
+      dirtyLeft = Math.max(0, Math.min(dirtyLeft, x));
+      dirtyTop = Math.max(0, Math.min(dirtyTop, y));
+      dirtyRight = Math.min(width, Math.max(dirtyRight, x + w));
+      dirtyBottom = Math.min(height, Math.max(dirtyBottom, y + h));
+   }
 
-         float hue = ((float)e.getCurrentRadius()) / e.getMaxRadius();
-         graphics.setColor(new Color(1.0F, hue, 0.0F));
+   /**
+    * Paint the missiles in view using the provided Graphics object.  Only
+    * the columns of the index near the view are looked at.
+    * @param snapshot the snapshot holding the missiles
+    * @param back the fraction of a time step to move the missiles back
+    * @param graphics the graphics object on which to paint
+    */
+   private void paintMissiles(GameSnapshot snapshot, float back, Graphics graphics) {
+      int x, y, size;
 
-         currentRadius = e.getCurrentRadius();
-         location = e.getLocation();
+      int first = snapshot.indexColumn(viewX - snapshot.missileReach);
+      int last = snapshot.indexColumn(viewX + width + snapshot.missileReach);
+      int end = snapshot.missileColumnStart[last + 1];
+      for (int k = snapshot.missileColumnStart[first]; k < end; k++) {
+         int i = snapshot.missileOrder[k];
+         size = snapshot.missileSize[i];
+         x = Math.round(snapshot.missileX[i] - snapshot.missileDX[i] * back) - viewX;
+         if (x >= width || x + size <= 0) {
+            continue;
+         }
+         y = height - Math.round(snapshot.missileY[i] - snapshot.missileDY[i] * back);
+
+         sprites.drawCircle(graphics, x, y, size,
+                            Palette.missile(snapshot.missileExplosionSize[i]));
+         activate(x, y, size, size);
+      }
+   }
 
-         graphics.fillOval
-            (location.getIComp() - currentRadius,
-             height - location.getJComp() - currentRadius,
+   /**
+    * Paint the explosions in view using the provided Graphics object.  Only
+    * the columns of the index near the view are looked at.
+    * @param snapshot the snapshot holding the explosions
+    * @param back the fraction of a time step to shrink the explosions back
+    * @param graphics the graphics object on which to paint
+    */
+   private void paintExplosions(GameSnapshot snapshot, float back, Graphics graphics) {
+      int currentRadius, x;
+
+      int first = snapshot.indexColumn(viewX - snapshot.explosionReach);
+      int last = snapshot.indexColumn(viewX + width + snapshot.explosionReach);
+      int end = snapshot.explosionColumnStart[last + 1];
+      for (int k = snapshot.explosionColumnStart[first]; k < end; k++) {
+         int i = snapshot.explosionOrder[k];
+         currentRadius = Math.max
+            (0, Math.round(snapshot.explosionRadius[i] - snapshot.explosionGrowth[i] * back));
+         x = snapshot.explosionX[i] - viewX - currentRadius;
+         if (x >= width || x + currentRadius * 2 <= 0) {
+            continue;
+         }
+
+         sprites.drawCircle
+            (graphics,
+             x,
+             height - snapshot.explosionY[i] - currentRadius,
              currentRadius * 2,
-             currentRadius * 2);
+             Palette.explosion(currentRadius, snapshot.explosionMaxRadius[i]));
+         activate(x,
+                  height - snapshot.explosionY[i] - currentRadius,
+                  currentRadius * 2, currentRadius * 2);
       }
    }
 
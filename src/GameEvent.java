@@ -0,0 +1,151 @@
+/**
+ * This class describes something that happened in a Missile Command game,
+ * as delivered to the subscribers of a {@link GameEventBus}.  Which fields
+ * are used depends on the type of the event:
+ * <pre>
+ * MISSILE_DESTROYED   x, y of the missile; change: points scored; value: score
+ * BUILDING_DAMAGED    x, y of the top left corner; level: health left
+ * BUILDING_REPAIRED   x, y of the top left corner; level: health after
+ * BUILDING_DESTROYED  x, y of the top left corner
+ * SCORE_CHANGED       change: over the time step; value: score
+ * POWER_CHANGED       level: power, between 0 and 1
+ * EVENTS_LOST         change: number of events the subscriber missed
+ * </pre>
+ * Instances are immutable.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameEvent {
+
+   /** A missile was destroyed by an explosion. */
+   public final static int MISSILE_DESTROYED = 0;
+
+   /** A building was hit by an explosion. */
+   public final static int BUILDING_DAMAGED = 1;
+
+   /** A building was repaired by the player. */
+   public final static int BUILDING_REPAIRED = 2;
+
+   /** A building was destroyed. */
+   public final static int BUILDING_DESTROYED = 3;
+
+   /** The score changed during the time step. */
+   public final static int SCORE_CHANGED = 4;
+
+   /** The power changed during the time step. */
+   public final static int POWER_CHANGED = 5;
+
+   /** The subscriber fell so far behind that events were overwritten. */
+   public final static int EVENTS_LOST = 6;
+
+   /** The number of types of events. */
+   public final static int NR_OF_TYPES = 7;
+
+   /** The names of the types, indexed by type. */
+   private final static String[] NAMES = {
+      "missile destroyed", "building damaged", "building repaired",
+      "building destroyed", "score changed", "power changed", "events lost"
+   };
+
+   /** The type of the event, for instance {@link #MISSILE_DESTROYED}. */
+   private final int type;
+
+   /** The time step the event happened in. */
+   private final long tick;
+
+   /** The x coordinate of where the event happened. */
+   private final int x;
+
+   /** The y coordinate of where the event happened. */
+   private final int y;
+
+   /** The value after the event, for instance the score. */
+   private final int value;
+
+   /** How much the value changed, or how many events were lost. */
+   private final int change;
+
+   /** The level after the event, for instance the health of a building. */
+   private final float level;
+
+   /**
+    * Creates a new event.
+    * @param type the type of the event, for instance {@link #MISSILE_DESTROYED}
+    * @param tick the time step the event happened in
+    * @param x the x coordinate of where the event happened
+    * @param y the y coordinate of where the event happened
+    * @param value the value after the event
+    * @param change how much the value changed
+    * @param level the level after the event
+    */
+   public GameEvent(int type, long tick, int x, int y, int value, int change, float level) {
+      this.type = type;
+      this.tick = tick;
+      this.x = x;
+      this.y = y;
+      this.value = value;
+      this.change = change;
+      this.level = level;
+   }
+
+   /**
+    * Returns the type of the event.
+    * @return the type, for instance {@link #MISSILE_DESTROYED}
+    */
+   public int getType() { return type; }
+
+   /**
+    * Returns the time step the event happened in.
+    * @return the time step of the event
+    */
+   public long getTick() { return tick; }
+
+   /**
+    * Returns the x coordinate of where the event happened.
+    * @return the x coordinate of the event
+    */
+   public int getX() { return x; }
+
+   /**
+    * Returns the y coordinate of where the event happened.
+    * @return the y coordinate of the event
+    */
+   public int getY() { return y; }
+
+   /**
+    * Returns the value after the event, for instance the score.
+    * @return the value of the event
+    */
+   public int getValue() { return value; }
+
+   /**
+    * Returns how much the value changed, or how many events were lost.
+    * @return the change of the event
+    */
+   public int getChange() { return change; }
+
+   /**
+    * Returns the level after the event, for instance the health of a
+    * building.
+    * @return the level of the event
+    */
+   public float getLevel() { return level; }
+
+   /**
+    * Returns the name of the given type of event.
+    * @param type the type, for instance {@link #MISSILE_DESTROYED}
+    * @return the name of the type
+    */
+   public static String getTypeName(int type) { return NAMES[type]; }
+
+   /**
+    * Returns a description of the event, for logging.
+    * @return a description of the event
+    */
+   public String toString() {
+      return NAMES[type] + " at " + tick + ": (" + x + ", " + y + ") value " + value +
+         " change " + change + " level " + level;
+   }
+
+}
@@ -0,0 +1,360 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class passes the {@link GameEvent}s of a Missile Command game from
+ * the game logic to any number of subscribers, such as the
+ * {@link Scoreboard} or statistics gathered while the game runs, without
+ * slowing the game down.
+ * <p>
+ * The game logic writes the events of a time step into a ring of primitive
+ * columns, without locking and without allocating memory, and publishes
+ * them all at once at the end of the time step (see {@link #endTick}).
+ * Only the thread running the game logic may write events.  Subscribers
+ * read the ring through the {@link Flow.Publisher} interface: every
+ * subscription has its own position in the ring and is delivered as many
+ * events as it has requested, on a delivery thread of the bus, never on
+ * the game thread.  The game thread only wakes the delivery thread up,
+ * which allocates nothing either.
+ * <p>
+ * The game never waits for a subscriber.  A subscriber that falls more
+ * than the capacity of the ring behind misses the events that were
+ * overwritten, and is told so by an {@link GameEvent#EVENTS_LOST} event
+ * (whose time step is -1) before the events that are left.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameEventBus implements Flow.Publisher<GameEvent>, Runnable {
+
+   /** The number of events the ring holds by default. */
+   public final static int DEFAULT_CAPACITY = 1 << 14;
+
+   /** The number of events the ring holds, a power of two. */
+   private int capacity;
+
+   /** Masks the index of an event into the ring. */
+   private int mask;
+
+   /** The type of every event in the ring. */
+   private int[] type;
+
+   /** The time step of every event in the ring. */
+   private long[] tick;
+
+   /** The x coordinate of every event in the ring. */
+   private int[] x;
+
+   /** The y coordinate of every event in the ring. */
+   private int[] y;
+
+   /** The value of every event in the ring. */
+   private int[] value;
+
+   /** The change of every event in the ring. */
+   private int[] change;
+
+   /** The level of every event in the ring. */
+   private float[] level;
+
+   /**
+    * The number of events ever written, counting the one being written.
+    * Raised before an event overwrites its slot, so that readers can tell
+    * when the slot they read was overwritten.
+    */
+   private volatile long head;
+
+   /** The number of events ever published to the subscribers. */
+   private volatile long published;
+
+   /** Set when the game is over and no more events will be written. */
+   private volatile boolean closed;
+
+   /** Delivers the events, or null while there is nobody to deliver to. */
+   private volatile Thread deliverer;
+
+   /** The current subscriptions. */
+   private CopyOnWriteArrayList subscriptions = new CopyOnWriteArrayList();
+
+   /** The score last reported by a {@link GameEvent#SCORE_CHANGED} event. */
+   private int reportedScore;
+
+   /** The power last reported by a {@link GameEvent#POWER_CHANGED} event. */
+   private float reportedPower = Float.NaN;
+
+   /** Creates a new bus with a ring of the default capacity. */
+   public GameEventBus() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Creates a new bus.
+    * @param capacity the number of events the ring holds, a power of two
+    * @throws IllegalArgumentException if capacity is not a power of two
+    */
+   public GameEventBus(int capacity) {
+      if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+         throw new IllegalArgumentException("the capacity must be a power of two");
+      }
+      this.capacity = capacity;
+      mask = capacity - 1;
+      type = new int[capacity];
+      tick = new long[capacity];
+      x = new int[capacity];
+      y = new int[capacity];
+      value = new int[capacity];
+      change = new int[capacity];
+      level = new float[capacity];
+   }
+
+   /**
+    * Returns the number of events the ring holds.
+    * @return the capacity of the ring
+    */
+   public int getCapacity() { return capacity; }
+
+   /**
+    * Returns the number of events published so far.
+    * @return the number of events published
+    */
+   public long getPublished() { return published; }
+
+   /**
+    * Writes an event, to be published at the end of the time step.  May
+    * only be called by the thread running the game logic.
+    * @param type the type of the event, for instance
+    * {@link GameEvent#MISSILE_DESTROYED}
+    * @param tick the time step the event happened in
+    * @param x the x coordinate of where the event happened
+    * @param y the y coordinate of where the event happened
+    * @param value the value after the event
+    * @param change how much the value changed
+    * @param level the level after the event
+    */
+   public void add(int type, long tick, int x, int y, int value, int change, float level) {
+      long index = head;
+      head = index + 1;
+      // The slot must not be written before the readers can see it is taken.
+      VarHandle.storeStoreFence();
+      int i = (int) index & mask;
+      this.type[i] = type;
+      this.tick[i] = tick;
+      this.x[i] = x;
+      this.y[i] = y;
+      this.value[i] = value;
+      this.change[i] = change;
+      this.level[i] = level;
+   }
+
+   /**
+    * Ends a time step: writes an event for the score and the power if they
+    * changed, and then publishes all the events of the time step.  May only
+    * be called by the thread running the game logic.
+    * @param state the current GameState
+    */
+   public void endTick(GameState state) {
+      if (state.score != reportedScore) {
+         add(GameEvent.SCORE_CHANGED, state.tick, 0, 0, state.score,
+             state.score - reportedScore, 0.0F);
+         reportedScore = state.score;
+      }
+      if (state.power != reportedPower) {
+         add(GameEvent.POWER_CHANGED, state.tick, 0, 0, 0, 0, state.power);
+         reportedPower = state.power;
+      }
+      publish();
+   }
+
+   /**
+    * Publishes the events written so far to the subscribers.  May only be
+    * called by the thread running the game logic.
+    */
+   public void publish() {
+      published = head;
+      signalAll();
+   }
+
+   /**
+    * Publishes the events written so far and completes every subscription
+    * once it has been delivered all of them, for instance when the game is
+    * over.  May only be called by the thread running the game logic.
+    */
+   public void close() {
+      // Published first, so that whoever sees the bus closed also sees
+      // the last events.
+      published = head;
+      closed = true;
+      signalAll();
+   }
+
+   /** Wakes up the delivery thread, if there is one. */
+   private void signalAll() {
+      Thread thread = deliverer;
+      if (thread != null) {
+         LockSupport.unpark(thread);
+      }
+   }
+
+   /**
+    * Adds a subscriber, which is delivered the events published from now
+    * on, as many as it requests.  The delivery thread is started with the
+    * first subscriber.
+    * @param subscriber the subscriber to add
+    * @throws NullPointerException if subscriber is null
+    */
+   public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+      if (subscriber == null) {
+         throw new NullPointerException("subscriber");
+      }
+      Subscription subscription = new Subscription(subscriber, published);
+      subscriber.onSubscribe(subscription);
+      synchronized (this) {
+         subscriptions.add(subscription);
+         if (deliverer == null) {
+            Thread thread = new Thread(this, "GameEventBus");
+            thread.setDaemon(true);
+            deliverer = thread;
+            thread.start();
+         }
+      }
+      signalAll();
+   }
+
+   /**
+    * Delivers the events to the subscribers until the bus is closed and
+    * every subscription has completed.  Run by the delivery thread, which
+    * sleeps whenever there is nothing to deliver.
+    */
+   public void run() {
+      while (true) {
+         boolean delivered = false;
+         for (int s = 0; s < subscriptions.size(); s++) {
+            Subscription subscription;
+            try {
+               subscription = (Subscription) subscriptions.get(s);
+            } catch (IndexOutOfBoundsException e) {
+               // Cancelled by another thread meanwhile.
+               break;
+            }
+            delivered |= subscription.deliver();
+         }
+         if (closed) {
+            synchronized (this) {
+               if (subscriptions.isEmpty()) {
+                  // A later subscriber starts a new thread.
+                  deliverer = null;
+                  return;
+               }
+            }
+         }
+         if (!delivered) {
+            // An event published or requested after the last look has left
+            // a permit, so this returns at once.
+            LockSupport.park(this);
+         }
+      }
+   }
+
+   /** The position of one subscriber in the ring. */
+   private class Subscription implements Flow.Subscription {
+
+      /** The subscriber the events are delivered to. */
+      private Flow.Subscriber<? super GameEvent> subscriber;
+
+      /** The index of the next event to deliver. */
+      private long cursor;
+
+      /** The number of events requested and not yet delivered. */
+      private AtomicLong demand = new AtomicLong();
+
+      /** Set once the subscription is cancelled or completed. */
+      private volatile boolean cancelled;
+
+      /**
+       * Creates a new subscription.
+       * @param subscriber the subscriber to deliver the events to
+       * @param cursor the index of the first event to deliver
+       */
+      Subscription(Flow.Subscriber<? super GameEvent> subscriber, long cursor) {
+         this.subscriber = subscriber;
+         this.cursor = cursor;
+      }
+
+      /**
+       * Adds to the number of events the subscriber wants delivered.
+       * @param n the number of events to add, at least 1
+       */
+      public void request(long n) {
+         if (n <= 0) {
+            cancel();
+            subscriber.onError(new IllegalArgumentException("requested " + n + " events"));
+            return;
+         }
+         long current;
+         do {
+            current = demand.get();
+         } while (!demand.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE
+                                                                   : current + n));
+         signalAll();
+      }
+
+      /** Stops delivering events to the subscriber. */
+      public void cancel() {
+         cancelled = true;
+         subscriptions.remove(this);
+         // The delivery thread may have skipped a subscription moved into
+         // the place of this one.
+         signalAll();
+      }
+
+      /**
+       * Delivers the published events the subscriber wants, and completes
+       * the subscription once the bus is closed and they are all delivered.
+       * Only called by the delivery thread.
+       * @return true if anything was delivered
+       */
+      boolean deliver() {
+         long start = cursor;
+         long end = published;
+         while (!cancelled && cursor < end && demand.get() > 0) {
+            GameEvent event;
+            long oldest = head - capacity;
+            if (cursor < oldest) {
+               event = new GameEvent(GameEvent.EVENTS_LOST, -1, 0, 0, 0,
+                                     (int) Math.min(oldest - cursor, Integer.MAX_VALUE),
+                                     0.0F);
+               cursor = oldest;
+            } else {
+               int i = (int) cursor & mask;
+               event = new GameEvent(type[i], tick[i], x[i], y[i], value[i], change[i],
+                                     level[i]);
+               // The slot must be read before checking it was not taken.
+               VarHandle.loadLoadFence();
+               if (cursor < head - capacity) {
+                  continue;
+               }
+               cursor++;
+            }
+            if (demand.get() != Long.MAX_VALUE) {
+               demand.decrementAndGet();
+            }
+            try {
+               subscriber.onNext(event);
+            } catch (RuntimeException e) {
+               cancel();
+               subscriber.onError(e);
+            }
+         }
+         if (!cancelled && closed && cursor >= published) {
+            cancel();
+            subscriber.onComplete();
+            return true;
+         }
+         return cursor != start;
+      }
+   }
+
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class counts the events of a Missile Command game by type, as an
+ * example of gathering statistics from a {@link GameEventBus} while the
+ * game runs.  It requests the events in batches, so it is never delivered
+ * more than it asked for.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameEventCounter implements Flow.Subscriber<GameEvent> {
+
+   /** The number of events requested at a time by default. */
+   public final static int DEFAULT_REQUEST_SIZE = 256;
+
+   /** The number of events requested at a time. */
+   private int requestSize;
+
+   /** The subscription to the event bus, or null before subscribing. */
+   private Flow.Subscription subscription;
+
+   /** The number of events delivered since more were last requested. */
+   private int delivered;
+
+   /** The number of events of every type, and of the events lost. */
+   private long[] counts = new long[GameEvent.NR_OF_TYPES];
+
+   /** The error that ended the subscription, or null. */
+   private volatile Throwable error;
+
+   /** Counted down when the subscription ends. */
+   private CountDownLatch done = new CountDownLatch(1);
+
+   /** Creates a counter requesting the default number of events at a time. */
+   public GameEventCounter() {
+      this(DEFAULT_REQUEST_SIZE);
+   }
+
+   /**
+    * Creates a counter.
+    * @param requestSize the number of events to request at a time
+    * @throws IllegalArgumentException if requestSize is less than 1
+    */
+   public GameEventCounter(int requestSize) {
+      if (requestSize < 1) {
+         throw new IllegalArgumentException("at least 1 event must be requested");
+      }
+      this.requestSize = requestSize;
+   }
+
+   /**
+    * Starts receiving the events of a game.
+    * @param subscription the subscription to the event bus of the game
+    */
+   public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(requestSize);
+   }
+
+   /**
+    * Counts an event, and requests more when the batch requested has been
+    * delivered.
+    * @param event the next event of the game
+    */
+   public void onNext(GameEvent event) {
+      if (event.getType() == GameEvent.EVENTS_LOST) {
+         counts[GameEvent.EVENTS_LOST] += event.getChange();
+      } else {
+         counts[event.getType()]++;
+      }
+      if (++delivered == requestSize) {
+         delivered = 0;
+         subscription.request(requestSize);
+      }
+   }
+
+   /**
+    * Notes the error that ended the subscription.
+    * @param error the reason
+    */
+   public void onError(Throwable error) {
+      this.error = error;
+      done.countDown();
+   }
+
+   /** Notes that all the events of the game have been counted. */
+   public void onComplete() {
+      done.countDown();
+   }
+
+   /**
+    * Waits until all the events of the game have been counted, that is
+    * until the event bus has been closed and has delivered all its events.
+    * @param timeoutMillis the longest time to wait, in milliseconds
+    * @return true if the events were all counted, false if the subscription
+    * failed or the time ran out
+    * @throws InterruptedException if the thread is interrupted while waiting
+    */
+   public boolean await(long timeoutMillis) throws InterruptedException {
+      return done.await(timeoutMillis, TimeUnit.MILLISECONDS) && error == null;
+   }
+
+   /**
+    * Returns the number of events of the given type counted.  Only valid
+    * once {@link #await} has returned true.
+    * @param type the type of the events, for instance
+    * {@link GameEvent#MISSILE_DESTROYED}; for {@link GameEvent#EVENTS_LOST}
+    * the number of events lost is returned
+    * @return the number of events of the type
+    */
+   public long getCount(int type) { return counts[type]; }
+
+   /**
+    * Returns the number of events of every type, for printing.
+    * @return the counts of the events
+    */
+   public String toString() {
+      StringBuffer text = new StringBuffer();
+      for (int type = 0; type < counts.length; type++) {
+         if (type > 0) {
+            text.append(", ");
+         }
+         text.append(counts[type]).append(' ').append(GameEvent.getTypeName(type));
+      }
+      return text.toString();
+   }
+
+}
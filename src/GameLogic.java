@@ -31,12 +31,48 @@ public class GameLogic {
 
   /** Used to determine the velocity of newly created missiles. */
   public final static int MAX_VEL = 10;
+
+  /** Tests the explosions against the missiles in the cells of the grid. */
+  final static CollisionKernel KERNEL = CollisionKernel.create();
   
   /**
    * Random number generator.
    * Defaults to a generator seeded with the current time.
    */
-  private Random gen = new Random();
+  private GameRandom gen = new GameRandom();
+
+  /** The rules the game is played by. */
+  private GameRules rules = GameRules.DEFAULT;
+
+  /** Decides when, how many and where missiles are sent. */
+  private SpawnScheduler spawner = ClassicSpawner.DEFAULT;
+
+  /** Passes the events of the game on to its subscribers, or null. */
+  private GameEventBus events;
+
+  /** Records the clicks and keyframes of the game, or null. */
+  private ReplayWriter recorder;
+
+  /** Broad phase grid over the missiles, rebuilt every time step. */
+  private SpatialGrid missileGrid = new SpatialGrid(0, 0);
+
+  /** Flags the missiles destroyed by explosions during a time step. */
+  private boolean[] destroyed = new boolean[0];
+
+  /** The largest distance a missile moves along either axis this time step. */
+  private int maxStep;
+
+  /** Moves the missiles and finds the buildings they run into. */
+  private MissileSweep sweep = new MissileSweep();
+
+  /** The x coordinates of the clicks taken from the click queue. */
+  private int[] clickX = new int[0];
+
+  /** The y coordinates of the clicks taken from the click queue. */
+  private int[] clickY = new int[0];
+
+  /** The times of the clicks taken from the click queue, for the metrics. */
+  private long[] clickTime = new long[0];
 
   /**
    * Creates a new instance of GameLogic with all fields set to their
@@ -44,132 +80,312 @@ public class GameLogic {
    */
   public GameLogic() { }
 
-   /** Runs the game for one time step. **/
+  /**
+   * Creates a new instance of GameLogic whose random number generator is
+   * seeded with the given seed, so that the same seed and the same clicks
+   * always give the same game.
+   * @param seed the seed of the random number generator
+   */
+  public GameLogic(long seed) {
+     gen = new GameRandom(seed);
+  }
+
+   /**
+    * Returns the internal state of the random number generator, which
+    * together with the game state is enough to continue a game exactly as
+    * it would have gone on.
+    * @return the state of the random number generator
+    */
+   public long getRandomState() { return gen.getState(); }
+
+   /**
+    * Restores the internal state of the random number generator, as
+    * returned by {@link #getRandomState()} earlier.
+    * @param randomState the state of the random number generator
+    */
+   public void setRandomState(long randomState) { gen.setState(randomState); }
+
+   /**
+    * Sets the rules the game is played by.  Replays do not record the
+    * rules, so a replay must be played back with the rules it was recorded
+    * with.
+    * @param rules the rules to play by
+    */
+   public void setRules(GameRules rules) { this.rules = rules; }
+
+   /**
+    * Returns the rules the game is played by.
+    * @return the rules of the game
+    */
+   public GameRules getRules() { return rules; }
+
+   /**
+    * Sets the scheduler that sends the missiles.  Like the rules, the
+    * scheduler is not recorded in replays or checkpoints, so a game must be
+    * played back or resumed with the scheduler it was played with.
+    * @param spawner the scheduler to use
+    */
+   public void setSpawner(SpawnScheduler spawner) { this.spawner = spawner; }
+
+   /**
+    * Returns the scheduler that sends the missiles.
+    * @return the spawn scheduler, {@link ClassicSpawner#DEFAULT} unless
+    * another one was set
+    */
+   public SpawnScheduler getSpawner() { return spawner; }
+
+   /**
+    * Sets the bus the events of the game are written to and published on
+    * at the end of every time step.
+    * @param events the bus to use, or null to stop writing events
+    */
+   public void setEventBus(GameEventBus events) { this.events = events; }
+
+   /**
+    * Returns the bus the events of the game are written to.
+    * @return the event bus, or null if no events are written
+    */
+   public GameEventBus getEventBus() { return events; }
+
+   /**
+    * Sets the recorder that the clicks processed by every time step and
+    * the keyframes of the game are written to.
+    * @param recorder the recorder to use, or null to stop recording
+    */
+   public void setRecorder(ReplayWriter recorder) { this.recorder = recorder; }
+
+   /**
+    * Returns the recorder the game is recorded with.
+    * @return the recorder, or null if the game is not recorded
+    */
+   public ReplayWriter getRecorder() { return recorder; }
+
+   /**
+    * Records the game as it starts, as the first keyframe of the replay.
+    * Must be called once the game to play is set up, that is after
+    * initializing a new game or restoring a saved one, and before the
+    * first time step.  Does nothing if the game is not recorded.
+    * @param state the state of the game to play
+    */
+   public void startRecording(GameState state) {
+      if (recorder != null) {
+         recorder.recordStart(state, this);
+      }
+   }
+
+   /**
+    * Runs the game for one time step.  The phases of a time step are
+    * package private so that they can be benchmarked on their own.
+    * @param state the current GameState
+    */
    public void updateCycle(GameState state) {
+      if (GameMetrics.ENABLED) {
+         updateCycleTimed(state);
+         return;
+      }
+      createMissiles(state);
+      if (state.chunks != null) {
+         state.chunks.update(state);
+      }
+      updateMissiles(state);
+      updatePlayerInput(state);
+      updateExplosions(state);
+      endCycle(state);
+   }
+
+   /**
+    * Runs the game for one time step like {@link #updateCycle}, recording
+    * the time of every phase in {@link GameMetrics}.
+    * @param state the current GameState
+    */
+   private void updateCycleTimed(GameState state) {
+      long start = System.nanoTime();
+      long time = start;
       createMissiles(state);
+      time = GameMetrics.CREATE_MISSILES.recordSince(time);
+      if (state.chunks != null) {
+         state.chunks.update(state);
+      }
       updateMissiles(state);
+      time = GameMetrics.UPDATE_MISSILES.recordSince(time);
       updatePlayerInput(state);
+      time = GameMetrics.UPDATE_PLAYER_INPUT.recordSince(time);
       updateExplosions(state);
+      GameMetrics.UPDATE_EXPLOSIONS.recordSince(time);
+      endCycle(state);
+      GameMetrics.UPDATE_CYCLE.recordSince(start);
+      GameMetrics.recordEntities(state);
+   }
 
+   /**
+    * Ends a time step by regenerating power and counting the time step.
+    * @param state the current GameState
+    */
+   private void endCycle(GameState state) {
       if(state.power < 1.0) {
-         state.power += POWER_REGEN;
+         state.power += rules.getPowerRegen();
+      }
+      if (events != null) {
+         events.endTick(state);
+      }
+      state.tick++;
+
+      if (recorder != null) {
+         recorder.recordTick(state, this);
       }
    }
 
    /**
     * Update the state of the missile by one time step by moving them
-    * appropriately and checking for collisions with buildings
+    * appropriately and checking for collisions with buildings.  The whole
+    * path of every missile is checked, see {@link MissileSweep}, so that a
+    * missile explodes where it first touches the ground or a building.
     * @param state the current GameState
     */
-   private void updateMissiles(GameState state) {
-      Iterator missiles = state.missiles.iterator();
-      Iterator buildings;
-      boolean buildingHit;
+   void updateMissiles(GameState state) {
+      MissileStore missiles = state.missiles;
+      Skyline skyline = getSkyline(state);
+      missiles.settle();
 
-      // Iterate over each currently active missile.
-      while(missiles.hasNext()) {
-         Missile m = (Missile)missiles.next();
+      // Iterate over each currently active missile.  Runs backwards since
+      // removing a missile moves the last missile into its place.
+      for (int i = missiles.count() - 1; i >= 0; i--) {
 
-         // Move the missile and get its new location.
-         m.move();
-         Vector2D location = m.getLocation();
+         // Move the missile, stopping it where it hits something.
+         int fate = sweep.moveMissile(missiles, i, state.worldWidth, skyline);
 
          // If missile went of the left or right edge of the screen, remove it
-         if (location.getIComp() < 0 ||
-             location.getIComp() > state.worldWidth)
+         if (fate == MissileSweep.REMOVE)
          {
-            missiles.remove();
+            missiles.remove(i);
          }
-         // If missile hit the ground, remove it, flag building hit and create an explosion
-         else if (location.getJComp() < 0)
+         // If missile hit the ground or a building, remove it and create an
+         // explosion where it hit
+         else if (fate == MissileSweep.EXPLODE)
          {
-            location.setJComp(0);
-            missiles.remove();
-            buildingHit = true;
-            state.explosions.add(m.explode());
+            explodeMissile(state, i);
+            missiles.remove(i);
          }
-         else
-         {
-            // Loop over all the buildings to see if we hit any of them.
-            buildings = state.buildings.iterator();
-            buildingHit = false;
-            while(buildings.hasNext() && !buildingHit) {
-               Building b = (Building)buildings.next();
-               if(b.isInterior(m.getLocation())) {
-                  missiles.remove();
-                  buildingHit = true;
-                  state.explosions.add(m.explode());
-               }
-            } // end while(buildings.hasNext() && !buildingHit)
-         } // end else
-      } // end while(missiles.hasNext())
+      } // end for each missile
 
    } // end method updateMissiles(GameState state)
 
 
    /**
-    * Adds missiles to the game (as defined by the state object)
+    * Adds missiles to the game (as defined by the state object), as
+    * scheduled by the spawn scheduler.
     * @param state the current GameState
     */
-   private void createMissiles(GameState state) {
-
-       // Adds up to 2 missiles if there are
-       // two few missiles currently alive.
-      if(state.missiles.size() < gen.nextInt(5)) {
-         int max = gen.nextInt(3);
-         for (int i = 0; i <= max; i++) {
-            int x = gen.nextInt(state.worldWidth);
-            int y = state.worldHeight;
-            int dx = gen.nextInt(MAX_VEL*2) - MAX_VEL;
-            int dy = -2 - gen.nextInt(MAX_VEL);
-            Missile m = new Missile(new Vector2D(x, y), new Vector2D(dx, dy));
-            m.setExplosionSize(gen.nextInt(Missile.MAX_EXPLOSION_SIZE));
-            m.setSize(5 + gen.nextInt(5));
-            state.missiles.add(m);
-         }
+   void createMissiles(GameState state) {
+      spawner.spawn(state, rules, gen);
+   }
+
+   /**
+    * Gives the player the points for destroying the missile with the given
+    * index.  The missile itself is left in place.
+    * @param state the current GameState
+    * @param m the index of the missile destroyed
+    */
+   void missileDestroyed(GameState state, int m) {
+      state.score += 1000;
+      if (events != null) {
+         events.add(GameEvent.MISSILE_DESTROYED, state.tick, state.missiles.x[m],
+                    state.missiles.y[m], state.score, 1000, 0.0F);
       }
    }
 
+   /**
+    * Explodes the missile with the given index by adding a missile
+    * explosion centered at its current location.  The missile itself is
+    * left in place.
+    * @param state the current GameState
+    * @param i the index of the missile to explode
+    */
+   void explodeMissile(GameState state, int i) {
+      MissileStore missiles = state.missiles;
+      state.explosions.add(missiles.x[i], missiles.y[i],
+                           missiles.explosionSize[i],
+                           Missile.DEFAULT_EXPLOSION_SPEED,
+                           MissileExplosion.DAMAGE);
+   }
+
    /**
     * Processes all the clicks by the user since this method was last called.
     * @param state the current GameSate
     */
-   private void updatePlayerInput(GameState state){
-      Iterator clicks = state.playerClicks.iterator();
-      Iterator buildings;
+   void updatePlayerInput(GameState state){
+      ArrayList buildings = state.buildings;
+      Skyline skyline = getSkyline(state);
       boolean isExplosionClick = true;
 
+      // Take all the clicks made so far off the queue at once.  Clicks made
+      // while the time step runs are left for the next time step.
+      if (clickX.length < state.playerClicks.capacity()) {
+         clickX = new int[state.playerClicks.capacity()];
+         clickY = new int[state.playerClicks.capacity()];
+         clickTime = new long[state.playerClicks.capacity()];
+      }
+      int nrOfClicks = state.playerClicks.drain(clickX, clickY, clickTime);
+      if (GameMetrics.ENABLED && nrOfClicks > 0) {
+         long now = System.nanoTime();
+         for (int i = 0; i < nrOfClicks; i++) {
+            GameMetrics.CLICK_LATENCY.record(now - clickTime[i]);
+         }
+      }
+      if (recorder != null) {
+         recorder.recordClicks(state.tick, clickX, clickY, nrOfClicks);
+      }
+
       // Loop over all the clicks.
-      while (clicks.hasNext()) {
-         Vector2D c = (Vector2D) clicks.next();
-         clicks.remove();
+      for (int i = 0; i < nrOfClicks; i++) {
+         int x = clickX[i];
+         int y = clickY[i];
 
          // Used to indicate if c should create an explosion or not.
          isExplosionClick = true;
 
-         // Loop over all the buildings to see if the player clicked on one.
-         buildings = state.buildings.iterator();
-         while (buildings.hasNext()) {
-            Building b = (Building)buildings.next();
-            if (b.isInterior(c)) {
+         // Look up the building at the click to see if the player clicked
+         // on it.  Only where buildings overlap do all of them have to be
+         // checked.
+         if (state.chunks != null) {
+            state.chunks.require(state, x);
+         }
+         int id = skyline.buildingAt(x);
+         if (id >= 0) {
+            Building b = skyline.getBuilding(id);
+            if (b.isInterior(x, y)) {
                // Clicked inside a building,
                // repair the building and deduct points
                b.repair();
                state.score -= 10;
+               buildingRepaired(state, b);
 
                // Don't create an explosion by clicking on a building.
                isExplosionClick = false;
             }
+         } else if (id == Skyline.SEVERAL) {
+            for (int j = 0; j < buildings.size(); j++) {
+               Building b = (Building)buildings.get(j);
+               if (b.isInterior(x, y)) {
+                  b.repair();
+                  state.score -= 10;
+                  buildingRepaired(state, b);
+                  isExplosionClick = false;
+               }
+            }
          }
 
          // Check to see if we need to create an explosion.
          if (isExplosionClick && state.power > 0.0F) {
             // Decrease the power so that future explosions are smaller.
-            state.power -= POWER_HIT;
+            state.power -= rules.getPowerHit();
 
             // Create an explosion. The maximum size depends on the power.
-            // A user click results in a DefenderExplosion
-            state.explosions.add(new DefenderExplosion(c, (int)(50*state.power), 5));
+            // A user click results in a defender explosion, which does no
+            // damage to the buildings.
+            state.explosions.add(x, y,
+                                 (int)(50*state.power), 5,
+                                 DefenderExplosion.DAMAGE);
          }
       } // end of looping over user clicks
    }
@@ -178,62 +394,199 @@ public class GameLogic {
     * Check to see if explosions have destroyed missiles or buildings.
     * @param state the current GameState
     */
-   private void updateExplosions(GameState state) {
-      Iterator explosions = state.explosions.iterator();
+   void updateExplosions(GameState state) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+
+      // Index the missiles once for this time step, so that every explosion
+      // only has to check the missiles in the grid cells its radius
+      // overlaps.  Destroyed missiles are flagged and removed afterwards,
+      // since removing them would move other missiles around in the grid.
+      buildMissileGrid(state);
+      int nrDestroyed = 0;
+
+      // Loop over the current set of explosions.  Runs backwards since
+      // removing an explosion moves the last explosion into its place, and
+      // that way new explosions added at the end are not visited until the
+      // next time step.
+      for (int i = explosions.count() - 1; i >= 0; i--) {
+
+         int radius = (explosions.radius[i] += explosions.growth[i]);
+         if (radius > explosions.maxRadius[i]) {
+            // The explosion has reached its maximum size.
+            explosions.remove(i);
+            continue;
+         }
+
+         // Check if the explosion has destroyed a missile at any moment of
+         // the time step, while both moved and grew.  The kernel finds the
+         // missiles ending up close enough, and only those are swept.
+         int x = explosions.x[i];
+         int y = explosions.y[i];
+         int startRadius = radius - explosions.growth[i];
+         int candidates = missileGrid.query(x, y, reach(startRadius, radius, maxStep),
+                                            KERNEL);
+         int[] found = missileGrid.getResults();
+         for (int c = 0; c < candidates; c++) {
+            int m = found[c];
+            if (!destroyed[m] &&
+                Explosion.intersects(x, y, startRadius, radius,
+                                     missiles.x[m] - missiles.dx[m],
+                                     missiles.y[m] - missiles.dy[m],
+                                     missiles.x[m], missiles.y[m])) {
+               // Explosion intersects a missile,
+               // adds a new explosion and give the player some points.
+               explodeMissile(state, m);
+               destroyed[m] = true;
+               nrDestroyed++;
+               missileDestroyed(state, m);
+            }
+         }
 
-      // Used to keep track of any new explosions, such as ones
-      // created when an existing explosion destroys a missile.
-      LinkedList newExplosions = new LinkedList();
+         damageBuildings(state, i);
+      } // end of looping over explosions
 
-      // Loop over the current set of explosions.
-      while (explosions.hasNext()) {
-         Explosion e = (Explosion) explosions.next();
+      // Remove the destroyed missiles, backwards for the same reason as above.
+      for (int m = missiles.count() - 1; m >= 0 && nrDestroyed > 0; m--) {
+         if (destroyed[m]) {
+            missiles.remove(m);
+            nrDestroyed--;
+         }
+      }
+   }
 
-         if (e.explode()) {
-            // The explosion has reached its maximum size.
-            explosions.remove();
-         } else {
-            // Check if the explosion has destroyed a missile.
-            Iterator missiles = state.missiles.iterator();
-            while (missiles.hasNext()) {
-               Missile m = (Missile) missiles.next();
-               if (e.intersects(m)) {
-                  // Explosion intersects a missile,
-                  // adds a new explosion and give the player some points.
-                  newExplosions.add(m.explode());
-                  missiles.remove();
-                  state.score += 1000;                  
-               }
+   /**
+    * Damages the buildings hit by an explosion, and removes the buildings
+    * it destroys.
+    * @param state the current GameState
+    * @param i the index of the explosion
+    */
+   void damageBuildings(GameState state, int i) {
+      ExplosionStore explosions = state.explosions;
+      ArrayList buildings = state.buildings;
+      int x = explosions.x[i];
+      int y = explosions.y[i];
+      int radius = explosions.radius[i];
+
+      // Check if the explosion hit a building.  Runs backwards so that
+      // destroyed buildings can be removed as we go.
+      for (int j = buildings.size() - 1; j >= 0; j--) {
+         Building b = (Building) buildings.get(j);
+         if (Explosion.intersects(x, y, radius, b)) {
+            // Explosion intersects a building,
+            // code damages the building and then
+            // removes it if it is destroyed.
+            b.damage(explosions.damage[i]);
+            buildingDamaged(state, b, b.getHealth());
+            if (b.isDestroyed()) {
+               removeBuilding(state, j);
             }
 
-            // Check if the explosion hit a building.
-            Iterator buildings = state.buildings.iterator();
-            while (buildings.hasNext()) {
-               Building b = (Building) buildings.next();
-               if (e.intersects(b)) {
-                  // Explosion intersects a building,
-                  // code damages the building and then
-                  // removes it if it is destroyed.
-                  b.damage(e.getDamage());
-                  if (b.isDestroyed()) {
-                     buildings.remove();
-                  }
-                  
-               } // end if explosion intersects building
-            } // end of looping over buildings
-         } // end else block (explosion has not reached is maximum size)
-      } // end of looping over explosions
+         } // end if explosion intersects building
+      } // end of looping over buildings
+   }
+
+   /**
+    * Returns how far from the center of an explosion a missile can end up
+    * after touching the explosion during the time step.  The explosion is
+    * at most radius large, and the missile moves at most maxStep along
+    * either axis, so less than 1.5 maxStep in all, after touching it.
+    * @param startRadius the radius of the explosion at the start of the
+    * time step
+    * @param radius the radius of the explosion at the end of the time step
+    * @param maxStep the largest distance a missile moves along either axis
+    * @return the distance from the explosion the missiles must be within
+    */
+   static int reach(int startRadius, int radius, int maxStep) {
+      return Math.max(Math.max(0, startRadius), radius) + maxStep + (maxStep + 1) / 2;
+   }
+
+   /**
+    * Rebuilds the missile grid from the currently active missiles, resizing
+    * it first if the size of the game world has changed.  Also clears the
+    * flags of destroyed missiles and finds the fastest missile.
+    * @param state the current GameState
+    */
+   private void buildMissileGrid(GameState state) {
+      MissileStore missiles = state.missiles;
+      if (!missileGrid.covers(state.worldWidth, state.worldHeight)) {
+         missileGrid.resize(state.worldWidth, state.worldHeight);
+      }
+      if (destroyed.length < missiles.count()) {
+         destroyed = new boolean[missiles.capacity()];
+      } else {
+         Arrays.fill(destroyed, 0, missiles.count(), false);
+      }
+      missileGrid.build(missiles.x, missiles.y, missiles.count());
+      maxStep = missiles.maxStep();
+   }
+
+   /**
+    * Returns the skyline of the game, rebuilding it first if it does not
+    * hold the same number of buildings as the game, for instance because
+    * the buildings were added by someone else.
+    * @param state the current GameState
+    * @return the skyline of the game
+    */
+   Skyline getSkyline(GameState state) {
+      if (state.skyline.size() != state.buildings.size()) {
+         state.skyline.build(state.buildings);
+      }
+      return state.skyline;
+   }
+
+   /**
+    * Reports that a building was hit by an explosion, once for every hit.
+    * @param state the current GameState
+    * @param b the building
+    * @param health the health of the building after the hit
+    */
+   void buildingDamaged(GameState state, Building b, float health) {
+      if (events != null) {
+         events.add(GameEvent.BUILDING_DAMAGED, state.tick, b.getTopLeft().getIComp(),
+                    b.getTopLeft().getJComp(), 0, 0, health);
+      }
+   }
+
+   /**
+    * Reports that a building was repaired by the player.
+    * @param state the current GameState
+    * @param b the building, with its health after the repair
+    */
+   void buildingRepaired(GameState state, Building b) {
+      if (events != null) {
+         events.add(GameEvent.BUILDING_REPAIRED, state.tick, b.getTopLeft().getIComp(),
+                    b.getTopLeft().getJComp(), 0, 0, b.getHealth());
+      }
+   }
 
-      // Add all the new explosions.
-      state.explosions.addAll(newExplosions);
+   /**
+    * Removes a destroyed building from the game and from the skyline.
+    * @param state the current GameState
+    * @param j the index of the building in the list of buildings
+    */
+   void removeBuilding(GameState state, int j) {
+      Skyline skyline = getSkyline(state);
+      Building b = (Building) state.buildings.remove(j);
+      skyline.remove(b);
+      if (events != null) {
+         events.add(GameEvent.BUILDING_DESTROYED, state.tick, b.getTopLeft().getIComp(),
+                    b.getTopLeft().getJComp(), 0, 0, 0.0F);
+      }
    }
 
    /**
     * Initializes the game state by setting the power and adding buildings.
+    * The buildings of a world streamed in chunks are generated from a seed
+    * of their own, see {@link WorldChunks#generate}.
     * @param state the GameState to initialize
     */
    public void initializeGameState(GameState state) {
-      initializeSkyLine(state);
+      if (state.chunks != null) {
+         state.chunks.generate(state, gen.nextLong());
+      } else {
+         initializeSkyLine(state);
+      }
       state.power = 1.0F;
    }
 
@@ -254,6 +607,7 @@ public class GameLogic {
          // Increment the loop index here
          point += incr + 5 + gen.nextInt(BUILDING_SPACING);
       }
+      state.skyline.build(state.buildings);
   }
 
    /**
@@ -263,7 +617,7 @@ public class GameLogic {
     */
    public boolean isGameOver(GameState state) {
       // The game is over when there are no buildings left
-      if (state.buildings.size() < 1)
+      if (state.countBuildings() < 1)
         return true;
       else
         return false;
@@ -0,0 +1,277 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * This class holds the latency histograms and entity counts of a running
+ * Missile Command game, and publishes them through the platform MBean
+ * server as {@link #OBJECT_NAME}, where they can be read with jconsole or
+ * scraped by any JMX client.
+ * <p>
+ * Metrics are only collected when the JVM is started with
+ * <code>-Dmissilecommand.metrics=true</code>.  Every instrumented piece of
+ * code checks {@link #ENABLED} first, and since it is a static final field
+ * the JIT compiler removes the instrumentation altogether when metrics are
+ * off.
+ * <p>
+ * For every histogram the MBean has the attributes
+ * <code>&lt;name&gt;.count</code>, <code>.mean</code>, <code>.p50</code>,
+ * <code>.p99</code>, <code>.p999</code> and <code>.max</code>, all times in
+ * nanoseconds, and for every entity count an attribute of its own.  The
+ * operation <code>reset</code> empties the histograms.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameMetrics implements DynamicMBean {
+
+   /** Whether metrics are collected. */
+   public final static boolean ENABLED = Boolean.getBoolean("missilecommand.metrics");
+
+   /** The name the metrics are published under. */
+   public final static String OBJECT_NAME = "MissileCommand:type=GameMetrics";
+
+   /** The time of a whole time step, {@link GameLogic#updateCycle}. */
+   public final static LatencyHistogram UPDATE_CYCLE = new LatencyHistogram("updateCycle");
+
+   /** The time of {@link GameLogic#createMissiles}. */
+   public final static LatencyHistogram CREATE_MISSILES = new LatencyHistogram("createMissiles");
+
+   /** The time of {@link GameLogic#updateMissiles}. */
+   public final static LatencyHistogram UPDATE_MISSILES = new LatencyHistogram("updateMissiles");
+
+   /** The time of {@link GameLogic#updatePlayerInput}. */
+   public final static LatencyHistogram UPDATE_PLAYER_INPUT = new LatencyHistogram("updatePlayerInput");
+
+   /** The time of {@link GameLogic#updateExplosions}. */
+   public final static LatencyHistogram UPDATE_EXPLOSIONS = new LatencyHistogram("updateExplosions");
+
+   /** The time of drawing a frame, {@link GameDisplay#update}. */
+   public final static LatencyHistogram DISPLAY_UPDATE = new LatencyHistogram("displayUpdate");
+
+   /** The time of copying the frame to the screen, {@link GameDisplay#paintComponent}. */
+   public final static LatencyHistogram DISPLAY_PAINT = new LatencyHistogram("displayPaint");
+
+   /** The time from a click to the time step taking it off the click queue. */
+   public final static LatencyHistogram CLICK_LATENCY = new LatencyHistogram("clickLatency");
+
+   /** All the histograms, in the order they are published. */
+   private final static LatencyHistogram[] HISTOGRAMS = {
+      UPDATE_CYCLE, CREATE_MISSILES, UPDATE_MISSILES, UPDATE_PLAYER_INPUT,
+      UPDATE_EXPLOSIONS, DISPLAY_UPDATE, DISPLAY_PAINT, CLICK_LATENCY
+   };
+
+   /** The statistics published for every histogram. */
+   private final static String[] STATISTICS = { "count", "mean", "p50", "p99", "p999", "max" };
+
+   /** The number of missiles after the last time step. */
+   private static volatile int missiles;
+
+   /** The number of explosions after the last time step. */
+   private static volatile int explosions;
+
+   /** The number of buildings after the last time step. */
+   private static volatile int buildings;
+
+   /** The number of time steps run. */
+   private static volatile long ticks;
+
+   static {
+      if (ENABLED) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean
+               (new GameMetrics(), new ObjectName(OBJECT_NAME));
+         } catch (JMException e) {
+            System.err.println("The game metrics could not be published: " + e);
+         }
+      }
+   }
+
+   /** Only the MBean itself is ever created. */
+   private GameMetrics() { }
+
+   /**
+    * Records the number of entities after a time step.
+    * @param state the state of the game
+    */
+   public static void recordEntities(GameState state) {
+      missiles = state.missiles.count();
+      explosions = state.explosions.count();
+      buildings = state.countBuildings();
+      ticks = state.tick;
+   }
+
+   /** Empties all the histograms. */
+   public static void reset() {
+      for (int h = 0; h < HISTOGRAMS.length; h++) {
+         HISTOGRAMS[h].reset();
+      }
+   }
+
+   /**
+    * Prints a table of all the histograms that have recorded any values.
+    * @param out the stream to print to
+    */
+   public static void report(PrintStream out) {
+      out.println(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s %10s %10s",
+                                "Phase (us)", "count", "mean", "p50", "p99", "p99.9", "max"));
+      for (int h = 0; h < HISTOGRAMS.length; h++) {
+         LatencyHistogram histogram = HISTOGRAMS[h];
+         if (histogram.getCount() == 0) {
+            continue;
+         }
+         out.println(String.format(Locale.ROOT, "%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                                   histogram.getName(), histogram.getCount(),
+                                   histogram.getMean() / 1000.0,
+                                   histogram.getPercentile(0.5) / 1000.0,
+                                   histogram.getPercentile(0.99) / 1000.0,
+                                   histogram.getPercentile(0.999) / 1000.0,
+                                   histogram.getMax() / 1000.0));
+      }
+   }
+
+   /**
+    * Returns the value of an attribute of the MBean.
+    * @param name the name of the attribute
+    * @return the value of the attribute
+    * @throws AttributeNotFoundException if there is no such attribute
+    */
+   public Object getAttribute(String name) throws AttributeNotFoundException {
+      if (name.equals("missiles")) {
+         return Integer.valueOf(missiles);
+      } else if (name.equals("explosions")) {
+         return Integer.valueOf(explosions);
+      } else if (name.equals("buildings")) {
+         return Integer.valueOf(buildings);
+      } else if (name.equals("ticks")) {
+         return Long.valueOf(ticks);
+      }
+
+      int dot = name.lastIndexOf('.');
+      if (dot > 0) {
+         String histogramName = name.substring(0, dot);
+         String statistic = name.substring(dot + 1);
+         for (int h = 0; h < HISTOGRAMS.length; h++) {
+            LatencyHistogram histogram = HISTOGRAMS[h];
+            if (!histogram.getName().equals(histogramName)) {
+               continue;
+            }
+            if (statistic.equals("count")) {
+               return Long.valueOf(histogram.getCount());
+            } else if (statistic.equals("mean")) {
+               return Double.valueOf(histogram.getMean());
+            } else if (statistic.equals("p50")) {
+               return Long.valueOf(histogram.getPercentile(0.5));
+            } else if (statistic.equals("p99")) {
+               return Long.valueOf(histogram.getPercentile(0.99));
+            } else if (statistic.equals("p999")) {
+               return Long.valueOf(histogram.getPercentile(0.999));
+            } else if (statistic.equals("max")) {
+               return Long.valueOf(histogram.getMax());
+            }
+         }
+      }
+      throw new AttributeNotFoundException(name);
+   }
+
+   /**
+    * Returns the values of the given attributes, leaving out the ones that
+    * do not exist.
+    * @param names the names of the attributes
+    * @return the attributes found
+    */
+   public AttributeList getAttributes(String[] names) {
+      AttributeList list = new AttributeList();
+      for (int i = 0; i < names.length; i++) {
+         try {
+            list.add(new Attribute(names[i], getAttribute(names[i])));
+         } catch (AttributeNotFoundException e) {
+            // Left out of the list, as the MBean contract says.
+         }
+      }
+      return list;
+   }
+
+   /**
+    * Refuses to set an attribute, since they are all read-only.
+    * @param attribute the attribute to set
+    * @throws AttributeNotFoundException always
+    */
+   public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+   }
+
+   /**
+    * Refuses to set attributes, since they are all read-only.
+    * @param attributes the attributes to set
+    * @return an empty list
+    */
+   public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+   }
+
+   /**
+    * Invokes an operation of the MBean, of which there is only reset.
+    * @param operation the name of the operation
+    * @param params the parameters of the operation
+    * @param signature the types of the parameters
+    * @return null
+    * @throws ReflectionException if there is no such operation
+    */
+   public Object invoke(String operation, Object[] params, String[] signature)
+      throws ReflectionException {
+      if (operation.equals("reset") && (params == null || params.length == 0)) {
+         reset();
+         return null;
+      }
+      throw new ReflectionException(new NoSuchMethodException(operation));
+   }
+
+   /**
+    * Describes the attributes and operations of the MBean.
+    * @return the description of the MBean
+    */
+   public MBeanInfo getMBeanInfo() {
+      ArrayList attributes = new ArrayList();
+      attributes.add(new MBeanAttributeInfo("ticks", "long",
+                     "The number of time steps run", true, false, false));
+      attributes.add(new MBeanAttributeInfo("missiles", "int",
+                     "The number of missiles", true, false, false));
+      attributes.add(new MBeanAttributeInfo("explosions", "int",
+                     "The number of explosions", true, false, false));
+      attributes.add(new MBeanAttributeInfo("buildings", "int",
+                     "The number of buildings", true, false, false));
+      for (int h = 0; h < HISTOGRAMS.length; h++) {
+         for (int s = 0; s < STATISTICS.length; s++) {
+            String type = STATISTICS[s].equals("mean") ? "double" : "long";
+            attributes.add(new MBeanAttributeInfo
+               (HISTOGRAMS[h].getName() + "." + STATISTICS[s], type,
+                "The " + STATISTICS[s] + " of " + HISTOGRAMS[h].getName() +
+                (STATISTICS[s].equals("count") ? "" : ", in nanoseconds"),
+                true, false, false));
+         }
+      }
+      MBeanOperationInfo[] operations = {
+         new MBeanOperationInfo("reset", "Empties the latency histograms",
+                                new MBeanParameterInfo[0], "void",
+                                MBeanOperationInfo.ACTION)
+      };
+      return new MBeanInfo(GameMetrics.class.getName(),
+                           "Latencies and entity counts of the Missile Command game",
+                           (MBeanAttributeInfo[]) attributes.toArray(new MBeanAttributeInfo[0]),
+                           null, operations, null);
+   }
+
+}
@@ -0,0 +1,77 @@
+import java.util.Random;
+
+/**
+ * This class implements the random number generator of the Missile Command
+ * game.  It gives exactly the same numbers as {@link Random} for the same
+ * seed, but its internal state can be read and restored, so that a game
+ * can be saved in the middle and continued later on exactly as it would
+ * have gone on.
+ * <p>
+ * Unlike {@link Random} the generator is not thread safe; it is only meant
+ * to be used by the thread running the game logic.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameRandom extends Random {
+
+   /** The multiplier of the linear congruential generator. */
+   private final static long MULTIPLIER = 0x5DEECE66DL;
+
+   /** The increment of the linear congruential generator. */
+   private final static long ADDEND = 0xBL;
+
+   /** The mask keeping the 48 bits of state. */
+   private final static long MASK = (1L << 48) - 1;
+
+   /** The 48 bits of state of the generator. */
+   private long state;
+
+   /** Creates a new generator seeded with the current time. */
+   public GameRandom() {
+      this(System.nanoTime() ^ 0x2545F4914F6CDD1DL);
+   }
+
+   /**
+    * Creates a new generator with the given seed.
+    * @param seed the seed, as for {@link Random#Random(long)}
+    */
+   public GameRandom(long seed) {
+      super(seed);
+   }
+
+   /**
+    * Sets the seed of the generator, as {@link Random#setSeed} does.
+    * @param seed the new seed
+    */
+   public void setSeed(long seed) {
+      state = (seed ^ MULTIPLIER) & MASK;
+   }
+
+   /**
+    * Returns the internal state of the generator.  The state is not the
+    * seed; it can only be given back to {@link #setState}.
+    * @return the internal state of the generator
+    */
+   public long getState() { return state; }
+
+   /**
+    * Restores the internal state of the generator, as returned by
+    * {@link #getState} earlier.
+    * @param state the internal state to restore
+    */
+   public void setState(long state) {
+      this.state = state & MASK;
+   }
+
+   /**
+    * Generates the next pseudorandom number, as {@link Random#next} does.
+    * @param bits the number of random bits
+    * @return the next pseudorandom value
+    */
+   protected int next(int bits) {
+      state = (state * MULTIPLIER + ADDEND) & MASK;
+      return (int) (state >>> (48 - bits));
+   }
+
+}
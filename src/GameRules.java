@@ -0,0 +1,107 @@
+/**
+ * This class holds the tunable rules of a Missile Command game: how fast
+ * power comes back, what a click costs, how fast missiles fly and how
+ * eagerly they are sent.  The default rules are the ones the game has
+ * always been played with, see {@link GameLogic#POWER_REGEN},
+ * {@link GameLogic#POWER_HIT} and {@link GameLogic#MAX_VEL}.
+ * <p>
+ * Rules are immutable, so one instance can be shared by any number of
+ * games running on any number of threads.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameRules {
+
+   /** The rules the game is played with by default. */
+   public final static GameRules DEFAULT = new GameRules();
+
+   /** The power regained in every time step. */
+   private final float powerRegen;
+
+   /** The power spent by every click that makes an explosion. */
+   private final float powerHit;
+
+   /** Used to determine the velocity of newly created missiles. */
+   private final int maxVelocity;
+
+   /**
+    * New missiles are only sent while fewer missiles than a random number
+    * below this limit are active.
+    */
+   private final int spawnLimit;
+
+   /** The largest number of missiles sent at once. */
+   private final int maxSpawned;
+
+   /** Creates the default rules. */
+   public GameRules() {
+      this(GameLogic.POWER_REGEN, GameLogic.POWER_HIT, GameLogic.MAX_VEL, 5, 3);
+   }
+
+   /**
+    * Creates rules with the given values.
+    * @param powerRegen the power regained in every time step
+    * @param powerHit the power spent by every click that makes an explosion
+    * @param maxVelocity used to determine the velocity of new missiles;
+    * missiles move up to this many pixels sideways and 2 to this many plus
+    * 1 pixels down per time step
+    * @param spawnLimit new missiles are only sent while fewer missiles than
+    * a random number below this limit are active
+    * @param maxSpawned the largest number of missiles sent at once
+    * @throws IllegalArgumentException if maxVelocity, spawnLimit or
+    * maxSpawned is less than 1
+    */
+   public GameRules(float powerRegen, float powerHit, int maxVelocity,
+                    int spawnLimit, int maxSpawned) {
+      if (maxVelocity < 1 || spawnLimit < 1 || maxSpawned < 1) {
+         throw new IllegalArgumentException("velocity and spawn rules must be at least 1");
+      }
+      this.powerRegen = powerRegen;
+      this.powerHit = powerHit;
+      this.maxVelocity = maxVelocity;
+      this.spawnLimit = spawnLimit;
+      this.maxSpawned = maxSpawned;
+   }
+
+   /**
+    * Returns the power regained in every time step.
+    * @return the power regained in every time step
+    */
+   public float getPowerRegen() { return powerRegen; }
+
+   /**
+    * Returns the power spent by every click that makes an explosion.
+    * @return the power spent by every click
+    */
+   public float getPowerHit() { return powerHit; }
+
+   /**
+    * Returns the number used to determine the velocity of new missiles.
+    * @return the maximum velocity of new missiles
+    */
+   public int getMaxVelocity() { return maxVelocity; }
+
+   /**
+    * Returns the limit below which a random number of active missiles
+    * must stay for new missiles to be sent.
+    * @return the spawn limit
+    */
+   public int getSpawnLimit() { return spawnLimit; }
+
+   /**
+    * Returns the largest number of missiles sent at once.
+    * @return the largest number of missiles sent at once
+    */
+   public int getMaxSpawned() { return maxSpawned; }
+
+   /**
+    * Returns the rules as a short string, for reports.
+    * @return the rules as a string
+    */
+   public String toString() {
+      return "regen " + powerRegen + ", hit " + powerHit + ", velocity " + maxVelocity +
+         ", spawn limit " + spawnLimit + ", max spawned " + maxSpawned;
+   }
+
+}
@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * This class runs a Missile Command game on a server and streams it to any
+ * number of clients over TCP, see {@link GameClient}.  The game logic and
+ * all the network traffic run on one thread, with a non-blocking
+ * {@link Selector} waiting for the network between time steps, so the game
+ * state is never shared with another thread.
+ * <p>
+ * Every message is an int giving the number of bytes that follow, a byte
+ * giving the type of the message, and the body:
+ * <ul>
+ * <li>{@link #SNAPSHOT} (server to client): the id of the latest click
+ * received from the client, as a variable length integer, followed by a
+ * snapshot written by {@link SnapshotCodec}.</li>
+ * <li>{@link #ACK} (client to server): the time step of the latest snapshot
+ * the client has decoded.</li>
+ * <li>{@link #CLICK} (client to server): the id of the click followed by
+ * its coordinates in the game world, see {@link GameClient#click}.</li>
+ * </ul>
+ * After every time step the server sends every client the new snapshot as
+ * the difference from the latest snapshot the client has acknowledged, or
+ * the whole snapshot if the server no longer keeps that one.  A client that
+ * has not yet taken all of the previous snapshot is skipped for the time
+ * step instead of queueing up more, so a slow client falls behind in
+ * snapshots rather than in time.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameServer implements Runnable {
+
+   /** The port the server listens on by default. */
+   public final static int DEFAULT_PORT = 7777;
+
+   /** The type of a message carrying a snapshot. */
+   public final static byte SNAPSHOT = 1;
+
+   /** The type of a message acknowledging a snapshot. */
+   public final static byte ACK = 2;
+
+   /** The type of a message carrying a click. */
+   public final static byte CLICK = 3;
+
+   /** The size of the buffer messages from a client are read into. */
+   public final static int INPUT_BUFFER_SIZE = 4096;
+
+   /** The number of bytes before the body of a message. */
+   public final static int MESSAGE_HEADER_SIZE = 4 + 1;
+
+   /** The state of the game. */
+   private GameState state;
+
+   /** The logic engine used to run the game. */
+   private GameLogic logic;
+
+   /** The length of one time step, in nanoseconds. */
+   private long tickNanos;
+
+   /** Waits for the network. */
+   private Selector selector;
+
+   /** Accepts new clients. */
+   private ServerSocketChannel server;
+
+   /** The snapshots of the last time steps. */
+   private SnapshotHistory history = new SnapshotHistory();
+
+   /** The connected clients, each a {@link Connection}. */
+   private ArrayList connections = new ArrayList();
+
+   /** Cleared to stop the server. */
+   private volatile boolean running = true;
+
+   /**
+    * Creates a new server for a new game in a world of the given size,
+    * listening on the given address.
+    * @param logic the game logic to use
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    * @param address the address to listen on; port 0 picks a free port
+    * @param tickNanos the length of one time step, in nanoseconds
+    * @throws IOException if the server can not listen on the address
+    */
+   public GameServer(GameLogic logic, int worldWidth, int worldHeight,
+                     InetSocketAddress address, long tickNanos) throws IOException {
+      this.logic = logic;
+      this.tickNanos = tickNanos;
+      state = new GameState();
+      state.worldWidth = worldWidth;
+      state.worldHeight = worldHeight;
+      logic.initializeGameState(state);
+
+      selector = Selector.open();
+      server = ServerSocketChannel.open();
+      server.configureBlocking(false);
+      server.bind(address);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+   }
+
+   /**
+    * Returns the port the server listens on.
+    * @return the port the server listens on
+    */
+   public int getPort() { return server.socket().getLocalPort(); }
+
+   /** Stops the server, which closes all the connections. */
+   public void stop() {
+      running = false;
+      selector.wakeup();
+   }
+
+   /**
+    * Runs the game and serves the clients until the game is over and the
+    * clients have been sent the final snapshot, or the server is stopped.
+    */
+   public void run() {
+      try {
+         serve();
+      } catch (IOException e) {
+         System.err.println("GameServer: " + e.getMessage());
+      } finally {
+         for (int i = connections.size() - 1; i >= 0; i--) {
+            close((Connection) connections.get(i));
+         }
+         try {
+            server.close();
+            selector.close();
+         } catch (IOException e) {
+            // Nothing more to do.
+         }
+      }
+   }
+
+   /**
+    * Runs every time step when it is due, and handles the network while
+    * waiting for the next one.
+    * @throws IOException if the selector fails
+    */
+   private void serve() throws IOException {
+      history.take(state.tick).copyFrom(state, System.nanoTime());
+      long nextTick = System.nanoTime() + tickNanos;
+
+      while (running) {
+         long wait = nextTick - System.nanoTime();
+         if (wait > 0) {
+            selector.select(Math.max(1, wait / 1000000));
+         } else {
+            selector.selectNow();
+         }
+         handleNetwork();
+
+         // Run every time step that is due, like GameController.
+         long now = System.nanoTime();
+         int steps = 0;
+         while (now - nextTick >= 0 && steps < GameController.MAX_STEPS_PER_FRAME &&
+                !logic.isGameOver(state)) {
+            logic.updateCycle(state);
+            nextTick += tickNanos;
+            steps++;
+         }
+         if (now - nextTick >= 0) {
+            nextTick = now + tickNanos;
+         }
+         if (steps > 0) {
+            GameSnapshot snapshot = history.take(state.tick);
+            snapshot.copyFrom(state, nextTick - tickNanos);
+            for (int i = connections.size() - 1; i >= 0; i--) {
+               send((Connection) connections.get(i), snapshot);
+            }
+         } else if (logic.isGameOver(state) && isFlushed()) {
+            running = false;
+         }
+      }
+   }
+
+   /** Accepts new clients, and reads from and writes to the others. */
+   private void handleNetwork() {
+      Iterator keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+         SelectionKey key = (SelectionKey) keys.next();
+         keys.remove();
+         if (!key.isValid()) {
+            continue;
+         }
+         if (key.isAcceptable()) {
+            accept();
+            continue;
+         }
+         Connection connection = (Connection) key.attachment();
+         try {
+            if (key.isReadable()) {
+               read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+               flush(connection);
+            }
+         } catch (IOException e) {
+            close(connection);
+         }
+      }
+   }
+
+   /** Accepts a new client, if one is waiting. */
+   private void accept() {
+      try {
+         SocketChannel channel = server.accept();
+         if (channel == null) {
+            return;
+         }
+         channel.configureBlocking(false);
+         channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+         Connection connection = new Connection(channel);
+         connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+         connections.add(connection);
+      } catch (IOException e) {
+         System.err.println("GameServer: could not accept a client: " + e.getMessage());
+      }
+   }
+
+   /**
+    * Reads what a client has sent, and handles every complete message.
+    * @param connection the client
+    * @throws IOException if the client has closed the connection or sent a
+    * malformed message
+    */
+   private void read(Connection connection) throws IOException {
+      ByteBuffer in = connection.in;
+      if (connection.channel.read(in) < 0) {
+         throw new IOException("connection closed");
+      }
+      in.flip();
+      try {
+         while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > in.capacity() - 4) {
+               throw new IOException("malformed message");
+            }
+            if (in.remaining() < 4 + length) {
+               break;
+            }
+            in.position(in.position() + 4);
+            int end = in.position() + length;
+            byte type = in.get();
+            if (type == ACK) {
+               long tick = SnapshotCodec.getVarLong(in);
+               if (tick > connection.acked && tick <= state.tick) {
+                  connection.acked = tick;
+               }
+            } else if (type == CLICK) {
+               long id = SnapshotCodec.getVarLong(in);
+               int x = (int) SnapshotCodec.getSigned(in);
+               int y = (int) SnapshotCodec.getSigned(in);
+               state.playerClicks.offer(x, y);
+               connection.echo = Math.max(connection.echo, id);
+            } else {
+               throw new IOException("unknown message " + type);
+            }
+            if (in.position() != end) {
+               throw new IOException("malformed message");
+            }
+         }
+      } catch (BufferUnderflowException e) {
+         throw new IOException("malformed message");
+      } finally {
+         in.compact();
+      }
+   }
+
+   /**
+    * Sends a snapshot to a client, unless the client has not yet taken all
+    * of the previous one.
+    * @param connection the client
+    * @param snapshot the snapshot to send
+    */
+   private void send(Connection connection, GameSnapshot snapshot) {
+      if (connection.out.hasRemaining()) {
+         return;
+      }
+      GameSnapshot base = null;
+      if (connection.acked >= 0 && snapshot.tick - connection.acked < history.capacity()) {
+         base = history.get(connection.acked);
+      }
+      int size = MESSAGE_HEADER_SIZE + SnapshotCodec.MAX_VARINT_SIZE +
+         SnapshotCodec.maxSize(snapshot);
+      if (connection.out.capacity() < size) {
+         connection.out = ByteBuffer.allocateDirect(Math.max(size, connection.out.capacity() * 2));
+      }
+
+      ByteBuffer out = connection.out;
+      out.clear();
+      out.position(4);
+      out.put(SNAPSHOT);
+      SnapshotCodec.putVarLong(out, connection.echo);
+      SnapshotCodec.encode(base, snapshot, out);
+      out.putInt(0, out.position() - 4);
+      out.flip();
+      try {
+         flush(connection);
+      } catch (IOException e) {
+         close(connection);
+      }
+   }
+
+   /**
+    * Writes as much of the pending output of a client as the network takes,
+    * and waits for the network to take the rest.
+    * @param connection the client
+    * @throws IOException if the connection is broken
+    */
+   private void flush(Connection connection) throws IOException {
+      connection.channel.write(connection.out);
+      connection.key.interestOps(connection.out.hasRemaining()
+                                 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                 : SelectionKey.OP_READ);
+   }
+
+   /**
+    * Checks if every client has been sent all its output.
+    * @return true if no output is pending, false otherwise
+    */
+   private boolean isFlushed() {
+      for (int i = 0; i < connections.size(); i++) {
+         if (((Connection) connections.get(i)).out.hasRemaining()) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Closes the connection to a client.
+    * @param connection the client
+    */
+   private void close(Connection connection) {
+      connections.remove(connection);
+      if (connection.key != null) {
+         connection.key.cancel();
+      }
+      try {
+         connection.channel.close();
+      } catch (IOException e) {
+         // The connection is gone either way.
+      }
+   }
+
+   /**
+    * Runs a game server until the game is over.  The arguments are options,
+    * all of which are optional:
+    * <pre>
+    * -port &lt;n&gt;             the port to listen on (default: 7777)
+    * -width &lt;pixels&gt;       the width of the game world (default: 640)
+    * -height &lt;pixels&gt;      the height of the game world (default: 480)
+    * -gameseed &lt;n&gt;         the seed of the game (default: the current time)
+    * -tick &lt;ms&gt;            the length of a time step (default: 40)
+    * </pre>
+    * @param args command line arguments as described above
+    * @throws IOException if the server can not listen on the port
+    */
+   public static void main(String[] args) throws IOException {
+      int port = DEFAULT_PORT;
+      int width = HeadlessSimulation.DEFAULT_WIDTH;
+      int height = HeadlessSimulation.DEFAULT_HEIGHT;
+      long gameSeed = System.nanoTime();
+      long tickNanos = GameController.TICK_NANOS;
+
+      for (int i = 0; i < args.length; i++) {
+         String option = args[i];
+         if (i + 1 == args.length) {
+            usage("missing value for " + option);
+         }
+         String value = args[++i];
+         if (option.equals("-port")) {
+            port = Integer.parseInt(value);
+         } else if (option.equals("-width")) {
+            width = Integer.parseInt(value);
+         } else if (option.equals("-height")) {
+            height = Integer.parseInt(value);
+         } else if (option.equals("-gameseed")) {
+            gameSeed = Long.parseLong(value);
+         } else if (option.equals("-tick")) {
+            tickNanos = (long) (Double.parseDouble(value) * 1000000);
+         } else {
+            usage("unknown option " + option);
+         }
+      }
+
+      GameServer server = new GameServer(new GameLogic(gameSeed), width, height,
+                                         new InetSocketAddress(port), tickNanos);
+      System.out.println("Serving game " + gameSeed + " on port " + server.getPort());
+      server.run();
+   }
+
+   /**
+    * Prints the given error and the usage of {@link #main} and exits.
+    * @param error the error to print
+    */
+   private static void usage(String error) {
+      System.err.println("GameServer: " + error);
+      System.err.println("usage: java GameServer [-port n] [-width pixels]" +
+                         " [-height pixels] [-gameseed n] [-tick ms]");
+      System.exit(1);
+   }
+
+   /**
+    * This class holds the state of the connection to one client.
+    */
+   private static class Connection {
+
+      /** The channel to the client. */
+      SocketChannel channel;
+
+      /** The key of the channel with the selector. */
+      SelectionKey key;
+
+      /** The bytes received but not yet handled. */
+      ByteBuffer in = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+
+      /** The bytes waiting to be sent, ready to be read. */
+      ByteBuffer out = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+
+      /** The latest time step the client has acknowledged, or -1. */
+      long acked = -1;
+
+      /** The id of the latest click received from the client, or 0. */
+      long echo;
+
+      /**
+       * Creates the state of a new connection.
+       * @param channel the channel to the client
+       */
+      Connection(SocketChannel channel) {
+         this.channel = channel;
+         out.flip();
+      }
+
+   }
+
+}
@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * This class holds a compact copy of everything the display and the
+ * scoreboard need from a {@link GameState} after one time step.  Snapshots
+ * are filled in by the thread running the game logic and handed to the
+ * other threads through a {@link SnapshotBuffer}; once a snapshot has been
+ * published it is never modified again until every reader has let go of
+ * it, so it can be read without any synchronization.
+ * <p>
+ * The arrays are reused from one time step to the next and may be longer
+ * than the number of entities they hold.
+ * <p>
+ * The missiles and explosions are also indexed by vertical columns of the
+ * world {@link #INDEX_COLUMN_WIDTH} pixels wide, so that a display showing
+ * only part of a wide world can find the entities it shows without looking
+ * at all the others.  The buildings need no index, since they are kept in
+ * order from left to right.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameSnapshot {
+
+   /** The width of the columns the entities are indexed by, in pixels. */
+   public final static int INDEX_COLUMN_WIDTH = 128;
+
+   /** The time step the snapshot was taken after, or -1 if none. */
+   public long tick = -1;
+
+   /**
+    * The time (as given by {@link System#nanoTime()}) at which the time step
+    * was due.  Used to interpolate between time steps.
+    */
+   public long tickNanos;
+
+   /** The player's score. */
+   public int score;
+
+   /** The player's power level, between 0 and 1. */
+   public float power;
+
+   /** The width of the game world (in pixels). */
+   public int worldWidth;
+
+   /** The height of the game world (in pixels). */
+   public int worldHeight;
+
+   /** The number of missiles. */
+   public int missileCount;
+
+   /** The x coordinate of every missile. */
+   public int[] missileX = new int[0];
+
+   /** The y coordinate of every missile. */
+   public int[] missileY = new int[0];
+
+   /** The x component of the velocity of every missile. */
+   public int[] missileDX = new int[0];
+
+   /** The y component of the velocity of every missile. */
+   public int[] missileDY = new int[0];
+
+   /** The size (diameter) of every missile. */
+   public int[] missileSize = new int[0];
+
+   /** The size of the explosion stored in every missile. */
+   public int[] missileExplosionSize = new int[0];
+
+   /** The number of explosions. */
+   public int explosionCount;
+
+   /** The x coordinate of the center of every explosion. */
+   public int[] explosionX = new int[0];
+
+   /** The y coordinate of the center of every explosion. */
+   public int[] explosionY = new int[0];
+
+   /** The current radius of every explosion. */
+   public int[] explosionRadius = new int[0];
+
+   /** The maximum radius of every explosion. */
+   public int[] explosionMaxRadius = new int[0];
+
+   /** The growth speed of every explosion. */
+   public int[] explosionGrowth = new int[0];
+
+   /** The number of buildings. */
+   public int buildingCount;
+
+   /** The x coordinate of the left side of every building. */
+   public int[] buildingLeft = new int[0];
+
+   /** The x coordinate of the right side of every building. */
+   public int[] buildingRight = new int[0];
+
+   /** The y coordinate of the top of every building. */
+   public int[] buildingTop = new int[0];
+
+   /** The y coordinate of the bottom of every building. */
+   public int[] buildingBottom = new int[0];
+
+   /** The health of every building, between 0 and 1. */
+   public float[] buildingHealth = new float[0];
+
+   /** The number of columns the entities are indexed by. */
+   public int indexColumns;
+
+   /**
+    * The position in {@link #missileOrder} of the first missile of every
+    * column, followed by the number of missiles.
+    */
+   public int[] missileColumnStart = new int[1];
+
+   /** The index of every missile, sorted by column. */
+   public int[] missileOrder = new int[0];
+
+   /** How far from its x coordinate any missile may be drawn, in pixels. */
+   public int missileReach;
+
+   /**
+    * The position in {@link #explosionOrder} of the first explosion of
+    * every column, followed by the number of explosions.
+    */
+   public int[] explosionColumnStart = new int[1];
+
+   /** The index of every explosion, sorted by column. */
+   public int[] explosionOrder = new int[0];
+
+   /** How far from its center any explosion may be drawn, in pixels. */
+   public int explosionReach;
+
+   /**
+    * Sets the number of missiles, explosions and buildings, growing the
+    * arrays if they are too short.  The contents of grown arrays are lost,
+    * so the caller must fill in every entity afterwards.
+    * @param missiles the number of missiles
+    * @param explosions the number of explosions
+    * @param buildings the number of buildings
+    */
+   public void resize(int missiles, int explosions, int buildings) {
+      missileCount = missiles;
+      if (missileX.length < missiles) {
+         missileX = new int[missiles];
+         missileY = new int[missiles];
+         missileDX = new int[missiles];
+         missileDY = new int[missiles];
+         missileSize = new int[missiles];
+         missileExplosionSize = new int[missiles];
+      }
+      explosionCount = explosions;
+      if (explosionX.length < explosions) {
+         explosionX = new int[explosions];
+         explosionY = new int[explosions];
+         explosionRadius = new int[explosions];
+         explosionMaxRadius = new int[explosions];
+         explosionGrowth = new int[explosions];
+      }
+      buildingCount = buildings;
+      if (buildingLeft.length < buildings) {
+         buildingLeft = new int[buildings];
+         buildingRight = new int[buildings];
+         buildingTop = new int[buildings];
+         buildingBottom = new int[buildings];
+         buildingHealth = new float[buildings];
+      }
+   }
+
+   /**
+    * Overwrites this snapshot with a copy of the given state.  Must only be
+    * called by the thread running the game logic, on a snapshot that has
+    * not been published.
+    * @param state the state to copy
+    * @param tickNanos the time at which the current time step was due
+    */
+   public void copyFrom(GameState state, long tickNanos) {
+      this.tick = state.tick;
+      this.tickNanos = tickNanos;
+      this.score = state.score;
+      this.power = state.power;
+      this.worldWidth = state.worldWidth;
+      this.worldHeight = state.worldHeight;
+
+      // Missiles moving lazily get their coordinates computed here, once
+      // per snapshot drawn.
+      MissileStore missiles = state.missiles;
+      missiles.settle();
+      missileCount = missiles.count();
+      if (missileX.length < missileCount) {
+         int capacity = missiles.capacity();
+         missileX = new int[capacity];
+         missileY = new int[capacity];
+         missileDX = new int[capacity];
+         missileDY = new int[capacity];
+         missileSize = new int[capacity];
+         missileExplosionSize = new int[capacity];
+      }
+      System.arraycopy(missiles.x, 0, missileX, 0, missileCount);
+      System.arraycopy(missiles.y, 0, missileY, 0, missileCount);
+      System.arraycopy(missiles.dx, 0, missileDX, 0, missileCount);
+      System.arraycopy(missiles.dy, 0, missileDY, 0, missileCount);
+      System.arraycopy(missiles.size, 0, missileSize, 0, missileCount);
+      System.arraycopy(missiles.explosionSize, 0, missileExplosionSize, 0, missileCount);
+
+      ExplosionStore explosions = state.explosions;
+      explosionCount = explosions.count();
+      if (explosionX.length < explosionCount) {
+         int capacity = explosions.capacity();
+         explosionX = new int[capacity];
+         explosionY = new int[capacity];
+         explosionRadius = new int[capacity];
+         explosionMaxRadius = new int[capacity];
+         explosionGrowth = new int[capacity];
+      }
+      System.arraycopy(explosions.x, 0, explosionX, 0, explosionCount);
+      System.arraycopy(explosions.y, 0, explosionY, 0, explosionCount);
+      System.arraycopy(explosions.radius, 0, explosionRadius, 0, explosionCount);
+      System.arraycopy(explosions.maxRadius, 0, explosionMaxRadius, 0, explosionCount);
+      System.arraycopy(explosions.growth, 0, explosionGrowth, 0, explosionCount);
+
+      // A world streamed in chunks shows all its buildings, resident or not.
+      int[] all = null;
+      if (state.chunks != null) {
+         buildingCount = state.chunks.collect(state);
+         all = state.chunks.getCollected();
+      } else {
+         buildingCount = state.buildings.size();
+      }
+      if (buildingLeft.length < buildingCount) {
+         buildingLeft = Arrays.copyOf(buildingLeft, buildingCount);
+         buildingRight = Arrays.copyOf(buildingRight, buildingCount);
+         buildingTop = Arrays.copyOf(buildingTop, buildingCount);
+         buildingBottom = Arrays.copyOf(buildingBottom, buildingCount);
+         buildingHealth = Arrays.copyOf(buildingHealth, buildingCount);
+      }
+      if (all != null) {
+         for (int i = 0; i < buildingCount; i++) {
+            int at = i * WorldChunks.PACKED_SIZE;
+            buildingLeft[i] = all[at + WorldChunks.LEFT];
+            buildingTop[i] = all[at + WorldChunks.TOP];
+            buildingRight[i] = all[at + WorldChunks.RIGHT];
+            buildingBottom[i] = all[at + WorldChunks.BOTTOM];
+            buildingHealth[i] = Float.intBitsToFloat(all[at + WorldChunks.HEALTH]);
+         }
+      } else {
+         for (int i = 0; i < buildingCount; i++) {
+            Building b = (Building) state.buildings.get(i);
+            buildingLeft[i] = b.getTopLeft().getIComp();
+            buildingTop[i] = b.getTopLeft().getJComp();
+            buildingRight[i] = b.getBottomRight().getIComp();
+            buildingBottom[i] = b.getBottomRight().getJComp();
+            buildingHealth[i] = b.getHealth();
+         }
+      }
+      buildIndex();
+   }
+
+   /**
+    * Indexes the missiles and explosions by column.  Called by
+    * {@link #copyFrom}, and must be called after filling in a snapshot in
+    * any other way, before the snapshot is drawn.
+    */
+   public void buildIndex() {
+      indexColumns = Math.max(1, (worldWidth + INDEX_COLUMN_WIDTH - 1) / INDEX_COLUMN_WIDTH);
+      if (missileColumnStart.length < indexColumns + 1) {
+         missileColumnStart = new int[indexColumns + 1];
+         explosionColumnStart = new int[indexColumns + 1];
+      }
+      if (missileOrder.length < missileCount) {
+         missileOrder = new int[missileX.length];
+      }
+      if (explosionOrder.length < explosionCount) {
+         explosionOrder = new int[explosionX.length];
+      }
+
+      missileReach = 0;
+      for (int i = 0; i < missileCount; i++) {
+         missileReach = Math.max(missileReach, Math.abs(missileDX[i]) +
+                                 Math.abs(missileSize[i]));
+      }
+      sortByColumn(missileX, missileCount, missileColumnStart, missileOrder);
+
+      explosionReach = 0;
+      for (int i = 0; i < explosionCount; i++) {
+         explosionReach = Math.max(explosionReach, Math.abs(explosionRadius[i]) +
+                                   Math.abs(explosionGrowth[i]));
+      }
+      sortByColumn(explosionX, explosionCount, explosionColumnStart, explosionOrder);
+   }
+
+   /**
+    * Returns the first building whose right side lies to the right of the
+    * given x coordinate, found by binary search since the buildings are
+    * kept in order from left to right.
+    * @param x the x coordinate
+    * @return the index of the building, or {@link #buildingCount} if there
+    * is none
+    */
+   public int buildingAfter(int x) {
+      int low = 0;
+      int high = buildingCount;
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (buildingRight[middle] <= x) {
+            low = middle + 1;
+         } else {
+            high = middle;
+         }
+      }
+      return low;
+   }
+
+   /**
+    * Returns the column of the index holding the given x coordinate.
+    * Coordinates outside the world belong to the first or the last column.
+    * @param x the x coordinate
+    * @return the column, between 0 and {@link #indexColumns} - 1
+    */
+   public int indexColumn(int x) {
+      int column = Math.floorDiv(x, INDEX_COLUMN_WIDTH);
+      return (column < 0) ? 0 : ((column >= indexColumns) ? indexColumns - 1 : column);
+   }
+
+   /**
+    * Sorts entities by column with a counting sort, which keeps entities of
+    * the same column in the order they have in the snapshot.
+    * @param xs the x coordinate of every entity
+    * @param count the number of entities
+    * @param columnStart receives the position of the first entity of every
+    * column, followed by the number of entities
+    * @param order receives the index of every entity, sorted by column
+    */
+   private void sortByColumn(int[] xs, int count, int[] columnStart, int[] order) {
+      Arrays.fill(columnStart, 0, indexColumns + 1, 0);
+      for (int i = 0; i < count; i++) {
+         columnStart[indexColumn(xs[i]) + 1]++;
+      }
+      for (int c = 0; c < indexColumns; c++) {
+         columnStart[c + 1] += columnStart[c];
+      }
+      // Every column is filled from its start, which moves the starts one
+      // column on; they are moved back afterwards.
+      for (int i = 0; i < count; i++) {
+         order[columnStart[indexColumn(xs[i])]++] = i;
+      }
+      for (int c = indexColumns; c > 0; c--) {
+         columnStart[c] = columnStart[c - 1];
+      }
+      columnStart[0] = 0;
+   }
+
+}
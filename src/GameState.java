@@ -1,41 +1,56 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * This class implements a structure to keep track of a Missile Command game's state.
  * Care must be taken to ensure that multiple threads do not modify the same
- * state instance at the same time.
+ * state instance at the same time, except for adding player clicks.
  *
  * @author Tobias Salem, alias Vassago
  * @version 1.0
  */
 public class GameState {
 
-   /**
-    * A list of all currently active missiles in the game.
-    * Each element of this list should be a {@link Missile} instance.
-    */
-   public LinkedList missiles;
+   /** All currently active missiles in the game. */
+   public MissileStore missiles;
 
    /**
-    * A list of all currently active explosions in the game.
-    * Each element of this list should be an {@link Explosion} instance.
+    * All currently active explosions in the game, both missile and
+    * defender explosions.
     */
-   public LinkedList explosions;
+   public ExplosionStore explosions;
 
    /**
     * A list of all currently active (alive) buildings in the game.
     * Each element of this list should be a {@link Building} instance.
     */
-   public LinkedList buildings;
+   public ArrayList buildings;
+
+   /**
+    * A height map of the buildings, used to find the building at a given
+    * x coordinate.  Kept up to date by {@link GameLogic}, which rebuilds it
+    * whenever it does not hold the same number of buildings as
+    * {@link #buildings}.
+    */
+   public Skyline skyline;
+
+   /**
+    * Streams the buildings of a wide world in chunks, in which case
+    * {@link #buildings} only holds the buildings of the resident chunks.
+    * Null if all the buildings are always in {@link #buildings}.  Must be
+    * set before the game is initialized.
+    */
+   public WorldChunks chunks;
 
    /**
-    * A list of all unprocessed clicks by the player.  Each element of this
-    * list should be a {@link Vector2D} instance.  The coordinates are
-    * relative to the users view of the game, i.e., (0,0) is in the lower
-    * left and positive x and y coordinates go the right and left,
-    * respectively.
+    * All unprocessed clicks by the player.  The coordinates are relative to
+    * the users view of the game, i.e., (0,0) is in the lower left and
+    * positive x and y coordinates go the right and left, respectively.
+    * Unlike the rest of the state, clicks may be added by any thread.
     */
-   public LinkedList playerClicks;
+   public ClickQueue playerClicks;
+
+   /** The number of time steps the game has been run for. */
+   public long tick;
 
    /** The player's current score. **/
    public int score;
@@ -58,12 +73,96 @@ public class GameState {
     * #worldHeight}.
     */
    public GameState() {
-      missiles = new LinkedList();
-      explosions = new LinkedList();
-      buildings = new LinkedList();
-      playerClicks = new LinkedList();
+      missiles = new MissileStore();
+      explosions = new ExplosionStore();
+      buildings = new ArrayList();
+      skyline = new Skyline();
+      playerClicks = new ClickQueue();
       score = 0;
       power = 0.0F;
    }
 
+   /**
+    * Returns the number of buildings left in the game, including the
+    * buildings of chunks that are not resident.
+    * @return the number of buildings left
+    */
+   public int countBuildings() {
+      return (chunks != null) ? chunks.countBuildings(this) : buildings.size();
+   }
+
+   /**
+    * Returns a checksum of the state of the game.  It covers every missile,
+    * explosion and building, in the order they are stored, and the exact
+    * bits of all floating point values, so two games have the same checksum
+    * only if they are (almost certainly) identical.  Unprocessed clicks are
+    * not included, and neither is which chunks of the world are resident.
+    * @return the checksum of the state
+    */
+   public long checksum() {
+      long hash = tick;
+      hash = mix(hash, score);
+      hash = mix(hash, Float.floatToIntBits(power));
+      hash = mix(hash, worldWidth);
+      hash = mix(hash, worldHeight);
+
+      missiles.settle();
+      hash = mix(hash, missiles.count());
+      for (int i = 0; i < missiles.count(); i++) {
+         hash = mix(hash, missiles.x[i]);
+         hash = mix(hash, missiles.y[i]);
+         hash = mix(hash, missiles.dx[i]);
+         hash = mix(hash, missiles.dy[i]);
+         hash = mix(hash, missiles.size[i]);
+         hash = mix(hash, missiles.explosionSize[i]);
+      }
+
+      hash = mix(hash, explosions.count());
+      for (int i = 0; i < explosions.count(); i++) {
+         hash = mix(hash, explosions.x[i]);
+         hash = mix(hash, explosions.y[i]);
+         hash = mix(hash, explosions.radius[i]);
+         hash = mix(hash, explosions.maxRadius[i]);
+         hash = mix(hash, explosions.growth[i]);
+         hash = mix(hash, Float.floatToIntBits(explosions.damage[i]));
+      }
+
+      if (chunks != null) {
+         int count = chunks.collect(this);
+         int[] all = chunks.getCollected();
+         hash = mix(hash, count);
+         for (int at = 0; at < count * WorldChunks.PACKED_SIZE; at += WorldChunks.PACKED_SIZE) {
+            hash = mix(hash, all[at + WorldChunks.LEFT]);
+            hash = mix(hash, all[at + WorldChunks.TOP]);
+            hash = mix(hash, all[at + WorldChunks.RIGHT]);
+            hash = mix(hash, all[at + WorldChunks.BOTTOM]);
+            hash = mix(hash, all[at + WorldChunks.HEALTH]);
+            hash = mix(hash, all[at + WorldChunks.REPAIR_RATE]);
+         }
+         return hash;
+      }
+      hash = mix(hash, buildings.size());
+      for (int j = 0; j < buildings.size(); j++) {
+         Building b = (Building) buildings.get(j);
+         hash = mix(hash, b.getTopLeft().getIComp());
+         hash = mix(hash, b.getTopLeft().getJComp());
+         hash = mix(hash, b.getBottomRight().getIComp());
+         hash = mix(hash, b.getBottomRight().getJComp());
+         hash = mix(hash, Float.floatToIntBits(b.getHealth()));
+         hash = mix(hash, Float.floatToIntBits(b.getRepairRate()));
+      }
+      return hash;
+   }
+
+   /**
+    * Mixes a value into a checksum.
+    * @param hash the checksum so far
+    * @param value the value to mix in
+    * @return the new checksum
+    */
+   private static long mix(long hash, int value) {
+      hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+      return hash ^ (hash >>> 29);
+   }
+
 }
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class converts the complete state of a Missile Command game to bytes
+ * and back.  Together with the state of the random number generator of the
+ * game logic, the bytes hold everything needed to continue the game exactly
+ * as it would have gone on: the time step, the score and power, the size of
+ * the world and every missile, explosion and building in the order they
+ * are stored.  Unprocessed clicks are not included.  The buildings of a
+ * world streamed in chunks are all written, resident or not, and read back
+ * with every chunk resident.
+ * <p>
+ * The state is written as a checksum (see {@link GameState#checksum()})
+ * followed by the fields, so that a damaged or misread state is caught
+ * when it is read back.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class GameStateCodec {
+
+   /** The number of bytes of the fixed fields, before the entities. */
+   private final static int HEADER_SIZE = 8 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+   /** The number of bytes of every missile. */
+   private final static int MISSILE_SIZE = 6 * 4;
+
+   /** The number of bytes of every explosion. */
+   private final static int EXPLOSION_SIZE = 6 * 4;
+
+   /** The number of bytes of every building. */
+   private final static int BUILDING_SIZE = 6 * 4;
+
+   /** No instances, this class only holds static methods. */
+   private GameStateCodec() { }
+
+   /**
+    * Returns the number of bytes the given state is written as.
+    * @param state the state to write
+    * @return the number of bytes written by {@link #write}
+    */
+   public static int size(GameState state) {
+      return HEADER_SIZE +
+         state.missiles.count() * MISSILE_SIZE +
+         state.explosions.count() * EXPLOSION_SIZE +
+         state.countBuildings() * BUILDING_SIZE;
+   }
+
+   /**
+    * Writes the given state to a buffer, which must have at least
+    * {@link #size} bytes remaining.
+    * @param state the state to write
+    * @param randomState the state of the random number generator of the
+    * game logic, see {@link GameLogic#getRandomState()}
+    * @param out the buffer to write to
+    */
+   public static void write(GameState state, long randomState, ByteBuffer out) {
+      MissileStore missiles = state.missiles;
+      ExplosionStore explosions = state.explosions;
+
+      missiles.settle();
+      out.putLong(state.checksum());
+      out.putLong(state.tick);
+      out.putLong(randomState);
+      out.putInt(state.score);
+      out.putFloat(state.power);
+      out.putInt(state.worldWidth);
+      out.putInt(state.worldHeight);
+      out.putInt(missiles.count());
+      out.putInt(explosions.count());
+      out.putInt(state.countBuildings());
+
+      for (int i = 0; i < missiles.count(); i++) {
+         out.putInt(missiles.x[i]);
+         out.putInt(missiles.y[i]);
+         out.putInt(missiles.dx[i]);
+         out.putInt(missiles.dy[i]);
+         out.putInt(missiles.size[i]);
+         out.putInt(missiles.explosionSize[i]);
+      }
+      for (int i = 0; i < explosions.count(); i++) {
+         out.putInt(explosions.x[i]);
+         out.putInt(explosions.y[i]);
+         out.putInt(explosions.radius[i]);
+         out.putInt(explosions.maxRadius[i]);
+         out.putInt(explosions.growth[i]);
+         out.putFloat(explosions.damage[i]);
+      }
+      if (state.chunks != null) {
+         int count = state.chunks.collect(state);
+         int[] all = state.chunks.getCollected();
+         for (int at = 0; at < count * WorldChunks.PACKED_SIZE; at++) {
+            // The packed buildings are laid out just like the written ones.
+            out.putInt(all[at]);
+         }
+         return;
+      }
+      for (int j = 0; j < state.buildings.size(); j++) {
+         Building b = (Building) state.buildings.get(j);
+         out.putInt(b.getTopLeft().getIComp());
+         out.putInt(b.getTopLeft().getJComp());
+         out.putInt(b.getBottomRight().getIComp());
+         out.putInt(b.getBottomRight().getJComp());
+         out.putFloat(b.getHealth());
+         out.putFloat(b.getRepairRate());
+      }
+   }
+
+   /**
+    * Reads a state written by {@link #write} into the given state, replacing
+    * all its missiles, explosions and buildings.  The unprocessed clicks of
+    * the state are left alone.
+    * @param in the buffer to read from
+    * @param state the state to read into
+    * @return the state of the random number generator of the game logic, to
+    * be given to {@link GameLogic#setRandomState}
+    * @throws IOException if the bytes do not hold a valid state
+    */
+   public static long read(ByteBuffer in, GameState state) throws IOException {
+      try {
+         long checksum = in.getLong();
+         state.tick = in.getLong();
+         long randomState = in.getLong();
+         state.score = in.getInt();
+         state.power = in.getFloat();
+         state.worldWidth = in.getInt();
+         state.worldHeight = in.getInt();
+         int nrOfMissiles = in.getInt();
+         int nrOfExplosions = in.getInt();
+         int nrOfBuildings = in.getInt();
+         if (nrOfMissiles < 0 || nrOfExplosions < 0 || nrOfBuildings < 0 ||
+             in.remaining() < (long) nrOfMissiles * MISSILE_SIZE +
+                              (long) nrOfExplosions * EXPLOSION_SIZE +
+                              (long) nrOfBuildings * BUILDING_SIZE) {
+            throw new IOException("truncated game state");
+         }
+
+         MissileStore missiles = state.missiles;
+         missiles.clear();
+         missiles.ensureCapacity(nrOfMissiles);
+         for (int i = 0; i < nrOfMissiles; i++) {
+            missiles.add(in.getInt(), in.getInt(), in.getInt(), in.getInt(),
+                         in.getInt(), in.getInt());
+         }
+
+         ExplosionStore explosions = state.explosions;
+         explosions.clear();
+         explosions.ensureCapacity(nrOfExplosions);
+         for (int i = 0; i < nrOfExplosions; i++) {
+            int x = in.getInt();
+            int y = in.getInt();
+            int radius = in.getInt();
+            int e = explosions.add(x, y, in.getInt(), in.getInt(), 0.0F);
+            explosions.radius[e] = radius;
+            explosions.damage[e] = in.getFloat();
+         }
+
+         state.buildings.clear();
+         for (int j = 0; j < nrOfBuildings; j++) {
+            Vector2D topLeft = new Vector2D(in.getInt(), in.getInt());
+            Vector2D bottomRight = new Vector2D(in.getInt(), in.getInt());
+            Building b = new Building(topLeft, bottomRight);
+            b.setHealth(in.getFloat());
+            b.setRepairRate(in.getFloat());
+            state.buildings.add(b);
+         }
+         if (state.chunks != null) {
+            state.chunks.adopt(state);
+         } else {
+            state.skyline.build(state.buildings);
+         }
+
+         if (state.checksum() != checksum) {
+            throw new IOException("game state does not match its checksum");
+         }
+         return randomState;
+      } catch (BufferUnderflowException e) {
+         throw new IOException("truncated game state");
+      }
+   }
+
+}
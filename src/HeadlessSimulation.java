@@ -0,0 +1,553 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class runs the Missile Command game logic without any display,
+ * scoreboard or delays, as fast as the machine allows.  Player clicks come
+ * from a {@link ClickPolicy}.  No AWT or Swing classes are used, so the
+ * simulation also runs on machines without a display, or with
+ * <code>java.awt.headless=true</code>.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class HeadlessSimulation {
+
+   /** The default width of the game world (in pixels). */
+   public final static int DEFAULT_WIDTH = 640;
+
+   /** The default height of the game world (in pixels). */
+   public final static int DEFAULT_HEIGHT = 480;
+
+   /**
+    * The number of bytes the time steps after the warmup may allocate when
+    * checking for garbage.  This leaves room for the few one-off allocations
+    * the JVM itself makes when it first runs or recompiles a rarely used
+    * code path; a time step that allocates even a single small object adds
+    * up to far more than this over a long run.
+    */
+   public final static long GARBAGE_TOLERANCE = 4096;
+
+   /** The number of strips that selects an {@link EventGameLogic}. */
+   private final static int EVENTS = -1;
+
+   /** The state of the simulated game. */
+   private GameState state;
+
+   /** The logic engine used to run the game. */
+   private GameLogic logic;
+
+   /** The source of the player's clicks. */
+   private ClickPolicy clicks;
+
+   /** The number of time steps run so far. */
+   private long ticks;
+
+   /** The file the game is saved to, or null. */
+   private CheckpointFile checkpoint;
+
+   /** The number of time steps between two checkpoints. */
+   private int checkpointInterval;
+
+   /** The time spent running time steps so far, in nanoseconds. */
+   private long elapsedNanos;
+
+   /**
+    * Creates a new simulation of a game in a world of the given size.
+    * @param logic the game logic to use
+    * @param clicks the source of player clicks, or null for no clicks
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    */
+   public HeadlessSimulation(GameLogic logic, ClickPolicy clicks,
+                             int worldWidth, int worldHeight) {
+      this(logic, clicks, worldWidth, worldHeight, null);
+   }
+
+   /**
+    * Creates a new simulation of a game in a world of the given size, whose
+    * buildings may be streamed in chunks.
+    * @param logic the game logic to use
+    * @param clicks the source of player clicks, or null for no clicks
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    * @param chunks streams the buildings of the world in chunks, or null to
+    * keep all the buildings live
+    */
+   public HeadlessSimulation(GameLogic logic, ClickPolicy clicks,
+                             int worldWidth, int worldHeight, WorldChunks chunks) {
+      this.logic = logic;
+      this.clicks = clicks;
+      state = new GameState();
+      state.worldWidth = worldWidth;
+      state.worldHeight = worldHeight;
+      state.chunks = chunks;
+      logic.initializeGameState(state);
+   }
+
+   /**
+    * Runs the game for the given number of time steps, or until the game
+    * is over, whichever comes first.
+    * @param maxTicks the maximum number of time steps to run
+    * @return the number of time steps actually run
+    */
+   public long run(long maxTicks) {
+      long start = System.nanoTime();
+      long ran = 0;
+      while (ran < maxTicks && !logic.isGameOver(state)) {
+         if (clicks != null) {
+            clicks.click(ticks, state);
+         }
+         logic.updateCycle(state);
+         ticks++;
+         ran++;
+         if (checkpoint != null && state.tick % checkpointInterval == 0) {
+            saveCheckpoint();
+         }
+      }
+      elapsedNanos += System.nanoTime() - start;
+      return ran;
+   }
+
+   /**
+    * Saves the game to the given checkpoint file every given number of
+    * time steps.  Errors writing the file do not stop the game, only the
+    * checkpoints.
+    * @param checkpoint the file to save the game to, or null to stop
+    * saving it
+    * @param interval the number of time steps between two checkpoints
+    */
+   public void setCheckpoint(CheckpointFile checkpoint, int interval) {
+      this.checkpoint = checkpoint;
+      this.checkpointInterval = interval;
+   }
+
+   /**
+    * Resumes the game saved in the given checkpoint file.  The clicks go
+    * on from the time step of the checkpoint, from the state the click
+    * policy was saved in.
+    * @param checkpoint the file the game was saved to
+    * @throws IOException if there is no valid checkpoint
+    */
+   public void restore(CheckpointFile checkpoint) throws IOException {
+      checkpoint.restore(state, logic);
+      ticks = state.tick;
+      if (clicks != null) {
+         clicks.setState(checkpoint.getClickState());
+      }
+   }
+
+   /** Saves the game to the checkpoint file, or stops saving it on errors. */
+   private void saveCheckpoint() {
+      try {
+         checkpoint.write(state, logic, (clicks == null) ? 0 : clicks.getState());
+      } catch (IOException e) {
+         System.err.println("The game could not be saved: " + e.getMessage());
+         checkpoint = null;
+      }
+   }
+
+   /**
+    * Returns the state of the simulated game.
+    * @return the state of the simulated game
+    */
+   public GameState getState() { return state; }
+
+   /**
+    * Returns the number of time steps run so far.
+    * @return the number of time steps run so far
+    */
+   public long getTicks() { return ticks; }
+
+   /**
+    * Returns the average number of time steps run per second so far.
+    * @return the number of time steps per second
+    */
+   public double getTicksPerSecond() {
+      return elapsedNanos == 0 ? 0.0 : ticks * 1e9 / elapsedNanos;
+   }
+
+   /**
+    * Runs a headless game and prints a short report.  The arguments are
+    * options, all of which are optional:
+    * <pre>
+    * -ticks &lt;n&gt;            run at most n time steps (default: until game over)
+    * -width &lt;pixels&gt;       the width of the game world (default: 640)
+    * -height &lt;pixels&gt;      the height of the game world (default: 480)
+    * -clicks &lt;rate&gt;        click at random with the given probability per time step
+    * -script &lt;file&gt;        replay the clicks in the given script file
+    * -seed &lt;n&gt;             the seed of the random clicks (default: 0)
+    * -gameseed &lt;n&gt;         the seed of the game (default: the current time)
+    * -parallel &lt;n&gt;         run the game with a {@link ParallelGameLogic}
+    *                       splitting the world into n strips
+    * -parallel events      run the game with an {@link EventGameLogic}
+    * -verify &lt;n&gt;           run the game both with a {@link GameLogic} and a
+    *                       {@link ParallelGameLogic} with n strips, and
+    *                       compare them after every time step
+    * -verify events        the same with an {@link EventGameLogic}
+    * -garbage &lt;n&gt;          after n warmup time steps, check that no memory
+    *                       is allocated by the time steps that follow
+    * -record &lt;file&gt;        record the game to the given replay file
+    * -keyframes &lt;n&gt;        the time steps between two keyframes (default: 250)
+    * -replay &lt;file&gt;        play back the given replay file instead
+    * -seek &lt;n&gt;             start playing back at time step n (default: 0)
+    * -checkpoint &lt;file&gt;    resume the game saved in the given file if there is
+    *                       one, and save the game to it every second of game time
+    * -chunks &lt;n&gt;           stream the buildings in chunks, keeping n chunks
+    *                       resident when nothing needs more
+    * -spawn wave:&lt;t&gt;:&lt;n&gt;   send waves of n missiles every t time steps with a
+    *                       {@link WaveSpawner}
+    * -spawn burst:&lt;t&gt;:&lt;n&gt;  the same with a {@link BurstSpawner}
+    * -spawn classic        send missiles as the original game does (default)
+    * -bus &lt;n&gt;              publish the events of the game on a {@link GameEventBus}
+    *                       holding n events and count them with a
+    *                       {@link GameEventCounter}
+    * </pre>
+    * When checking for garbage the exit status is 1 if more than
+    * {@link #GARBAGE_TOLERANCE} bytes were allocated after the warmup.  Run
+    * with the Epsilon garbage collector (which never frees anything) to also
+    * prove it over a long session.  When verifying, the exit status is 1 if
+    * the two games ever differ.  When playing back, the exit status is 1 if
+    * the game differs from the replay at any of its keyframes.
+    * @param args command line arguments as described above
+    * @throws Exception if the click script can not be read
+    */
+   public static void main(String[] args) throws Exception {
+      long maxTicks = Long.MAX_VALUE;
+      int width = DEFAULT_WIDTH;
+      int height = DEFAULT_HEIGHT;
+      float clickRate = 0.0F;
+      String script = null;
+      long seed = 0;
+      long gameSeed = System.nanoTime();
+      int strips = 0;
+      int verifyStrips = 0;
+      long warmup = -1;
+      String record = null;
+      int keyframeInterval = ReplayWriter.DEFAULT_KEYFRAME_INTERVAL;
+      String replay = null;
+      long seekTick = -1;
+      String checkpoint = null;
+      int chunks = 0;
+      String spawn = "classic";
+      int busCapacity = 0;
+
+      for (int i = 0; i < args.length; i++) {
+         String option = args[i];
+         if (i + 1 == args.length) {
+            usage("missing value for " + option);
+         }
+         String value = args[++i];
+         if (option.equals("-ticks")) {
+            maxTicks = Long.parseLong(value);
+         } else if (option.equals("-width")) {
+            width = Integer.parseInt(value);
+         } else if (option.equals("-height")) {
+            height = Integer.parseInt(value);
+         } else if (option.equals("-clicks")) {
+            clickRate = Float.parseFloat(value);
+         } else if (option.equals("-script")) {
+            script = value;
+         } else if (option.equals("-seed")) {
+            seed = Long.parseLong(value);
+         } else if (option.equals("-gameseed")) {
+            gameSeed = Long.parseLong(value);
+         } else if (option.equals("-parallel")) {
+            strips = parseStrips(value);
+         } else if (option.equals("-verify")) {
+            verifyStrips = parseStrips(value);
+         } else if (option.equals("-garbage")) {
+            warmup = Long.parseLong(value);
+         } else if (option.equals("-record")) {
+            record = value;
+         } else if (option.equals("-keyframes")) {
+            keyframeInterval = Integer.parseInt(value);
+         } else if (option.equals("-replay")) {
+            replay = value;
+         } else if (option.equals("-seek")) {
+            seekTick = Long.parseLong(value);
+         } else if (option.equals("-checkpoint")) {
+            checkpoint = value;
+         } else if (option.equals("-chunks")) {
+            chunks = Integer.parseInt(value);
+         } else if (option.equals("-bus")) {
+            busCapacity = Integer.parseInt(value);
+         } else if (option.equals("-spawn")) {
+            spawn = value;
+            createSpawner(spawn);
+         } else {
+            usage("unknown option " + option);
+         }
+      }
+
+      if (verifyStrips != 0) {
+         GameLogic serialLogic = new GameLogic(gameSeed);
+         serialLogic.setSpawner(createSpawner(spawn));
+         GameLogic otherLogic = createLogic(gameSeed, verifyStrips);
+         otherLogic.setSpawner(createSpawner(spawn));
+         HeadlessSimulation serial = new HeadlessSimulation
+            (serialLogic, createClicks(script, clickRate, seed),
+             width, height, createChunks(chunks));
+         HeadlessSimulation other = new HeadlessSimulation
+            (otherLogic, createClicks(script, clickRate, seed), width, height,
+             createChunks(chunks));
+         long mismatch = verify(serial, other, maxTicks);
+         System.out.println("Game seed:      " + gameSeed);
+         System.out.println("Time steps:     " + serial.getTicks());
+         System.out.println("Checksum:       " + Long.toHexString(serial.getState().checksum()));
+         if (mismatch >= 0) {
+            System.out.println("The other game differs after time step " + mismatch);
+            System.exit(1);
+         }
+         System.out.println("The other game is identical");
+         return;
+      }
+
+      GameLogic logic = (strips != 0)
+         ? createLogic(gameSeed, strips)
+         : new GameLogic(gameSeed);
+      logic.setSpawner(createSpawner(spawn));
+      if (replay != null) {
+         if (!playBack(replay, seekTick, maxTicks, logic)) {
+            System.exit(1);
+         }
+         return;
+      }
+      if (record != null) {
+         logic.setRecorder(new ReplayWriter(record, keyframeInterval));
+      }
+      GameEventCounter counter = null;
+      if (busCapacity > 0) {
+         GameEventBus bus = new GameEventBus(busCapacity);
+         counter = new GameEventCounter();
+         bus.subscribe(counter);
+         logic.setEventBus(bus);
+      }
+      HeadlessSimulation simulation = new HeadlessSimulation
+         (logic, createClicks(script, clickRate, seed), width, height, createChunks(chunks));
+      if (checkpoint != null) {
+         CheckpointFile file = new CheckpointFile(checkpoint);
+         if (file.exists()) {
+            simulation.restore(file);
+            System.out.println("Resumed at:     " + simulation.getState().tick);
+         }
+         simulation.setCheckpoint(file, CheckpointFile.DEFAULT_INTERVAL);
+      }
+      logic.startRecording(simulation.getState());
+      long allocated = -1;
+      if (warmup >= 0) {
+         com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+         simulation.run(Math.min(warmup, maxTicks));
+         long before = threads.getCurrentThreadAllocatedBytes();
+         simulation.run(maxTicks - simulation.getTicks());
+         allocated = threads.getCurrentThreadAllocatedBytes() - before;
+      } else {
+         simulation.run(maxTicks);
+      }
+
+      if (record != null) {
+         logic.getRecorder().close();
+      }
+      if (counter != null) {
+         logic.getEventBus().close();
+      }
+      CheckpointFile file = simulation.checkpoint;
+      if (file != null && logic.isGameOver(simulation.getState())) {
+         // A game that is over is not resumed.
+         file.delete();
+      }
+
+      GameState state = simulation.getState();
+      System.out.println("Game seed:      " + gameSeed);
+      System.out.println("Time steps:     " + simulation.getTicks());
+      System.out.println("Time steps/s:   " + (long) simulation.getTicksPerSecond());
+      System.out.println("Score:          " + state.score);
+      System.out.println("Buildings left: " + state.countBuildings());
+      System.out.println("Game over:      " + simulation.logic.isGameOver(state));
+      if (state.chunks != null) {
+         System.out.println("Chunks:         " + state.chunks.getResidentCount() + " of " +
+                            state.chunks.getNrOfChunks() + " resident, " +
+                            state.chunks.getLoads() + " loads, " +
+                            state.chunks.getEvictions() + " evictions");
+      }
+      if (file != null) {
+         System.out.println("Checkpoint:     " + file.getWriteNanos() / 1000 +
+                            " us to write the last one");
+      }
+      if (counter != null) {
+         if (counter.await(10000)) {
+            System.out.println("Events:         " + counter);
+         } else {
+            System.out.println("Events:         not all delivered");
+         }
+      }
+      if (GameMetrics.ENABLED) {
+         GameMetrics.report(System.out);
+      }
+      if (allocated >= 0) {
+         System.out.println("Bytes allocated after warmup: " + allocated);
+         if (allocated > GARBAGE_TOLERANCE) {
+            System.exit(1);
+         }
+      }
+   }
+
+   /**
+    * Creates the chunks selected on the command line.
+    * @param maxResident the number of chunks to keep resident, or 0 to keep
+    * all the buildings live
+    * @return the chunks, or null
+    */
+   private static WorldChunks createChunks(int maxResident) {
+      return (maxResident > 0)
+         ? new WorldChunks(WorldChunks.DEFAULT_CHUNK_WIDTH, maxResident)
+         : null;
+   }
+
+   /**
+    * Creates the click policy selected on the command line.
+    * @param script the click script to replay, or null
+    * @param clickRate the probability of a random click per time step
+    * @param seed the seed of the random clicks
+    * @return the click policy, or null if the player never clicks
+    * @throws IOException if the click script can not be read
+    */
+   private static ClickPolicy createClicks(String script, float clickRate,
+                                           long seed) throws IOException {
+      if (script != null) {
+         return new ScriptedClickPolicy(script);
+      } else if (clickRate > 0.0F) {
+         return new RandomClickPolicy(seed, clickRate);
+      }
+      return null;
+   }
+
+   /**
+    * Plays back a replay file from the given time step to its end, or for
+    * at most the given number of time steps, and prints a short report.
+    * @param fileName the name of the replay file
+    * @param seekTick the time step to start at, or -1 for the first one
+    * @param maxTicks the maximum number of time steps to play back
+    * @param logic the game logic to play the game back with
+    * @return true if the game matched every keyframe, false otherwise
+    * @throws IOException if the replay can not be read or is damaged
+    */
+   private static boolean playBack(String fileName, long seekTick, long maxTicks,
+                                   GameLogic logic) throws IOException {
+      ReplayReader reader = new ReplayReader(fileName);
+      if (seekTick >= 0 && (seekTick < reader.getFirstTick() || seekTick > reader.getLastTick())) {
+         usage("-seek " + seekTick + " is not in " + fileName + ", which runs from time step " +
+               reader.getFirstTick() + " to " + reader.getLastTick());
+      }
+      GameState state = new GameState();
+      long start = System.nanoTime();
+      long ticks = 0;
+      try {
+         reader.seek(seekTick < 0 ? reader.getFirstTick() : seekTick, state, logic);
+         System.out.println("Seeked to:      " + state.tick + " in " +
+                            (System.nanoTime() - start) / 1000000 + " ms");
+         System.out.println("Checksum:       " + Long.toHexString(state.checksum()));
+         start = System.nanoTime();
+         while (ticks < maxTicks && reader.step(state, logic)) {
+            ticks++;
+         }
+      } catch (IOException e) {
+         System.out.println(fileName + ": " + e.getMessage());
+         return false;
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.println("Time steps:     " + ticks + " of " + reader.getLastTick());
+      System.out.println("Time steps/s:   " + (elapsed == 0 ? 0 : (long) (ticks * 1e9 / elapsed)));
+      System.out.println("Score:          " + state.score);
+      System.out.println("Checksum:       " + Long.toHexString(state.checksum()));
+      System.out.println("The game matches the replay");
+      return true;
+   }
+
+   /**
+    * Creates the spawn scheduler selected on the command line.
+    * @param value the value of the -spawn option
+    * @return the spawn scheduler
+    */
+   private static SpawnScheduler createSpawner(String value) {
+      if (value.equals("classic")) {
+         return ClassicSpawner.DEFAULT;
+      }
+      String[] parts = value.split(":");
+      if (parts.length == 3 && (parts[0].equals("wave") || parts[0].equals("burst"))) {
+         int interval = Integer.parseInt(parts[1]);
+         int size = Integer.parseInt(parts[2]);
+         if (interval > 0 && size > 0) {
+            return parts[0].equals("wave")
+               ? new WaveSpawner(interval, size)
+               : new BurstSpawner(interval, size);
+         }
+      }
+      usage("unknown spawn scheduler " + value);
+      return null;
+   }
+
+   /**
+    * Parses the value of the -parallel and -verify options.
+    * @param value the number of strips, or "events"
+    * @return the number of strips, or {@link #EVENTS}
+    */
+   private static int parseStrips(String value) {
+      return value.equals("events") ? EVENTS : Integer.parseInt(value);
+   }
+
+   /**
+    * Creates the game logic selected by the -parallel and -verify options.
+    * @param gameSeed the seed of the game
+    * @param strips the number of strips, or {@link #EVENTS}
+    * @return the game logic
+    */
+   private static GameLogic createLogic(long gameSeed, int strips) {
+      if (strips == EVENTS) {
+         return new EventGameLogic(gameSeed);
+      }
+      return new ParallelGameLogic(gameSeed, strips, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Runs two simulations side by side and compares the checksums of their
+    * game states after every time step.
+    * @param expected the simulation giving the expected results
+    * @param actual the simulation to check
+    * @param maxTicks the maximum number of time steps to run
+    * @return the first time step after which the games differ, or -1 if
+    * they never do
+    */
+   private static long verify(HeadlessSimulation expected,
+                              HeadlessSimulation actual, long maxTicks) {
+      while (expected.getTicks() < maxTicks) {
+         long ran = expected.run(1);
+         if (ran != actual.run(1) ||
+             expected.getState().checksum() != actual.getState().checksum()) {
+            return expected.getTicks();
+         }
+         if (ran == 0) {
+            break;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Prints the given error and the usage of {@link #main} and exits.
+    * @param error the error to print
+    */
+   private static void usage(String error) {
+      System.err.println("HeadlessSimulation: " + error);
+      System.err.println("usage: java HeadlessSimulation [-ticks n] [-width pixels]" +
+                         " [-height pixels] [-clicks rate | -script file] [-seed n]" +
+                         " [-gameseed n] [-parallel strips|events | -verify strips|events]" +
+                         " [-garbage warmup] [-record file] [-keyframes n]" +
+                         " [-replay file] [-seek n] [-checkpoint file] [-chunks n]" +
+                         " [-spawn classic|wave:t:n|burst:t:n] [-bus n]");
+      System.exit(1);
+   }
+
+}
@@ -0,0 +1,178 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a histogram of latencies, recorded in nanoseconds.
+ * It is meant to sit on the hot paths of the game, so recording a value
+ * takes a couple of atomic increments and never locks or allocates, and any
+ * number of threads may record into the same histogram at once.
+ * <p>
+ * The buckets are logarithmic: every power of two is split into
+ * {@link #SUB_BUCKETS} buckets of equal width, so a percentile read from the
+ * histogram is never off by more than one part in {@link #SUB_BUCKETS} of the
+ * true value, whatever its magnitude.  All values from 0 to
+ * {@link Long#MAX_VALUE} fit into a few hundred buckets.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+   /** The number of bits used to split every power of two into buckets. */
+   private final static int SUB_BUCKET_BITS = 3;
+
+   /** The number of buckets every power of two is split into. */
+   public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   /** The total number of buckets. */
+   private final static int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+   /** The name of the histogram. */
+   private final String name;
+
+   /** The number of values recorded in every bucket. */
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+   /** The number of values recorded. */
+   private final AtomicLong count = new AtomicLong();
+
+   /** The sum of the values recorded. */
+   private final AtomicLong total = new AtomicLong();
+
+   /** The largest value recorded. */
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * Creates a new, empty histogram.
+    * @param name the name of the histogram
+    */
+   public LatencyHistogram(String name) {
+      this.name = name;
+   }
+
+   /**
+    * Returns the name of the histogram.
+    * @return the name of the histogram
+    */
+   public String getName() { return name; }
+
+   /**
+    * Records a value.  Negative values are recorded as 0.
+    * @param nanos the value to record, in nanoseconds
+    */
+   public void record(long nanos) {
+      if (nanos < 0) {
+         nanos = 0;
+      }
+      counts.getAndIncrement(bucketOf(nanos));
+      count.getAndIncrement();
+      total.getAndAdd(nanos);
+      long largest = max.get();
+      while (nanos > largest && !max.compareAndSet(largest, nanos)) {
+         largest = max.get();
+      }
+   }
+
+   /**
+    * Records the time passed since the given time, and returns the current
+    * time so that consecutive phases can be timed without reading the
+    * clock twice.
+    * @param start the start time, from {@link System#nanoTime()}
+    * @return the current time, from {@link System#nanoTime()}
+    */
+   public long recordSince(long start) {
+      long now = System.nanoTime();
+      record(now - start);
+      return now;
+   }
+
+   /**
+    * Returns the number of values recorded.
+    * @return the number of values recorded
+    */
+   public long getCount() { return count.get(); }
+
+   /**
+    * Returns the largest value recorded.
+    * @return the largest value recorded, in nanoseconds, or 0 if none
+    */
+   public long getMax() { return max.get(); }
+
+   /**
+    * Returns the mean of the values recorded.
+    * @return the mean value, in nanoseconds, or 0 if none
+    */
+   public double getMean() {
+      long n = count.get();
+      return n == 0 ? 0.0 : (double) total.get() / n;
+   }
+
+   /**
+    * Returns the value below which the given fraction of the values fall.
+    * The value returned is the upper bound of the bucket holding the
+    * percentile, but never more than the largest value recorded.
+    * @param fraction the fraction, between 0 and 1, for instance 0.99
+    * @return the percentile, in nanoseconds, or 0 if no values are recorded
+    */
+   public long getPercentile(double fraction) {
+      long n = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+         n += counts.get(b);
+      }
+      if (n == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(fraction * n));
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+         seen += counts.get(b);
+         if (seen >= rank) {
+            return Math.min(upperBound(b), max.get());
+         }
+      }
+      return max.get();
+   }
+
+   /**
+    * Forgets all the values recorded.  Values recorded at the same time by
+    * other threads may be partly forgotten.
+    */
+   public void reset() {
+      for (int b = 0; b < BUCKETS; b++) {
+         counts.set(b, 0);
+      }
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+
+   /**
+    * Returns the bucket a value is counted in.
+    * @param value a value, at least 0
+    * @return the index of the bucket
+    */
+   static int bucketOf(long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int shift = exponent - SUB_BUCKET_BITS;
+      int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+      return (shift + 1) * SUB_BUCKETS + sub;
+   }
+
+   /**
+    * Returns the largest value counted in a bucket.
+    * @param bucket the index of the bucket
+    * @return the largest value of the bucket
+    */
+   static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+      return lower + ((1L << shift) - 1);
+   }
+
+}
@@ -13,6 +13,21 @@ public class Missile {
    /** The minimum size of an explosion that a missile can have. */
    public final static int MIN_EXPLOSION_SIZE= 5;
 
+   /** The default size of a missile (its diameter) in pixels. */
+   public final static int DEFAULT_SIZE = 6;
+
+   /** The smallest size of a missile sent by the game, in pixels. */
+   public final static int MIN_SIZE = 5;
+
+   /** The largest size of a missile sent by the game, in pixels. */
+   public final static int MAX_SIZE = 9;
+
+   /** The default size of the explosion stored in a missile. */
+   public final static int DEFAULT_EXPLOSION_SIZE = 20;
+
+   /** The default speed at which the explosion of a missile grows. */
+   public final static int DEFAULT_EXPLOSION_SPEED = 5;
+
    /** The location of the missile.  Defaults to null. */
    private Vector2D location;
 
@@ -20,16 +35,16 @@ public class Missile {
    private Vector2D velocity;
 
    /** The size of the missile (its diameter) in pixels.  Defaults to 6. */
-   private int size = 6;
+   private int size = DEFAULT_SIZE;
 
    /** The size of the explosion stored in the missile.  Defaults to 20. */
-   private int explosionSize = 20;
+   private int explosionSize = DEFAULT_EXPLOSION_SIZE;
 
    /**
     * The speed at which the explosion contained in the missile grows
     * Defaults to 5.
     */
-   private int explosionSpeed = 5 ;
+   private int explosionSpeed = DEFAULT_EXPLOSION_SPEED;
 
    /**
     * Creates a new Missile with everything set to its default value
@@ -1,4 +1,5 @@
 import java.awt.BorderLayout;
+import java.io.IOException;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -10,14 +11,41 @@ import javax.swing.JPanel;
  */
 public class MissileCommandApplication extends JFrame {
 
+   /** The width of the display (in pixels). */
+   public final static int DISPLAY_WIDTH = 640;
+
+   /** The height of the display and the game world (in pixels). */
+   public final static int DISPLAY_HEIGHT = 480;
+
    /**
     * Creates and shows a new missile command game display.  When the
     * display (frame) is closed, the JVM will exit.
     */
    public MissileCommandApplication() {
+      this(DISPLAY_WIDTH, 0, false, false, null, null);
+   }
+
+   /**
+    * Creates and shows a new missile command game display.  When the
+    * display (frame) is closed, the JVM will exit.
+    * @param worldWidth the width (in pixels) of the game world, at least
+    * {@link #DISPLAY_WIDTH}; the display pans over a wider world
+    * @param maxChunks the number of chunks of buildings to keep resident,
+    * or 0 to keep all the buildings live
+    * @param software true to draw the display with the software rasterizer
+    * from the start, false to draw it through Java2D
+    * @param events true to run the game with an {@link EventGameLogic},
+    * false to run it with a {@link GameLogic}
+    * @param recorder the recorder to record the game with, or null
+    * @param checkpoint the file to save the game to and resume it from, or
+    * null
+    */
+   public MissileCommandApplication(int worldWidth, int maxChunks, boolean software, boolean events,
+                                    ReplayWriter recorder, CheckpointFile checkpoint) {
       super("Missile Command by Vassago");
       JPanel screenContents = new JPanel(new BorderLayout());
-      GameDisplay display = new GameDisplay(640, 480);
+      GameDisplay display = new GameDisplay(DISPLAY_WIDTH, DISPLAY_HEIGHT, worldWidth);
+      display.setSoftwareRendering(software);
       Scoreboard scoreboard = new Scoreboard();
 
       screenContents.add(scoreboard, BorderLayout.NORTH);
@@ -29,17 +57,55 @@ public class MissileCommandApplication extends JFrame {
       pack();
       setVisible(true);
 
-      GameLogic logic = new GameLogic();
+      GameLogic logic = events ? new EventGameLogic() : new GameLogic();
+      logic.setRecorder(recorder);
       GameController control = new GameController(display, scoreboard, logic);
+      control.setCheckpoint(checkpoint);
+      control.setChunks(maxChunks);
       control.startGame();
    }
 
    /**
-    * Runs the missile command application
-    * @param args command line arguments, which are ignored
+    * Runs the missile command application.  The arguments understood are
+    * -software, which draws the display with the software rasterizer from
+    * the start (F2 switches between the two ways of drawing), -events,
+    * which runs the game with an {@link EventGameLogic},
+    * -record &lt;file&gt;, which records the game to a replay file that can
+    * be played back by {@link HeadlessSimulation},
+    * -checkpoint &lt;file&gt;, which saves the game to the file every second
+    * and resumes the game saved there, if any, when started, and
+    * -world &lt;width&gt;, which makes the game world the given number of
+    * pixels wide, with the display panning over it (arrow keys, Home, End),
+    * and -chunks &lt;n&gt;, which streams the buildings of the world in
+    * chunks, keeping n of them resident when nothing needs more.
+    * @param args command line arguments, as described above
+    * @throws IOException if the replay file can not be created
     */
-   public static void main(String[] args) {
-      MissileCommandApplication ignored = new MissileCommandApplication();
+   public static void main(String[] args) throws IOException {
+      int worldWidth = DISPLAY_WIDTH;
+      boolean software = false;
+      boolean events = false;
+      ReplayWriter recorder = null;
+      CheckpointFile checkpoint = null;
+      int maxChunks = 0;
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("-software")) {
+            software = true;
+         } else if (args[i].equals("-events")) {
+            events = true;
+         } else if (args[i].equals("-record") && i + 1 < args.length) {
+            recorder = new ReplayWriter(args[++i]);
+         } else if (args[i].equals("-checkpoint") && i + 1 < args.length) {
+            checkpoint = new CheckpointFile(args[++i]);
+         } else if (args[i].equals("-world") && i + 1 < args.length) {
+            worldWidth = Math.max(DISPLAY_WIDTH, Integer.parseInt(args[++i]));
+         } else if (args[i].equals("-chunks") && i + 1 < args.length) {
+            maxChunks = Integer.parseInt(args[++i]);
+         }
+      }
+      MissileCommandApplication ignored =
+         new MissileCommandApplication(worldWidth, maxChunks, software, events, recorder,
+                                       checkpoint);
    }
 
 }
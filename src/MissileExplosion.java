@@ -7,6 +7,9 @@
  */
 public class MissileExplosion extends Explosion {
 
+    /** The damage done by a missile explosion. */
+    public final static float DAMAGE = 0.1F;
+
     /**
      * Constructs a MissileExplosion with its default values.
      */
@@ -24,7 +27,7 @@ public class MissileExplosion extends Explosion {
      */
     public MissileExplosion(Vector2D location, int maxRadius, int growthSpeed) {
        super(location,maxRadius,growthSpeed);
-       this.damage = 0.1F;
+       this.damage = DAMAGE;
     }    
 
 }
@@ -0,0 +1,259 @@
+import java.util.Arrays;
+
+/**
+ * This class stores all the active missiles of a Missile Command game.
+ * Rather than keeping one {@link Missile} object per missile, every
+ * property is kept in its own primitive array (one column per property),
+ * and missile number i is made up of the i:th element of every column.
+ * This keeps the data of neighbouring missiles next to each other in memory
+ * so that the per time step loops run linearly through the arrays.
+ * <p>
+ * Missiles are removed by moving the last missile into the freed slot, so
+ * removing a missile changes the index of the last missile.  Loops that
+ * remove missiles while iterating should therefore run from the last index
+ * down to the first.
+ * <p>
+ * Missiles move in straight lines, so a game logic may also let them move
+ * lazily, see {@link #startMovingLazily}: the store then only records the
+ * time step the missiles are at, and the coordinates of a missile are only
+ * brought up to date when {@link #settle()} is called.  Code reading the
+ * coordinates of missiles it has not moved itself should call
+ * {@link #settle()} first, which costs nothing while the missiles are not
+ * moving lazily.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class MissileStore {
+
+   /** The number of missiles there is room for when a store is created. */
+   public final static int INITIAL_CAPACITY = 64;
+
+   /** The x coordinate of every missile. */
+   public int[] x;
+
+   /** The y coordinate of every missile. */
+   public int[] y;
+
+   /** The x component of the velocity of every missile. */
+   public int[] dx;
+
+   /** The y component of the velocity of every missile. */
+   public int[] dy;
+
+   /** The size (diameter) of every missile, in pixels. */
+   public int[] size;
+
+   /** The size of the explosion stored in every missile. */
+   public int[] explosionSize;
+
+   /** The time step the coordinates of every missile are for, while lazy. */
+   private long[] movedTo;
+
+   /** The number of active missiles. */
+   private int count;
+
+   /** Whether the missiles move lazily. */
+   private boolean lazy;
+
+   /** The time step the missiles are at, while they move lazily. */
+   private long now;
+
+   /** Creates a new, empty store. */
+   public MissileStore() {
+      allocate(INITIAL_CAPACITY);
+   }
+
+   /**
+    * Returns the number of active missiles.
+    * @return the number of active missiles
+    */
+   public int count() { return count; }
+
+   /**
+    * Returns the number of missiles the store can hold without growing.
+    * @return the capacity of the store
+    */
+   public int capacity() { return x.length; }
+
+   /**
+    * Adds a missile to the end of the store.
+    * @param x the x coordinate of the missile
+    * @param y the y coordinate of the missile
+    * @param dx the x component of the velocity of the missile
+    * @param dy the y component of the velocity of the missile
+    * @param size the size (diameter) of the missile, in pixels
+    * @param explosionSize the size of the explosion stored in the missile
+    * @return the index of the new missile
+    */
+   public int add(int x, int y, int dx, int dy, int size, int explosionSize) {
+      if (count == this.x.length) {
+         ensureCapacity(count * 2);
+      }
+      this.x[count] = x;
+      this.y[count] = y;
+      this.dx[count] = dx;
+      this.dy[count] = dy;
+      this.size[count] = size;
+      this.explosionSize[count] = explosionSize;
+      movedTo[count] = now;
+      return count++;
+   }
+
+   /**
+    * Adds the given number of missiles to the end of the store at once,
+    * leaving their columns for the caller to fill in.  Every column of
+    * every new missile must be written before the missiles are used.
+    * @param n the number of missiles to add
+    * @return the index of the first new missile
+    */
+   public int append(int n) {
+      if (count + n > x.length) {
+         ensureCapacity(Math.max(count + n, count * 2));
+      }
+      Arrays.fill(movedTo, count, count + n, now);
+      int first = count;
+      count += n;
+      return first;
+   }
+
+   /**
+    * Removes the missile with the given index by moving the last missile
+    * into its place.
+    * @param i the index of the missile to remove
+    */
+   public void remove(int i) {
+      int last = --count;
+      x[i] = x[last];
+      y[i] = y[last];
+      dx[i] = dx[last];
+      dy[i] = dy[last];
+      size[i] = size[last];
+      explosionSize[i] = explosionSize[last];
+      movedTo[i] = movedTo[last];
+   }
+
+   /** Removes all the missiles, and stops moving them lazily. */
+   public void clear() {
+      count = 0;
+      lazy = false;
+   }
+
+   /**
+    * Starts moving the missiles lazily.  The coordinates of all the
+    * missiles are taken to be for the given time step.
+    * @param tick the time step the missiles are at
+    */
+   public void startMovingLazily(long tick) {
+      Arrays.fill(movedTo, 0, count, tick);
+      now = tick;
+      lazy = true;
+   }
+
+   /**
+    * Checks if the missiles move lazily.
+    * @return true if the missiles move lazily, false otherwise
+    */
+   public boolean isMovingLazily() { return lazy; }
+
+   /**
+    * Moves all the missiles to the given time step, without touching their
+    * coordinates.  Missiles added from now on are taken to be at the given
+    * time step.
+    * @param tick the time step the missiles are at
+    */
+   public void advanceTo(long tick) { now = tick; }
+
+   /**
+    * Returns the x coordinate of a missile at the given time step, assuming
+    * it keeps moving by its velocity.
+    * @param i the index of the missile
+    * @param tick the time step
+    * @return the x coordinate of the missile
+    */
+   public int xAt(int i, long tick) {
+      return lazy ? x[i] + (int) (tick - movedTo[i]) * dx[i] : x[i];
+   }
+
+   /**
+    * Returns the y coordinate of a missile at the given time step, assuming
+    * it keeps moving by its velocity.
+    * @param i the index of the missile
+    * @param tick the time step
+    * @return the y coordinate of the missile
+    */
+   public int yAt(int i, long tick) {
+      return lazy ? y[i] + (int) (tick - movedTo[i]) * dy[i] : y[i];
+   }
+
+   /**
+    * Brings the coordinates of a missile up to date, if the missiles move
+    * lazily.
+    * @param i the index of the missile
+    */
+   public void settle(int i) {
+      if (lazy && movedTo[i] != now) {
+         x[i] = xAt(i, now);
+         y[i] = yAt(i, now);
+         movedTo[i] = now;
+      }
+   }
+
+   /**
+    * Brings the coordinates of all the missiles up to date, if the missiles
+    * move lazily.
+    */
+   public void settle() {
+      if (lazy) {
+         for (int i = 0; i < count; i++) {
+            settle(i);
+         }
+      }
+   }
+
+   /**
+    * Returns the largest distance any missile moves along either axis in
+    * one time step.
+    * @return the largest absolute velocity component, or 0 if there are
+    * no missiles
+    */
+   public int maxStep() {
+      int max = 0;
+      for (int i = 0; i < count; i++) {
+         max = Math.max(max, Math.max(Math.abs(dx[i]), Math.abs(dy[i])));
+      }
+      return max;
+   }
+
+   /**
+    * Makes sure that the store can hold at least the given number of
+    * missiles without growing.
+    * @param capacity the number of missiles to make room for
+    */
+   public void ensureCapacity(int capacity) {
+      if (capacity > x.length) {
+         x = Arrays.copyOf(x, capacity);
+         y = Arrays.copyOf(y, capacity);
+         dx = Arrays.copyOf(dx, capacity);
+         dy = Arrays.copyOf(dy, capacity);
+         size = Arrays.copyOf(size, capacity);
+         explosionSize = Arrays.copyOf(explosionSize, capacity);
+         movedTo = Arrays.copyOf(movedTo, capacity);
+      }
+   }
+
+   /**
+    * Allocates empty columns with room for the given number of missiles.
+    * @param capacity the number of missiles to make room for
+    */
+   private void allocate(int capacity) {
+      x = new int[capacity];
+      y = new int[capacity];
+      dx = new int[capacity];
+      dy = new int[capacity];
+      size = new int[capacity];
+      explosionSize = new int[capacity];
+      movedTo = new long[capacity];
+   }
+
+}
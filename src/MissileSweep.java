@@ -0,0 +1,300 @@
+/**
+ * This class moves missiles along their paths and finds the first building
+ * or the ground they run into on the way.  Testing only where a missile ends
+ * up after a time step lets fast missiles jump over the corner of a
+ * building, and makes the point of impact depend on the length of the time
+ * step.  Instead the whole segment the missile travels is tested against
+ * every building it passes over, and the missile is stopped at the point
+ * where the segment first touches a building or the ground.
+ * <p>
+ * All computations are done on integers, with the parameter along the
+ * segment kept as an exact fraction, so the point of impact only depends on
+ * the line the missile travels along.  A missile moving twice as far per
+ * time step hits the same building at the same pixel.
+ * <p>
+ * An instance keeps the state of the segment being tested and must only be
+ * used by one thread at a time.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class MissileSweep {
+
+   /** The fate of a missile that stays in the game. */
+   public final static int KEEP = 0;
+
+   /** The fate of a missile that left the game world. */
+   public final static int REMOVE = 1;
+
+   /** The fate of a missile that hit the ground or a building. */
+   public final static int EXPLODE = 2;
+
+   /** The x coordinate the segment starts at. */
+   private int fromX;
+
+   /** The y coordinate the segment starts at. */
+   private int fromY;
+
+   /** The distance the segment runs along the x axis. */
+   private int deltaX;
+
+   /** The distance the segment runs along the y axis. */
+   private int deltaY;
+
+   /** Whether the segment touches anything found so far. */
+   private boolean hit;
+
+   /** The numerator of the parameter of the first contact. */
+   private long hitNum;
+
+   /** The denominator of the parameter of the first contact, positive. */
+   private long hitDen;
+
+   /** The x coordinate of the first contact, rounded. */
+   private int hitX;
+
+   /** The y coordinate of the first contact, rounded. */
+   private int hitY;
+
+   /** The x coordinate the missile ended up at. */
+   private int endX;
+
+   /** The y coordinate the missile ended up at. */
+   private int endY;
+
+   /**
+    * Moves a missile by its velocity and decides its fate, like the body of
+    * the loop in {@link GameLogic#updateMissiles}.  A missile that runs into
+    * the ground or a building is left at the point of impact; a missile that
+    * leaves the sides of the world first is left where it ended up.
+    * @param missiles the missiles of the game
+    * @param i the index of the missile to move
+    * @param worldWidth the width of the game world
+    * @param skyline the buildings of the game
+    * @return {@link #KEEP}, {@link #REMOVE} or {@link #EXPLODE}
+    */
+   public int moveMissile(MissileStore missiles, int i, int worldWidth, Skyline skyline) {
+      int fate = step(missiles.x[i], missiles.y[i], missiles.dx[i], missiles.dy[i],
+                      worldWidth, skyline);
+      missiles.x[i] = endX;
+      missiles.y[i] = endY;
+      return fate;
+   }
+
+   /**
+    * Decides the fate of a missile moving one time step from (x, y) by the
+    * given velocity, like {@link #moveMissile}, without moving it.  Where
+    * the missile ends up can then be read with {@link #getX()} and
+    * {@link #getY()}.
+    * @param x the x coordinate of the missile
+    * @param y the y coordinate of the missile
+    * @param dx the velocity of the missile along the x axis
+    * @param dy the velocity of the missile along the y axis
+    * @param worldWidth the width of the game world
+    * @param skyline the buildings of the game
+    * @return {@link #KEEP}, {@link #REMOVE} or {@link #EXPLODE}
+    */
+   public int step(int x, int y, int dx, int dy, int worldWidth, Skyline skyline) {
+      search(x, y, dx, dy, skyline);
+      int toX = x + dx;
+      int toY = y + dy;
+
+      boolean left = toX < 0 || toX > worldWidth;
+      if (hit && left) {
+         // The missile only explodes if it hits something before it
+         // crosses the edge of the world.
+         long edgeNum = (toX < 0) ? x : (long) worldWidth - x;
+         long edgeDen = Math.abs((long) dx);
+         left = hitNum * edgeDen > edgeNum * hitDen;
+      }
+      if (left) {
+         endX = toX;
+         endY = toY;
+         return REMOVE;
+      } else if (hit) {
+         endX = hitX;
+         endY = hitY;
+         return EXPLODE;
+      }
+      endX = toX;
+      endY = toY;
+      return KEEP;
+   }
+
+   /**
+    * Returns the x coordinate the missile ended up at in the last call to
+    * {@link #step}.
+    * @return the x coordinate of the missile
+    */
+   public int getX() { return endX; }
+
+   /**
+    * Returns the y coordinate the missile ended up at in the last call to
+    * {@link #step}.
+    * @return the y coordinate of the missile
+    */
+   public int getY() { return endY; }
+
+   /**
+    * Predicts the number of time steps after which a missile at (x, y)
+    * moving by the given velocity leaves the world or hits the ground or a
+    * building, that is the first time step for which {@link #step} will
+    * not return {@link #KEEP}, as long as no building is removed.  Removing
+    * buildings can only make the missile hit later.
+    * <p>
+    * The whole path up to the ground or the edge of the world is swept at
+    * once, so the prediction costs about as much as the number of columns
+    * the missile passes over, however many time steps that takes.
+    * @param x the x coordinate of the missile
+    * @param y the y coordinate of the missile
+    * @param dx the velocity of the missile along the x axis
+    * @param dy the velocity of the missile along the y axis
+    * @param worldWidth the width of the game world
+    * @param skyline the buildings of the game
+    * @return the number of time steps, at least 1, or
+    * {@link Long#MAX_VALUE} if the missile never leaves the world or hits
+    * anything
+    */
+   public long stepsToImpact(int x, int y, int dx, int dy, int worldWidth, Skyline skyline) {
+      // The first time step ending beyond the edge of the world.
+      long leave = Long.MAX_VALUE;
+      if (x < 0 || x > worldWidth) {
+         leave = 1;
+      } else if (dx < 0) {
+         leave = x / -dx + 1;
+      } else if (dx > 0) {
+         leave = (worldWidth - x) / dx + 1;
+      }
+      // The first time step reaching the ground.
+      long ground = Long.MAX_VALUE;
+      if (y <= 0) {
+         ground = 1;
+      } else if (dy < 0) {
+         ground = Math.max(1, (y - dy - 1) / -dy);
+      }
+      long steps = Math.min(leave, ground);
+      if (steps == Long.MAX_VALUE) {
+         return steps;
+      }
+
+      search(x, y, (int) (steps * dx), (int) (steps * dy), skyline);
+      if (!hit) {
+         return leave;
+      }
+      // The contact lies at hitNum / hitDen of the way, which falls in the
+      // time step that ends at or after it.
+      long impact = Math.max(1, (hitNum * steps + hitDen - 1) / hitDen);
+      return Math.min(impact, leave);
+   }
+
+   /**
+    * Finds the first contact of a segment with the ground or a building.
+    * @param x the x coordinate the segment starts at
+    * @param y the y coordinate the segment starts at
+    * @param dx the distance the segment runs along the x axis
+    * @param dy the distance the segment runs along the y axis
+    * @param skyline the buildings of the game
+    */
+   private void search(int x, int y, int dx, int dy, Skyline skyline) {
+      fromX = x;
+      fromY = y;
+      deltaX = dx;
+      deltaY = dy;
+      hit = false;
+
+      // The ground is a building as wide as the segment.
+      int toX = x + dx;
+      enter(Math.min(x, toX), Math.max(x, toX), 0);
+      skyline.sweep(x, toX, this);
+   }
+
+   /**
+    * Tests the current segment against the area covered by a building,
+    * every point (x, y) with left &lt;= x &lt;= right and y &lt;= top, and
+    * records the contact if it is the first one found along the segment.
+    * @param left the left edge of the building
+    * @param right the right edge of the building
+    * @param top the top of the building
+    */
+   void enter(int left, int right, int top) {
+      int toX = fromX + deltaX;
+      int toY = fromY + deltaY;
+      if (right < Math.min(fromX, toX) || left > Math.max(fromX, toX) ||
+          top < Math.min(fromY, toY)) {
+         return;
+      }
+
+      // Every bound is a fraction between 0 and 1 of the segment, since
+      // the checks above keep the edges within the extent of the segment.
+      long enterXNum = 0, enterXDen = 1, leaveXNum = 1, leaveXDen = 1;
+      if (deltaX > 0) {
+         if (left > fromX) {
+            enterXNum = left - fromX;
+            enterXDen = deltaX;
+         }
+         if (right < toX) {
+            leaveXNum = right - fromX;
+            leaveXDen = deltaX;
+         }
+      } else if (deltaX < 0) {
+         if (right < fromX) {
+            enterXNum = fromX - right;
+            enterXDen = -deltaX;
+         }
+         if (left > toX) {
+            leaveXNum = fromX - left;
+            leaveXDen = -deltaX;
+         }
+      }
+      long enterYNum = 0, enterYDen = 1, leaveYNum = 1, leaveYDen = 1;
+      if (deltaY < 0 && top < fromY) {
+         enterYNum = fromY - top;
+         enterYDen = -deltaY;
+      } else if (deltaY > 0 && top < toY) {
+         leaveYNum = top - fromY;
+         leaveYDen = deltaY;
+      }
+
+      // The segment is inside the building from the later of the two
+      // entries to the earlier of the two exits.
+      boolean byX = enterXNum * enterYDen >= enterYNum * enterXDen;
+      long enterNum = byX ? enterXNum : enterYNum;
+      long enterDen = byX ? enterXDen : enterYDen;
+      if (enterNum * leaveXDen > leaveXNum * enterDen ||
+          enterNum * leaveYDen > leaveYNum * enterDen) {
+         return;
+      }
+      if (hit && enterNum * hitDen >= hitNum * enterDen) {
+         return;
+      }
+
+      hit = true;
+      hitNum = enterNum;
+      hitDen = enterDen;
+      if (enterNum == 0) {
+         hitX = fromX;
+         hitY = fromY;
+      } else if (byX) {
+         hitX = (deltaX > 0) ? left : right;
+         hitY = fromY + round((long) (hitX - fromX) * deltaY, deltaX);
+      } else {
+         hitY = top;
+         hitX = fromX + round((long) (top - fromY) * deltaX, deltaY);
+      }
+   }
+
+   /**
+    * Divides two integers, rounding halves up.
+    * @param num the numerator
+    * @param den the denominator, not 0
+    * @return the rounded quotient
+    */
+   private static int round(long num, long den) {
+      if (den < 0) {
+         num = -num;
+         den = -den;
+      }
+      return (int) Math.floorDiv(2 * num + den, 2 * den);
+   }
+
+}
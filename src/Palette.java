@@ -0,0 +1,107 @@
+import java.awt.Color;
+
+/**
+ * This class holds the precomputed colors used to draw the Missile Command
+ * game, so that drawing an entity never has to create a new {@link Color}.
+ * The tables hold the colors the display used to compute for every entity,
+ * quantized to the 8 bits per channel that {@link Color} keeps anyway.
+ * Explosions only get {@link #EXPLOSION_LEVELS} colors, so that every
+ * explosion sprite the display needs fits in its sprite cache.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class Palette {
+
+   /** The number of levels of a color channel. */
+   private final static int LEVELS = 256;
+
+   /** The number of colors an explosion goes through as it grows. */
+   public final static int EXPLOSION_LEVELS = 16;
+
+   /** The number of colors of a missile, one for every explosion size. */
+   public final static int MISSILE_COLORS = Missile.MAX_EXPLOSION_SIZE + 1;
+
+   /**
+    * The color of a building, indexed by its health scaled to 0..255.  Goes
+    * from red for a building about to be destroyed to green for a building
+    * in full health.
+    */
+   private final static Color[] BUILDING = new Color[LEVELS];
+
+   /**
+    * The color of a missile, indexed by the size of its explosion.  The
+    * bigger the explosion, the redder the missile.
+    */
+   private final static Color[] MISSILE = new Color[MISSILE_COLORS];
+
+   /**
+    * The color of an explosion, indexed by its current radius relative to
+    * its maximum radius, scaled to 0..EXPLOSION_LEVELS - 1.  Goes from red
+    * to yellow as the explosion grows.
+    */
+   private final static Color[] EXPLOSION = new Color[EXPLOSION_LEVELS];
+
+   static {
+      for (int level = 0; level < LEVELS; level++) {
+         BUILDING[level] = new Color(LEVELS - 1 - level, level, 0);
+      }
+      for (int level = 0; level < EXPLOSION_LEVELS; level++) {
+         EXPLOSION[level] = new Color(LEVELS - 1,
+                                      (level * (LEVELS - 1) + (EXPLOSION_LEVELS - 1) / 2) /
+                                      (EXPLOSION_LEVELS - 1), 0);
+      }
+      for (int size = 0; size <= Missile.MAX_EXPLOSION_SIZE; size++) {
+         float hue = (float) size /
+            (Missile.MAX_EXPLOSION_SIZE + Missile.MIN_EXPLOSION_SIZE);
+         MISSILE[size] = new Color(1.0F, 1.0F - hue, 0.0F);
+      }
+   }
+
+   /** No instances, this class only holds tables. */
+   private Palette() { }
+
+   /**
+    * Returns the color of a building with the given health.
+    * @param health the health of the building, between 0 and 1
+    * @return the color of the building
+    */
+   public static Color building(float health) {
+      return BUILDING[level(health, LEVELS)];
+   }
+
+   /**
+    * Returns the color of a missile with the given explosion size.
+    * @param explosionSize the size of the explosion stored in the missile
+    * @return the color of the missile
+    */
+   public static Color missile(int explosionSize) {
+      return MISSILE[explosionSize < 0 ? 0 :
+                     (explosionSize > Missile.MAX_EXPLOSION_SIZE ?
+                      Missile.MAX_EXPLOSION_SIZE : explosionSize)];
+   }
+
+   /**
+    * Returns the color of an explosion with the given radius.
+    * @param radius the current radius of the explosion
+    * @param maxRadius the maximum radius of the explosion
+    * @return the color of the explosion
+    */
+   public static Color explosion(int radius, int maxRadius) {
+      return EXPLOSION[level(maxRadius > 0 ? (float) radius / maxRadius : 1.0F,
+                             EXPLOSION_LEVELS)];
+   }
+
+   /**
+    * Scales a value between 0 and 1 to a level, rounding the same way
+    * {@link Color#Color(float, float, float)} does.
+    * @param value the value to scale, clamped to 0..1
+    * @param levels the number of levels
+    * @return the level, between 0 and levels - 1
+    */
+   private static int level(float value, int levels) {
+      int level = (int) (value * (levels - 1) + 0.5F);
+      return level < 0 ? 0 : (level > levels - 1 ? levels - 1 : level);
+   }
+
+}
@@ -0,0 +1,650 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs the Missile Command game logic on several cores.  The
+ * world is split into vertical strips of equal width, and the missile
+ * movement, the missile versus building tests and the explosion versus
+ * missile and building tests of every strip run as separate tasks on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * Every missile belongs to the strip its x coordinate falls in.  Explosions
+ * and buildings reaching over the edge of a strip are entered as ghosts into
+ * every strip they overlap, so every task sees all the explosions and
+ * buildings that can touch its own missiles.  A building is damaged only by
+ * the task of the strip its left edge falls in.
+ * <p>
+ * The tasks only record what happens to the entities they own: the fate of
+ * every missile, the explosion that destroys every missile, the hits on
+ * the buildings and the buildings that are destroyed.  These records are then applied in a
+ * single thread, in exactly the order the serial {@link GameLogic} applies
+ * them, so that new explosions, the score and the order of the entities in
+ * their stores are the same.  For the same seed and the same clicks a game
+ * run by this class is therefore identical, bit for bit, to a game run by
+ * {@link GameLogic}.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ParallelGameLogic extends GameLogic {
+
+   /** The fate of a missile that stays in the game. */
+   private final static byte KEEP = MissileSweep.KEEP;
+
+   /** The fate of a missile that left the game world. */
+   private final static byte REMOVE = MissileSweep.REMOVE;
+
+   /** The fate of a missile that hit the ground or a building. */
+   private final static byte EXPLODE = MissileSweep.EXPLODE;
+
+   /** The strip tasks move the missiles and test them against buildings. */
+   private final static int MOVE_MISSILES = 0;
+
+   /** The strip tasks test the explosions against missiles and buildings. */
+   private final static int HIT_BY_EXPLOSIONS = 1;
+
+   /** The pool the strip tasks run on. */
+   private ForkJoinPool pool;
+
+   /** The scratch data and the task of every strip. */
+   private Strip[] strips;
+
+   /** Runs the tasks of all the strips and waits for them to finish. */
+   private RecursiveAction allStrips = new RecursiveAction() {
+      protected void compute() {
+         ForkJoinTask.invokeAll(strips);
+      }
+   };
+
+   /** The state of the game the current phase is run on. */
+   private GameState state;
+
+   /** The phase the strip tasks run, for instance {@link #MOVE_MISSILES}. */
+   private int phase;
+
+   /** The width of every strip, in pixels. */
+   private int stripWidth;
+
+   /** The first entry in {@link #missileItems} of every strip. */
+   private int[] missileStart;
+
+   /** The indices of all the missiles, sorted by strip. */
+   private int[] missileItems = new int[0];
+
+   /** The skyline of the game, read by the tasks moving the missiles. */
+   private Skyline skyline;
+
+   /** The first entry in {@link #buildingItems} of every strip. */
+   private int[] buildingStart;
+
+   /** The indices of the buildings overlapping every strip. */
+   private int[] buildingItems = new int[0];
+
+   /** The buildings of the game, copied from the list for the tasks. */
+   private Building[] buildings = new Building[0];
+
+   /** The first entry in {@link #explosionItems} of every strip. */
+   private int[] explosionStart;
+
+   /**
+    * The indices of the growing explosions overlapping every strip, in
+    * descending order within every strip.
+    */
+   private int[] explosionItems = new int[0];
+
+   /** The largest distance a missile moves along either axis this time step. */
+   private int maxStep;
+
+   /** Insertion cursor per strip, used while sorting entities into strips. */
+   private int[] cursor;
+
+   /** The fate of every missile in the current time step. */
+   private byte[] fate = new byte[0];
+
+   /** Flags the explosions that have reached their maximum size. */
+   private boolean[] expired = new boolean[0];
+
+   /** The index of the explosion destroying every missile, or -1. */
+   private int[] killer = new int[0];
+
+   /** The first entry in {@link #killItems} of every explosion. */
+   private int[] killStart = new int[1];
+
+   /** The indices of the destroyed missiles, sorted by explosion. */
+   private int[] killItems = new int[0];
+
+   /** Flags the buildings destroyed in the current time step. */
+   private boolean[] buildingDestroyed = new boolean[0];
+
+   /**
+    * Creates a new instance with one strip per available processor, run on
+    * the common pool.
+    */
+   public ParallelGameLogic() {
+      this(Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Creates a new instance that splits the world into the given number of
+    * strips, run on the given pool.
+    * @param nrOfStrips the number of strips
+    * @param pool the pool to run the strip tasks on
+    */
+   public ParallelGameLogic(int nrOfStrips, ForkJoinPool pool) {
+      initializeStrips(nrOfStrips, pool);
+   }
+
+   /**
+    * Creates a new instance whose random number generator is seeded with
+    * the given seed, and that splits the world into the given number of
+    * strips, run on the given pool.
+    * @param seed the seed of the random number generator
+    * @param nrOfStrips the number of strips
+    * @param pool the pool to run the strip tasks on
+    */
+   public ParallelGameLogic(long seed, int nrOfStrips, ForkJoinPool pool) {
+      super(seed);
+      initializeStrips(nrOfStrips, pool);
+   }
+
+   /**
+    * Creates the strips.
+    * @param nrOfStrips the number of strips
+    * @param pool the pool to run the strip tasks on
+    */
+   private void initializeStrips(int nrOfStrips, ForkJoinPool pool) {
+      if (nrOfStrips < 1) {
+         throw new IllegalArgumentException("at least one strip is needed");
+      }
+      this.pool = pool;
+      strips = new Strip[nrOfStrips];
+      for (int s = 0; s < nrOfStrips; s++) {
+         strips[s] = new Strip(s);
+      }
+      missileStart = new int[nrOfStrips + 1];
+      buildingStart = new int[nrOfStrips + 1];
+      explosionStart = new int[nrOfStrips + 1];
+      cursor = new int[nrOfStrips];
+   }
+
+   /**
+    * Returns the number of strips the world is split into.
+    * @return the number of strips
+    */
+   public int getNrOfStrips() { return strips.length; }
+
+   /**
+    * Moves the missiles and checks them for collisions with the ground and
+    * the buildings, like {@link GameLogic#updateMissiles}.
+    * @param state the current GameState
+    */
+   void updateMissiles(GameState state) {
+      MissileStore missiles = state.missiles;
+      int count = missiles.count();
+      if (fate.length < count) {
+         fate = new byte[missiles.capacity()];
+      }
+      skyline = getSkyline(state);
+      missiles.settle();
+      prepareStrips(state);
+      sortMissiles(missiles);
+      runStrips(state, MOVE_MISSILES);
+
+      // Remove the missiles in the same order as the serial loop, so the
+      // store ends up in the same order.
+      for (int i = count - 1; i >= 0; i--) {
+         if (fate[i] == EXPLODE) {
+            explodeMissile(state, i);
+            missiles.remove(i);
+         } else if (fate[i] == REMOVE) {
+            missiles.remove(i);
+         }
+      }
+   }
+
+   /**
+    * Grows the explosions and checks if they have destroyed missiles or
+    * buildings, like {@link GameLogic#updateExplosions}.
+    * @param state the current GameState
+    */
+   void updateExplosions(GameState state) {
+      ExplosionStore explosions = state.explosions;
+      MissileStore missiles = state.missiles;
+      int count = explosions.count();
+      int nrOfMissiles = missiles.count();
+      int nrOfBuildings = state.buildings.size();
+
+      if (expired.length < count) {
+         expired = new boolean[explosions.capacity()];
+         killStart = new int[explosions.capacity() + 1];
+      }
+      if (killer.length < nrOfMissiles) {
+         killer = new int[missiles.capacity()];
+         killItems = new int[missiles.capacity()];
+      }
+      Arrays.fill(killer, 0, nrOfMissiles, -1);
+
+      prepareStrips(state);
+      sortBuildings(state);
+      if (buildingDestroyed.length < nrOfBuildings) {
+         buildingDestroyed = new boolean[buildings.length];
+      } else {
+         Arrays.fill(buildingDestroyed, 0, nrOfBuildings, false);
+      }
+      sortMissiles(missiles);
+      maxStep = missiles.maxStep();
+      growExplosions(explosions);
+      runStrips(state, HIT_BY_EXPLOSIONS);
+
+      // Sort the destroyed missiles by the explosion that destroyed them,
+      // keeping them in ascending order as the serial grid query does.
+      // killStart[i] first counts and then ends up at the first missile
+      // destroyed by explosion i.
+      Arrays.fill(killStart, 0, count + 1, 0);
+      for (int m = 0; m < nrOfMissiles; m++) {
+         if (killer[m] >= 0) {
+            killStart[killer[m]]++;
+         }
+      }
+      for (int i = 0; i < count; i++) {
+         killStart[i + 1] += killStart[i];
+      }
+      for (int m = nrOfMissiles - 1; m >= 0; m--) {
+         if (killer[m] >= 0) {
+            killItems[--killStart[killer[m]]] = m;
+         }
+      }
+
+      // Replay the serial loop over the explosions: remove the explosions
+      // that reached their maximum size and explode the missiles destroyed
+      // by the others, in the same order.
+      int nrDestroyed = 0;
+      for (int i = count - 1; i >= 0; i--) {
+         if (expired[i]) {
+            explosions.remove(i);
+            continue;
+         }
+         for (int k = killStart[i]; k < killStart[i + 1]; k++) {
+            explodeMissile(state, killItems[k]);
+            nrDestroyed++;
+            missileDestroyed(state, killItems[k]);
+         }
+      }
+
+      // The hits on the buildings are reported strip by strip, so a time
+      // step reports the same hits as the serial loop, in another order.
+      if (getEventBus() != null) {
+         for (int s = 0; s < strips.length; s++) {
+            Strip strip = strips[s];
+            for (int h = 0; h < strip.nrOfHits; h++) {
+               buildingDamaged(state, buildings[strip.hitBuildings[h]], strip.hitHealth[h]);
+            }
+         }
+      }
+
+      for (int j = nrOfBuildings - 1; j >= 0; j--) {
+         if (buildingDestroyed[j]) {
+            removeBuilding(state, j);
+         }
+      }
+
+      // Remove the destroyed missiles, backwards like the serial version.
+      for (int m = nrOfMissiles - 1; m >= 0 && nrDestroyed > 0; m--) {
+         if (killer[m] >= 0) {
+            missiles.remove(m);
+            nrDestroyed--;
+         }
+      }
+   }
+
+   /**
+    * Runs the given phase on all the strips and waits for it to finish.
+    * @param state the current GameState
+    * @param phase the phase to run, for instance {@link #MOVE_MISSILES}
+    */
+   private void runStrips(GameState state, int phase) {
+      this.state = state;
+      this.phase = phase;
+      for (int s = 0; s < strips.length; s++) {
+         strips[s].reinitialize();
+      }
+      allStrips.reinitialize();
+      pool.invoke(allStrips);
+      this.state = null;
+   }
+
+   /**
+    * Computes the width of the strips for the size of the game world.
+    * @param state the current GameState
+    */
+   private void prepareStrips(GameState state) {
+      int nrOfStrips = strips.length;
+      stripWidth = Math.max(1, (state.worldWidth + nrOfStrips) / nrOfStrips);
+   }
+
+   /**
+    * Sorts the buildings into every strip they overlap.
+    * @param state the current GameState
+    */
+   private void sortBuildings(GameState state) {
+      ArrayList list = state.buildings;
+      int nrOfBuildings = list.size();
+      if (buildings.length < nrOfBuildings) {
+         buildings = new Building[Math.max(nrOfBuildings, buildings.length * 2)];
+      }
+      Arrays.fill(buildingStart, 0);
+      int total = 0;
+      for (int j = 0; j < nrOfBuildings; j++) {
+         Building b = (Building) list.get(j);
+         buildings[j] = b;
+         int first = stripOf(b.getTopLeft().getIComp());
+         int last = stripOf(b.getBottomRight().getIComp());
+         for (int s = first; s <= last; s++) {
+            buildingStart[s + 1]++;
+         }
+         total += last - first + 1;
+      }
+      if (buildingItems.length < total) {
+         buildingItems = new int[Math.max(total, buildingItems.length * 2)];
+      }
+      startCursors(buildingStart);
+      for (int j = 0; j < nrOfBuildings; j++) {
+         Building b = buildings[j];
+         int first = stripOf(b.getTopLeft().getIComp());
+         int last = stripOf(b.getBottomRight().getIComp());
+         for (int s = first; s <= last; s++) {
+            buildingItems[cursor[s]++] = j;
+         }
+      }
+   }
+
+   /**
+    * Sorts the missiles into the strips their x coordinates fall in.
+    * @param missiles the missiles of the game
+    */
+   private void sortMissiles(MissileStore missiles) {
+      int count = missiles.count();
+      if (missileItems.length < count) {
+         missileItems = new int[missiles.capacity()];
+      }
+      Arrays.fill(missileStart, 0);
+      for (int i = 0; i < count; i++) {
+         missileStart[stripOf(missiles.x[i]) + 1]++;
+      }
+      startCursors(missileStart);
+      for (int i = 0; i < count; i++) {
+         missileItems[cursor[stripOf(missiles.x[i])]++] = i;
+      }
+   }
+
+   /**
+    * Grows every explosion by one time step, flags the explosions that have
+    * reached their maximum size and sorts the others into every strip their
+    * radius overlaps, in descending order.  The radius is widened by the
+    * distance the fastest missile moved, since a missile may have been
+    * touched by an explosion on its way into another strip.
+    * @param explosions the explosions of the game
+    */
+   private void growExplosions(ExplosionStore explosions) {
+      int count = explosions.count();
+      Arrays.fill(explosionStart, 0);
+      int total = 0;
+      for (int i = 0; i < count; i++) {
+         int radius = (explosions.radius[i] += explosions.growth[i]);
+         expired[i] = radius > explosions.maxRadius[i];
+         if (!expired[i]) {
+            int reach = Math.max(0, radius) + maxStep;
+            int first = stripOf((long) explosions.x[i] - reach);
+            int last = stripOf((long) explosions.x[i] + reach);
+            for (int s = first; s <= last; s++) {
+               explosionStart[s + 1]++;
+            }
+            total += last - first + 1;
+         }
+      }
+      if (explosionItems.length < total) {
+         explosionItems = new int[Math.max(total, explosionItems.length * 2)];
+      }
+      startCursors(explosionStart);
+      for (int i = count - 1; i >= 0; i--) {
+         if (!expired[i]) {
+            int reach = Math.max(0, explosions.radius[i]) + maxStep;
+            int first = stripOf((long) explosions.x[i] - reach);
+            int last = stripOf((long) explosions.x[i] + reach);
+            for (int s = first; s <= last; s++) {
+               explosionItems[cursor[s]++] = i;
+            }
+         }
+      }
+   }
+
+   /**
+    * Turns the number of entries of every strip into the index of its first
+    * entry, and sets the insertion cursors to the same indices.
+    * @param start the number of entries of strip s in element s + 1
+    */
+   private void startCursors(int[] start) {
+      for (int s = 0; s < strips.length; s++) {
+         start[s + 1] += start[s];
+         cursor[s] = start[s];
+      }
+   }
+
+   /**
+    * Returns the strip the given x coordinate falls in, clamped to the
+    * strips.
+    * @param x the x coordinate
+    * @return the index of the strip
+    */
+   private int stripOf(long x) {
+      long s = Math.floorDiv(x, (long) stripWidth);
+      return s < 0 ? 0 : (s >= strips.length ? strips.length - 1 : (int) s);
+   }
+
+   /**
+    * The scratch data of one strip, and the task running the current phase
+    * on it.
+    */
+   private class Strip extends RecursiveAction {
+
+      /** The index of the strip. */
+      private int index;
+
+      /** Broad phase grid over the missiles of the strip. */
+      private SpatialGrid grid = new SpatialGrid(0, 0);
+
+      /** Moves the missiles of the strip. */
+      private MissileSweep sweep = new MissileSweep();
+
+      /** The x coordinates of the missiles of the strip. */
+      private int[] xs = new int[0];
+
+      /** The y coordinates of the missiles of the strip. */
+      private int[] ys = new int[0];
+
+      /** The explosions that may hit a building reaching into other strips. */
+      private int[] merged = new int[0];
+
+      /** The index of the building of every hit, if events are reported. */
+      private int[] hitBuildings = new int[0];
+
+      /** The health of the building after every hit. */
+      private float[] hitHealth = new float[0];
+
+      /** The number of hits on the buildings of the strip this time step. */
+      private int nrOfHits;
+
+      /**
+       * Creates the strip with the given index.
+       * @param index the index of the strip
+       */
+      Strip(int index) {
+         this.index = index;
+      }
+
+      /** Runs the current phase on the strip. */
+      protected void compute() {
+         if (phase == MOVE_MISSILES) {
+            moveMissiles();
+         } else {
+            hitMissiles();
+            hitBuildings();
+         }
+      }
+
+      /**
+       * Moves the missiles of the strip and decides their fate, like the
+       * body of the loop in {@link GameLogic#updateMissiles}.
+       */
+      private void moveMissiles() {
+         MissileStore missiles = state.missiles;
+         for (int k = missileStart[index]; k < missileStart[index + 1]; k++) {
+            int i = missileItems[k];
+            // The skyline is only read while the tasks run.
+            fate[i] = (byte) sweep.moveMissile(missiles, i, state.worldWidth, skyline);
+         }
+      }
+
+      /**
+       * Finds the explosion that destroys every missile of the strip.  The
+       * serial loop visits the explosions in descending order and a
+       * missile can only be destroyed once, so it is destroyed by the
+       * explosion with the highest index that intersects it.
+       */
+      private void hitMissiles() {
+         MissileStore missiles = state.missiles;
+         ExplosionStore explosions = state.explosions;
+         int first = missileStart[index];
+         int count = missileStart[index + 1] - first;
+         if (count == 0) {
+            return;
+         }
+
+         if (xs.length < count) {
+            xs = new int[Math.max(count, xs.length * 2)];
+            ys = new int[xs.length];
+         }
+         for (int k = 0; k < count; k++) {
+            xs[k] = missiles.x[missileItems[first + k]];
+            ys[k] = missiles.y[missileItems[first + k]];
+         }
+         int left = index * stripWidth;
+         if (!grid.covers(left, stripWidth, state.worldHeight)) {
+            grid.resize(left, stripWidth, state.worldHeight);
+         }
+         grid.build(xs, ys, count);
+
+         for (int e = explosionStart[index]; e < explosionStart[index + 1]; e++) {
+            int i = explosionItems[e];
+            int x = explosions.x[i];
+            int y = explosions.y[i];
+            int radius = explosions.radius[i];
+            int startRadius = radius - explosions.growth[i];
+            int candidates = grid.query(x, y, reach(startRadius, radius, maxStep), KERNEL);
+            int[] found = grid.getResults();
+            for (int c = 0; c < candidates; c++) {
+               int m = missileItems[first + found[c]];
+               if (killer[m] < 0 &&
+                   Explosion.intersects(x, y, startRadius, radius,
+                                        missiles.x[m] - missiles.dx[m],
+                                        missiles.y[m] - missiles.dy[m],
+                                        missiles.x[m], missiles.y[m])) {
+                  killer[m] = i;
+               }
+            }
+         }
+      }
+
+      /**
+       * Damages the buildings whose left edge falls in the strip.  Every
+       * building is damaged by the explosions in descending order, like in
+       * the serial loop, so its health is rounded the same way.
+       */
+      private void hitBuildings() {
+         nrOfHits = 0;
+         for (int k = buildingStart[index]; k < buildingStart[index + 1]; k++) {
+            int j = buildingItems[k];
+            Building b = buildings[j];
+            if (stripOf(b.getTopLeft().getIComp()) != index) {
+               // A ghost of a building owned by another strip.
+               continue;
+            }
+
+            int last = stripOf(b.getBottomRight().getIComp());
+            if (last == index) {
+               damage(b, j, explosionItems, explosionStart[index],
+                      explosionStart[index + 1]);
+            } else {
+               // The building reaches into other strips, whose explosions
+               // are merged with those of this strip.
+               int size = explosionStart[last + 1] - explosionStart[index];
+               if (merged.length < size) {
+                  merged = new int[Math.max(size, merged.length * 2)];
+               }
+               System.arraycopy(explosionItems, explosionStart[index], merged, 0, size);
+               Arrays.sort(merged, 0, size);
+               // Drop the duplicates and reverse into descending order.
+               int unique = 0;
+               for (int e = 0; e < size; e++) {
+                  if (unique == 0 || merged[unique - 1] != merged[e]) {
+                     merged[unique++] = merged[e];
+                  }
+               }
+               for (int e = 0; e < unique / 2; e++) {
+                  int swap = merged[e];
+                  merged[e] = merged[unique - 1 - e];
+                  merged[unique - 1 - e] = swap;
+               }
+               damage(b, j, merged, 0, unique);
+            }
+         }
+      }
+
+      /**
+       * Damages a building by the given explosions, in the given order,
+       * until it is destroyed.
+       * @param b the building
+       * @param j the index of the building
+       * @param items the indices of the explosions
+       * @param from the first entry of items to use
+       * @param to one past the last entry of items to use
+       */
+      private void damage(Building b, int j, int[] items, int from, int to) {
+         ExplosionStore explosions = state.explosions;
+         for (int e = from; e < to; e++) {
+            int i = items[e];
+            if (Explosion.intersects(explosions.x[i], explosions.y[i],
+                                     explosions.radius[i], b)) {
+               b.damage(explosions.damage[i]);
+               if (getEventBus() != null) {
+                  recordHit(j, b.getHealth());
+               }
+               if (b.isDestroyed()) {
+                  buildingDestroyed[j] = true;
+                  return;
+               }
+            }
+         }
+      }
+
+      /**
+       * Records a hit on a building, to be reported after the tasks are
+       * done.
+       * @param j the index of the building
+       * @param health the health of the building after the hit
+       */
+      private void recordHit(int j, float health) {
+         if (nrOfHits == hitBuildings.length) {
+            hitBuildings = Arrays.copyOf(hitBuildings, Math.max(16, nrOfHits * 2));
+            hitHealth = Arrays.copyOf(hitHealth, hitBuildings.length);
+         }
+         hitBuildings[nrOfHits] = j;
+         hitHealth[nrOfHits++] = health;
+      }
+
+   }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * This class implements a click policy that clicks at random places in the
+ * game world at a given average rate.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class RandomClickPolicy implements ClickPolicy {
+
+   /**
+    * Random number generator deciding when and where to click.  Draws the
+    * same numbers as a java.util.Random, but its state can be saved.
+    */
+   private GameRandom gen;
+
+   /** The probability of a click in any given time step, between 0 and 1. */
+   private float clickRate;
+
+   /**
+    * Creates a new policy clicking with the given probability per time step.
+    * @param seed the seed for the random number generator
+    * @param clickRate the probability of a click in any given time step
+    */
+   public RandomClickPolicy(long seed, float clickRate) {
+      this.gen = new GameRandom(seed);
+      this.clickRate = clickRate;
+   }
+
+   /**
+    * Clicks at a random place in the game world, with the probability
+    * given by the click rate.
+    * @param tick the number of the time step, starting at 0
+    * @param state the current GameState
+    */
+   public void click(long tick, GameState state) {
+      if (gen.nextFloat() < clickRate) {
+         int x = gen.nextInt(state.worldWidth);
+         int y = gen.nextInt(state.worldHeight);
+         state.playerClicks.offer(x, y);
+      }
+   }
+
+   /**
+    * Returns the state of the random number generator.
+    * @return the state of the policy
+    */
+   public long getState() { return gen.getState(); }
+
+   /**
+    * Restores the state of the random number generator.
+    * @param state the state of the policy, as returned by {@link #getState}
+    */
+   public void setState(long state) { gen.setState(state); }
+
+}
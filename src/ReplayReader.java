@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class plays back a replay file written by a {@link ReplayWriter}.
+ * The file is memory-mapped instead of read, so opening even a long replay
+ * only touches its header and its index of keyframes.
+ * <p>
+ * A game is played back by seeking to a time step, which loads the nearest
+ * keyframe at or before the time step and runs the game logic forward from
+ * there, headlessly, feeding it the recorded clicks.  After that the game
+ * can be stepped forward one time step at a time.  Every time the game
+ * reaches the time step of a keyframe, its state is compared with the
+ * keyframe, so a game logic that no longer plays the recorded game the
+ * same way is caught at once.
+ * <p>
+ * If the game was never closed, for instance because the application was
+ * killed, the file has no index.  The keyframes are then found by scanning
+ * the records once when the file is opened.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ReplayReader {
+
+   /** The number of bytes of the header. */
+   private final static int HEADER_SIZE = 12;
+
+   /** The contents of the file. */
+   private ByteBuffer data;
+
+   /** The number of time steps between two keyframes. */
+   private int keyframeInterval;
+
+   /** The time step of every keyframe, in ascending order. */
+   private long[] keyframeTicks = new long[16];
+
+   /** The offset of every keyframe record in the file. */
+   private long[] keyframeOffsets = new long[16];
+
+   /** The number of keyframes. */
+   private int nrOfKeyframes;
+
+   /** The number of time steps run by the recorded game. */
+   private long lastTick;
+
+   /** The offset of the next record to play back. */
+   private int position;
+
+   /** Used to empty the click queue of the game played back. */
+   private int[] scratchX = new int[ClickQueue.DEFAULT_CAPACITY];
+
+   /** Used to empty the click queue of the game played back. */
+   private int[] scratchY = new int[ClickQueue.DEFAULT_CAPACITY];
+
+   /** Used to empty the click queue of the game played back. */
+   private long[] scratchTime = new long[ClickQueue.DEFAULT_CAPACITY];
+
+   /**
+    * Opens a replay file.
+    * @param fileName the name of the file
+    * @throws IOException if the file can not be read or is not a replay
+    */
+   public ReplayReader(String fileName) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(fileName, "r");
+      try {
+         FileChannel channel = file.getChannel();
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(fileName + ": replay too large to map");
+         }
+         // The mapping stays valid after the file is closed.
+         MappedByteBuffer mapped =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         data = mapped;
+      } finally {
+         file.close();
+      }
+
+      if (data.limit() < HEADER_SIZE || data.getInt(0) != ReplayWriter.MAGIC) {
+         throw new IOException(fileName + ": not a replay file");
+      }
+      if (data.getInt(4) != ReplayWriter.VERSION) {
+         throw new IOException(fileName + ": unknown replay version " + data.getInt(4));
+      }
+      keyframeInterval = data.getInt(8);
+      if (!readIndex()) {
+         scanRecords();
+      }
+      if (nrOfKeyframes == 0) {
+         throw new IOException(fileName + ": replay holds no keyframes");
+      }
+   }
+
+   /**
+    * Returns the number of time steps between two keyframes.
+    * @return the keyframe interval
+    */
+   public int getKeyframeInterval() { return keyframeInterval; }
+
+   /**
+    * Returns the number of keyframes in the replay.
+    * @return the number of keyframes
+    */
+   public int getNrOfKeyframes() { return nrOfKeyframes; }
+
+   /**
+    * Returns the time step of the first keyframe, at which the recorded
+    * game starts.
+    * @return the first time step of the replay
+    */
+   public long getFirstTick() { return keyframeTicks[0]; }
+
+   /**
+    * Returns the number of time steps run by the recorded game.  For a
+    * replay that was never closed, the time step of the last keyframe.
+    * @return the last time step of the replay
+    */
+   public long getLastTick() { return lastTick; }
+
+   /**
+    * Sets the given game to the recorded game as it was after the given
+    * number of time steps.
+    * @param tick the time step to seek to, between the first and the last
+    * time step of the replay
+    * @param state the state to play the game back in
+    * @param logic the game logic to play the game back with; it should not
+    * record the game
+    * @throws IOException if the replay is damaged or the game logic does
+    * not play it back the same way
+    */
+   public void seek(long tick, GameState state, GameLogic logic) throws IOException {
+      if (tick < getFirstTick() || tick > lastTick) {
+         throw new IllegalArgumentException
+            ("time step " + tick + " is not in the replay");
+      }
+      // Find the last keyframe at or before the time step.
+      int k = Arrays.binarySearch(keyframeTicks, 0, nrOfKeyframes, tick);
+      if (k < 0) {
+         k = -k - 2;
+      }
+
+      position = (int) keyframeOffsets[k];
+      ByteBuffer record = data.duplicate();
+      record.position(position + 1 + 4);
+      logic.setRandomState(GameStateCodec.read(record, state));
+      position += 1 + 4 + data.getInt(position + 1);
+      while (state.playerClicks.drain(scratchX, scratchY, scratchTime) > 0) { }
+
+      while (state.tick < tick) {
+         step(state, logic);
+      }
+   }
+
+   /**
+    * Plays back one time step of the recorded game.  The game must have
+    * been set up by {@link #seek} and not have been changed since.
+    * @param state the state the game is played back in
+    * @param logic the game logic to play the game back with
+    * @return false if the game has reached the end of the replay, true
+    * otherwise
+    * @throws IOException if the replay is damaged or the game logic does
+    * not play it back the same way
+    */
+   public boolean step(GameState state, GameLogic logic) throws IOException {
+      if (state.tick >= lastTick) {
+         return false;
+      }
+      // Hand the clicks of this time step to the game.
+      while (position < data.limit() && data.get(position) == ReplayWriter.CLICKS &&
+             data.getLong(position + 1) <= state.tick) {
+         int count = data.getInt(position + 9);
+         if (data.getLong(position + 1) == state.tick) {
+            for (int i = 0; i < count; i++) {
+               int offset = position + 13 + i * 8;
+               state.playerClicks.offer(data.getInt(offset), data.getInt(offset + 4));
+            }
+         }
+         position += 13 + count * 8;
+      }
+
+      logic.updateCycle(state);
+
+      // Check the game against the keyframe of this time step, if any.
+      if (position < data.limit() && data.get(position) == ReplayWriter.KEYFRAME) {
+         int length = data.getInt(position + 1);
+         long checksum = data.getLong(position + 5);
+         long tick = data.getLong(position + 13);
+         if (tick == state.tick) {
+            if (checksum != state.checksum()) {
+               throw new IOException("the game differs from the replay after time step " + tick);
+            }
+            position += 1 + 4 + length;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Reads the index of the keyframes from the end of the file.
+    * @return true if the file has a valid index, false otherwise
+    */
+   private boolean readIndex() {
+      int end = data.limit();
+      if (end < HEADER_SIZE + 12 || data.getInt(end - 4) != ReplayWriter.INDEX_MAGIC) {
+         return false;
+      }
+      long indexOffset = data.getLong(end - 12);
+      if (indexOffset < HEADER_SIZE + 9 || indexOffset > end - 16) {
+         return false;
+      }
+      int index = (int) indexOffset;
+      int count = data.getInt(index);
+      if (count < 0 || index + 4 + (long) count * 16 != end - 12 ||
+          data.get(index - 9) != ReplayWriter.END) {
+         return false;
+      }
+      for (int k = 0; k < count; k++) {
+         addKeyframe(data.getLong(index + 4 + k * 16), data.getLong(index + 12 + k * 16));
+      }
+      lastTick = data.getLong(index - 8);
+      return true;
+   }
+
+   /**
+    * Finds the keyframes by reading through all the records, stopping at
+    * the end record or where the file was cut off.
+    */
+   private void scanRecords() {
+      int p = HEADER_SIZE;
+      int end = data.limit();
+      while (p < end) {
+         byte type = data.get(p);
+         if (type == ReplayWriter.CLICKS && p + 13 <= end) {
+            p += 13 + data.getInt(p + 9) * 8;
+         } else if (type == ReplayWriter.KEYFRAME && p + 5 <= end) {
+            int length = data.getInt(p + 1);
+            if (p + 5 + (long) length > end) {
+               break;
+            }
+            addKeyframe(data.getLong(p + 13), p);
+            p += 5 + length;
+         } else {
+            break;
+         }
+      }
+      lastTick = nrOfKeyframes > 0 ? keyframeTicks[nrOfKeyframes - 1] : 0;
+   }
+
+   /**
+    * Adds a keyframe to the index.
+    * @param tick the time step of the keyframe
+    * @param offset the offset of the keyframe record in the file
+    */
+   private void addKeyframe(long tick, long offset) {
+      if (nrOfKeyframes == keyframeTicks.length) {
+         keyframeTicks = Arrays.copyOf(keyframeTicks, nrOfKeyframes * 2);
+         keyframeOffsets = Arrays.copyOf(keyframeOffsets, nrOfKeyframes * 2);
+      }
+      keyframeTicks[nrOfKeyframes] = tick;
+      keyframeOffsets[nrOfKeyframes] = offset;
+      nrOfKeyframes++;
+   }
+
+}
@@ -0,0 +1,257 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class records a Missile Command game to a replay file, which can be
+ * played back and seeked in by a {@link ReplayReader}.  It is handed to the
+ * game logic with {@link GameLogic#setRecorder}, which calls it with the
+ * clicks processed by every time step and after every time step.
+ * <p>
+ * A replay file starts with a header, followed by a sequence of records
+ * and ends with an index of the keyframes:
+ * <pre>
+ * header:   int MAGIC, int VERSION, int keyframe interval
+ * clicks:   byte CLICKS, long tick, int n, n times (int x, int y)
+ * keyframe: byte KEYFRAME, int length, length bytes of {@link GameStateCodec}
+ * end:      byte END, long last tick
+ * index:    int n, n times (long tick, long offset of the keyframe record)
+ * footer:   long offset of the index, int INDEX_MAGIC
+ * </pre>
+ * A clicks record holds the clicks processed by one time step and is only
+ * written for time steps with clicks.  A keyframe holds the complete state
+ * of the game after the first time step and then after every keyframe
+ * interval time steps, together with the state of the random number
+ * generator.  All numbers are big-endian.
+ * <p>
+ * Errors writing the file do not disturb the game; recording simply stops
+ * and the error is thrown by {@link #close()}.  The file is flushed after
+ * every keyframe, so a game that is never closed can still be played back
+ * up to the last keyframe written.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ReplayWriter {
+
+   /** The first four bytes of a replay file, "MCRP". */
+   public final static int MAGIC = 0x4D435250;
+
+   /** The version of the file format. */
+   public final static int VERSION = 1;
+
+   /** The last four bytes of a complete replay file, "MCRX". */
+   public final static int INDEX_MAGIC = 0x4D435258;
+
+   /** The type of a clicks record. */
+   public final static byte CLICKS = 1;
+
+   /** The type of a keyframe record. */
+   public final static byte KEYFRAME = 2;
+
+   /** The type of the record ending the records. */
+   public final static byte END = 0;
+
+   /** The number of time steps between two keyframes by default (10 seconds). */
+   public final static int DEFAULT_KEYFRAME_INTERVAL = 250;
+
+   /** The size of the buffer records are collected in before writing. */
+   private final static int BUFFER_SIZE = 1 << 16;
+
+   /** The file written to. */
+   private FileChannel channel;
+
+   /** Collects the records before they are written to the file. */
+   private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+   /** The number of bytes written to the file so far. */
+   private long written;
+
+   /** The number of time steps between two keyframes. */
+   private int keyframeInterval;
+
+   /** The time step of every keyframe written. */
+   private long[] keyframeTicks = new long[16];
+
+   /** The offset of every keyframe record in the file. */
+   private long[] keyframeOffsets = new long[16];
+
+   /** The number of keyframes written. */
+   private int nrOfKeyframes;
+
+   /** The number of time steps run by the recorded game. */
+   private long lastTick;
+
+   /** The first error writing the file, or null. */
+   private IOException failure;
+
+   /**
+    * Creates a new replay file with the default keyframe interval.
+    * @param fileName the name of the file
+    * @throws IOException if the file can not be created
+    */
+   public ReplayWriter(String fileName) throws IOException {
+      this(fileName, DEFAULT_KEYFRAME_INTERVAL);
+   }
+
+   /**
+    * Creates a new replay file.
+    * @param fileName the name of the file
+    * @param keyframeInterval the number of time steps between two keyframes
+    * @throws IOException if the file can not be created
+    */
+   public ReplayWriter(String fileName, int keyframeInterval) throws IOException {
+      if (keyframeInterval < 1) {
+         throw new IllegalArgumentException("the keyframe interval must be positive");
+      }
+      this.keyframeInterval = keyframeInterval;
+      channel = new FileOutputStream(fileName).getChannel();
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(keyframeInterval);
+   }
+
+   /**
+    * Returns the number of time steps between two keyframes.
+    * @return the keyframe interval
+    */
+   public int getKeyframeInterval() { return keyframeInterval; }
+
+   /**
+    * Records the state of a game that has just been set up, as the first
+    * keyframe.
+    * @param state the state of the game
+    * @param logic the game logic running the game
+    */
+   public void recordStart(GameState state, GameLogic logic) {
+      lastTick = state.tick;
+      writeKeyframe(state, logic);
+   }
+
+   /**
+    * Records the clicks processed by a time step.
+    * @param tick the time step
+    * @param x the x coordinates of the clicks
+    * @param y the y coordinates of the clicks
+    * @param count the number of clicks
+    */
+   public void recordClicks(long tick, int[] x, int[] y, int count) {
+      if (count == 0 || failure != null) {
+         return;
+      }
+      reserve(1 + 8 + 4 + count * 8);
+      buffer.put(CLICKS);
+      buffer.putLong(tick);
+      buffer.putInt(count);
+      for (int i = 0; i < count; i++) {
+         buffer.putInt(x[i]);
+         buffer.putInt(y[i]);
+      }
+   }
+
+   /**
+    * Records the end of a time step, writing a keyframe if one is due.
+    * @param state the state of the game after the time step
+    * @param logic the game logic running the game
+    */
+   public void recordTick(GameState state, GameLogic logic) {
+      lastTick = state.tick;
+      if (state.tick % keyframeInterval == 0) {
+         writeKeyframe(state, logic);
+      }
+   }
+
+   /**
+    * Ends the replay by writing the index of the keyframes, and closes the
+    * file.
+    * @throws IOException if the file could not be written, now or while
+    * the game was recorded
+    */
+   public void close() throws IOException {
+      if (channel == null) {
+         return;
+      }
+      try {
+         if (failure == null) {
+            reserve(1 + 8);
+            buffer.put(END);
+            buffer.putLong(lastTick);
+
+            long indexOffset = written + buffer.position();
+            reserve(4 + nrOfKeyframes * 16 + 8 + 4);
+            buffer.putInt(nrOfKeyframes);
+            for (int k = 0; k < nrOfKeyframes; k++) {
+               buffer.putLong(keyframeTicks[k]);
+               buffer.putLong(keyframeOffsets[k]);
+            }
+            buffer.putLong(indexOffset);
+            buffer.putInt(INDEX_MAGIC);
+            flush();
+         }
+      } finally {
+         channel.close();
+         channel = null;
+      }
+      if (failure != null) {
+         throw failure;
+      }
+   }
+
+   /**
+    * Writes a keyframe of the given state and flushes the file.
+    * @param state the state of the game
+    * @param logic the game logic running the game
+    */
+   private void writeKeyframe(GameState state, GameLogic logic) {
+      if (failure != null) {
+         return;
+      }
+      if (nrOfKeyframes == keyframeTicks.length) {
+         keyframeTicks = Arrays.copyOf(keyframeTicks, nrOfKeyframes * 2);
+         keyframeOffsets = Arrays.copyOf(keyframeOffsets, nrOfKeyframes * 2);
+      }
+      int length = GameStateCodec.size(state);
+      reserve(1 + 4 + length);
+      keyframeTicks[nrOfKeyframes] = state.tick;
+      keyframeOffsets[nrOfKeyframes] = written + buffer.position();
+      nrOfKeyframes++;
+
+      buffer.put(KEYFRAME);
+      buffer.putInt(length);
+      GameStateCodec.write(state, logic.getRandomState(), buffer);
+      flush();
+   }
+
+   /**
+    * Makes sure the buffer has room for the given number of bytes, writing
+    * out what it holds or growing it if needed.
+    * @param bytes the number of bytes to make room for
+    */
+   private void reserve(int bytes) {
+      if (buffer.remaining() < bytes) {
+         flush();
+         if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes);
+         }
+      }
+   }
+
+   /** Writes what the buffer holds to the file. */
+   private void flush() {
+      if (failure != null) {
+         return;
+      }
+      buffer.flip();
+      try {
+         while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+         }
+      } catch (IOException e) {
+         failure = e;
+      }
+      buffer.clear();
+   }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * This class accumulates the count, mean, variance, minimum and maximum of
+ * a stream of values without keeping the values themselves.  The mean and
+ * variance are updated with Welford's method, which stays accurate where
+ * summing the values and their squares would cancel out, and two
+ * accumulators filled on different threads can be merged afterwards.
+ * <p>
+ * An instance must only be used by one thread at a time.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class RunningStatistics {
+
+   /** The number of values added. */
+   private long count;
+
+   /** The mean of the values added. */
+   private double mean;
+
+   /** The sum of the squared differences from the mean. */
+   private double m2;
+
+   /** The smallest value added. */
+   private double min = Double.POSITIVE_INFINITY;
+
+   /** The largest value added. */
+   private double max = Double.NEGATIVE_INFINITY;
+
+   /**
+    * Adds a value.
+    * @param value the value to add
+    */
+   public void add(double value) {
+      count++;
+      double delta = value - mean;
+      mean += delta / count;
+      m2 += delta * (value - mean);
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+   }
+
+   /**
+    * Adds all the values added to another accumulator, as if they had been
+    * added to this one.
+    * @param other the accumulator to merge into this one
+    */
+   public void merge(RunningStatistics other) {
+      if (other.count == 0) {
+         return;
+      }
+      long total = count + other.count;
+      double delta = other.mean - mean;
+      mean += delta * other.count / total;
+      m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+      count = total;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+   }
+
+   /**
+    * Returns the number of values added.
+    * @return the number of values added
+    */
+   public long getCount() { return count; }
+
+   /**
+    * Returns the mean of the values added.
+    * @return the mean, or 0 if no values were added
+    */
+   public double getMean() { return mean; }
+
+   /**
+    * Returns the sample variance of the values added.
+    * @return the sample variance, or 0 if fewer than two values were added
+    */
+   public double getVariance() { return (count < 2) ? 0.0 : m2 / (count - 1); }
+
+   /**
+    * Returns the sample standard deviation of the values added.
+    * @return the sample standard deviation
+    */
+   public double getStandardDeviation() { return Math.sqrt(getVariance()); }
+
+   /**
+    * Returns the standard error of the mean of the values added.
+    * @return the standard error of the mean, or 0 if no values were added
+    */
+   public double getStandardError() {
+      return (count == 0) ? 0.0 : Math.sqrt(getVariance() / count);
+   }
+
+   /**
+    * Returns the smallest value added.
+    * @return the smallest value, or positive infinity if none were added
+    */
+   public double getMin() { return min; }
+
+   /**
+    * Returns the largest value added.
+    * @return the largest value, or negative infinity if none were added
+    */
+   public double getMax() { return max; }
+
+}
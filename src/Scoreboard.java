@@ -1,30 +1,82 @@
 import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
 
 /**
  * This class displays the score and current power level of a Missile Command
- * game. The current score and power level should be set through the {@link
- * #updateScoreboard(GameState)} method.
+ * game. The scoreboard subscribes to the {@link GameEventBus} of the game
+ * and only updates its components when the score or the power level shown
+ * changes.
  * 
  * @author Tobias Salem
  * @version 1.0
  */
-public class Scoreboard extends JPanel {
+public class Scoreboard extends JPanel implements Flow.Subscriber<GameEvent> {
 
    /** The maximum power level. */
    private final static int MAX_POWER = 1000;
 
+   /** The number of events requested from the event bus at a time. */
+   private final static int REQUEST_SIZE = 64;
+
    /** Displays the current score. Should never be null. */
    private JLabel score;
 
    /** Displays the current power level. Should never be null. */
    private JProgressBar power;
 
+   /** The latest score reported by the event bus. */
+   private volatile int latestScore;
+
+   /** The latest power level reported, as shown by the power bar. */
+   private volatile int latestPower;
+
+   /** The score shown.  Only used in the event handling thread. */
+   private int shownScore;
+
+   /** The power level shown.  Only used in the event handling thread. */
+   private int shownPower;
+
+   /** The score last handed to the event handling thread. */
+   private int queuedScore;
+
+   /** The power level last handed to the event handling thread. */
+   private int queuedPower;
+
+   /** The subscription to the event bus, or null before subscribing. */
+   private Flow.Subscription subscription;
+
+   /** The number of events delivered since more were last requested. */
+   private int delivered;
+
+   /**
+    * Set while an update of the components is waiting to run in the event
+    * handling thread, so that at most one update is queued at a time.
+    */
+   private final AtomicBoolean updatePending = new AtomicBoolean();
+
+   /** Updates the components from the latest score and power level. */
+   private final Runnable update = new Runnable() {
+      public void run() {
+         updatePending.set(false);
+         if (latestScore != shownScore) {
+            shownScore = latestScore;
+            score.setText(Integer.toString(shownScore));
+         }
+         if (latestPower != shownPower) {
+            shownPower = latestPower;
+            power.setValue(shownPower);
+         }
+      }
+   };
+
    /** Creates a panel that displays the current score and power level. */
    public Scoreboard() {
       super(new FlowLayout(FlowLayout.CENTER));
@@ -43,16 +95,53 @@ public class Scoreboard extends JPanel {
    }
 
    /**
-    * Updates the scoreboard's components (display) using the provided game
-    * state data, which should not be null.  This method should be called
-    * within the event handling thread.
-    * @param state the current GameState
+    * Starts receiving the events of a game.
+    * @param subscription the subscription to the event bus of the game
+    */
+   public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      delivered = 0;
+      subscription.request(REQUEST_SIZE);
+   }
+
+   /**
+    * Takes the score and power level from the events that change them, and
+    * updates the components from within the event handling thread if what
+    * they show has changed.  Events are delivered one at a time, so this
+    * method is never called by two threads at once.
+    * @param event the next event of the game
     */
-   public void updateScoreboard(GameState state) {
-      this.score.setText(new Integer(state.score).toString());
-      this.power.setValue((int)(state.power * MAX_POWER));
+   public void onNext(GameEvent event) {
+      if (event.getType() == GameEvent.SCORE_CHANGED) {
+         latestScore = event.getValue();
+      } else if (event.getType() == GameEvent.POWER_CHANGED) {
+         latestPower = (int)(event.getLevel() * MAX_POWER);
+      }
+      if (++delivered == REQUEST_SIZE) {
+         delivered = 0;
+         subscription.request(REQUEST_SIZE);
+      }
+      if (latestScore != queuedScore || latestPower != queuedPower) {
+         queuedScore = latestScore;
+         queuedPower = latestPower;
+         // An update already queued reads the latest values when it runs.
+         if (updatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(update);
+         }
+      }
    }
 
+   /**
+    * Reports that the events of the game can no longer be received.
+    * @param error the reason
+    */
+   public void onError(Throwable error) {
+      System.err.println("The scoreboard stopped updating: " + error);
+   }
+
+   /** Does nothing: the scoreboard keeps showing the final score. */
+   public void onComplete() { }
+
    /**
     * Shows a window with a scoreboard.  The JVM exits when the window is
     * closed.  This method provides a simple way to test this class.  The
@@ -0,0 +1,152 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * This class implements a click policy that replays clicks read from a
+ * script.  Every non-empty line of the script that does not start with a
+ * '#' holds three integers separated by white space: the time step of the
+ * click followed by its x and y coordinates in the game world.  The lines
+ * do not have to be sorted.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class ScriptedClickPolicy implements ClickPolicy {
+
+   /** The time step of every click, in ascending order. */
+   private long[] ticks = new long[16];
+
+   /** The x coordinate of every click. */
+   private int[] xs = new int[16];
+
+   /** The y coordinate of every click. */
+   private int[] ys = new int[16];
+
+   /** The number of clicks in the script. */
+   private int count;
+
+   /** The index of the next click to make. */
+   private int next;
+
+   /**
+    * Creates a new policy replaying the clicks in the given script file.
+    * @param fileName the name of the script file
+    * @throws IOException if the file can not be read or is malformed
+    */
+   public ScriptedClickPolicy(String fileName) throws IOException {
+      BufferedReader in = new BufferedReader(new FileReader(fileName));
+      try {
+         String line;
+         int lineNr = 0;
+         while ((line = in.readLine()) != null) {
+            lineNr++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+               continue;
+            }
+            StringTokenizer tokens = new StringTokenizer(line);
+            if (tokens.countTokens() != 3) {
+               throw new IOException(fileName + ":" + lineNr +
+                                     ": expected <tick> <x> <y>");
+            }
+            try {
+               add(Long.parseLong(tokens.nextToken()),
+                   Integer.parseInt(tokens.nextToken()),
+                   Integer.parseInt(tokens.nextToken()));
+            } catch (NumberFormatException e) {
+               throw new IOException(fileName + ":" + lineNr + ": " + e.getMessage());
+            }
+         }
+      } finally {
+         in.close();
+      }
+      sort();
+   }
+
+   /**
+    * Creates a new policy replaying the same clicks as the given policy,
+    * from the start of the script.  The clicks themselves are shared, so a
+    * script read once can be replayed by many games at the same time.
+    * @param script the policy to replay the clicks of
+    */
+   public ScriptedClickPolicy(ScriptedClickPolicy script) {
+      ticks = script.ticks;
+      xs = script.xs;
+      ys = script.ys;
+      count = script.count;
+   }
+
+   /**
+    * Adds all the clicks scripted for the given time step.
+    * @param tick the number of the time step, starting at 0
+    * @param state the current GameState
+    */
+   public void click(long tick, GameState state) {
+      // Skip clicks for time steps that have already passed.
+      while (next < count && ticks[next] < tick) {
+         next++;
+      }
+      while (next < count && ticks[next] == tick) {
+         state.playerClicks.offer(xs[next], ys[next]);
+         next++;
+      }
+   }
+
+   /**
+    * Returns the state of the policy, which is always 0 since the clicks
+    * only depend on the time step.
+    * @return 0
+    */
+   public long getState() { return 0; }
+
+   /**
+    * Does nothing, since the clicks only depend on the time step.
+    * @param state the state of the policy, ignored
+    */
+   public void setState(long state) { }
+
+   /**
+    * Adds a click to the end of the script.
+    * @param tick the time step of the click
+    * @param x the x coordinate of the click
+    * @param y the y coordinate of the click
+    */
+   private void add(long tick, int x, int y) {
+      if (count == ticks.length) {
+         ticks = Arrays.copyOf(ticks, count * 2);
+         xs = Arrays.copyOf(xs, count * 2);
+         ys = Arrays.copyOf(ys, count * 2);
+      }
+      ticks[count] = tick;
+      xs[count] = x;
+      ys[count] = y;
+      count++;
+   }
+
+   /**
+    * Sorts the clicks by time step, keeping the order of clicks made in the
+    * same time step.  Scripts are usually written in order, which makes an
+    * insertion sort close to linear.
+    */
+   private void sort() {
+      for (int i = 1; i < count; i++) {
+         long tick = ticks[i];
+         int x = xs[i];
+         int y = ys[i];
+         int j = i - 1;
+         while (j >= 0 && ticks[j] > tick) {
+            ticks[j + 1] = ticks[j];
+            xs[j + 1] = xs[j];
+            ys[j + 1] = ys[j];
+            j--;
+         }
+         ticks[j + 1] = tick;
+         xs[j + 1] = x;
+         ys[j + 1] = y;
+      }
+   }
+
+}
@@ -0,0 +1,205 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class implements a height map of the buildings of a Missile Command
+ * game.  For every pixel column of the world it records the building that
+ * covers the column, so that checking if a point is inside a building takes
+ * one array lookup instead of a test against every building.
+ * <p>
+ * The buildings made by {@link GameLogic} never overlap.  Columns covered by
+ * more than one building are still handled correctly, but are marked with
+ * {@link #SEVERAL} and fall back to testing the buildings one by one.
+ * Buildings must not be moved or resized while they are in the skyline.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class Skyline {
+
+   /** Marks a column that is not covered by any building. */
+   public final static int EMPTY = -1;
+
+   /** Marks a column that is covered by more than one building. */
+   public final static int SEVERAL = -2;
+
+   /** The x coordinate of the first column. */
+   private int originX;
+
+   /**
+    * The id of the building covering every column, or {@link #EMPTY} or
+    * {@link #SEVERAL}.
+    */
+   private int[] columns = new int[0];
+
+   /** The buildings of the skyline by id; null once a building is removed. */
+   private Building[] buildings = new Building[0];
+
+   /** The top of every building by id, copied to save an indirection. */
+   private int[] tops = new int[0];
+
+   /** The number of buildings the skyline was built from. */
+   private int nrOfIds;
+
+   /** The number of buildings in the skyline. */
+   private int size;
+
+   /**
+    * Rebuilds the skyline from the given buildings.  The id of every
+    * building is its index in the list.
+    * @param list the buildings, each element a {@link Building}
+    */
+   public void build(ArrayList list) {
+      nrOfIds = list.size();
+      size = nrOfIds;
+      if (buildings.length < nrOfIds) {
+         buildings = new Building[nrOfIds];
+         tops = new int[nrOfIds];
+      } else {
+         Arrays.fill(buildings, null);
+      }
+
+      int first = Integer.MAX_VALUE;
+      int last = Integer.MIN_VALUE;
+      for (int id = 0; id < nrOfIds; id++) {
+         Building b = (Building) list.get(id);
+         buildings[id] = b;
+         tops[id] = b.getTopLeft().getJComp();
+         first = Math.min(first, b.getTopLeft().getIComp());
+         last = Math.max(last, b.getBottomRight().getIComp());
+      }
+
+      originX = (first <= last) ? first : 0;
+      int width = (first <= last) ? last - first + 1 : 0;
+      if (columns.length != width) {
+         columns = new int[width];
+      }
+      Arrays.fill(columns, EMPTY);
+      for (int id = 0; id < nrOfIds; id++) {
+         Building b = buildings[id];
+         int left = b.getTopLeft().getIComp() - originX;
+         int right = b.getBottomRight().getIComp() - originX;
+         for (int c = left; c <= right; c++) {
+            columns[c] = (columns[c] == EMPTY) ? id : SEVERAL;
+         }
+      }
+   }
+
+   /**
+    * Returns the number of buildings in the skyline.
+    * @return the number of buildings in the skyline
+    */
+   public int size() { return size; }
+
+   /**
+    * Returns the id of the building covering the given column.
+    * @param x the x coordinate of the column
+    * @return the id of the building, or {@link #EMPTY} if no building
+    * covers the column, or {@link #SEVERAL} if more than one does
+    */
+   public int buildingAt(int x) {
+      int c = x - originX;
+      return (c >= 0 && c < columns.length) ? columns[c] : EMPTY;
+   }
+
+   /**
+    * Returns the building with the given id.
+    * @param id the id of the building
+    * @return the building, or null if it has been removed
+    */
+   public Building getBuilding(int id) { return buildings[id]; }
+
+   /**
+    * Checks if the given point is interior to any building, in the sense of
+    * {@link Building#isInterior(int, int)}.
+    * @param x the x coordinate of the point
+    * @param y the y coordinate of the point
+    * @return true if the point is interior to a building, false otherwise
+    */
+   public boolean isInterior(int x, int y) {
+      int id = buildingAt(x);
+      if (id >= 0) {
+         return y <= tops[id];
+      }
+      if (id == SEVERAL) {
+         for (int i = 0; i < nrOfIds; i++) {
+            if (buildings[i] != null && buildings[i].isInterior(x, y)) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Hands every building covering a column between the given x
+    * coordinates to the given sweep, see {@link MissileSweep#enter}.  Every
+    * building is handed over once, even if it covers several columns.
+    * @param fromX the x coordinate of one end of the columns
+    * @param toX the x coordinate of the other end of the columns
+    * @param sweep the sweep to hand the buildings to
+    */
+   public void sweep(int fromX, int toX, MissileSweep sweep) {
+      int first = Math.max(Math.min(fromX, toX) - originX, 0);
+      int last = Math.min(Math.max(fromX, toX) - originX, columns.length - 1);
+      int previous = EMPTY;
+      for (int c = first; c <= last; c++) {
+         int id = columns[c];
+         if (id == previous) {
+            continue;
+         }
+         previous = id;
+         if (id >= 0) {
+            Building b = buildings[id];
+            sweep.enter(b.getTopLeft().getIComp(), b.getBottomRight().getIComp(), tops[id]);
+         } else if (id == SEVERAL) {
+            for (int i = 0; i < nrOfIds; i++) {
+               Building b = buildings[i];
+               if (b != null) {
+                  sweep.enter(b.getTopLeft().getIComp(), b.getBottomRight().getIComp(),
+                              b.getTopLeft().getJComp());
+               }
+            }
+            return;
+         }
+      }
+   }
+
+   /**
+    * Removes a building from the skyline, clearing the columns it covered.
+    * @param b the building to remove
+    */
+   public void remove(Building b) {
+      int left = b.getTopLeft().getIComp();
+      int right = b.getBottomRight().getIComp();
+      int id = buildingAt(left);
+      if (id < 0 || buildings[id] != b) {
+         // The building shares its left column with others.
+         for (id = nrOfIds - 1; id >= 0 && buildings[id] != b; id--) { }
+         if (id < 0) {
+            return;
+         }
+      }
+      buildings[id] = null;
+      size--;
+
+      for (int x = left; x <= right; x++) {
+         int c = x - originX;
+         if (columns[c] == id) {
+            columns[c] = EMPTY;
+         } else if (columns[c] == SEVERAL) {
+            // Count the buildings still covering the column.
+            int covering = EMPTY;
+            for (int i = 0; i < nrOfIds; i++) {
+               Building other = buildings[i];
+               if (other != null && other.getTopLeft().getIComp() <= x &&
+                   x <= other.getBottomRight().getIComp()) {
+                  covering = (covering == EMPTY) ? i : SEVERAL;
+               }
+            }
+            columns[c] = covering;
+         }
+      }
+   }
+
+}
@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements a lock-free triple buffer of {@link GameSnapshot}s,
+ * used to hand the state of the game from the thread running the game logic
+ * (the writer) to the thread drawing the display (the reader).
+ * <p>
+ * The writer always fills in the back snapshot and the reader always reads
+ * the front snapshot, which it owns until its next call to
+ * {@link #acquire()}.  Publishing swaps the back snapshot with the middle
+ * one, and acquiring swaps the front snapshot with the middle one if a new
+ * snapshot has been published since.  Neither thread ever waits for the
+ * other, and the reader always gets the latest published snapshot.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SnapshotBuffer {
+
+   /** Mask for the index of the middle snapshot in {@link #middle}. */
+   private final static int INDEX = 3;
+
+   /** Flag in {@link #middle} set when the middle snapshot has not been read. */
+   private final static int FRESH = 4;
+
+   /** The three snapshots. */
+   private final GameSnapshot[] snapshots = {
+      new GameSnapshot(), new GameSnapshot(), new GameSnapshot()
+   };
+
+   /**
+    * The index of the middle snapshot, together with the {@link #FRESH}
+    * flag.  The only state shared between the two threads.
+    */
+   private final AtomicInteger middle = new AtomicInteger(1);
+
+   /** The index of the back snapshot.  Only used by the writer. */
+   private int back = 0;
+
+   /** The index of the front snapshot.  Only used by the reader. */
+   private int front = 2;
+
+   /**
+    * Returns the snapshot the writer should fill in next.  Must only be
+    * called by the writer.
+    * @return the back snapshot
+    */
+   public GameSnapshot getBack() { return snapshots[back]; }
+
+   /**
+    * Publishes the back snapshot, making it the latest snapshot available
+    * to the reader.  Must only be called by the writer.
+    */
+   public void publish() {
+      back = middle.getAndSet(back | FRESH) & INDEX;
+   }
+
+   /**
+    * Returns the latest published snapshot.  The snapshot can be read until
+    * the next call to this method.  Must only be called by the reader.
+    * @return the latest published snapshot, which has a tick of -1 if
+    * nothing has been published yet
+    */
+   public GameSnapshot acquire() {
+      if ((middle.get() & FRESH) != 0) {
+         front = middle.getAndSet(front) & INDEX;
+      }
+      return snapshots[front];
+   }
+
+}
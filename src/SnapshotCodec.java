@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class converts {@link GameSnapshot}s to bytes and back, for sending
+ * the game over a network.  A snapshot is written as the difference from an
+ * earlier snapshot the receiver already has, its base, or from an empty
+ * snapshot if there is none.  Every number is written as a variable length
+ * integer, zigzag encoded when it may be negative, so small differences take
+ * a single byte.
+ * <p>
+ * Entities are matched with the entity at the same index of the base.  The
+ * stores only move an entity when an earlier one is removed, so most
+ * entities keep their index from one time step to the next.  Missiles and
+ * explosions move at a constant speed, so an entity that kept its index is
+ * exactly where the base says it should be by now.  Every kind of entity
+ * is written as a mask with one bit per entity, set for the entities that
+ * are not as expected, followed by the differences of only those entities.
+ * An unchanged entity thus costs a single bit, and an entity that took the
+ * place of another one a few bytes.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SnapshotCodec {
+
+   /** The largest number of bytes a variable length integer is written as. */
+   public final static int MAX_VARINT_SIZE = 10;
+
+   /** The empty snapshot, the base of snapshots written without one. */
+   private final static GameSnapshot NONE = new GameSnapshot();
+
+   /** No instances, this class only holds static methods. */
+   private SnapshotCodec() { }
+
+   /**
+    * Returns the largest number of bytes the given snapshot can be written
+    * as, whatever its base.
+    * @param snapshot the snapshot to write
+    * @return an upper bound of the bytes written by {@link #encode}
+    */
+   public static int maxSize(GameSnapshot snapshot) {
+      int entities = snapshot.missileCount + snapshot.explosionCount +
+         snapshot.buildingCount;
+      return entities / 8 + 3 +
+         MAX_VARINT_SIZE * (9 + snapshot.missileCount * 6 +
+                            snapshot.explosionCount * 5 +
+                            snapshot.buildingCount * 5);
+   }
+
+   /**
+    * Writes a snapshot as the difference from the given base, to a buffer
+    * which must have at least {@link #maxSize} bytes remaining.
+    * @param base the snapshot the receiver already has, from an earlier
+    * time step, or null to write the whole snapshot
+    * @param snapshot the snapshot to write
+    * @param out the buffer to write to
+    */
+   public static void encode(GameSnapshot base, GameSnapshot snapshot, ByteBuffer out) {
+      if (base == null) {
+         base = NONE;
+      }
+      long steps = (base == NONE) ? 0 : snapshot.tick - base.tick;
+      putVarLong(out, snapshot.tick);
+      putVarLong(out, base.tick + 1);
+      putSigned(out, (long) snapshot.score - base.score);
+      putSigned(out, (long) Float.floatToIntBits(snapshot.power) -
+                Float.floatToIntBits(base.power));
+      putSigned(out, (long) snapshot.worldWidth - base.worldWidth);
+      putSigned(out, (long) snapshot.worldHeight - base.worldHeight);
+      putVarLong(out, snapshot.missileCount);
+      putVarLong(out, snapshot.explosionCount);
+      putVarLong(out, snapshot.buildingCount);
+
+      putMissiles(out, base, snapshot, steps);
+      putExplosions(out, base, snapshot, steps);
+      putBuildings(out, base, snapshot);
+   }
+
+   /**
+    * Reads a snapshot written by {@link #encode} into the history, which
+    * must hold the base the snapshot was written against.  The time at
+    * which the time step was due is not sent, and is left for the caller
+    * to fill in.
+    * @param in the buffer to read from
+    * @param history the snapshots received so far
+    * @return the snapshot read, now also in the history
+    * @throws IOException if the bytes do not hold a valid snapshot, or its
+    * base is not in the history
+    */
+   public static GameSnapshot decode(ByteBuffer in, SnapshotHistory history)
+      throws IOException {
+      try {
+         long tick = getVarLong(in);
+         long baseTick = getVarLong(in) - 1;
+         GameSnapshot base = NONE;
+         if (baseTick >= 0) {
+            base = history.get(baseTick);
+            if (base == null || tick <= baseTick || tick - baseTick >= history.capacity()) {
+               throw new IOException("snapshot " + tick + " is based on unknown snapshot " +
+                                     baseTick);
+            }
+         }
+         long steps = (base == NONE) ? 0 : tick - baseTick;
+         GameSnapshot snapshot = history.take(tick);
+
+         snapshot.score = (int) (base.score + getSigned(in));
+         snapshot.power = Float.intBitsToFloat
+            ((int) (Float.floatToIntBits(base.power) + getSigned(in)));
+         snapshot.worldWidth = (int) (base.worldWidth + getSigned(in));
+         snapshot.worldHeight = (int) (base.worldHeight + getSigned(in));
+         long missiles = getVarLong(in);
+         long explosions = getVarLong(in);
+         long buildings = getVarLong(in);
+         // Every entity takes at least one bit.
+         if (missiles < 0 || explosions < 0 || buildings < 0 ||
+             (missiles + explosions + buildings) / 8 > in.remaining()) {
+            throw new IOException("truncated snapshot");
+         }
+         snapshot.resize((int) missiles, (int) explosions, (int) buildings);
+
+         getMissiles(in, base, snapshot, steps);
+         getExplosions(in, base, snapshot, steps);
+         getBuildings(in, base, snapshot);
+
+         snapshot.buildIndex();
+
+         // Only a complete snapshot can serve as a base.
+         snapshot.tick = tick;
+         return snapshot;
+      } catch (BufferUnderflowException e) {
+         throw new IOException("truncated snapshot");
+      }
+   }
+
+   /**
+    * Writes the missiles of a snapshot: a mask with a bit set for every
+    * missile that is not where the base says it should be by now, followed
+    * by the differences of those missiles from the base.
+    * @param out the buffer to write to
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to write
+    * @param steps the number of time steps since the base
+    */
+   private static void putMissiles(ByteBuffer out, GameSnapshot base,
+                                   GameSnapshot snapshot, long steps) {
+      int n = snapshot.missileCount;
+      int from = base.missileCount;
+      int mask = reserveMask(out, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int dx = old ? base.missileDX[i] : 0;
+         int dy = old ? base.missileDY[i] : 0;
+         long x = old ? base.missileX[i] + dx * steps : 0;
+         long y = old ? base.missileY[i] + dy * steps : 0;
+         int size = old ? base.missileSize[i] : 0;
+         int explosionSize = old ? base.missileExplosionSize[i] : 0;
+         if (old && snapshot.missileDX[i] == dx && snapshot.missileDY[i] == dy &&
+             snapshot.missileX[i] == x && snapshot.missileY[i] == y &&
+             snapshot.missileSize[i] == size &&
+             snapshot.missileExplosionSize[i] == explosionSize) {
+            continue;
+         }
+         mark(out, mask, i);
+         putSigned(out, (long) snapshot.missileDX[i] - dx);
+         putSigned(out, (long) snapshot.missileDY[i] - dy);
+         putSigned(out, snapshot.missileX[i] - x);
+         putSigned(out, snapshot.missileY[i] - y);
+         putSigned(out, (long) snapshot.missileSize[i] - size);
+         putSigned(out, (long) snapshot.missileExplosionSize[i] - explosionSize);
+      }
+   }
+
+   /**
+    * Reads the missiles written by {@link #putMissiles}.
+    * @param in the buffer to read from
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to read into, already resized
+    * @param steps the number of time steps since the base
+    * @throws IOException if the missiles are malformed
+    */
+   private static void getMissiles(ByteBuffer in, GameSnapshot base,
+                                   GameSnapshot snapshot, long steps) throws IOException {
+      int n = snapshot.missileCount;
+      int from = base.missileCount;
+      int mask = skipMask(in, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int dx = old ? base.missileDX[i] : 0;
+         int dy = old ? base.missileDY[i] : 0;
+         long x = old ? base.missileX[i] + dx * steps : 0;
+         long y = old ? base.missileY[i] + dy * steps : 0;
+         int size = old ? base.missileSize[i] : 0;
+         int explosionSize = old ? base.missileExplosionSize[i] : 0;
+         if (!isMarked(in, mask, i, old)) {
+            snapshot.missileDX[i] = dx;
+            snapshot.missileDY[i] = dy;
+            snapshot.missileX[i] = (int) x;
+            snapshot.missileY[i] = (int) y;
+            snapshot.missileSize[i] = size;
+            snapshot.missileExplosionSize[i] = explosionSize;
+            continue;
+         }
+         snapshot.missileDX[i] = (int) (dx + getSigned(in));
+         snapshot.missileDY[i] = (int) (dy + getSigned(in));
+         snapshot.missileX[i] = (int) (x + getSigned(in));
+         snapshot.missileY[i] = (int) (y + getSigned(in));
+         snapshot.missileSize[i] = (int) (size + getSigned(in));
+         snapshot.missileExplosionSize[i] = (int) (explosionSize + getSigned(in));
+      }
+   }
+
+   /**
+    * Writes the explosions of a snapshot like {@link #putMissiles}, with
+    * the radius of every explosion expected to have grown since the base.
+    * @param out the buffer to write to
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to write
+    * @param steps the number of time steps since the base
+    */
+   private static void putExplosions(ByteBuffer out, GameSnapshot base,
+                                     GameSnapshot snapshot, long steps) {
+      int n = snapshot.explosionCount;
+      int from = base.explosionCount;
+      int mask = reserveMask(out, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int x = old ? base.explosionX[i] : 0;
+         int y = old ? base.explosionY[i] : 0;
+         int growth = old ? base.explosionGrowth[i] : 0;
+         long radius = old ? base.explosionRadius[i] + growth * steps : 0;
+         int maxRadius = old ? base.explosionMaxRadius[i] : 0;
+         if (old && snapshot.explosionX[i] == x && snapshot.explosionY[i] == y &&
+             snapshot.explosionGrowth[i] == growth && snapshot.explosionRadius[i] == radius &&
+             snapshot.explosionMaxRadius[i] == maxRadius) {
+            continue;
+         }
+         mark(out, mask, i);
+         putSigned(out, (long) snapshot.explosionX[i] - x);
+         putSigned(out, (long) snapshot.explosionY[i] - y);
+         putSigned(out, (long) snapshot.explosionGrowth[i] - growth);
+         putSigned(out, snapshot.explosionRadius[i] - radius);
+         putSigned(out, (long) snapshot.explosionMaxRadius[i] - maxRadius);
+      }
+   }
+
+   /**
+    * Reads the explosions written by {@link #putExplosions}.
+    * @param in the buffer to read from
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to read into, already resized
+    * @param steps the number of time steps since the base
+    * @throws IOException if the explosions are malformed
+    */
+   private static void getExplosions(ByteBuffer in, GameSnapshot base,
+                                     GameSnapshot snapshot, long steps) throws IOException {
+      int n = snapshot.explosionCount;
+      int from = base.explosionCount;
+      int mask = skipMask(in, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int x = old ? base.explosionX[i] : 0;
+         int y = old ? base.explosionY[i] : 0;
+         int growth = old ? base.explosionGrowth[i] : 0;
+         long radius = old ? base.explosionRadius[i] + growth * steps : 0;
+         int maxRadius = old ? base.explosionMaxRadius[i] : 0;
+         if (!isMarked(in, mask, i, old)) {
+            snapshot.explosionX[i] = x;
+            snapshot.explosionY[i] = y;
+            snapshot.explosionGrowth[i] = growth;
+            snapshot.explosionRadius[i] = (int) radius;
+            snapshot.explosionMaxRadius[i] = maxRadius;
+            continue;
+         }
+         snapshot.explosionX[i] = (int) (x + getSigned(in));
+         snapshot.explosionY[i] = (int) (y + getSigned(in));
+         snapshot.explosionGrowth[i] = (int) (growth + getSigned(in));
+         snapshot.explosionRadius[i] = (int) (radius + getSigned(in));
+         snapshot.explosionMaxRadius[i] = (int) (maxRadius + getSigned(in));
+      }
+   }
+
+   /**
+    * Writes the buildings of a snapshot like {@link #putMissiles}.  Only
+    * the health of a building ever changes, and its bits are written as a
+    * difference of integers so that the rest of the codec stays exact.
+    * @param out the buffer to write to
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to write
+    */
+   private static void putBuildings(ByteBuffer out, GameSnapshot base, GameSnapshot snapshot) {
+      int n = snapshot.buildingCount;
+      int from = base.buildingCount;
+      int mask = reserveMask(out, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int left = old ? base.buildingLeft[i] : 0;
+         int right = old ? base.buildingRight[i] : 0;
+         int top = old ? base.buildingTop[i] : 0;
+         int bottom = old ? base.buildingBottom[i] : 0;
+         int health = old ? Float.floatToIntBits(base.buildingHealth[i]) : 0;
+         if (old && snapshot.buildingLeft[i] == left && snapshot.buildingRight[i] == right &&
+             snapshot.buildingTop[i] == top && snapshot.buildingBottom[i] == bottom &&
+             Float.floatToIntBits(snapshot.buildingHealth[i]) == health) {
+            continue;
+         }
+         mark(out, mask, i);
+         putSigned(out, (long) snapshot.buildingLeft[i] - left);
+         putSigned(out, (long) snapshot.buildingRight[i] - right);
+         putSigned(out, (long) snapshot.buildingTop[i] - top);
+         putSigned(out, (long) snapshot.buildingBottom[i] - bottom);
+         putSigned(out, (long) Float.floatToIntBits(snapshot.buildingHealth[i]) - health);
+      }
+   }
+
+   /**
+    * Reads the buildings written by {@link #putBuildings}.
+    * @param in the buffer to read from
+    * @param base the base of the snapshot
+    * @param snapshot the snapshot to read into, already resized
+    * @throws IOException if the buildings are malformed
+    */
+   private static void getBuildings(ByteBuffer in, GameSnapshot base, GameSnapshot snapshot)
+      throws IOException {
+      int n = snapshot.buildingCount;
+      int from = base.buildingCount;
+      int mask = skipMask(in, n);
+      for (int i = 0; i < n; i++) {
+         boolean old = i < from;
+         int left = old ? base.buildingLeft[i] : 0;
+         int right = old ? base.buildingRight[i] : 0;
+         int top = old ? base.buildingTop[i] : 0;
+         int bottom = old ? base.buildingBottom[i] : 0;
+         int health = old ? Float.floatToIntBits(base.buildingHealth[i]) : 0;
+         if (!isMarked(in, mask, i, old)) {
+            snapshot.buildingLeft[i] = left;
+            snapshot.buildingRight[i] = right;
+            snapshot.buildingTop[i] = top;
+            snapshot.buildingBottom[i] = bottom;
+            snapshot.buildingHealth[i] = Float.intBitsToFloat(health);
+            continue;
+         }
+         snapshot.buildingLeft[i] = (int) (left + getSigned(in));
+         snapshot.buildingRight[i] = (int) (right + getSigned(in));
+         snapshot.buildingTop[i] = (int) (top + getSigned(in));
+         snapshot.buildingBottom[i] = (int) (bottom + getSigned(in));
+         snapshot.buildingHealth[i] = Float.intBitsToFloat((int) (health + getSigned(in)));
+      }
+   }
+
+   /**
+    * Writes an empty mask with one bit for each of the given number of
+    * entities.
+    * @param out the buffer to write to
+    * @param count the number of entities
+    * @return the position of the mask in the buffer
+    */
+   private static int reserveMask(ByteBuffer out, int count) {
+      int position = out.position();
+      for (int i = 0; i < count; i += 8) {
+         out.put((byte) 0);
+      }
+      return position;
+   }
+
+   /**
+    * Sets the bit of an entity in a mask written by {@link #reserveMask}.
+    * @param out the buffer holding the mask
+    * @param mask the position of the mask in the buffer
+    * @param i the index of the entity
+    */
+   private static void mark(ByteBuffer out, int mask, int i) {
+      int position = mask + (i >>> 3);
+      out.put(position, (byte) (out.get(position) | (1 << (i & 7))));
+   }
+
+   /**
+    * Skips over a mask written by {@link #reserveMask}.
+    * @param in the buffer to read from
+    * @param count the number of entities
+    * @return the position of the mask in the buffer
+    */
+   private static int skipMask(ByteBuffer in, int count) {
+      int position = in.position();
+      in.position(position + (count + 7) / 8);
+      return position;
+   }
+
+   /**
+    * Checks if the bit of an entity is set in a mask.
+    * @param in the buffer holding the mask
+    * @param mask the position of the mask in the buffer
+    * @param i the index of the entity
+    * @param old true if the base has an entity at the same index
+    * @return true if the entity was written, false if it is as expected
+    * @throws IOException if a new entity was not written
+    */
+   private static boolean isMarked(ByteBuffer in, int mask, int i, boolean old)
+      throws IOException {
+      boolean marked = (in.get(mask + (i >>> 3)) & (1 << (i & 7))) != 0;
+      if (!marked && !old) {
+         throw new IOException("missing entity " + i);
+      }
+      return marked;
+   }
+
+   /**
+    * Writes a non-negative number as a variable length integer, seven bits
+    * per byte with the high bit set on every byte but the last.
+    * @param out the buffer to write to
+    * @param value the number to write, taken as unsigned
+    */
+   public static void putVarLong(ByteBuffer out, long value) {
+      while ((value & ~0x7FL) != 0) {
+         out.put((byte) ((value & 0x7F) | 0x80));
+         value >>>= 7;
+      }
+      out.put((byte) value);
+   }
+
+   /**
+    * Reads a variable length integer written by {@link #putVarLong}.
+    * @param in the buffer to read from
+    * @return the number read
+    * @throws IOException if the integer is longer than
+    * {@link #MAX_VARINT_SIZE} bytes
+    */
+   public static long getVarLong(ByteBuffer in) throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 7 * MAX_VARINT_SIZE; shift += 7) {
+         byte b = in.get();
+         value |= (long) (b & 0x7F) << shift;
+         if (b >= 0) {
+            return value;
+         }
+      }
+      throw new IOException("malformed variable length integer");
+   }
+
+   /**
+    * Writes a number that may be negative as a zigzag encoded variable
+    * length integer, so that numbers close to zero take few bytes either
+    * way.
+    * @param out the buffer to write to
+    * @param value the number to write
+    */
+   public static void putSigned(ByteBuffer out, long value) {
+      putVarLong(out, (value << 1) ^ (value >> 63));
+   }
+
+   /**
+    * Reads a number written by {@link #putSigned}.
+    * @param in the buffer to read from
+    * @return the number read
+    * @throws IOException if the integer is malformed
+    */
+   public static long getSigned(ByteBuffer in) throws IOException {
+      long value = getVarLong(in);
+      return (value >>> 1) ^ -(value & 1);
+   }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * This class keeps the {@link GameSnapshot}s of the last few time steps, so
+ * that a snapshot can be sent as the difference from an earlier one (see
+ * {@link SnapshotCodec}).  Both ends of a connection keep a history: the
+ * server of the snapshots it has taken and the client of the snapshots it
+ * has decoded.  The snapshots are reused as the history moves on.
+ * <p>
+ * An instance must only be used by one thread at a time.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SnapshotHistory {
+
+   /** The number of time steps kept by default. */
+   public final static int DEFAULT_CAPACITY = 64;
+
+   /** The snapshots, the one of time step t at index t modulo the capacity. */
+   private GameSnapshot[] snapshots;
+
+   /** Creates a history keeping the default number of time steps. */
+   public SnapshotHistory() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Creates a history keeping the given number of time steps.
+    * @param capacity the number of time steps to keep
+    */
+   public SnapshotHistory(int capacity) {
+      snapshots = new GameSnapshot[capacity];
+      for (int i = 0; i < capacity; i++) {
+         snapshots[i] = new GameSnapshot();
+      }
+   }
+
+   /**
+    * Returns the number of time steps kept.
+    * @return the capacity of the history
+    */
+   public int capacity() { return snapshots.length; }
+
+   /**
+    * Returns the snapshot of the given time step, if it is still kept.
+    * @param tick the time step
+    * @return the snapshot, or null if it is not kept
+    */
+   public GameSnapshot get(long tick) {
+      if (tick < 0) {
+         return null;
+      }
+      GameSnapshot snapshot = snapshots[(int) (tick % snapshots.length)];
+      return (snapshot.tick == tick) ? snapshot : null;
+   }
+
+   /**
+    * Returns the snapshot to fill in for the given time step, forgetting
+    * the time step it held before.
+    * @param tick the time step
+    * @return the snapshot to fill in
+    */
+   public GameSnapshot take(long tick) {
+      GameSnapshot snapshot = snapshots[(int) (tick % snapshots.length)];
+      snapshot.tick = -1;
+      return snapshot;
+   }
+
+}
@@ -0,0 +1,421 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class draws snapshots of the Missile Command game straight into the
+ * pixels of an image, on several cores.  It is an alternative to drawing
+ * through {@link java.awt.Graphics}, whose per call overhead dominates once
+ * there are many thousands of missiles.
+ * <p>
+ * The image is split into horizontal bands of equal height, and every band
+ * is faded and drawn by its own task on a {@link ForkJoinPool}.  A band only
+ * writes its own rows, so the tasks never need to synchronize.  Entities
+ * are prepared once per frame (interpolated position and color), after
+ * which every band draws the part of every entity that falls inside it,
+ * skipping the entities that lie entirely outside.  Only the entities in
+ * view are prepared, found through the index of the snapshot, so a world
+ * much wider than the image costs no more to draw.
+ * <p>
+ * Where the missiles overlap heavily, that is when the missiles drawn in a
+ * band cover more pixels than the band has, the missiles of the band are
+ * splatted: their colors are added together instead of painted over each
+ * other, so a dense swarm shows up as a bright cloud rather than as the
+ * color of whichever missile happens to be drawn last.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SoftwareRasterizer {
+
+   /** The largest number of fades applied in one frame. */
+   public final static int MAX_FADES = GameController.MAX_STEPS_PER_FRAME;
+
+   /** Opaque black, in the ARGB format of the pixels. */
+   private final static int BLACK = 0xFF000000;
+
+   /**
+    * The value of a color channel after it has been faded a number of
+    * times, indexed by the number of fades and the value before.  The
+    * result is rounded down, so unlike the fade through Java2D a channel
+    * always reaches zero in the end.
+    */
+   private final static int[][] FADE = new int[MAX_FADES + 1][256];
+
+   static {
+      for (int value = 0; value < 256; value++) {
+         FADE[0][value] = value;
+      }
+      for (int n = 1; n <= MAX_FADES; n++) {
+         for (int value = 0; value < 256; value++) {
+            FADE[n][value] = FADE[n - 1][value] *
+               (255 - GameDisplay.FADE_RATE) / 255;
+         }
+      }
+   }
+
+   /** The pixels drawn into, row by row, in ARGB format. */
+   private final int[] pixels;
+
+   /** The width of the image, in pixels. */
+   private final int width;
+
+   /** The height of the image, in pixels. */
+   private final int height;
+
+   /** The pool the band tasks run on. */
+   private final ForkJoinPool pool;
+
+   /** The task of every band. */
+   private final Band[] bands;
+
+   /** Runs the tasks of all the bands and waits for them to finish. */
+   private final RecursiveAction allBands = new RecursiveAction() {
+      protected void compute() {
+         ForkJoinTask.invokeAll(bands);
+      }
+   };
+
+   /** The number of fades to apply in the current frame. */
+   private int fades;
+
+   /** The number of buildings in the current frame. */
+   private int buildingCount;
+
+   /** The left side of every building, in image coordinates. */
+   private int[] buildingX = new int[0];
+
+   /** The top of every building, in image coordinates. */
+   private int[] buildingY = new int[0];
+
+   /** The width of every building. */
+   private int[] buildingW = new int[0];
+
+   /** The height of every building. */
+   private int[] buildingH = new int[0];
+
+   /** The color of every building. */
+   private int[] buildingColor = new int[0];
+
+   /** The number of circles in the current frame, missiles first. */
+   private int circleCount;
+
+   /** The number of the circles that are missiles. */
+   private int missileCount;
+
+   /** The left side of the bounding box of every circle. */
+   private int[] circleX = new int[0];
+
+   /** The top of the bounding box of every circle. */
+   private int[] circleY = new int[0];
+
+   /** The diameter of every circle. */
+   private int[] circleD = new int[0];
+
+   /** The color of every circle. */
+   private int[] circleColor = new int[0];
+
+   /**
+    * Creates a new rasterizer drawing into the given pixels, with one band
+    * per available processor, run on the common pool.
+    * @param pixels the pixels of the image, row by row, in ARGB format
+    * @param width the width of the image
+    * @param height the height of the image
+    */
+   public SoftwareRasterizer(int[] pixels, int width, int height) {
+      this(pixels, width, height, Runtime.getRuntime().availableProcessors(),
+           ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Creates a new rasterizer drawing into the given pixels.
+    * @param pixels the pixels of the image, row by row, in ARGB format
+    * @param width the width of the image
+    * @param height the height of the image
+    * @param nrOfBands the number of bands to split the image into
+    * @param pool the pool to run the band tasks on
+    */
+   public SoftwareRasterizer(int[] pixels, int width, int height,
+                             int nrOfBands, ForkJoinPool pool) {
+      if (nrOfBands < 1) {
+         throw new IllegalArgumentException("at least one band is needed");
+      }
+      if (pixels.length < width * height) {
+         throw new IllegalArgumentException("too few pixels for the image");
+      }
+      this.pixels = pixels;
+      this.width = width;
+      this.height = height;
+      this.pool = pool;
+      nrOfBands = Math.max(1, Math.min(nrOfBands, height));
+      bands = new Band[nrOfBands];
+      for (int b = 0; b < nrOfBands; b++) {
+         bands[b] = new Band(height * b / nrOfBands, height * (b + 1) / nrOfBands);
+      }
+   }
+
+   /**
+    * Returns the number of bands the image is split into.
+    * @return the number of bands
+    */
+   public int getNrOfBands() { return bands.length; }
+
+   /**
+    * Fades the image and draws the buildings, missiles and explosions of
+    * the given snapshot into it, the same way {@link GameDisplay} does.
+    * @param snapshot the snapshot to draw
+    * @param viewX the x coordinate in the world of the left side of the
+    * image
+    * @param back the fraction of a time step to move the missiles back and
+    * shrink the explosions back
+    * @param fades the number of times to fade the image first
+    */
+   public void render(GameSnapshot snapshot, int viewX, float back, int fades) {
+      this.fades = Math.max(0, Math.min(fades, MAX_FADES));
+      prepareBuildings(snapshot, viewX);
+      prepareCircles(snapshot, viewX, back);
+
+      for (int b = 0; b < bands.length; b++) {
+         bands[b].reinitialize();
+      }
+      allBands.reinitialize();
+      pool.invoke(allBands);
+   }
+
+   /**
+    * Converts the buildings of the snapshot in view to image coordinates
+    * and colors.
+    * @param snapshot the snapshot holding the buildings
+    * @param viewX the x coordinate in the world of the left side of the image
+    */
+   private void prepareBuildings(GameSnapshot snapshot, int viewX) {
+      int first = snapshot.buildingAfter(viewX);
+      int end = first;
+      while (end < snapshot.buildingCount && snapshot.buildingLeft[end] < viewX + width) {
+         end++;
+      }
+      buildingCount = end - first;
+      if (buildingX.length < buildingCount) {
+         buildingX = new int[buildingCount];
+         buildingY = new int[buildingCount];
+         buildingW = new int[buildingCount];
+         buildingH = new int[buildingCount];
+         buildingColor = new int[buildingCount];
+      }
+      for (int b = 0; b < buildingCount; b++) {
+         int i = first + b;
+         buildingX[b] = snapshot.buildingLeft[i] - viewX;
+         buildingY[b] = height - snapshot.buildingTop[i];
+         buildingW[b] = snapshot.buildingRight[i] - snapshot.buildingLeft[i];
+         buildingH[b] = snapshot.buildingTop[i] - snapshot.buildingBottom[i];
+         buildingColor[b] = Palette.building(snapshot.buildingHealth[i]).getRGB();
+      }
+   }
+
+   /**
+    * Converts the missiles and explosions of the snapshot in view to
+    * circles in image coordinates, interpolated like {@link GameDisplay}
+    * does.  Only the columns of the index near the view are looked at.
+    * @param snapshot the snapshot holding the missiles and explosions
+    * @param viewX the x coordinate in the world of the left side of the image
+    * @param back the fraction of a time step to move the entities back
+    */
+   private void prepareCircles(GameSnapshot snapshot, int viewX, float back) {
+      int first = snapshot.indexColumn(viewX - snapshot.missileReach);
+      int last = snapshot.indexColumn(viewX + width + snapshot.missileReach);
+      int missileStart = snapshot.missileColumnStart[first];
+      int missileEnd = snapshot.missileColumnStart[last + 1];
+      first = snapshot.indexColumn(viewX - snapshot.explosionReach);
+      last = snapshot.indexColumn(viewX + width + snapshot.explosionReach);
+      int explosionStart = snapshot.explosionColumnStart[first];
+      int explosionEnd = snapshot.explosionColumnStart[last + 1];
+
+      int capacity = missileEnd - missileStart + explosionEnd - explosionStart;
+      if (circleX.length < capacity) {
+         circleX = new int[capacity];
+         circleY = new int[capacity];
+         circleD = new int[capacity];
+         circleColor = new int[capacity];
+      }
+
+      int c = 0;
+      for (int k = missileStart; k < missileEnd; k++) {
+         int i = snapshot.missileOrder[k];
+         int x = Math.round(snapshot.missileX[i] - snapshot.missileDX[i] * back) - viewX;
+         if (x >= width || x + snapshot.missileSize[i] <= 0) {
+            continue;
+         }
+         circleX[c] = x;
+         circleY[c] = height - Math.round(snapshot.missileY[i] - snapshot.missileDY[i] * back);
+         circleD[c] = snapshot.missileSize[i];
+         circleColor[c] = Palette.missile(snapshot.missileExplosionSize[i]).getRGB();
+         c++;
+      }
+      missileCount = c;
+
+      for (int k = explosionStart; k < explosionEnd; k++) {
+         int i = snapshot.explosionOrder[k];
+         int radius = Math.max
+            (0, Math.round(snapshot.explosionRadius[i] - snapshot.explosionGrowth[i] * back));
+         int x = snapshot.explosionX[i] - viewX - radius;
+         if (x >= width || x + radius * 2 <= 0) {
+            continue;
+         }
+         circleX[c] = x;
+         circleY[c] = height - snapshot.explosionY[i] - radius;
+         circleD[c] = radius * 2;
+         circleColor[c] = Palette.explosion(radius, snapshot.explosionMaxRadius[i]).getRGB();
+         c++;
+      }
+      circleCount = c;
+   }
+
+   /**
+    * This class fades and draws one horizontal band of the image.
+    */
+   private class Band extends RecursiveAction {
+
+      /** The first row of the band. */
+      private final int top;
+
+      /** The row just below the band. */
+      private final int bottom;
+
+      /**
+       * Creates the task of a band.
+       * @param top the first row of the band
+       * @param bottom the row just below the band
+       */
+      Band(int top, int bottom) {
+         this.top = top;
+         this.bottom = bottom;
+      }
+
+      /** Fades and draws the band. */
+      protected void compute() {
+         fade();
+         for (int i = 0; i < buildingCount; i++) {
+            fillRect(buildingX[i], buildingY[i], buildingW[i], buildingH[i],
+                     buildingColor[i]);
+         }
+         boolean splat = isDense();
+         for (int i = 0; i < circleCount; i++) {
+            fillCircle(circleX[i], circleY[i], circleD[i], circleColor[i],
+                       splat && i < missileCount);
+         }
+      }
+
+      /** Fades every pixel of the band {@link SoftwareRasterizer#fades} times. */
+      private void fade() {
+         if (fades == 0) {
+            return;
+         }
+         int end = bottom * width;
+         int[] table = FADE[fades];
+         for (int p = top * width; p < end; p++) {
+            int argb = pixels[p];
+            if (argb != BLACK) {
+               pixels[p] = BLACK |
+                  (table[(argb >> 16) & 0xFF] << 16) |
+                  (table[(argb >> 8) & 0xFF] << 8) |
+                  table[argb & 0xFF];
+            }
+         }
+      }
+
+      /**
+       * Checks if the missiles drawn in the band overlap heavily, that is if
+       * their bounding boxes cover more pixels than the band has.
+       * @return true if the missiles should be splatted, false otherwise
+       */
+      private boolean isDense() {
+         long area = (long) (bottom - top) * width;
+         long covered = 0;
+         for (int i = 0; i < missileCount; i++) {
+            int d = circleD[i];
+            if (circleY[i] < bottom && circleY[i] + d > top) {
+               covered += (long) d * d;
+            }
+         }
+         return covered > area;
+      }
+
+      /**
+       * Fills the part of a rectangle inside the band with a color.
+       * @param x the x coordinate of the rectangle
+       * @param y the y coordinate of the rectangle
+       * @param w the width of the rectangle
+       * @param h the height of the rectangle
+       * @param color the color, in ARGB format
+       */
+      private void fillRect(int x, int y, int w, int h, int color) {
+         int left = Math.max(0, x);
+         int right = Math.min(width, x + w);
+         int first = Math.max(top, y);
+         int last = Math.min(bottom, y + h);
+         for (int row = first; row < last; row++) {
+            int offset = row * width;
+            for (int p = offset + left; p < offset + right; p++) {
+               pixels[p] = color;
+            }
+         }
+      }
+
+      /**
+       * Fills the part of a circle inside the band with a color.  A pixel
+       * is inside the circle if its center is.
+       * @param x the x coordinate of the bounding box of the circle
+       * @param y the y coordinate of the bounding box of the circle
+       * @param d the diameter of the circle
+       * @param color the color, in ARGB format
+       * @param splat true to add the color to the pixels, false to paint
+       * over them
+       */
+      private void fillCircle(int x, int y, int d, int color, boolean splat) {
+         if (d <= 0 || y >= bottom || y + d <= top || x >= width || x + d <= 0) {
+            return;
+         }
+         double radius = d / 2.0;
+         double centerX = x + radius;
+         double centerY = y + radius;
+         int first = Math.max(top, y);
+         int last = Math.min(bottom, y + d);
+         for (int row = first; row < last; row++) {
+            double dy = row + 0.5 - centerY;
+            double half = radius * radius - dy * dy;
+            if (half < 0.0) {
+               continue;
+            }
+            half = Math.sqrt(half);
+            int left = Math.max(0, (int) Math.ceil(centerX - half - 0.5));
+            int right = Math.min(width - 1, (int) Math.floor(centerX + half - 0.5));
+            int offset = row * width;
+            if (splat) {
+               for (int p = offset + left; p <= offset + right; p++) {
+                  pixels[p] = add(pixels[p], color);
+               }
+            } else {
+               for (int p = offset + left; p <= offset + right; p++) {
+                  pixels[p] = color;
+               }
+            }
+         }
+      }
+
+   } // end Band
+
+   /**
+    * Adds two opaque colors channel by channel, saturating at full
+    * intensity.
+    * @param a the first color, in ARGB format
+    * @param b the second color, in ARGB format
+    * @return the sum of the colors, in ARGB format
+    */
+   private static int add(int a, int b) {
+      int red = Math.min(0xFF, ((a >> 16) & 0xFF) + ((b >> 16) & 0xFF));
+      int green = Math.min(0xFF, ((a >> 8) & 0xFF) + ((b >> 8) & 0xFF));
+      int blue = Math.min(0xFF, (a & 0xFF) + (b & 0xFF));
+      return BLACK | (red << 16) | (green << 8) | blue;
+   }
+
+}
@@ -0,0 +1,381 @@
+import java.util.Arrays;
+
+/**
+ * This class implements a uniform grid over the Missile Command game world.
+ * It is used as a broad phase for collision tests: points are bucketed by
+ * the cell they fall in, so that a circle only has to be tested against the
+ * points in the cells it overlaps instead of against every point in the game.
+ * <p>
+ * The grid is rebuilt from scratch every time step with a counting sort,
+ * which keeps the points of every cell in ascending index order.  Points
+ * outside the world are clamped into the border cells, so a query never
+ * misses a point that the brute force test would have found.  The
+ * coordinates of the points are sorted along with them, so the points of
+ * every cell can be tested by a {@link CollisionKernel} in one run.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SpatialGrid {
+
+   /**
+    * The width and height of each cell, in pixels.  Chosen to be a little
+    * larger than the biggest explosion radius so that most queries only
+    * touch a handful of cells.
+    */
+   public final static int CELL_SIZE = 64;
+
+   /** The x coordinate of the left edge of the grid. */
+   private int originX;
+
+   /** The number of cell columns in the grid. */
+   private int columns;
+
+   /** The number of cell rows in the grid. */
+   private int rows;
+
+   /**
+    * The index of the first entry in {@link #cellItems} for every cell.
+    * Has one more element than there are cells, the last one being the
+    * total number of points.
+    */
+   private int[] cellStart = new int[1];
+
+   /** The indices of all the points, sorted by cell. */
+   private int[] cellItems = new int[0];
+
+   /** The x coordinates of all the points, sorted by cell. */
+   private int[] cellX = new int[0];
+
+   /** The y coordinates of all the points, sorted by cell. */
+   private int[] cellY = new int[0];
+
+   /** The cell of every point, only used while building the grid. */
+   private int[] itemCell = new int[0];
+
+   /** The indices found by the last call to {@link #query}. */
+   private int[] found = new int[0];
+
+   /** Scratch space used when merging the cells found by a query. */
+   private int[] scratch = new int[0];
+
+   /** The end of every cell's run of indices in {@link #found}. */
+   private int[] runEnds = new int[0];
+
+   /**
+    * Creates a new grid covering a world of the given size.
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    */
+   public SpatialGrid(int worldWidth, int worldHeight) {
+      resize(worldWidth, worldHeight);
+   }
+
+   /**
+    * Changes the size of the world covered by the grid.  Any points added
+    * to the grid are lost.
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    */
+   public void resize(int worldWidth, int worldHeight) {
+      resize(0, worldWidth, worldHeight);
+   }
+
+   /**
+    * Changes the part of the world covered by the grid to a vertical strip
+    * starting at the given x coordinate.  Any points added to the grid are
+    * lost.
+    * @param originX the x coordinate of the left edge of the strip
+    * @param width the width of the strip (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    */
+   public void resize(int originX, int width, int worldHeight) {
+      this.originX = originX;
+      columns = Math.max(1, width / CELL_SIZE + 1);
+      rows = Math.max(1, worldHeight / CELL_SIZE + 1);
+      cellStart = new int[columns * rows + 1];
+      runEnds = new int[columns * rows];
+   }
+
+   /**
+    * Checks if the grid covers a world of the given size.
+    * @param worldWidth the width of the game world (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    * @return true if the grid has the right number of cells, false otherwise
+    */
+   public boolean covers(int worldWidth, int worldHeight) {
+      return covers(0, worldWidth, worldHeight);
+   }
+
+   /**
+    * Checks if the grid covers the given vertical strip of the world.
+    * @param originX the x coordinate of the left edge of the strip
+    * @param width the width of the strip (in pixels)
+    * @param worldHeight the height of the game world (in pixels)
+    * @return true if the grid has the right origin and number of cells,
+    * false otherwise
+    */
+   public boolean covers(int originX, int width, int worldHeight) {
+      return this.originX == originX &&
+             columns == Math.max(1, width / CELL_SIZE + 1) &&
+             rows == Math.max(1, worldHeight / CELL_SIZE + 1);
+   }
+
+   /**
+    * Rebuilds the grid from the given points.  Point number i has the
+    * coordinates (xs[i], ys[i]) and is later reported by its index i.
+    * @param xs the x coordinates of the points
+    * @param ys the y coordinates of the points
+    * @param count the number of points to use from the arrays
+    */
+   public void build(int[] xs, int[] ys, int count) {
+      // A query can never find more than all the points, so the arrays
+      // used by the queries are sized here once and for all.
+      if (cellItems.length < count) {
+         cellItems = new int[count];
+         cellX = new int[count];
+         cellY = new int[count];
+         itemCell = new int[count];
+         found = new int[count];
+         scratch = new int[count];
+      }
+      Arrays.fill(cellStart, 0);
+
+      // Count the number of points in every cell...
+      for (int i = 0; i < count; i++) {
+         int cell = cellOf(xs[i], ys[i]);
+         itemCell[i] = cell;
+         cellStart[cell + 1]++;
+      }
+
+      // ...turn the counts into start offsets...
+      for (int cell = 0; cell < columns * rows; cell++) {
+         cellStart[cell + 1] += cellStart[cell];
+      }
+
+      // ...and drop every point into its cell.  cellStart is used as the
+      // insertion cursor and is shifted back into place afterwards.
+      for (int i = 0; i < count; i++) {
+         int k = cellStart[itemCell[i]]++;
+         cellItems[k] = i;
+         cellX[k] = xs[i];
+         cellY[k] = ys[i];
+      }
+      for (int cell = columns * rows; cell > 0; cell--) {
+         cellStart[cell] = cellStart[cell - 1];
+      }
+      cellStart[0] = 0;
+   }
+
+   /**
+    * Finds all points that may lie within the given radius of (x, y).
+    * The result is a superset of the points actually within the radius, in
+    * ascending index order, and can be read through {@link #getResults()}.
+    * @param x the x coordinate of the center of the query circle
+    * @param y the y coordinate of the center of the query circle
+    * @param radius the radius of the query circle
+    * @return the number of candidate points found
+    */
+   public int query(int x, int y, int radius) {
+      int firstColumn = column(x - radius);
+      int lastColumn = column(x + radius);
+      int firstRow = row(y - radius);
+      int lastRow = row(y + radius);
+
+      int count = 0;
+      int runs = 0;
+      for (int r = firstRow; r <= lastRow; r++) {
+         for (int c = firstColumn; c <= lastColumn; c++) {
+            int cell = r * columns + c;
+            int start = cellStart[cell];
+            int end = cellStart[cell + 1];
+            if (start == end) {
+               continue;
+            }
+            System.arraycopy(cellItems, start, found, count, end - start);
+            count += end - start;
+            runEnds[runs++] = count;
+         }
+      }
+
+      // Every cell is sorted already, so the cells only have to be merged.
+      if (runs > 1) {
+         mergeRuns(count, runs);
+      }
+      return count;
+   }
+
+   /**
+    * Finds all points that may lie within the given radius of (x, y), like
+    * {@link #query(int, int, int)}, but leaves them in no particular order,
+    * which saves merging the cells when the order does not matter.
+    * @param x the x coordinate of the center of the query circle
+    * @param y the y coordinate of the center of the query circle
+    * @param radius the radius of the query circle
+    * @return the number of candidate points found
+    */
+   public int collect(int x, int y, int radius) {
+      int firstColumn = column(x - radius);
+      int lastColumn = column(x + radius);
+      int firstRow = row(y - radius);
+      int lastRow = row(y + radius);
+
+      int count = 0;
+      for (int r = firstRow; r <= lastRow; r++) {
+         // The cells of a row follow each other, so they are copied at once.
+         int start = cellStart[r * columns + firstColumn];
+         int end = cellStart[r * columns + lastColumn + 1];
+         System.arraycopy(cellItems, start, found, count, end - start);
+         count += end - start;
+      }
+      return count;
+   }
+
+   /**
+    * Counts the points {@link #collect} would find, without finding them.
+    * @param x the x coordinate of the center of the query circle
+    * @param y the y coordinate of the center of the query circle
+    * @param radius the radius of the query circle
+    * @return the number of candidate points
+    */
+   public int count(int x, int y, int radius) {
+      int firstColumn = column(x - radius);
+      int lastColumn = column(x + radius);
+      int firstRow = row(y - radius);
+      int lastRow = row(y + radius);
+
+      int count = 0;
+      for (int r = firstRow; r <= lastRow; r++) {
+         count += cellStart[r * columns + lastColumn + 1] - cellStart[r * columns + firstColumn];
+      }
+      return count;
+   }
+
+   /**
+    * Finds the points within the given radius of (x, y), testing the
+    * points of every cell the circle overlaps with the given kernel.  The
+    * result is exactly the points within the radius, see
+    * {@link CollisionKernel#intersects}, in ascending index order, and can
+    * be read through {@link #getResults()}.
+    * @param x the x coordinate of the center of the query circle
+    * @param y the y coordinate of the center of the query circle
+    * @param radius the radius of the query circle
+    * @param kernel the kernel testing the points
+    * @return the number of points found
+    */
+   public int query(int x, int y, int radius, CollisionKernel kernel) {
+      int firstColumn = column(x - radius);
+      int lastColumn = column(x + radius);
+      int firstRow = row(y - radius);
+      int lastRow = row(y + radius);
+
+      int count = 0;
+      int runs = 0;
+      for (int r = firstRow; r <= lastRow; r++) {
+         // The cells of a row follow each other, so the kernel tests the
+         // points of all the cells of the row overlapped in one run.
+         int cell = r * columns + firstColumn;
+         int end = cellStart[r * columns + lastColumn + 1];
+         int runStart = count;
+         for (int from = cellStart[cell]; from < end; from += CollisionKernel.MASK_WIDTH) {
+            long mask = kernel.hitMask(x, y, radius, cellX, cellY, from,
+                                       Math.min(CollisionKernel.MASK_WIDTH, end - from));
+            while (mask != 0) {
+               int k = from + Long.numberOfTrailingZeros(mask);
+               // Every cell is a sorted run of its own.
+               while (k >= cellStart[cell + 1]) {
+                  cell++;
+                  if (count > runStart) {
+                     runEnds[runs++] = count;
+                     runStart = count;
+                  }
+               }
+               found[count++] = cellItems[k];
+               mask &= mask - 1;
+            }
+         }
+         if (count > runStart) {
+            runEnds[runs++] = count;
+         }
+      }
+
+      if (runs > 1) {
+         mergeRuns(count, runs);
+      }
+      return count;
+   }
+
+   /**
+    * Merges the sorted runs of indices in {@link #found} pairwise until a
+    * single sorted run remains, using {@link #scratch} as the target of
+    * every pass.  Unlike a general sort this never allocates.
+    * @param count the total number of indices
+    * @param runs the number of runs, whose ends are in {@link #runEnds}
+    */
+   private void mergeRuns(int count, int runs) {
+      while (runs > 1) {
+         int merged = 0;
+         int start = 0;
+         for (int r = 0; r < runs; r += 2) {
+            int middle = runEnds[r];
+            int end = (r + 1 < runs) ? runEnds[r + 1] : middle;
+            int a = start;
+            int b = middle;
+            int out = start;
+            while (a < middle && b < end) {
+               scratch[out++] = (found[a] <= found[b]) ? found[a++] : found[b++];
+            }
+            while (a < middle) {
+               scratch[out++] = found[a++];
+            }
+            while (b < end) {
+               scratch[out++] = found[b++];
+            }
+            runEnds[merged++] = end;
+            start = end;
+         }
+         int[] swap = found;
+         found = scratch;
+         scratch = swap;
+         runs = merged;
+      }
+   }
+
+   /**
+    * Returns the array holding the indices found by the last query.  Only
+    * the number of elements returned by {@link #query} are valid.
+    * @return the indices found by the last query
+    */
+   public int[] getResults() { return found; }
+
+   /**
+    * Returns the cell that the given point falls into.
+    * @param x the x coordinate of the point
+    * @param y the y coordinate of the point
+    * @return the index of the cell
+    */
+   private int cellOf(int x, int y) {
+      return row(y) * columns + column(x);
+   }
+
+   /**
+    * Returns the cell column of the given x coordinate, clamped to the grid.
+    * @param x the x coordinate
+    * @return the column of the x coordinate
+    */
+   private int column(int x) {
+      int c = Math.floorDiv(x - originX, CELL_SIZE);
+      return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+   }
+
+   /**
+    * Returns the cell row of the given y coordinate, clamped to the grid.
+    * @param y the y coordinate
+    * @return the row of the y coordinate
+    */
+   private int row(int y) {
+      int r = Math.floorDiv(y, CELL_SIZE);
+      return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+   }
+
+}
@@ -0,0 +1,27 @@
+/**
+ * This interface describes how the missiles of a Missile Command game are
+ * sent: when, how many and from where.  The game logic asks its scheduler
+ * for the new missiles at the start of every time step, see
+ * {@link GameLogic#setSpawner}.
+ * <p>
+ * A scheduler must draw all its randomness from the generator it is given,
+ * directly or from seeds taken from it, and keep no other state that
+ * changes as the game goes on.  The state of the generator is saved with
+ * checkpoints and replays, so a game then plays the same when it is
+ * resumed or played back with the same scheduler.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public interface SpawnScheduler {
+
+   /**
+    * Adds the missiles sent in the current time step to the end of the
+    * missiles of the game state.
+    * @param state the current GameState
+    * @param rules the rules the game is played by
+    * @param gen the random number generator of the game logic
+    */
+   public void spawn(GameState state, GameRules rules, GameRandom gen);
+
+}
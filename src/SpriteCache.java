@@ -0,0 +1,239 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * This class implements a cache of pre-rasterized circles, used to draw the
+ * missiles and explosions of a Missile Command game with a single
+ * {@link Graphics#drawImage} instead of rasterizing every circle from
+ * scratch every frame.
+ * <p>
+ * Every sprite is keyed by the diameter and the color of its circle, both
+ * of which come from small discrete sets (see {@link Palette}).  Sprites are
+ * made the first time they are asked for, and once the cache is full the
+ * least recently used sprite is evicted.  The lookup table and the usage
+ * order are kept in arrays of primitives, so looking up a cached sprite
+ * never allocates.  The cache is not thread safe; it is meant to be used by
+ * the thread updating the display only.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class SpriteCache {
+
+   /** The number of sprites kept by default. */
+   public final static int DEFAULT_CAPACITY = 256;
+
+   /** Marks the end of a chain or of the usage list. */
+   private final static int NONE = -1;
+
+   /** The key of the sprite in every entry. */
+   private final long[] keys;
+
+   /** The sprite in every entry, null for an unused entry. */
+   private final BufferedImage[] sprites;
+
+   /** The first entry of every bucket of the lookup table. */
+   private final int[] bucketHead;
+
+   /** The next entry in the same bucket, for every entry. */
+   private final int[] chainNext;
+
+   /** The entry used just before every entry, towards the oldest. */
+   private final int[] older;
+
+   /** The entry used just after every entry, towards the newest. */
+   private final int[] newer;
+
+   /** The least recently used entry. */
+   private int oldest = NONE;
+
+   /** The most recently used entry. */
+   private int newest = NONE;
+
+   /** The number of entries holding a sprite. */
+   private int size;
+
+   /** The number of sprites made since the cache was created. */
+   private long misses;
+
+   /**
+    * Creates a new, empty cache holding at most {@link #DEFAULT_CAPACITY}
+    * sprites.
+    */
+   public SpriteCache() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Creates a new, empty cache holding at most the given number of sprites.
+    * @param capacity the maximum number of sprites to keep, at least 1
+    */
+   public SpriteCache(int capacity) {
+      capacity = Math.max(1, capacity);
+      keys = new long[capacity];
+      sprites = new BufferedImage[capacity];
+      chainNext = new int[capacity];
+      older = new int[capacity];
+      newer = new int[capacity];
+      // At least twice as many buckets as entries keeps the chains short.
+      bucketHead = new int[Integer.highestOneBit(capacity) << 2];
+      Arrays.fill(bucketHead, NONE);
+   }
+
+   /**
+    * Returns the maximum number of sprites in the cache.
+    * @return the capacity of the cache
+    */
+   public int capacity() { return keys.length; }
+
+   /**
+    * Returns the number of sprites in the cache.
+    * @return the number of sprites in the cache
+    */
+   public int size() { return size; }
+
+   /**
+    * Returns the number of sprites made since the cache was created, that
+    * is the number of lookups that missed the cache.
+    * @return the number of sprites made
+    */
+   public long getMisses() { return misses; }
+
+   /**
+    * Draws a filled circle with the given bounding box and color, the same
+    * way {@link Graphics#fillOval} would.
+    * @param g the graphics object on which to draw
+    * @param x the x coordinate of the bounding box
+    * @param y the y coordinate of the bounding box
+    * @param diameter the width and height of the bounding box
+    * @param color the color of the circle
+    */
+   public void drawCircle(Graphics g, int x, int y, int diameter, Color color) {
+      if (diameter > 0) {
+         g.drawImage(circle(diameter, color), x, y, null);
+      }
+   }
+
+   /**
+    * Returns the sprite of a filled circle with the given diameter and
+    * color, making it if it is not in the cache.
+    * @param diameter the width and height of the circle, at least 1
+    * @param color the color of the circle
+    * @return the sprite of the circle, transparent outside the circle
+    */
+   public BufferedImage circle(int diameter, Color color) {
+      long key = ((long) diameter << 32) | (color.getRGB() & 0xFFFFFFFFL);
+      int bucket = bucketOf(key);
+      for (int e = bucketHead[bucket]; e != NONE; e = chainNext[e]) {
+         if (keys[e] == key) {
+            touch(e);
+            return sprites[e];
+         }
+      }
+
+      int e;
+      if (size < keys.length) {
+         e = size++;
+      } else {
+         e = oldest;
+         unlink(e);
+         removeFromBucket(e);
+      }
+      keys[e] = key;
+      sprites[e] = makeCircle(diameter, color);
+      chainNext[e] = bucketHead[bucket];
+      bucketHead[bucket] = e;
+      link(e);
+      misses++;
+      return sprites[e];
+   }
+
+   /**
+    * Rasterizes a filled circle into a new sprite.
+    * @param diameter the width and height of the circle
+    * @param color the color of the circle
+    * @return the new sprite
+    */
+   private static BufferedImage makeCircle(int diameter, Color color) {
+      BufferedImage sprite =
+         new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
+      Graphics g = sprite.getGraphics();
+      g.setColor(color);
+      g.fillOval(0, 0, diameter, diameter);
+      g.dispose();
+      return sprite;
+   }
+
+   /**
+    * Returns the bucket of the lookup table the given key belongs in.
+    * @param key the key of a sprite
+    * @return the index of the bucket
+    */
+   private int bucketOf(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h >>> 40) & (bucketHead.length - 1);
+   }
+
+   /**
+    * Takes an entry out of its bucket of the lookup table.
+    * @param e the entry to take out
+    */
+   private void removeFromBucket(int e) {
+      int bucket = bucketOf(keys[e]);
+      if (bucketHead[bucket] == e) {
+         bucketHead[bucket] = chainNext[e];
+         return;
+      }
+      for (int p = bucketHead[bucket]; p != NONE; p = chainNext[p]) {
+         if (chainNext[p] == e) {
+            chainNext[p] = chainNext[e];
+            return;
+         }
+      }
+   }
+
+   /**
+    * Makes an entry the most recently used one.
+    * @param e the entry that was used
+    */
+   private void touch(int e) {
+      if (e != newest) {
+         unlink(e);
+         link(e);
+      }
+   }
+
+   /**
+    * Adds an entry to the usage list as the most recently used one.
+    * @param e the entry to add
+    */
+   private void link(int e) {
+      older[e] = newest;
+      newer[e] = NONE;
+      if (newest != NONE) {
+         newer[newest] = e;
+      } else {
+         oldest = e;
+      }
+      newest = e;
+   }
+
+   /**
+    * Takes an entry out of the usage list.
+    * @param e the entry to take out
+    */
+   private void unlink(int e) {
+      if (older[e] != NONE) {
+         newer[older[e]] = newer[e];
+      } else {
+         oldest = newer[e];
+      }
+      if (newer[e] != NONE) {
+         older[newer[e]] = older[e];
+      } else {
+         newest = older[e];
+      }
+   }
+
+}
@@ -0,0 +1,194 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class sends the missiles of a Missile Command game in waves: a
+ * fixed number of missiles at once, spread over the whole width of the
+ * world, every so many time steps.  Waves of hundreds of thousands of
+ * missiles are meant for stress testing and for hard games.
+ * <p>
+ * A wave is generated in bulk straight into the columns of the
+ * {@link MissileStore}, which is made large enough for the whole wave
+ * first.  The wave is split into partitions of {@link #PARTITION_SIZE}
+ * missiles, and every partition is filled from its own
+ * {@link SplittableRandom}, split off a generator seeded with one number
+ * drawn from the generator of the game.  The partitions are filled in
+ * parallel on a {@link ForkJoinPool}, but since the number of partitions
+ * and their streams only depend on the size of the wave, a wave is the
+ * same whatever the number of threads.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class WaveSpawner implements SpawnScheduler {
+
+   /** The number of missiles in every partition of a wave. */
+   public final static int PARTITION_SIZE = 16384;
+
+   /** The number of time steps between two waves. */
+   private int interval;
+
+   /** The number of missiles in every wave. */
+   private int waveSize;
+
+   /** The pool the partitions are filled on, or null to fill them serially. */
+   private ForkJoinPool pool;
+
+   /** The scratch data and the task of every partition. */
+   private Partition[] partitions = new Partition[0];
+
+   /** Fills all the partitions and waits for them to finish. */
+   private RecursiveAction allPartitions = new RecursiveAction() {
+      protected void compute() {
+         ForkJoinTask.invokeAll(partitions);
+      }
+   };
+
+   /** The state of the game the current wave is sent in. */
+   private GameState state;
+
+   /** The largest velocity of the missiles of the current wave. */
+   private int maxVel;
+
+   /**
+    * Creates a new scheduler sending waves of the given size, filled on the
+    * common pool.
+    * @param interval the number of time steps between two waves
+    * @param waveSize the number of missiles in every wave
+    */
+   public WaveSpawner(int interval, int waveSize) {
+      this(interval, waveSize, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Creates a new scheduler sending waves of the given size.
+    * @param interval the number of time steps between two waves
+    * @param waveSize the number of missiles in every wave
+    * @param pool the pool to fill the partitions of a wave on, or null to
+    * fill them on the game thread
+    * @throws IllegalArgumentException if interval or waveSize is less than 1
+    */
+   public WaveSpawner(int interval, int waveSize, ForkJoinPool pool) {
+      if (interval < 1 || waveSize < 1) {
+         throw new IllegalArgumentException("waves must be at least 1 time step apart " +
+                                            "and hold at least 1 missile");
+      }
+      this.interval = interval;
+      this.waveSize = waveSize;
+      this.pool = pool;
+   }
+
+   /**
+    * Returns the number of time steps between two waves.
+    * @return the interval between waves
+    */
+   public int getInterval() { return interval; }
+
+   /**
+    * Returns the number of missiles in every wave.
+    * @return the size of a wave
+    */
+   public int getWaveSize() { return waveSize; }
+
+   /**
+    * Sends a wave if one is due in the current time step.  The first wave
+    * is sent in time step 0.
+    * @param state the current GameState
+    * @param rules the rules the game is played by
+    * @param gen the random number generator of the game logic
+    */
+   public void spawn(GameState state, GameRules rules, GameRandom gen) {
+      if (state.tick % interval != 0) {
+         return;
+      }
+      SplittableRandom root = new SplittableRandom(gen.nextLong());
+      startWave(root, state);
+
+      MissileStore missiles = state.missiles;
+      int first = missiles.append(waveSize);
+      int nrOfPartitions = (waveSize + PARTITION_SIZE - 1) / PARTITION_SIZE;
+      if (partitions.length != nrOfPartitions) {
+         partitions = new Partition[nrOfPartitions];
+         for (int p = 0; p < nrOfPartitions; p++) {
+            partitions[p] = new Partition();
+         }
+      }
+      for (int p = 0; p < nrOfPartitions; p++) {
+         Partition partition = partitions[p];
+         partition.from = first + p * PARTITION_SIZE;
+         partition.to = first + Math.min(waveSize, (p + 1) * PARTITION_SIZE);
+         partition.gen = root.split();
+         partition.reinitialize();
+      }
+
+      this.state = state;
+      maxVel = rules.getMaxVelocity();
+      if (pool == null || nrOfPartitions == 1) {
+         for (int p = 0; p < nrOfPartitions; p++) {
+            partitions[p].compute();
+         }
+      } else {
+         allPartitions.reinitialize();
+         pool.invoke(allPartitions);
+      }
+      this.state = null;
+   }
+
+   /**
+    * Called at the start of every wave, before the partitions are split off
+    * the generator of the wave.  Does nothing; subclasses may draw the
+    * numbers shared by the whole wave here.
+    * @param gen the generator of the wave
+    * @param state the current GameState
+    */
+   void startWave(SplittableRandom gen, GameState state) { }
+
+   /**
+    * Returns the x coordinate a missile of the current wave is sent from:
+    * anywhere along the top of the world.
+    * @param gen the generator of the partition of the missile
+    * @param worldWidth the width of the game world
+    * @return the x coordinate of the new missile
+    */
+   int launchX(SplittableRandom gen, int worldWidth) {
+      return gen.nextInt(worldWidth);
+   }
+
+   /**
+    * The scratch data of one partition of a wave, and the task filling it.
+    */
+   private class Partition extends RecursiveAction {
+
+      /** The index of the first missile of the partition. */
+      private int from;
+
+      /** The index after the last missile of the partition. */
+      private int to;
+
+      /** The generator of the partition in the current wave. */
+      private SplittableRandom gen;
+
+      /**
+       * Fills in the missiles of the partition, which move like the ones
+       * sent by {@link ClassicSpawner}.
+       */
+      protected void compute() {
+         MissileStore missiles = state.missiles;
+         int worldWidth = state.worldWidth;
+         int worldHeight = state.worldHeight;
+         for (int i = from; i < to; i++) {
+            missiles.x[i] = launchX(gen, worldWidth);
+            missiles.y[i] = worldHeight;
+            missiles.dx[i] = gen.nextInt(maxVel * 2) - maxVel;
+            missiles.dy[i] = -2 - gen.nextInt(maxVel);
+            missiles.size[i] = Missile.MIN_SIZE +
+               gen.nextInt(Missile.MAX_SIZE - Missile.MIN_SIZE + 1);
+            missiles.explosionSize[i] = Missile.MIN_EXPLOSION_SIZE +
+               gen.nextInt(Missile.MAX_EXPLOSION_SIZE - Missile.MIN_EXPLOSION_SIZE);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,502 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * This class streams the buildings of a wide Missile Command world in
+ * chunks, vertical slices of the world of a fixed width.  Only the
+ * buildings of the resident chunks are kept as {@link Building}s in
+ * {@link GameState#buildings} and in the skyline, so the game logic only
+ * ever looks at those.  The buildings of the other chunks are packed into
+ * a few ints each, {@link #PACKED_SIZE} per building, which keeps their
+ * damage.
+ * <p>
+ * The buildings of every chunk are generated from a seed of their own,
+ * derived from the seed of the world and the number of the chunk, so the
+ * world looks the same whatever order the chunks are generated in.
+ * <p>
+ * Before the missiles move in every time step, every chunk that anything
+ * could touch in the time step is made resident: the chunks under the
+ * rest of the path of every missile (and the explosion it would make at
+ * the end of it) and under every explosion.  A click loads the chunk it
+ * falls in.  When more than the given number of chunks are resident, the
+ * chunks that were needed least recently and are not needed now are packed
+ * away again.  Since the buildings packed away are out of reach of
+ * everything in the game, a game plays exactly the same whichever chunks
+ * are resident, and the checksum and the saved state of a game cover all
+ * the buildings (see {@link #collect}).
+ * <p>
+ * The buildings of a chunk never reach into the next chunk when they are
+ * generated; buildings adopted from elsewhere may, which is allowed for.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class WorldChunks {
+
+   /** The width of a chunk by default, in pixels. */
+   public final static int DEFAULT_CHUNK_WIDTH = 1024;
+
+   /** The number of chunks kept resident by default. */
+   public final static int DEFAULT_MAX_RESIDENT = 16;
+
+   /** The number of ints every packed building takes. */
+   public final static int PACKED_SIZE = 6;
+
+   /** The offset of the x coordinate of the left side of a packed building. */
+   public final static int LEFT = 0;
+
+   /** The offset of the y coordinate of the top of a packed building. */
+   public final static int TOP = 1;
+
+   /** The offset of the x coordinate of the right side of a packed building. */
+   public final static int RIGHT = 2;
+
+   /** The offset of the y coordinate of the bottom of a packed building. */
+   public final static int BOTTOM = 3;
+
+   /** The offset of the bits of the health of a packed building. */
+   public final static int HEALTH = 4;
+
+   /** The offset of the bits of the repair rate of a packed building. */
+   public final static int REPAIR_RATE = 5;
+
+   /** Orders buildings by the x coordinate of their left side. */
+   private final static Comparator BY_LEFT = new Comparator() {
+      public int compare(Object a, Object b) {
+         return Integer.compare(((Building) a).getTopLeft().getIComp(),
+                                ((Building) b).getTopLeft().getIComp());
+      }
+   };
+
+   /** The width of every chunk, in pixels. */
+   private int chunkWidth;
+
+   /** The number of chunks kept resident when nothing needs more. */
+   private int maxResident;
+
+   /** The number of chunks in the world. */
+   private int nrOfChunks;
+
+   /** How far a building may reach past the right side of its chunk. */
+   private int overhang;
+
+   /** The packed buildings of every chunk, or null for a resident chunk. */
+   private int[][] packed = new int[0][];
+
+   /** The number of buildings packed for every chunk that is not resident. */
+   private int[] packedCount = new int[0];
+
+   /** The time step every chunk was last needed in, or -1 if never. */
+   private long[] lastUsed = new long[0];
+
+   /** Flags the chunks needed in the current time step. */
+   private boolean[] pinned = new boolean[0];
+
+   /** The number of resident chunks. */
+   private int residentCount;
+
+   /** The number of buildings packed away. */
+   private int packedBuildings;
+
+   /** The number of times a chunk has been made resident. */
+   private long loads;
+
+   /** The number of times a chunk has been packed away. */
+   private long evictions;
+
+   /** Generates the buildings of the chunks. */
+   private GameRandom gen = new GameRandom(0);
+
+   /** The buildings of a chunk being made resident. */
+   private ArrayList loading = new ArrayList();
+
+   /** Every building of the world, packed, as collected by {@link #collect}. */
+   private int[] collected = new int[0];
+
+   /**
+    * Creates a world streamed in chunks of the default width, keeping the
+    * default number of chunks resident.
+    */
+   public WorldChunks() {
+      this(DEFAULT_CHUNK_WIDTH, DEFAULT_MAX_RESIDENT);
+   }
+
+   /**
+    * Creates a world streamed in chunks.
+    * @param chunkWidth the width of every chunk, in pixels
+    * @param maxResident the number of chunks to keep resident when nothing
+    * needs more of them
+    */
+   public WorldChunks(int chunkWidth, int maxResident) {
+      if (chunkWidth < 1 || maxResident < 1) {
+         throw new IllegalArgumentException("chunks must be at least 1 pixel wide, " +
+                                            "and at least 1 must be kept");
+      }
+      this.chunkWidth = chunkWidth;
+      this.maxResident = maxResident;
+   }
+
+   /**
+    * Returns the width of every chunk.
+    * @return the width of a chunk, in pixels
+    */
+   public int getChunkWidth() { return chunkWidth; }
+
+   /**
+    * Returns the number of chunks in the world.
+    * @return the number of chunks
+    */
+   public int getNrOfChunks() { return nrOfChunks; }
+
+   /**
+    * Returns the number of resident chunks.
+    * @return the number of resident chunks
+    */
+   public int getResidentCount() { return residentCount; }
+
+   /**
+    * Returns the number of times a chunk has been made resident.
+    * @return the number of loads
+    */
+   public long getLoads() { return loads; }
+
+   /**
+    * Returns the number of times a chunk has been packed away.
+    * @return the number of evictions
+    */
+   public long getEvictions() { return evictions; }
+
+   /**
+    * Returns the number of buildings left in the world, resident or not.
+    * @param state the state of the game
+    * @return the number of buildings
+    */
+   public int countBuildings(GameState state) {
+      return state.buildings.size() + packedBuildings;
+   }
+
+   /**
+    * Generates the buildings of every chunk of the world of the given state,
+    * all packed away, replacing the buildings of the state.
+    * @param state the state of the game, whose world size is set
+    * @param seed the seed of the world
+    */
+   public void generate(GameState state, long seed) {
+      resize(state.worldWidth);
+      overhang = 0;
+      packedBuildings = 0;
+      int[] buffer = new int[PACKED_SIZE * 16];
+      for (int c = 0; c < nrOfChunks; c++) {
+         int n = 0;
+         gen.setSeed(seed ^ (c + 1) * 0x9E3779B97F4A7C15L);
+         int end = Math.min((c + 1) * chunkWidth, state.worldWidth);
+         for (int point = c * chunkWidth; point < end; /* increment in the body */ ) {
+            int incr = 15 + gen.nextInt(GameLogic.BUILDING_WIDTH);
+            int top = gen.nextInt(GameLogic.MAX_HEIGHT) + GameLogic.MAX_HEIGHT;
+            if (point + incr >= end) {
+               // The next chunk starts with a building of its own.
+               break;
+            }
+            if (buffer.length < (n + 1) * PACKED_SIZE) {
+               buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            pack(buffer, n++, point, top, point + incr, 0, 1.0F, Building.DEFAULT_REPAIR_RATE);
+            point += incr + 5 + gen.nextInt(GameLogic.BUILDING_SPACING);
+         }
+         packed[c] = Arrays.copyOf(buffer, n * PACKED_SIZE);
+         packedCount[c] = n;
+         packedBuildings += n;
+      }
+      residentCount = 0;
+      state.buildings.clear();
+      state.skyline.build(state.buildings);
+   }
+
+   /**
+    * Takes over the buildings of the given state, for instance after the
+    * state has been read back, with every chunk resident.  The buildings
+    * are sorted from left to right.
+    * @param state the state of the game
+    */
+   public void adopt(GameState state) {
+      resize(state.worldWidth);
+      Collections.sort(state.buildings, BY_LEFT);
+      overhang = 0;
+      for (int j = 0; j < state.buildings.size(); j++) {
+         Building b = (Building) state.buildings.get(j);
+         int chunkEnd = (chunkOf(b.getTopLeft().getIComp()) + 1) * chunkWidth;
+         overhang = Math.max(overhang, b.getBottomRight().getIComp() + 1 - chunkEnd);
+      }
+      Arrays.fill(packed, null);
+      packedBuildings = 0;
+      residentCount = nrOfChunks;
+      state.skyline.build(state.buildings);
+   }
+
+   /**
+    * Makes every chunk resident that anything could touch in the coming
+    * time step, and packs away the chunks needed least recently when more
+    * than the maximum are resident.  Called before the missiles move.
+    * @param state the state of the game
+    */
+   public void update(GameState state) {
+      long tick = state.tick;
+      Arrays.fill(pinned, 0, nrOfChunks, false);
+
+      // The coordinates of the missiles before they move, even if they
+      // move lazily.
+      MissileStore missiles = state.missiles;
+      for (int i = 0; i < missiles.count(); i++) {
+         int x = missiles.xAt(i, tick - 1);
+         int y = missiles.yAt(i, tick - 1);
+         int dx = missiles.dx[i];
+         int dy = missiles.dy[i];
+         int end;
+         if (dy < 0) {
+            long steps = (Math.max(y, 0) - dy - 1) / -dy + 1;
+            end = (int) Math.max(-1, Math.min(state.worldWidth + 1, x + steps * dx));
+         } else {
+            end = (dx < 0) ? -1 : ((dx > 0) ? state.worldWidth + 1 : x);
+         }
+         int reach = Math.abs(dx) + Math.max(missiles.explosionSize[i], 0);
+         pin(Math.min(x, end) - reach, Math.max(x, end) + reach, tick);
+      }
+      ExplosionStore explosions = state.explosions;
+      for (int i = 0; i < explosions.count(); i++) {
+         int reach = Math.max(explosions.radius[i], explosions.maxRadius[i]);
+         pin(explosions.x[i] - reach, explosions.x[i] + reach, tick);
+      }
+
+      boolean changed = false;
+      for (int c = 0; c < nrOfChunks; c++) {
+         if (pinned[c] && packed[c] != null) {
+            load(state, c);
+            changed = true;
+         }
+      }
+      while (residentCount > maxResident) {
+         int victim = -1;
+         for (int c = 0; c < nrOfChunks; c++) {
+            if (packed[c] == null && !pinned[c] &&
+                (victim < 0 || lastUsed[c] < lastUsed[victim])) {
+               victim = c;
+            }
+         }
+         if (victim < 0) {
+            // Everything resident is needed.
+            break;
+         }
+         evict(state, victim);
+         changed = true;
+      }
+      if (changed) {
+         state.skyline.build(state.buildings);
+      }
+   }
+
+   /**
+    * Makes the chunks holding the given x coordinate resident, for instance
+    * before looking for the building a click falls in.
+    * @param state the state of the game
+    * @param x the x coordinate
+    */
+   public void require(GameState state, int x) {
+      boolean changed = false;
+      for (int c = chunkOf(x - overhang); c <= chunkOf(x); c++) {
+         lastUsed[c] = state.tick;
+         if (packed[c] != null) {
+            load(state, c);
+            changed = true;
+         }
+      }
+      if (changed) {
+         state.skyline.build(state.buildings);
+      }
+   }
+
+   /**
+    * Collects every building of the world, resident or not, in order from
+    * left to right, packed {@link #PACKED_SIZE} ints per building.
+    * @param state the state of the game
+    * @return the number of buildings collected
+    * @see #getCollected()
+    */
+   public int collect(GameState state) {
+      int total = countBuildings(state);
+      if (collected.length < total * PACKED_SIZE) {
+         collected = new int[total * PACKED_SIZE];
+      }
+      ArrayList list = state.buildings;
+      int j = 0;
+      int n = 0;
+      for (int c = 0; c < nrOfChunks; c++) {
+         if (packed[c] != null) {
+            System.arraycopy(packed[c], 0, collected, n * PACKED_SIZE,
+                             packedCount[c] * PACKED_SIZE);
+            n += packedCount[c];
+            continue;
+         }
+         while (j < list.size() &&
+                chunkOf(((Building) list.get(j)).getTopLeft().getIComp()) == c) {
+            pack(collected, n++, (Building) list.get(j++));
+         }
+      }
+      return n;
+   }
+
+   /**
+    * Returns the buildings collected by the last call to {@link #collect}.
+    * Building k starts at index k * {@link #PACKED_SIZE}, see
+    * {@link #LEFT} and the other offsets.
+    * @return the packed buildings
+    */
+   public int[] getCollected() { return collected; }
+
+   /**
+    * Sizes the chunk arrays for a world of the given width.
+    * @param worldWidth the width of the world (in pixels)
+    */
+   private void resize(int worldWidth) {
+      nrOfChunks = Math.max(1, (int) (((long) worldWidth + chunkWidth - 1) / chunkWidth));
+      if (packed.length != nrOfChunks) {
+         packed = new int[nrOfChunks][];
+         packedCount = new int[nrOfChunks];
+         lastUsed = new long[nrOfChunks];
+         pinned = new boolean[nrOfChunks];
+      }
+      Arrays.fill(packedCount, 0);
+      Arrays.fill(lastUsed, -1);
+   }
+
+   /**
+    * Returns the chunk a building with its left side at the given x
+    * coordinate belongs to.  Coordinates outside the world belong to the
+    * first or the last chunk.
+    * @param x the x coordinate
+    * @return the chunk, between 0 and the number of chunks - 1
+    */
+   private int chunkOf(int x) {
+      int c = Math.floorDiv(x, chunkWidth);
+      return (c < 0) ? 0 : ((c >= nrOfChunks) ? nrOfChunks - 1 : c);
+   }
+
+   /**
+    * Marks the chunks whose buildings could reach between the given x
+    * coordinates as needed in the current time step.
+    * @param from the x coordinate of the left end
+    * @param to the x coordinate of the right end
+    * @param tick the current time step
+    */
+   private void pin(int from, int to, long tick) {
+      for (int c = chunkOf(from - overhang); c <= chunkOf(to); c++) {
+         pinned[c] = true;
+         lastUsed[c] = tick;
+      }
+   }
+
+   /**
+    * Returns the index in the list of buildings of the first building of
+    * the given chunk or of a chunk to its right.
+    * @param list the buildings, sorted from left to right
+    * @param c the chunk
+    * @return the index of the building, or the size of the list if none
+    */
+   private int firstOf(ArrayList list, int c) {
+      int low = 0;
+      int high = list.size();
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (chunkOf(((Building) list.get(middle)).getTopLeft().getIComp()) < c) {
+            low = middle + 1;
+         } else {
+            high = middle;
+         }
+      }
+      return low;
+   }
+
+   /**
+    * Unpacks the buildings of a chunk into the list of buildings.  The
+    * skyline must be rebuilt afterwards.
+    * @param state the state of the game
+    * @param c the chunk
+    */
+   private void load(GameState state, int c) {
+      int[] p = packed[c];
+      loading.clear();
+      for (int k = 0; k < packedCount[c]; k++) {
+         int at = k * PACKED_SIZE;
+         Building b = new Building(new Vector2D(p[at + LEFT], p[at + TOP]),
+                                   new Vector2D(p[at + RIGHT], p[at + BOTTOM]));
+         b.setHealth(Float.intBitsToFloat(p[at + HEALTH]));
+         b.setRepairRate(Float.intBitsToFloat(p[at + REPAIR_RATE]));
+         loading.add(b);
+      }
+      state.buildings.addAll(firstOf(state.buildings, c), loading);
+      packedBuildings -= packedCount[c];
+      packed[c] = null;
+      packedCount[c] = 0;
+      residentCount++;
+      loads++;
+   }
+
+   /**
+    * Packs the buildings of a chunk away, removing them from the list of
+    * buildings.  The skyline must be rebuilt afterwards.
+    * @param state the state of the game
+    * @param c the chunk
+    */
+   private void evict(GameState state, int c) {
+      ArrayList list = state.buildings;
+      int from = firstOf(list, c);
+      int to = firstOf(list, c + 1);
+      int n = to - from;
+      int[] p = new int[n * PACKED_SIZE];
+      for (int k = 0; k < n; k++) {
+         pack(p, k, (Building) list.get(from + k));
+      }
+      list.subList(from, to).clear();
+      packed[c] = p;
+      packedCount[c] = n;
+      packedBuildings += n;
+      residentCount--;
+      evictions++;
+   }
+
+   /**
+    * Packs a building into an array.
+    * @param p the array to pack into
+    * @param k the index of the building in the array
+    * @param b the building
+    */
+   private static void pack(int[] p, int k, Building b) {
+      pack(p, k, b.getTopLeft().getIComp(), b.getTopLeft().getJComp(),
+           b.getBottomRight().getIComp(), b.getBottomRight().getJComp(),
+           b.getHealth(), b.getRepairRate());
+   }
+
+   /**
+    * Packs a building into an array.
+    * @param p the array to pack into
+    * @param k the index of the building in the array
+    * @param left the x coordinate of the left side
+    * @param top the y coordinate of the top
+    * @param right the x coordinate of the right side
+    * @param bottom the y coordinate of the bottom
+    * @param health the health
+    * @param repairRate the repair rate
+    */
+   private static void pack(int[] p, int k, int left, int top, int right, int bottom,
+                            float health, float repairRate) {
+      int at = k * PACKED_SIZE;
+      p[at + LEFT] = left;
+      p[at + TOP] = top;
+      p[at + RIGHT] = right;
+      p[at + BOTTOM] = bottom;
+      p[at + HEALTH] = Float.floatToIntBits(health);
+      p[at + REPAIR_RATE] = Float.floatToIntBits(repairRate);
+   }
+
+}
@@ -0,0 +1,113 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is the {@link CollisionKernel} using the incubating Vector
+ * API: it tests an explosion against a whole vector of missiles at a time,
+ * as many as fit in the widest vector registers of the processor (4 on
+ * plain x86 and ARM, up to 16 with AVX-512), and falls back on the scalar
+ * kernel for the rest.  The lanes hit are collected into an int, so on
+ * processors with vectors of more than 32 ints (such as 2048 bit SVE) 16
+ * lanes are used instead.
+ * <p>
+ * The squares are taken in 32 bit lanes.  The distances along either axis
+ * are first clamped to one pixel outside the radius, which keeps the
+ * squares from overflowing for radii up to {@link #MAX_RADIUS} (larger
+ * explosions are tested by the scalar kernel) as long as the coordinates
+ * stay within 2^30 of each other.  Within those limits the hits are
+ * exactly those of the scalar kernel.  The lanes hit are collected with
+ * plain vector operations rather than through a {@link
+ * jdk.incubator.vector.VectorMask}, whose conversion to bits allocates on
+ * JDK 17, so testing allocates no memory.
+ * <p>
+ * This class needs "--add-modules jdk.incubator.vector" both to compile
+ * and to run; it is only ever loaded by {@link CollisionKernel#create}.
+ *
+ * @author Tobias Salem, alias Vassago
+ * @version 1.0
+ */
+public class VectorCollisionKernel extends CollisionKernel {
+
+   /** The largest radius for which twice the square of radius + 1 fits in an int. */
+   public final static int MAX_RADIUS = 32766;
+
+   /** The most lanes whose hits can be collected into an int. */
+   public final static int MAX_LANES = 32;
+
+   /** The widest vectors of ints the processor handles well, up to MAX_LANES. */
+   private final static VectorSpecies<Integer> SPECIES =
+      (IntVector.SPECIES_PREFERRED.length() <= MAX_LANES) ? IntVector.SPECIES_PREFERRED
+                                                          : IntVector.SPECIES_512;
+
+   /** Bit k set in lane k, for collecting the lanes hit into an int. */
+   private final static IntVector LANE_BITS =
+      IntVector.fromArray(SPECIES, laneBits(SPECIES.length()), 0);
+
+   /** Creates a new kernel. */
+   public VectorCollisionKernel() { }
+
+   /**
+    * Returns the name of the kernel, with the number of lanes it uses.
+    * @return the name of the kernel
+    */
+   public String getName() { return "vector (" + SPECIES.length() + " lanes)"; }
+
+   /**
+    * Returns the number of missiles the kernel tests at a time.
+    * @return the number of lanes of the vectors
+    */
+   public int getLaneWidth() { return SPECIES.length(); }
+
+   /**
+    * Tests an explosion against up to {@link #MASK_WIDTH} consecutive
+    * missiles, a vector at a time.
+    * @param x the x coordinate of the center of the explosion
+    * @param y the y coordinate of the center of the explosion
+    * @param radius the current radius of the explosion
+    * @param xs the x coordinates of the missiles
+    * @param ys the y coordinates of the missiles
+    * @param from the index of the first missile to test
+    * @param n the number of missiles to test, at most {@link #MASK_WIDTH}
+    * @return a mask with bit k set if missile from + k is hit
+    */
+   public long hitMask(int x, int y, int radius, int[] xs, int[] ys, int from, int n) {
+      if (radius > MAX_RADIUS || radius < 0) {
+         return super.hitMask(x, y, radius, xs, ys, from, n);
+      }
+      int lanes = SPECIES.length();
+      int squared = radius * radius;
+      int outside = radius + 1;
+      long mask = 0;
+      int k = 0;
+      for (; k + lanes <= n; k += lanes) {
+         IntVector dx = IntVector.fromArray(SPECIES, xs, from + k).sub(x)
+            .max(-outside).min(outside);
+         IntVector dy = IntVector.fromArray(SPECIES, ys, from + k).sub(y)
+            .max(-outside).min(outside);
+         // Negative exactly in the lanes of the missiles hit.
+         IntVector inside = dx.mul(dx).add(dy.mul(dy)).sub(squared + 1);
+         int bits = inside.lanewise(VectorOperators.ASHR, 31).and(LANE_BITS)
+            .reduceLanes(VectorOperators.OR);
+         mask |= (bits & 0xFFFFFFFFL) << k;
+      }
+      if (k < n) {
+         mask |= super.hitMask(x, y, radius, xs, ys, from + k, n - k) << k;
+      }
+      return mask;
+   }
+
+   /**
+    * Returns the bits set in every lane of {@link #LANE_BITS}.
+    * @param lanes the number of lanes
+    * @return bit k for every lane k
+    */
+   private static int[] laneBits(int lanes) {
+      int[] bits = new int[lanes];
+      for (int k = 0; k < lanes; k++) {
+         bits[k] = 1 << k;
+      }
+      return bits;
+   }
+
+}